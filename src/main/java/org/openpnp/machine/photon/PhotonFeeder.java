@@ -46,6 +46,10 @@ public class PhotonFeeder extends ReferenceFeeder {
     @Element(required = false)
     private Location offset;
 
+    // Feed started by feedAhead(), with the time it is expected to be ready.
+    private Long feedAheadReadyTime;
+    private int feedAheadTimeToWait;
+
     private static PhotonBusInterface photonBus;
 
     public PhotonFeeder() {
@@ -147,6 +151,7 @@ public class PhotonFeeder extends ReferenceFeeder {
 
     @Override
     public void prepareForJob(boolean visit) throws Exception {
+        cancelFeedAhead();
         for (int i = 0; i <= photonProperties.getFeederCommunicationMaxRetry(); i++) {
             findSlotAddressIfNeeded();
 
@@ -250,6 +255,44 @@ public class PhotonFeeder extends ReferenceFeeder {
 
     @Override
     public void feed(Nozzle nozzle) throws Exception {
+        if (feedAheadReadyTime != null) {
+            // Started ahead, only wait for the rest of the expected time.
+            long remainingMillis = Math.max(0, feedAheadReadyTime - System.currentTimeMillis());
+            int timeToWaitMillis = feedAheadTimeToWait;
+            feedAheadReadyTime = null;
+            waitForFeed(remainingMillis, timeToWaitMillis);
+            return;
+        }
+        int timeToWaitMillis = startFeed();
+        waitForFeed(timeToWaitMillis, timeToWaitMillis);
+    }
+
+    @Override
+    public boolean isFeedAheadSupported() {
+        return true;
+    }
+
+    @Override
+    public void feedAhead(Nozzle nozzle) throws Exception {
+        if (feedAheadReadyTime != null) {
+            return;
+        }
+        feedAheadTimeToWait = startFeed();
+        feedAheadReadyTime = System.currentTimeMillis() + feedAheadTimeToWait;
+    }
+
+    @Override
+    public void cancelFeedAhead() {
+        feedAheadReadyTime = null;
+    }
+
+    /**
+     * Send the feed command.
+     *
+     * @return The time the feeder expects the feed to take, in milliseconds.
+     * @throws Exception
+     */
+    private int startFeed() throws Exception {
         for (int i = 0; i <= photonProperties.getFeederCommunicationMaxRetry(); i++) {
             findSlotAddressIfNeeded();
             initializeIfNeeded();
@@ -273,30 +316,39 @@ public class PhotonFeeder extends ReferenceFeeder {
                 continue;  // We'll initialize it on a retry
             }
 
-            int timeToWaitMillis = moveFeedForwardResponse.expectedTimeToFeed;
+            return moveFeedForwardResponse.expectedTimeToFeed;
+        }
 
-            for (int j = 0; j < 3; j++) {
-                //noinspection BusyWait
-                Thread.sleep(timeToWaitMillis);
+        throw new FeedFailureException("Failed to feed for an unknown reason. Is the feeder inserted?");
+    }
 
-                MoveFeedStatus moveFeedStatus = new MoveFeedStatus(slotAddress);
-                MoveFeedStatus.Response moveFeedStatusResponse = moveFeedStatus.send(photonBus);
+    /**
+     * Poll the feeder until the feed is done.
+     *
+     * @param firstWaitMillis Time to wait before the first status request.
+     * @param timeToWaitMillis Time to wait before retrying the status request.
+     * @throws Exception
+     */
+    private void waitForFeed(long firstWaitMillis, int timeToWaitMillis) throws Exception {
+        for (int j = 0; j < 3; j++) {
+            //noinspection BusyWait
+            Thread.sleep(j == 0 ? firstWaitMillis : timeToWaitMillis);
 
-                if (moveFeedStatusResponse == null) {
-                    continue; // Timeout. retry after delay.
-                }
+            MoveFeedStatus moveFeedStatus = new MoveFeedStatus(slotAddress);
+            MoveFeedStatus.Response moveFeedStatusResponse = moveFeedStatus.send(photonBus);
 
-                if (moveFeedStatusResponse.error == ErrorTypes.NONE) {
-                    return;
-                } else if (moveFeedStatusResponse.error == ErrorTypes.COULD_NOT_REACH) {
-                    throw new FeedFailureException("Feeder could not reach its destination.");
-                }
+            if (moveFeedStatusResponse == null) {
+                continue; // Timeout. retry after delay.
             }
 
-            throw new FeedFailureException("Feeder timed out when we requested a feed status update.");
+            if (moveFeedStatusResponse.error == ErrorTypes.NONE) {
+                return;
+            } else if (moveFeedStatusResponse.error == ErrorTypes.COULD_NOT_REACH) {
+                throw new FeedFailureException("Feeder could not reach its destination.");
+            }
         }
 
-        throw new FeedFailureException("Failed to feed for an unknown reason. Is the feeder inserted?");
+        throw new FeedFailureException("Feeder timed out when we requested a feed status update.");
     }
 
     @Override
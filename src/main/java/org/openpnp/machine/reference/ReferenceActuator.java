@@ -21,6 +21,7 @@ package org.openpnp.machine.reference;
 
 import java.awt.event.ActionEvent;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -349,6 +350,29 @@ public class ReferenceActuator extends AbstractActuator implements HeadMountable
         return value;
     }
 
+    /**
+     * Read the actuator without waiting for the value, so multiple reads can be in flight at the same time. 
+     * Coordination before and after the read is applied as configured, like in {@link #read()}. 
+     * 
+     * @param parameter
+     * @return A future completed with the value read.
+     * @throws Exception
+     */
+    public CompletableFuture<String> readAsync(Object parameter) throws Exception {
+        if (isCoordinatedBeforeRead()) {
+            coordinateWithMachine(false);
+        }
+        CompletableFuture<String> value = getDriver().actuatorReadAsync(this, parameter);
+        if (isCoordinatedAfterActuate()) {
+            coordinateWithMachine(true);
+        }
+        getMachine().fireMachineHeadActivity(head);
+        return value.thenApply((v) -> {
+            Logger.debug("{}.readAsync({}): {}", getName(), parameter, v);
+            return v;
+        });
+    }
+
     @Override
     public void home() throws Exception {}
 
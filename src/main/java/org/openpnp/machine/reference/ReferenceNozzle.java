@@ -4,6 +4,8 @@ import java.awt.event.ActionEvent;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -1071,6 +1073,60 @@ public class ReferenceNozzle extends AbstractNozzle implements HeadMountable {
         return Double.parseDouble(getExpectedVacuumSenseActuator().read());
     }
 
+    /**
+     * Sample the vacuum level into the graph, until the timeout or until the level is within the given range.
+     * 
+     * If the driver of the vacuum sense actuator supports asynchronous reads, the next reading is already 
+     * requested while the previous one is on its way back, so the round-trip to the controller does not halve 
+     * the sampling rate. 
+     * When the level is found within the range, the surplus reading is simply discarded.
+     * 
+     * @param vacuumGraph
+     * @param timeout The end of the sampling, in System.currentTimeMillis() time. 
+     * @param low Lower end of the range, or NaN to sample until the timeout.
+     * @param high Upper end of the range, or NaN to sample until the timeout.
+     * @return The last vacuum level sampled.
+     * @throws Exception
+     */
+    protected double sampleVacuumLevel(SimpleGraph vacuumGraph, long timeout, double low, double high) 
+            throws Exception {
+        SimpleGraph.DataRow vacuumData = vacuumGraph.getRow(ReferenceNozzleTip.PRESSURE, ReferenceNozzleTip.VACUUM);
+        Actuator actuator = getExpectedVacuumSenseActuator();
+        double vacuumLevel;
+        if (!(actuator instanceof ReferenceActuator && actuator.getDriver() != null
+                && actuator.getDriver().isActuatorReadAsyncSupported())) {
+            do {
+                vacuumLevel = readVacuumLevel();
+                vacuumData.recordDataPoint(vacuumGraph.getT(), vacuumLevel);
+            }
+            while (!(vacuumLevel >= low && vacuumLevel <= high) 
+                    && System.currentTimeMillis() < timeout);
+            return vacuumLevel;
+        }
+        ReferenceActuator referenceActuator = (ReferenceActuator) actuator;
+        CompletableFuture<String> reading = referenceActuator.readAsync(null);
+        do {
+            CompletableFuture<String> nextReading = (System.currentTimeMillis() < timeout ? 
+                    referenceActuator.readAsync(null) : null);
+            try {
+                vacuumLevel = Double.parseDouble(reading.get());
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+            vacuumData.recordDataPoint(vacuumGraph.getT(), vacuumLevel);
+            if (vacuumLevel >= low && vacuumLevel <= high) {
+                break;
+            }
+            reading = nextReading;
+        }
+        while (reading != null);
+        return vacuumLevel;
+    }
+
     protected boolean isPartOnGraphEnabled() {
         ReferenceNozzleTip nt = getNozzleTip();
         return nt.getMethodPartOn() != VacuumMeasurementMethod.None
@@ -1119,18 +1175,10 @@ public class ReferenceNozzle extends AbstractNozzle implements HeadMountable {
             vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
             .recordDataPoint(vacuumGraph.getT(), 1);
             long timeout = System.currentTimeMillis() + milliseconds;
-            SimpleGraph.DataRow vacuumData = vacuumGraph.getRow(ReferenceNozzleTip.PRESSURE, ReferenceNozzleTip.VACUUM);
-            double vacuumLevel;
-            do {
-                vacuumLevel = readVacuumLevel();
-                vacuumData.recordDataPoint(vacuumGraph.getT(), vacuumLevel);
-                if (nt.isEstablishPartOnLevel() 
-                        && vacuumLevel >= nt.getVacuumLevelPartOnLow() && vacuumLevel <= nt.getVacuumLevelPartOnHigh()) {
-                    // within range, we're done
-                    break;
-                }
-            }
-            while (System.currentTimeMillis() < timeout);
+            // sample until within range, if enabled
+            double vacuumLevel = nt.isEstablishPartOnLevel() ?
+                    sampleVacuumLevel(vacuumGraph, timeout, nt.getVacuumLevelPartOnLow(), nt.getVacuumLevelPartOnHigh())
+                    : sampleVacuumLevel(vacuumGraph, timeout, Double.NaN, Double.NaN);
             // valve is still on
             vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
                 .recordDataPoint(vacuumGraph.getT(), 1);
@@ -1154,18 +1202,10 @@ public class ReferenceNozzle extends AbstractNozzle implements HeadMountable {
             vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
             .recordDataPoint(vacuumGraph.getT(), 0);
             long timeout = System.currentTimeMillis() + milliseconds;
-            SimpleGraph.DataRow vacuumData = vacuumGraph.getRow(ReferenceNozzleTip.PRESSURE, ReferenceNozzleTip.VACUUM);
-            double vacuumLevel;
-            do {
-                vacuumLevel = readVacuumLevel();
-                vacuumData.recordDataPoint(vacuumGraph.getT(), vacuumLevel);
-                if (nt.isEstablishPartOffLevel() 
-                        && vacuumLevel >= nt.getVacuumLevelPartOffLow() && vacuumLevel <= nt.getVacuumLevelPartOffHigh()) {
-                    // within range, we're done
-                    break;
-                }
-            }
-            while (System.currentTimeMillis() < timeout);
+            // sample until within range, if enabled
+            double vacuumLevel = nt.isEstablishPartOffLevel() ?
+                    sampleVacuumLevel(vacuumGraph, timeout, nt.getVacuumLevelPartOffLow(), nt.getVacuumLevelPartOffHigh())
+                    : sampleVacuumLevel(vacuumGraph, timeout, Double.NaN, Double.NaN);
             // valve is still off
             vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
                 .recordDataPoint(vacuumGraph.getT(), 0);
@@ -1219,13 +1259,7 @@ public class ReferenceNozzle extends AbstractNozzle implements HeadMountable {
                 .recordDataPoint(vacuumGraph.getT(), 1);
                 // record the slope of the vacuum level
                 long timeout = System.currentTimeMillis() + probingMilliseconds;
-                SimpleGraph.DataRow vacuumData = vacuumGraph.getRow(ReferenceNozzleTip.PRESSURE, ReferenceNozzleTip.VACUUM);
-                double vacuumLevel;
-                do {
-                    vacuumLevel = readVacuumLevel();
-                    vacuumData.recordDataPoint(vacuumGraph.getT(), vacuumLevel);
-                }
-                while (System.currentTimeMillis() < timeout);
+                double vacuumLevel = sampleVacuumLevel(vacuumGraph, timeout, Double.NaN, Double.NaN);
                 // record valve still on 
                 vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
                 .recordDataPoint(vacuumGraph.getT(), 1);
@@ -1253,13 +1287,7 @@ public class ReferenceNozzle extends AbstractNozzle implements HeadMountable {
             .recordDataPoint(vacuumGraph.getT(), 0);
             // record the slope of the vacuum level
             long timeout = System.currentTimeMillis() + dwellMilliseconds;
-            SimpleGraph.DataRow vacuumData = vacuumGraph.getRow(ReferenceNozzleTip.PRESSURE, ReferenceNozzleTip.VACUUM);
-            double vacuumLevel;
-            do {
-                vacuumLevel = readVacuumLevel();
-                vacuumData.recordDataPoint(vacuumGraph.getT(), vacuumLevel);
-            }
-            while (System.currentTimeMillis() < timeout);
+            double vacuumLevel = sampleVacuumLevel(vacuumGraph, timeout, Double.NaN, Double.NaN);
             // record valve still off
             vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
             .recordDataPoint(vacuumGraph.getT(), 0);
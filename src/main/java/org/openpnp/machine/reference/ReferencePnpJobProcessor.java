@@ -21,10 +21,13 @@ package org.openpnp.machine.reference;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -53,6 +56,7 @@ import org.openpnp.spi.FiducialLocator;
 import org.openpnp.spi.Head;
 import org.openpnp.spi.HeadMountable;
 import org.openpnp.spi.Machine;
+import org.openpnp.spi.MotionPlanner;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.NozzleTip;
 import org.openpnp.spi.PartAlignment;
@@ -61,6 +65,10 @@ import org.openpnp.spi.PnpJobPlanner.PlannedPlacement;
 import org.openpnp.spi.PnpJobProcessor.JobPlacement.Status;
 import org.openpnp.spi.base.AbstractJobProcessor;
 import org.openpnp.spi.base.AbstractPnpJobProcessor;
+import org.openpnp.spi.base.FeederIndex;
+import org.openpnp.util.AxisDynamicsCost;
+import org.openpnp.util.MotionTimeCost;
+import org.openpnp.util.JobPlacementIndex;
 import org.openpnp.util.MovableUtils;
 import org.openpnp.util.TravellingSalesman;
 import org.openpnp.util.UiUtils;
@@ -106,6 +114,18 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     @Attribute(required = false)
     int fiducialLevel = 1;
     
+    /**
+     * How to choose among multiple enabled feeders for the same part.
+     */
+    @Attribute(required = false)
+    protected FeederIndex.Selection feederSelection = FeederIndex.Selection.First;
+
+    /**
+     * Start the feeds of the cycle before picking, for feeders that support it.
+     */
+    @Attribute(required = false)
+    protected boolean feedAhead = false;
+
     @Element(required = false)
     public PnpJobPlanner planner = new SimplePnpJobPlanner();
 
@@ -121,6 +141,12 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     
     protected List<JobPlacement> jobPlacements = new ArrayList<>();
 
+    /**
+     * Index of the pending placements, built on the first planning cycle and maintained across the cycles.
+     */
+    protected JobPlacementIndex jobPlacementIndex;
+    private JobOrderHint jobPlacementIndexOrder;
+
     private Step currentStep = null;
     
     long startTime;
@@ -187,6 +213,10 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             totalPartsPlaced = 0;
             
             jobPlacements.clear();
+            if (jobPlacementIndex != null) {
+                jobPlacementIndex.dispose();
+                jobPlacementIndex = null;
+            }
 
             // Create some shortcuts for things that won't change during the run
             machine = Configuration.get().getMachine();
@@ -341,27 +371,35 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             List<Feeder> feederVisitList = new ArrayList<>();
             List<Feeder> feederNoVisitList = new ArrayList<>();
             // Get all the feeders that are used in the pending placements.
+            Set<Part> parts = new HashSet<>();
+            for (JobPlacement placement : getPendingJobPlacements()) {
+                parts.add(placement.getPlacement().getPart());
+            }
+            FeederIndex feederIndex = machine.getFeederIndex();
+            Set<Feeder> feeders = new HashSet<>();
+            for (Part part : parts) {
+                feeders.addAll(feederIndex.getFeeders(part));
+            }
+            // Keep the machine order.
             for (Feeder feeder : machine.getFeeders()) {
-                if (feeder.isEnabled() && feeder.getPart() != null) {
-                    for (JobPlacement placement : getPendingJobPlacements()) {
-                        if (placement.getPartId().equals(feeder.getPart().getId())) {
-                            if (feeder.getJobPreparationLocation() != null) {
-                                // only feeders with location added to the visit list
-                                // only add feeders once
-                                if (!feederVisitList.contains(feeder)) {
-                                    feederVisitList.add(feeder);
-                                }
-                            }
-                            // always also add them to the general (second pass) prep list
-                            feederNoVisitList.add(feeder);
-                        }
+                if (feeder.isEnabled() && feeders.contains(feeder)) {
+                    if (feeder.getJobPreparationLocation() != null) {
+                        // only feeders with location added to the visit list
+                        feederVisitList.add(feeder);
                     }
+                    // always also add them to the general (second pass) prep list
+                    feederNoVisitList.add(feeder);
                 }
             }
             
             Location startLocation = null;
+            TravellingSalesman.CostFunction costFunction = null;
             try {
-                startLocation = head.getDefaultCamera().getLocation();
+                Camera camera = head.getDefaultCamera();
+                startLocation = camera.getLocation();
+                // Rate the visits by the axis dynamics, rather than the distance. The motion planner estimate
+                // would be more accurate, but the full cost matrix is too many estimates for large feeder counts.
+                costFunction = AxisDynamicsCost.create(camera, machine.getSpeed());
             }
             catch (Exception e) {
                 Logger.error(e);
@@ -379,10 +417,11 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                     // start from current location
                     startLocation, 
                     // no particular end location
-                    null);
+                    null,
+                    costFunction);
 
-            // Solve it using the default heuristics.
-            tsm.solve();
+            // Solve it by local search, which is much faster for the hundreds of feeders of large jobs.
+            tsm.solveLocalSearch(1000);
 
             // Prepare feeders along the visit travel path.
             for (Feeder feeder : tsm.getTravel()) {
@@ -540,30 +579,33 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         public Step step() throws JobProcessorException {
             fireTextStatus("Planning placements.");
 
-            List<JobPlacement> jobPlacements;
-
-            if (jobOrder.equals(JobOrderHint.Part)) {
-                // Get the list of unfinished placements and sort them by part.
-                    jobPlacements = getPendingJobPlacements().stream()
-                            .sorted(Comparator.comparing(JobPlacement::getPartId))
-                            .collect(Collectors.toList());
-            } 
-            else {
-                // Get the list of unfinished placements and sort them by part height.
-                    jobPlacements = getPendingJobPlacements().stream()
-                            .sorted(Comparator
-                                .comparing(JobPlacement::getPartHeight)
-                                .thenComparing(JobPlacement::getPartId))
-                            .collect(Collectors.toList());
+            long t = System.nanoTime();
+            if (jobPlacementIndex == null || jobPlacementIndexOrder != jobOrder) {
+                Comparator<JobPlacement> order;
+                if (jobOrder.equals(JobOrderHint.Part)) {
+                    // Sort the placements by part.
+                    order = Comparator.comparing(JobPlacement::getPartId);
+                } 
+                else {
+                    // Sort the placements by part height.
+                    order = Comparator
+                            .comparing(JobPlacement::getPartHeight)
+                            .thenComparing(JobPlacement::getPartId);
+                }
+                if (jobPlacementIndex != null) {
+                    jobPlacementIndex.dispose();
+                }
+                jobPlacementIndex = new JobPlacementIndex(jobPlacements, order);
+                jobPlacementIndexOrder = jobOrder;
+                Logger.debug("Indexed {} placements in {}ms", jobPlacements.size(), (System.nanoTime() - t)*1e-6);
             }
 
-            if (jobPlacements.isEmpty()) {
+            if (jobPlacementIndex.getPendingCount() == 0) {
                 return new Finish();
             }
 
-            long t = System.currentTimeMillis();
-            List<PlannedPlacement> plannedPlacements = planner.plan(head, jobPlacements);
-            Logger.debug("Planner complete in {}ms: {}", (System.currentTimeMillis() - t), plannedPlacements);
+            List<PlannedPlacement> plannedPlacements = planner.plan(head, jobPlacementIndex);
+            Logger.debug("Planner complete in {}ms: {}", (System.nanoTime() - t)*1e-6, plannedPlacements);
 
             if (plannedPlacements.isEmpty()) {
                 throw new JobProcessorException(planner, "Planner failed to plan any placements. Please contact support.");
@@ -671,12 +713,59 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
 
         public Step step() throws JobProcessorException {
             
+            // choose the feeders to pick from, before their locations are used to optimize
+            for (PlannedPlacement plannedPlacement : plannedPlacements) {
+                try {
+                    plannedPlacement.feeder = selectFeeder(plannedPlacement);
+                }
+                catch (JobProcessorException e) {
+                    // Pick will throw again.
+                    plannedPlacement.feeder = null;
+                }
+            }
+
             // sort plannedPlacements for picking with alignment as next/end location using TSM
             List<PlannedPlacement> optimizedPlannedPlacements = optimizePlacements(pickLocator, alignLocator);
+            lookAhead(optimizedPlannedPlacements, pickLocator);
             
+            if (feedAhead) {
+                return new FeedAhead(optimizedPlannedPlacements);
+            }
             return new Pick(optimizedPlannedPlacements);
         }
     }
+
+    /**
+     * Start the feeds of the cycle up front, for the feeders that support it, so the feeders work while the
+     * head travels and picks. The Pick step's feed then only waits for the feed, if it is not yet done.
+     */
+    protected class FeedAhead implements Step {
+        private final List<PlannedPlacement> plannedPlacements;
+
+        public FeedAhead(List<PlannedPlacement> plannedPlacements) {
+            this.plannedPlacements = plannedPlacements;
+        }
+
+        public Step step() throws JobProcessorException {
+            Set<Feeder> fedAhead = new HashSet<>();
+            for (PlannedPlacement plannedPlacement : plannedPlacements) {
+                Feeder feeder = plannedPlacement.feeder;
+                // A second part from the same feeder can only be fed after the first was picked.
+                if (feeder != null && feeder.isEnabled() && feeder.isFeedAheadSupported() 
+                        && fedAhead.add(feeder)) {
+                    try {
+                        fireTextStatus("Feed ahead %s on %s.", feeder.getName(), feeder.getPart().getId());
+                        feeder.feedAhead(plannedPlacement.nozzle);
+                    }
+                    catch (Exception e) {
+                        // Not fatal, the Pick step feeds again, with retries.
+                        Logger.warn(e, "Feed ahead on feeder {} failed.", feeder.getName());
+                    }
+                }
+            }
+            return new Pick(plannedPlacements);
+        }
+    }
         
     /**
      * Pick step - pick parts using all nozzles
@@ -707,10 +796,15 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             JobProcessorException lastException = null;
             for (int partPickTry = 0; partPickTry < 1 + part.getPickRetryCount(); partPickTry++) {
                 /**
-                 * Find an available feeder. If one cannot be found this will throw. There's nothing
-                 * else we can do with this part.
+                 * Find an available feeder, preferring the one chosen when optimizing the picks. If 
+                 * one cannot be found this will throw. There's nothing else we can do with this part.
                  */
-                final Feeder feeder = findFeeder(machine, part);
+                if (plannedPlacement.feeder == null 
+                        || !plannedPlacement.feeder.isEnabled() 
+                        || plannedPlacement.feeder.getPart() != part) {
+                    plannedPlacement.feeder = selectFeeder(plannedPlacement);
+                }
+                final Feeder feeder = plannedPlacement.feeder;
                 
                 /**
                  * Run the placement starting script. An error here will throw. That's the user's
@@ -900,6 +994,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
 
             // sort plannedPlacements for alignment with place as next/end location using TSM
             List<PlannedPlacement> optimizedPlannedPlacements = optimizePlacements(alignLocator, placeLocator);
+            lookAhead(optimizedPlannedPlacements, alignLocator);
             
             // continue with alignment
             return new Align(optimizedPlannedPlacements);
@@ -997,6 +1092,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             // sort plannedPlacements for place using TSM
             // FIXME: if the planner would provide a look-ahead feature, we could use it for further optimization here
             List<PlannedPlacement> optimizedPlannedPlacements = optimizePlacements(placeLocator, null);
+            lookAhead(optimizedPlannedPlacements, placeLocator);
             
             return new Place(optimizedPlannedPlacements);
         }
@@ -1220,6 +1316,12 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     protected class Cleanup implements Step {
         public Step step() throws JobProcessorException {
             fireTextStatus("Cleaning up.");
+            // The job sequence is no longer valid.
+            machine.getMotionPlanner().clearLookAheadWaypoints();
+            // Parts fed ahead but not picked must not be relied upon by the next job.
+            for (Feeder feeder : machine.getFeeders()) {
+                feeder.cancelFeedAhead();
+            }
             
             try {
                 // Safe Z the machine
@@ -1310,6 +1412,22 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         }
     }
     
+    /**
+     * Select the feeder to pick the part of the planned placement from, according to the feeder selection policy.
+     * 
+     * @param plannedPlacement
+     * @return
+     * @throws JobProcessorException If no enabled feeder serves the part.
+     */
+    protected Feeder selectFeeder(PlannedPlacement plannedPlacement) throws JobProcessorException {
+        Location location = null;
+        if (feederSelection == FeederIndex.Selection.Nearest) {
+            location = plannedPlacement.nozzle.getLocation();
+        }
+        return findFeeder(machine, plannedPlacement.jobPlacement.getPlacement().getPart(), 
+                feederSelection, location);
+    }
+
     protected List<JobPlacement> getPendingJobPlacements() {
         return this.jobPlacements.stream().filter((jobPlacement) -> {
             return jobPlacement.getStatus() == Status.Pending;
@@ -1333,6 +1451,22 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         this.jobOrder = newJobOrder;
     }    
 
+    public FeederIndex.Selection getFeederSelection() {
+        return feederSelection;
+    }
+
+    public void setFeederSelection(FeederIndex.Selection feederSelection) {
+        this.feederSelection = feederSelection;
+    }
+
+    public boolean isFeedAhead() {
+        return feedAhead;
+    }
+
+    public void setFeedAhead(boolean feedAhead) {
+        this.feedAhead = feedAhead;
+    }
+
     public int getMaxVisionRetries() {
         return maxVisionRetries;
     }
@@ -1362,7 +1496,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
      * This class groups a step for step for multi-nozzle optimization
      */
     protected abstract class AbstractOptimizationNozzlesStep implements Step {
-        private final List<PlannedPlacement> plannedPlacements;
+        protected final List<PlannedPlacement> plannedPlacements;
         protected AbstractOptimizationNozzlesStep(List<PlannedPlacement> plannedPlacements) {
             this.plannedPlacements = plannedPlacements;
         }
@@ -1434,15 +1568,16 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             
             // c) sort PlanndPlacements according to sortLocation
             // Use a traveling salesman algorithm to optimize the path to visit the placements
-            // FIXME: use a more realistic metric then just the distance between points to
-            //        rate possible solutions. On a physical machine one axis is usually stronger
-            //        and faster then the other. That means that the optimal solution might be
-            //        a longer path on one axis compared to the other.
+            // Rate possible solutions by the estimated time of the moves, rather than the distance 
+            // between points. On a physical machine one axis is usually stronger and faster then the 
+            // other. That means that the optimal solution might be a longer path on one axis compared 
+            // to the other. Falls back to the distance, if the axes have no motion limits.
             TravellingSalesman<PlannedPlacement> tsm = new TravellingSalesman<>(
                     plannedPlacements, 
                     sortLocator,
                     start,
-                    endLocation);
+                    endLocation,
+                    AxisDynamicsCost.create(nozzle, machine.getSpeed()));
             
             // read distance before optimization
             double distance_ref = tsm.getTravellingDistance();
@@ -1462,6 +1597,32 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             
             return optimizedPlannedPlacements;
         }
+
+        /**
+         * Hand the locations of the next step to the motion planner, so it can plan the motion ahead across 
+         * step boundaries. 
+         * 
+         * @param plannedPlacements The planned placements in the order they will be visited.
+         * @param locator The locator of the head locations to visit.
+         */
+        protected void lookAhead(List<PlannedPlacement> plannedPlacements, Locator locator) {
+            MotionPlanner motionPlanner = machine.getMotionPlanner();
+            motionPlanner.clearLookAheadWaypoints();
+            try {
+                for (PlannedPlacement p : plannedPlacements) {
+                    Location location = locator.getLocation(p);
+                    if (location == null) {
+                        // Can't predict the sequence beyond this point.
+                        break;
+                    }
+                    motionPlanner.addLookAheadWaypoint(p.nozzle, 
+                            p.nozzle.toHeadMountableLocation(location), machine.getSpeed());
+                }
+            }
+            catch (Exception e) {
+                Logger.debug(e, "Look-ahead for {} skipped", locator);
+            }
+        }
     }
     
     /**
@@ -1510,7 +1671,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
 
             // try to get the location where the alignment will take place
             try {
-                final Feeder feeder = findFeeder(machine, part);
+                final Feeder feeder = (p.feeder != null ? p.feeder : findFeeder(machine, part));
 
                 location = convertToHeadLocation(nozzle, feeder.getPickLocation());
             } catch (Exception e) {
@@ -1768,13 +1929,54 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             this.restart = true;
         }
         
+        /**
+         * Source of the pending placements to plan from, either a list or a {@link JobPlacementIndex}.
+         */
+        @FunctionalInterface
+        protected interface PendingPlacements {
+            /**
+             * @param nozzleTips
+             * @param excluded
+             * @return The first pending placement, in order, that can be handled by any of the given nozzle tips, 
+             * and that is not excluded, or null if there is none.
+             */
+            JobPlacement getFirstPending(Collection<NozzleTip> nozzleTips, Set<JobPlacement> excluded);
+        }
+
         @Override
         public List<PlannedPlacement> plan(Head head, List<JobPlacement> jobPlacements) {
+            List<PlannedPlacement> plannedPlacements = plan(head, (nozzleTips, excluded) -> {
+                for (JobPlacement jobPlacement : jobPlacements) {
+                    org.openpnp.model.Package pkg = jobPlacement.getPlacement().getPart().getPackage();
+                    if (!excluded.contains(jobPlacement) 
+                            && !Collections.disjoint(pkg.getCompatibleNozzleTips(), nozzleTips)) {
+                        return jobPlacement;
+                    }
+                }
+                return null;
+            });
+            for (PlannedPlacement plannedPlacement : plannedPlacements) {
+                jobPlacements.remove(plannedPlacement.jobPlacement);
+            }
+            return plannedPlacements;
+        }
+
+        @Override
+        public List<PlannedPlacement> plan(Head head, JobPlacementIndex index) {
+            return plan(head, index::getFirstPending);
+        }
+
+        protected List<PlannedPlacement> plan(Head head, PendingPlacements pendingPlacements) {
             /**
              * Create an empty List<PlannedPlacement> which will hold the results.
              */
             List<PlannedPlacement> plannedPlacements = new ArrayList<>();
             
+            /**
+             * The placements planned in this cycle, so we don't plan the same one again.
+             */
+            Set<JobPlacement> planned = new HashSet<>();
+
             /**
              * Get a list of all the nozzles. We make a copy of the list so that we can modify
              * it within this function without modifying the machine. This makes the logic below
@@ -1796,10 +1998,10 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                  * respective lists so that we don't plan the same one again.
                  */
                 for (Nozzle nozzle : new ArrayList<>(nozzles)) {
-                    PlannedPlacement plannedPlacement = planWithoutNozzleTipChange(nozzle, jobPlacements);
+                    PlannedPlacement plannedPlacement = planWithoutNozzleTipChange(nozzle, pendingPlacements, planned);
                     if (plannedPlacement != null) {
                         plannedPlacements.add(plannedPlacement);
-                        jobPlacements.remove(plannedPlacement.jobPlacement);
+                        planned.add(plannedPlacement.jobPlacement);
                         nozzles.remove(plannedPlacement.nozzle);
                         nozzleTips.remove(plannedPlacement.nozzleTip);
                     }
@@ -1813,10 +2015,10 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
              * time we allow a nozzle tip change to happen.
              */
             for (Nozzle nozzle : new ArrayList<>(nozzles)) {
-                PlannedPlacement plannedPlacement = planWithNozzleTipChange(nozzle, jobPlacements, nozzleTips);
+                PlannedPlacement plannedPlacement = planWithNozzleTipChange(nozzle, pendingPlacements, planned, nozzleTips);
                 if (plannedPlacement != null) {
                     plannedPlacements.add(plannedPlacement);
-                    jobPlacements.remove(plannedPlacement.jobPlacement);
+                    planned.add(plannedPlacement.jobPlacement);
                     nozzles.remove(plannedPlacement.nozzle);
                     nozzleTips.remove(plannedPlacement.nozzleTip);
                 }
@@ -1839,22 +2041,19 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
          * a nozzle tip change. This essentially just checks if there are any job placements
          * remaining that are compatible with the currently loaded nozzle tip.
          * @param nozzle
-         * @param jobPlacements
+         * @param pendingPlacements
+         * @param planned
          * @return
          */
         protected PlannedPlacement planWithoutNozzleTipChange(Nozzle nozzle, 
-                List<JobPlacement> jobPlacements) {
-            if (nozzle.getNozzleTip() == null) {
+                PendingPlacements pendingPlacements, Set<JobPlacement> planned) {
+            NozzleTip nozzleTip = nozzle.getNozzleTip();
+            if (nozzleTip == null) {
                 return null;
             }
-            for (JobPlacement jobPlacement : jobPlacements) {
-                Placement placement = jobPlacement.getPlacement();
-                Part part = placement.getPart();
-                org.openpnp.model.Package pkg = part.getPackage();
-                NozzleTip nozzleTip = nozzle.getNozzleTip();
-                if (pkg.getCompatibleNozzleTips().contains(nozzleTip)) {
-                    return new PlannedPlacement(nozzle, nozzleTip, jobPlacement);
-                }
+            JobPlacement jobPlacement = pendingPlacements.getFirstPending(Collections.singletonList(nozzleTip), planned);
+            if (jobPlacement != null) {
+                return new PlannedPlacement(nozzle, nozzleTip, jobPlacement);
             }
             return null;
         }
@@ -1865,33 +2064,462 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
          * tips on the machine that are compatible with both the nozzle and the placement, 
          * instead of just the one that is loaded.
          * @param nozzle
-         * @param jobPlacements
+         * @param pendingPlacements
+         * @param planned
          * @param nozzleTips
          * @return
          */
         protected PlannedPlacement planWithNozzleTipChange(Nozzle nozzle, 
-                List<JobPlacement> jobPlacements,
+                PendingPlacements pendingPlacements, Set<JobPlacement> planned,
                 List<NozzleTip> nozzleTips) {
+            // Get the nozzle tips that are not yet used, and are compatible with the nozzle.
+            List<NozzleTip> goodNozzleTips = nozzleTips
+                    .stream()
+                    .filter(nozzleTip -> {
+                        return nozzle.getCompatibleNozzleTips().contains(nozzleTip);
+                    })
+                    .collect(Collectors.toList());
+            if (goodNozzleTips.isEmpty()) {
+                return null;
+            }
+            JobPlacement jobPlacement = pendingPlacements.getFirstPending(goodNozzleTips, planned);
+            if (jobPlacement == null) {
+                return null;
+            }
+            // Take the first of them that is also compatible with the package.
+            org.openpnp.model.Package pkg = jobPlacement.getPlacement().getPart().getPackage();
+            for (NozzleTip nozzleTip : goodNozzleTips) {
+                if (pkg.getCompatibleNozzleTips().contains(nozzleTip)) {
+                    return new PlannedPlacement(nozzle, nozzleTip, jobPlacement);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A planner that schedules the whole job up front, rather than one cycle at a time. 
+     * 
+     * The remaining placements are assigned to nozzle tip configurations, changing as few nozzle tips as 
+     * possible. Each configuration serves all the placements it can, before the next one is loaded. The 
+     * placements served by a configuration are then grouped into multi-nozzle cycles by proximity of their 
+     * feeders and of their board locations, each cycle starting with the placement whose feeder is closest to 
+     * where the last cycle placed. 
+     * 
+     * If the placements are ordered by part height, as with {@link JobOrderHint#PartHeight}, placements 
+     * are never scheduled before placements of a lower part height.
+     * 
+     * The cycles are then served from the schedule. If the pending placements no longer match the schedule, 
+     * e.g. because a placement failed and is pending again, or was skipped, the remaining placements are 
+     * re-scheduled, starting from the currently loaded nozzle tips.
+     * 
+     * With {@link Strategy#FullyAsPlanned} the placements are grouped into cycles in the given order.
+     */
+    @Root
+    public static class GlobalPnpJobPlanner implements PnpJobPlanner {
+        @Attribute(required = false)
+        protected Strategy strategy = Strategy.Minimize;
+
+        private LinkedList<List<PlannedPlacement>> schedule = new LinkedList<>();
+        private Set<JobPlacement> scheduled = new HashSet<>();
+        private Set<JobPlacement> unschedulable = new HashSet<>();
+        private TravellingSalesman.CostFunction costFunction;
+
+        @Override
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        @Override
+        public void setStrategy(Strategy strategy) {
+            this.strategy = strategy;
+        }
+
+        @Override
+        public void restart() {
+            schedule.clear();
+            scheduled.clear();
+            unschedulable.clear();
+        }
+
+        @Override
+        public List<PlannedPlacement> plan(Head head, List<JobPlacement> jobPlacements) {
+            if (!isScheduleValid(jobPlacements)) {
+                long t = System.currentTimeMillis();
+                schedule(head, jobPlacements);
+                Logger.debug("Scheduled {} placements in {} cycles in {}ms, {} placements cannot be scheduled", 
+                        scheduled.size(), schedule.size(), (System.currentTimeMillis() - t), unschedulable.size());
+            }
+            if (schedule.isEmpty()) {
+                return new ArrayList<>();
+            }
+            List<PlannedPlacement> plannedPlacements = schedule.removeFirst();
+            for (PlannedPlacement plannedPlacement : plannedPlacements) {
+                scheduled.remove(plannedPlacement.jobPlacement);
+                jobPlacements.remove(plannedPlacement.jobPlacement);
+            }
+            plannedPlacements.sort(Comparator.comparing(plannedPlacement -> {
+                return plannedPlacement.nozzle.getName();
+            }));
+            return plannedPlacements;
+        }
+
+        /**
+         * @param jobPlacements
+         * @return True if the schedule covers exactly the given placements, except those that were found to be
+         * unschedulable, and the next cycle can still be served.
+         */
+        protected boolean isScheduleValid(List<JobPlacement> jobPlacements) {
+            int schedulable = 0;
+            for (JobPlacement jobPlacement : jobPlacements) {
+                if (unschedulable.contains(jobPlacement)) {
+                    continue;
+                }
+                if (!scheduled.contains(jobPlacement)) {
+                    return false;
+                }
+                schedulable++;
+            }
+            if (schedulable != scheduled.size()) {
+                return false;
+            }
+            if (schedule.isEmpty()) {
+                // Only unschedulable placements are left, re-scheduling would not change that.
+                return true;
+            }
+            for (PlannedPlacement plannedPlacement : schedule.getFirst()) {
+                if (!plannedPlacement.nozzle.getCompatibleNozzleTips().contains(plannedPlacement.nozzleTip)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * A placement to be scheduled, with its feeder and placement locations.
+         */
+        protected static class Candidate {
+            final JobPlacement jobPlacement;
+            final Set<NozzleTip> nozzleTips;
+            final Location pickLocation;
+            final Location placeLocation;
+
+            Candidate(JobPlacement jobPlacement, Set<NozzleTip> nozzleTips, Location pickLocation, 
+                    Location placeLocation) {
+                this.jobPlacement = jobPlacement;
+                this.nozzleTips = nozzleTips;
+                this.pickLocation = pickLocation;
+                this.placeLocation = placeLocation;
+            }
+        }
+
+        protected void schedule(Head head, List<JobPlacement> jobPlacements) {
+            restart();
+            List<Nozzle> nozzles = new ArrayList<>(head.getNozzles());
+            // Rate the cycles by the estimated time of the moves, falls back to the distance.
+            costFunction = nozzles.isEmpty() ? null 
+                    : MotionTimeCost.create(nozzles.get(0), head.getMachine().getSpeed());
+            // Current nozzle tip configuration.
+            Map<Nozzle, NozzleTip> configuration = new HashMap<>();
+            for (Nozzle nozzle : nozzles) {
+                configuration.put(nozzle, nozzle.getNozzleTip());
+            }
+            Machine machine = head.getMachine();
+            Map<Part, Location> pickLocations = new HashMap<>();
+            Map<JobPlacement, Candidate> candidateMap = new HashMap<>();
+            List<List<Candidate>> phases = new ArrayList<>();
+            List<Candidate> phase = null;
+            boolean heightOrdered = isOrderedByPartHeight(jobPlacements);
+            double phaseHeight = Double.NaN;
             for (JobPlacement jobPlacement : jobPlacements) {
                 Placement placement = jobPlacement.getPlacement();
                 Part part = placement.getPart();
-                org.openpnp.model.Package pkg = part.getPackage();
-                // Get the intersection of nozzle tips that are not yet used, are compatible with
-                // the package, and are compatible with the nozzle.
-                List<NozzleTip> goodNozzleTips = nozzleTips
-                        .stream()
-                        .filter(nozzleTip -> {
-                            return pkg.getCompatibleNozzleTips().contains(nozzleTip);
-                        })
-                        .filter(nozzleTip -> {
-                            return nozzle.getCompatibleNozzleTips().contains(nozzleTip);
-                        })
-                        .collect(Collectors.toList());
-                if (!goodNozzleTips.isEmpty()) {
-                    return new PlannedPlacement(nozzle, goodNozzleTips.get(0), jobPlacement);
+                if (phase == null || (heightOrdered && jobPlacement.getPartHeight() != phaseHeight)) {
+                    phase = new ArrayList<>();
+                    phases.add(phase);
+                    phaseHeight = jobPlacement.getPartHeight();
+                }
+                Set<NozzleTip> nozzleTips = new HashSet<>(part.getPackage().getCompatibleNozzleTips());
+                Location pickLocation = pickLocations.computeIfAbsent(part, (p) -> getPickLocation(machine, p));
+                Location placeLocation = Utils2D.calculateBoardPlacementLocation(jobPlacement.getBoardLocation(), 
+                        placement.getLocation()).convertToUnits(LengthUnit.Millimeters);
+                Candidate candidate = new Candidate(jobPlacement, nozzleTips, pickLocation, placeLocation);
+                phase.add(candidate);
+                candidateMap.put(jobPlacement, candidate);
+            }
+            Location lastLocation = null;
+            for (List<Candidate> candidates : phases) {
+                while (!candidates.isEmpty()) {
+                    List<Candidate> servable = getServable(candidates, configuration);
+                    if (servable.isEmpty()) {
+                        if (!changeNozzleTips(nozzles, configuration, candidates, machine.getNozzleTips())) {
+                            // The rest cannot be served by any nozzle tip. Track them, so they do not invalidate 
+                            // the schedule.
+                            for (Candidate candidate : candidates) {
+                                unschedulable.add(candidate.jobPlacement);
+                            }
+                            break;
+                        }
+                        continue;
+                    }
+                    // Serve all we can with this configuration.
+                    List<List<PlannedPlacement>> cycles = new ArrayList<>();
+                    while (!servable.isEmpty()) {
+                        List<PlannedPlacement> cycle = scheduleCycle(nozzles, configuration, servable, lastLocation);
+                        if (cycle.isEmpty()) {
+                            break;
+                        }
+                        for (PlannedPlacement plannedPlacement : cycle) {
+                            scheduled.add(plannedPlacement.jobPlacement);
+                        }
+                        candidates.removeIf((candidate) -> scheduled.contains(candidate.jobPlacement));
+                        servable.removeIf((candidate) -> scheduled.contains(candidate.jobPlacement));
+                        lastLocation = candidateMap.get(cycle.get(cycle.size() - 1).jobPlacement).placeLocation;
+                        cycles.add(cycle);
+                    }
+                    if (strategy != Strategy.FullyAsPlanned) {
+                        improveCycles(cycles, candidateMap);
+                    }
+                    schedule.addAll(cycles);
                 }
             }
-            return null;
+        }
+
+        /**
+         * Improve the greedily formed cycles by swapping placements of the same nozzle between cycles, as long as 
+         * this makes the cycles more compact. The greedy cycle formation tends to leave the scattered placements to 
+         * the last cycles.
+         * 
+         * Only cycles that are at most maxNeighbourCycles apart are swapped, as the greedily formed cycles are 
+         * ordered by proximity, and the improvement stops after the improveTimeBudget, so large jobs do not stall 
+         * the start. 
+         * 
+         * @param cycles
+         * @param candidateMap
+         */
+        protected void improveCycles(List<List<PlannedPlacement>> cycles, Map<JobPlacement, Candidate> candidateMap) {
+            final int maxPasses = 10;
+            final int maxNeighbourCycles = 8;
+            final long improveTimeBudget = 1000;
+            long deadline = System.currentTimeMillis() + improveTimeBudget;
+            for (int pass = 0; pass < maxPasses; pass++) {
+                boolean improved = false;
+                for (int a = 0; a < cycles.size(); a++) {
+                    if (System.currentTimeMillis() > deadline) {
+                        Logger.debug("Cycle improvement stopped after {}ms in pass {}", improveTimeBudget, pass);
+                        return;
+                    }
+                    for (int b = a + 1; b < cycles.size() && b <= a + maxNeighbourCycles; b++) {
+                        List<PlannedPlacement> cycleA = cycles.get(a);
+                        List<PlannedPlacement> cycleB = cycles.get(b);
+                        for (int i = 0; i < cycleA.size(); i++) {
+                            for (int j = 0; j < cycleB.size(); j++) {
+                                PlannedPlacement plannedA = cycleA.get(i);
+                                PlannedPlacement plannedB = cycleB.get(j);
+                                if (plannedA.nozzle != plannedB.nozzle) {
+                                    continue;
+                                }
+                                double cost = getCycleCost(cycleA, candidateMap) + getCycleCost(cycleB, candidateMap);
+                                cycleA.set(i, new PlannedPlacement(plannedA.nozzle, plannedA.nozzleTip, plannedB.jobPlacement));
+                                cycleB.set(j, new PlannedPlacement(plannedB.nozzle, plannedB.nozzleTip, plannedA.jobPlacement));
+                                if (getCycleCost(cycleA, candidateMap) + getCycleCost(cycleB, candidateMap) < cost - 1e-6) {
+                                    improved = true;
+                                }
+                                else {
+                                    // Revert.
+                                    cycleA.set(i, plannedA);
+                                    cycleB.set(j, plannedB);
+                                }
+                            }
+                        }
+                    }
+                }
+                if (!improved) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * @param cycle
+         * @param candidateMap
+         * @return The spread of the cycle, i.e. the sum of the estimated motion times between its feeders and 
+         * between its placement locations, or the sum of the distances, if the motion time cannot be estimated.
+         */
+        protected double getCycleCost(List<PlannedPlacement> cycle, Map<JobPlacement, Candidate> candidateMap) {
+            double cost = 0;
+            for (int i = 0; i < cycle.size(); i++) {
+                Candidate candidate0 = candidateMap.get(cycle.get(i).jobPlacement);
+                for (int j = i + 1; j < cycle.size(); j++) {
+                    Candidate candidate1 = candidateMap.get(cycle.get(j).jobPlacement);
+                    cost += getCost(candidate0.pickLocation, candidate1.pickLocation)
+                            + getCost(candidate0.placeLocation, candidate1.placeLocation);
+                }
+            }
+            return cost;
+        }
+
+        private double getCost(Location location0, Location location1) {
+            if (costFunction == null || location0 == null || location1 == null) {
+                return distance(location0, location1);
+            }
+            return costFunction.getCost(location0, location1);
+        }
+
+        private static boolean isOrderedByPartHeight(List<JobPlacement> jobPlacements) {
+            double height = Double.NEGATIVE_INFINITY;
+            for (JobPlacement jobPlacement : jobPlacements) {
+                if (jobPlacement.getPartHeight() < height) {
+                    return false;
+                }
+                height = jobPlacement.getPartHeight();
+            }
+            return true;
+        }
+
+        protected static Location getPickLocation(Machine machine, Part part) {
+            try {
+                return findFeeder(machine, part).getPickLocation().convertToUnits(LengthUnit.Millimeters);
+            }
+            catch (Exception e) {
+                // No feeder (yet), the proximity is then ignored.
+                return null;
+            }
+        }
+
+        private static List<Candidate> getServable(List<Candidate> candidates, Map<Nozzle, NozzleTip> configuration) {
+            List<Candidate> servable = new ArrayList<>();
+            for (Candidate candidate : candidates) {
+                for (NozzleTip nozzleTip : configuration.values()) {
+                    if (nozzleTip != null && candidate.nozzleTips.contains(nozzleTip)) {
+                        servable.add(candidate);
+                        break;
+                    }
+                }
+            }
+            return servable;
+        }
+
+        /**
+         * Change the nozzle tips, so that the most placements can be served, changing as few nozzles as possible. 
+         * Nozzles whose nozzle tip cannot serve any remaining placement are changed first.
+         * 
+         * @return True if any placement can be served after the change.
+         */
+        private boolean changeNozzleTips(List<Nozzle> nozzles, Map<Nozzle, NozzleTip> configuration, 
+                List<Candidate> candidates, List<NozzleTip> nozzleTips) {
+            boolean changed = false;
+            while (true) {
+                Nozzle bestNozzle = null;
+                NozzleTip bestNozzleTip = null;
+                int bestCount = 0;
+                boolean bestIdle = false;
+                for (Nozzle nozzle : nozzles) {
+                    boolean idle = countServable(candidates, configuration.get(nozzle)) == 0;
+                    if (changed && !idle) {
+                        // Once something is servable, only change nozzles that would be idle otherwise.
+                        continue;
+                    }
+                    for (NozzleTip nozzleTip : nozzleTips) {
+                        if (configuration.containsValue(nozzleTip)
+                                || !nozzle.getCompatibleNozzleTips().contains(nozzleTip)) {
+                            continue;
+                        }
+                        int count = countServable(candidates, nozzleTip);
+                        if (count > bestCount || (count == bestCount && count > 0 && idle && !bestIdle)) {
+                            bestNozzle = nozzle;
+                            bestNozzleTip = nozzleTip;
+                            bestCount = count;
+                            bestIdle = idle;
+                        }
+                    }
+                }
+                if (bestNozzle == null) {
+                    return changed;
+                }
+                configuration.put(bestNozzle, bestNozzleTip);
+                changed = true;
+            }
+        }
+
+        private static int countServable(List<Candidate> candidates, NozzleTip nozzleTip) {
+            int count = 0;
+            if (nozzleTip != null) {
+                for (Candidate candidate : candidates) {
+                    if (candidate.nozzleTips.contains(nozzleTip)) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Schedule one cycle, filling as many nozzles as possible with servable placements that are close to 
+         * each other, both at the feeders and on the boards. 
+         */
+        private List<PlannedPlacement> scheduleCycle(List<Nozzle> nozzles, Map<Nozzle, NozzleTip> configuration,
+                List<Candidate> servable, Location lastLocation) {
+            List<PlannedPlacement> cycle = new ArrayList<>();
+            List<Nozzle> freeNozzles = new ArrayList<>();
+            for (Nozzle nozzle : nozzles) {
+                if (configuration.get(nozzle) != null) {
+                    freeNozzles.add(nozzle);
+                }
+            }
+            Candidate seed;
+            if (strategy == Strategy.FullyAsPlanned || lastLocation == null) {
+                seed = servable.get(0);
+            }
+            else {
+                seed = null;
+                double best = Double.POSITIVE_INFINITY;
+                for (Candidate candidate : servable) {
+                    double distance = distance(lastLocation, candidate.pickLocation);
+                    if (distance < best) {
+                        best = distance;
+                        seed = candidate;
+                    }
+                }
+            }
+            List<Candidate> ordered = new ArrayList<>(servable);
+            if (strategy != Strategy.FullyAsPlanned) {
+                final Candidate origin = seed;
+                ordered.sort(Comparator.comparingDouble((Candidate candidate) -> 
+                    candidate == origin ? Double.NEGATIVE_INFINITY :
+                        distance(origin.pickLocation, candidate.pickLocation) 
+                        + distance(origin.placeLocation, candidate.placeLocation)));
+            }
+            for (Candidate candidate : ordered) {
+                if (freeNozzles.isEmpty()) {
+                    break;
+                }
+                // Take the compatible nozzle that is least in demand by the other servable placements.
+                Nozzle bestNozzle = null;
+                int bestDemand = Integer.MAX_VALUE;
+                for (Nozzle nozzle : freeNozzles) {
+                    NozzleTip nozzleTip = configuration.get(nozzle);
+                    if (candidate.nozzleTips.contains(nozzleTip)) {
+                        int demand = countServable(servable, nozzleTip);
+                        if (demand < bestDemand) {
+                            bestNozzle = nozzle;
+                            bestDemand = demand;
+                        }
+                    }
+                }
+                if (bestNozzle != null) {
+                    cycle.add(new PlannedPlacement(bestNozzle, configuration.get(bestNozzle), candidate.jobPlacement));
+                    freeNozzles.remove(bestNozzle);
+                }
+            }
+            return cycle;
+        }
+
+        private static double distance(Location location0, Location location1) {
+            if (location0 == null || location1 == null) {
+                return 0;
+            }
+            return location0.getLinearDistanceTo(location1);
         }
     }
 }
@@ -22,10 +22,11 @@
 package org.openpnp.machine.reference.driver;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 import javax.swing.Action;
 import javax.swing.Icon;
@@ -56,7 +57,9 @@ import org.openpnp.spi.HeadMountable;
 import org.openpnp.spi.Locatable.LocationOption;
 import org.openpnp.spi.MotionPlanner;
 import org.openpnp.spi.PropertySheetHolder;
+import org.openpnp.spi.base.AbstractHeadMountable;
 import org.openpnp.util.NanosecondTime;
+import org.openpnp.util.TimedRingBuffer;
 import org.openpnp.util.Utils2D;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
@@ -81,16 +84,73 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
     @Attribute(required=false)
     private double maximumPlanHistory = 60; // s
 
+    @Attribute(required=false)
+    private double motionTimeResolution = 0.01; // mm or °
+
+    @Attribute(required=false)
+    private int motionTimeCacheSize = 10000;
+
+    @Attribute(required=false)
+    private int motionRecorderCapacity = 10000; // moves, 0 = off
+
     private ReferenceMachine machine;
 
+    protected static final int motionPlanCapacity = 4096;
+
     protected LinkedList<Motion> motionCommands = new LinkedList<>();
-    protected TreeMap<Double, Motion> motionPlan = new TreeMap<Double, Motion>();
+    /**
+     * The executed motions, indexed by their planned end time. Read lock-free by camera simulation, the GUI etc.
+     */
+    protected TimedRingBuffer<Motion> motionPlan = new TimedRingBuffer<>(motionPlanCapacity);
 
     private AxesLocation lastDirectionalBacklashOffset = new AxesLocation();
     private List<Driver> lastPlannedDrivers = new ArrayList<Driver>();
 
     private boolean homed = false; 
 
+    private volatile MotionRecorder motionRecorder;
+
+    /**
+     * Cache key of a motion time estimate, the raw axes coordinates quantized to the motionTimeResolution.
+     */
+    protected static class MotionTimeKey {
+        final HeadMountable hm;
+        final long [] coordinates;
+        final long speed;
+        final int hash;
+
+        MotionTimeKey(HeadMountable hm, long [] coordinates, long speed) {
+            this.hm = hm;
+            this.coordinates = coordinates;
+            this.speed = speed;
+            this.hash = (System.identityHashCode(hm)*31 + Arrays.hashCode(coordinates))*31 + Long.hashCode(speed);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MotionTimeKey)) {
+                return false;
+            }
+            MotionTimeKey other = (MotionTimeKey) obj;
+            return hm == other.hm 
+                    && speed == other.speed
+                    && Arrays.equals(coordinates, other.coordinates);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final Map<MotionTimeKey, Double> motionTimeCache = new LinkedHashMap<MotionTimeKey, Double>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MotionTimeKey, Double> eldest) {
+            return size() > motionTimeCacheSize;
+        }
+    };
+
     @Override
     public synchronized void home() throws Exception {
         // Reset lastDirectionalBacklashOffset (we don't actually know it after homing, but it will be known after the first move).
@@ -112,6 +172,13 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
         }
         // Make sure we're on the same page with the controller and wait for still-stand.
         waitForCompletion(null, CompletionType.WaitForStillstandIndefinitely);
+        // Axis settings might have changed, so start the estimates afresh.
+        clearMotionTimeCache();
+        // Axes might have been added or removed, so update the recorder here rather than on every move.
+        MotionRecorder recorder = getMotionRecorder();
+        if (recorder != null) {
+            recorder.setAxes(getControllerAxes());
+        }
         homed = true;
     }
 
@@ -439,10 +506,8 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
         // Now execute the plan against the drivers.
         // We also record it into the real-time motionPlan to enable motion prediction and simulation. 
         double t = NanosecondTime.getRuntimeSeconds();
-        if (motionPlan.isEmpty() == false && motionPlan.lastKey() > t) {
-            // Append to a plan that is still running. 
-            t = motionPlan.lastKey();
-        }
+        // Append to a plan that is still running. 
+        t = Math.max(t, motionPlan.getLastTime());
         ReferenceMachine machine = (ReferenceMachine) Configuration.get().getMachine();
         List<Head> movedHeads = new ArrayList<>();
         boolean first = true;
@@ -450,11 +515,13 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
             if (!plannedMotion.hasOption(MotionOption.Stillstand)) {
                 // Put into timed plan.
                 double dt = plannedMotion.getTime();
-                // Note, all-virtual moves can have dt == 0.0, so we take a nano-second, to make sure a new Map entry is created 
+                // Note, all-virtual moves can have dt == 0.0, so we take a nano-second, to make sure a new entry is created 
                 // in the motionPlan.
                 t += Math.max(dt, 1e-9);  
                 plannedMotion.setPlannedTime1(t);
-                motionPlan.put(t, plannedMotion);
+                // Each motion is only recorded just before it is executed, so if a driver fails, the motionPlan does 
+                // not retain the motions that were never sent. 
+                motionPlan.add(t, plannedMotion);
                 // Execute across drivers.
                 HeadMountable  hm = plannedMotion.getHeadMountable();
                 if (hm != null) {
@@ -498,10 +565,13 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
         AxesLocation motionSegment = plannedMotion.getLocation0().motionSegmentTo(plannedMotion.getLocation1());
         // Note, this loop will be empty if the motion is empty, i.e. if it only contains VirtualAxis movement.
         boolean firstDriver = true;
+        int steps = 0;
+        int queueDepth = 0;
         for (Driver driver : motionSegment.getAxesDrivers(machine)) {
             for (Motion.MoveToCommand moveToCommand : plannedMotion
                     .interpolatedMoveToCommands(driver, isInterpolationRetiming())) {
                 driver.moveTo(hm, moveToCommand);
+                steps++;
                 try {
                     recordDiagnostics(plannedMotion, moveToCommand, driver, firstAfterCoordination, firstDriver);
                 }
@@ -509,8 +579,15 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
                     Logger.error(driver.getName()+" diagnostics failed: {}", e);
                 }
             }
+            queueDepth = Math.max(queueDepth, driver.getCommandQueueDepth());
             firstDriver = false;
         }
+        if (!firstDriver) {
+            MotionRecorder recorder = motionRecorder;
+            if (recorder != null) {
+                recorder.recordMove(plannedMotion, steps, queueDepth);
+            }
+        }
         return !firstDriver;
     }
 
@@ -717,12 +794,12 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
     }
 
     @Override
-    public synchronized Motion getMomentaryMotion(double time) {
-        Map.Entry<Double, Motion> entry1 = motionPlan.higherEntry(time);
-        if (entry1 != null) {
+    public Motion getMomentaryMotion(double time) {
+        // Note, this is not synchronized, the motionPlan can be read concurrently with planning. 
+        Motion motion1 = motionPlan.getHigher(time);
+        if (motion1 != null) {
             // Return the motion.
-            Motion motion = entry1.getValue();
-            return motion;
+            return motion1;
         }
         else {
             // Plan empty or machine stopped before this time, just get the current axes location.
@@ -741,15 +818,162 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
     }
 
     @Override
-    public synchronized Motion getLastMotion() {
-        for (Map.Entry<Double, Motion> entry : motionPlan.descendingMap().entrySet()) {
-            Motion motion = entry.getValue();
-            if (!motion.getLocation0().matches(motion.getLocation1())) {
-                // Got a real move.
-                return motion;
+    public Motion getLastMotion() {
+        // Get the last real move.
+        return motionPlan.getLast((motion) -> !motion.getLocation0().matches(motion.getLocation1()));
+    }
+
+    @Override
+    public double getMotionTime(HeadMountable hm, Location location0, Location location1, double speed) throws Exception {
+        location1 = AbstractHeadMountable.substituteUnchangedCoordinates(location1, location0);
+        AxesLocation axesLocation0 = hm.toRaw(hm.toHeadLocation(location0, LocationOption.Quiet), LocationOption.Quiet);
+        AxesLocation axesLocation1 = hm.toRaw(hm.toHeadLocation(location1, LocationOption.Quiet), LocationOption.Quiet);
+        if (hm.getHead() != null) {
+            speed *= hm.getHead().getMaxPartSpeed();
+        }
+        return getMotionTime(hm, axesLocation0, axesLocation1, Math.max(getMinimumSpeed(), speed));
+    }
+
+    /**
+     * Estimate the motion time of a raw axes move, see 
+     * {@link #getMotionTime(HeadMountable, Location, Location, double)}. 
+     * 
+     * @param hm
+     * @param axesLocation0
+     * @param axesLocation1
+     * @param speed The effective speed factor.
+     * @return The estimated motion time in seconds.
+     */
+    public double getMotionTime(HeadMountable hm, AxesLocation axesLocation0, AxesLocation axesLocation1, double speed) {
+        // Rotation axes that wrap around will take the shorter way. 
+        for (ControllerAxis axis : axesLocation1.getControllerAxes()) {
+            if (axis instanceof ReferenceControllerAxis 
+                    && ((ReferenceControllerAxis) axis).isWrapAroundRotation()
+                    && axesLocation0.contains(axis)) {
+                double angle0 = axesLocation0.getCoordinate(axis);
+                double angle1 = angle0 + Utils2D.normalizeAngle180(axesLocation1.getCoordinate(axis) - angle0);
+                axesLocation1 = axesLocation1.put(new AxesLocation(axis, angle1));
             }
         }
-        return null;
+        MotionTimeKey key = getMotionTimeKey(hm, axesLocation0, axesLocation1, speed);
+        synchronized (motionTimeCache) {
+            Double time = motionTimeCache.get(key);
+            if (time != null) {
+                return time;
+            }
+        }
+        Motion motion = new Motion(hm, axesLocation0, axesLocation1, speed, 0);
+        double time = motion.getTime();
+        synchronized (motionTimeCache) {
+            motionTimeCache.put(key, time);
+        }
+        return time;
+    }
+
+    protected MotionTimeKey getMotionTimeKey(HeadMountable hm, AxesLocation axesLocation0, AxesLocation axesLocation1, 
+            double speed) {
+        long [] coordinates = new long[axesLocation0.size() + axesLocation1.size()];
+        int i = 0;
+        for (Axis axis : axesLocation0.getAxes()) {
+            coordinates[i++] = Math.round(axesLocation0.getCoordinate(axis)/motionTimeResolution);
+        }
+        for (Axis axis : axesLocation1.getAxes()) {
+            coordinates[i++] = Math.round(axesLocation1.getCoordinate(axis)/motionTimeResolution);
+        }
+        return new MotionTimeKey(hm, coordinates, Math.round(speed*1e4));
+    }
+
+    @Override
+    public double getMotionTimeAtSafeZ(HeadMountable hm, Location location0, Location location1, double speed) throws Exception {
+        location1 = AbstractHeadMountable.substituteUnchangedCoordinates(location1, location0);
+        Location location0WithNewZ = location0.derive(location1, false, false, true, false);
+        if (hm.toRaw(hm.toHeadLocation(location0WithNewZ, LocationOption.Quiet), LocationOption.Quiet)
+                .matches(hm.toRaw(hm.toHeadLocation(location1, LocationOption.Quiet), LocationOption.Quiet))) {
+            // Moves only in Z (or not at all).
+            return getMotionTime(hm, location0, location1, speed);
+        }
+        Length safeZ = hm.getEffectiveSafeZ();
+        if (safeZ == null) {
+            return getMotionTime(hm, location0, location1, speed);
+        }
+        // Same Safe Z optimization as in MovableUtils.moveToLocationAtSafeZ().
+        Length exitSafeZ = safeZ;
+        if (location1.getLengthZ().compareTo(safeZ) > 0) {
+            Length[] zone = hm.getSafeZZone();
+            if (zone[1] != null) { 
+                exitSafeZ = (location1.getLengthZ().compareTo(zone[1]) < 0) ?
+                        location1.getLengthZ() : zone[1];
+            }
+        }
+        Location location0AtSafeZ = location0.derive(null, null, 
+                safeZ.convertToUnits(location0.getUnits()).getValue(), null);
+        Location location1AtSafeZ = location1.derive(null, null, 
+                exitSafeZ.convertToUnits(location1.getUnits()).getValue(), null);
+        return getMotionTime(hm, location0, location0AtSafeZ, speed)
+                + getMotionTime(hm, location0AtSafeZ, location1AtSafeZ, speed)
+                + getMotionTime(hm, location1AtSafeZ, location1, speed);
+    }
+
+    public double getMotionTimeResolution() {
+        return motionTimeResolution;
+    }
+
+    public void setMotionTimeResolution(double motionTimeResolution) {
+        this.motionTimeResolution = motionTimeResolution;
+        clearMotionTimeCache();
+    }
+
+    public int getMotionTimeCacheSize() {
+        return motionTimeCacheSize;
+    }
+
+    public void setMotionTimeCacheSize(int motionTimeCacheSize) {
+        this.motionTimeCacheSize = motionTimeCacheSize;
+    }
+
+    public int getMotionRecorderCapacity() {
+        return motionRecorderCapacity;
+    }
+
+    public void setMotionRecorderCapacity(int motionRecorderCapacity) {
+        this.motionRecorderCapacity = motionRecorderCapacity;
+        motionRecorder = null;
+    }
+
+    /**
+     * @return The recorder of the executed moves, or null if switched off by a motionRecorderCapacity of 0. 
+     * Recording follows the controller axes of the machine, as they were when it was last homed. 
+     */
+    public synchronized MotionRecorder getMotionRecorder() {
+        if (motionRecorderCapacity <= 0 || getMachine() == null) {
+            return null;
+        }
+        MotionRecorder recorder = motionRecorder;
+        if (recorder == null) {
+            recorder = new MotionRecorder(motionRecorderCapacity);
+            recorder.setAxes(getControllerAxes());
+            motionRecorder = recorder;
+        }
+        return recorder;
+    }
+
+    protected List<ControllerAxis> getControllerAxes() {
+        List<ControllerAxis> axes = new ArrayList<>();
+        for (Axis axis : getMachine().getAxes()) {
+            if (axis instanceof ControllerAxis) {
+                axes.add((ControllerAxis) axis);
+            }
+        }
+        return axes;
+    }
+
+    /**
+     * Clear the cached motion time estimates, e.g. after axis limits have been changed.
+     */
+    public void clearMotionTimeCache() {
+        synchronized (motionTimeCache) {
+            motionTimeCache.clear();
+        }
     }
 
     @Override
@@ -761,6 +985,10 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
         if (completionType.isEnforcingStillstand()) {
             // Wait for the drivers.
             waitForDriverCompletion(hm, completionType);
+            MotionRecorder recorder = motionRecorder;
+            if (recorder != null) {
+                recorder.recordCompletion(NanosecondTime.getRuntimeSeconds());
+            }
             // The drivers might have reported new coordinates back. Propagate to planned axis coordinates, 
             // applying the backlash offset in reverse.
             AxesLocation reportedLocation = new AxesLocation(getMachine().getAxes(), 
@@ -862,10 +1090,8 @@ public abstract class AbstractMotionPlanner extends AbstractModelObject implemen
     }
 
     @Override
-    public synchronized void clearMotionPlanOlderThan(double time) {
-        while (motionPlan.isEmpty() == false && motionPlan.firstKey() < time) {
-            motionPlan.remove(motionPlan.firstKey());
-        }
+    public void clearMotionPlanOlderThan(double time) {
+        motionPlan.clearOlderThan(time);
     }
 
     public boolean isInterpolationRetiming() {
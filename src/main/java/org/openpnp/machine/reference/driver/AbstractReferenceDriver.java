@@ -310,6 +310,14 @@ public abstract class AbstractReferenceDriver extends AbstractDriver {
         tcp.setPort(port);
     }
 
+    public boolean isNonBlockingIo() {
+        return tcp.isNonBlockingIo();
+    }
+
+    public void setNonBlockingIo(boolean nonBlockingIo) {
+        tcp.setNonBlockingIo(nonBlockingIo);
+    }
+
     @Override
     public void setEnabled(boolean enabled) throws Exception {
         if (enabled && isSyncInitialLocation()) {
@@ -21,7 +21,9 @@
 
 package org.openpnp.machine.reference.driver;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -91,9 +93,19 @@ public class GcodeAsyncDriver extends GcodeDriver {
     @Attribute(required=false)
     private int maxCommandsQueued = 1000;
 
+    /**
+     * Maximum number of bytes the writer thread batches into one write, when multiple commands are queued 
+     * and flow control permits sending them right away. Set to 0 to write each command separately.
+     */
+    @Attribute(required=false)
+    private int writerBatchMaxBytes = 1024;
+
     @Attribute(required=false)
     private boolean confirmationFlowControl = true;
 
+    @Attribute(required=false)
+    private int characterCountingBufferSize = 0;
+
     @Attribute(required=false)
     private boolean reportedLocationConfirmation = true;
 
@@ -112,6 +124,15 @@ public class GcodeAsyncDriver extends GcodeDriver {
     @Element(required = false)
     private Length junctionDeviation = new Length(0.02, LengthUnit.Millimeters);
 
+    @Attribute(required = false)
+    private boolean interpolationAdaptive = false;
+
+    @Element(required = false)
+    private Length interpolationPositionTolerance = new Length(0.05, LengthUnit.Millimeters);
+
+    @Element(required = false)
+    private Length interpolationVelocityTolerance = new Length(20, LengthUnit.Millimeters);
+
     @Override
     public void home(Machine machine) throws Exception {
         super.home(machine);
@@ -132,9 +153,18 @@ public class GcodeAsyncDriver extends GcodeDriver {
         }
     }
     protected LinkedBlockingQueue<CommandLine> commandQueue;
+    /**
+     * Sequence number of the last command offered to the commandQueue. Only advanced by the sending thread.  
+     */
+    private long queuedCommands;
+    /**
+     * Sequence number of the last command completely handled by the WriterThread, i.e. sent and, in the case of 
+     * the null command, with all the prior confirmations drained. Waiters can park on this until their command
+     * is reached. 
+     */
+    private SequenceCounter processedCommands = new SequenceCounter();
 
     private boolean waitedForCommands;
-    private volatile boolean confirmationComplete;
 
     public boolean isConfirmationFlowControl() {
         return confirmationFlowControl;
@@ -146,6 +176,31 @@ public class GcodeAsyncDriver extends GcodeDriver {
         firePropertyChange("confirmationFlowControl", oldValue, confirmationFlowControl);
     }
 
+    public int getCharacterCountingBufferSize() {
+        return characterCountingBufferSize;
+    }
+
+    /**
+     * Sets the size of the controller's receive buffer in bytes, used for character counting flow control. 
+     * Instead of awaiting the "ok" of each command before sending the next, as many commands are sent as 
+     * fit into the controller's receive buffer. The bytes of each command are counted as in flight, 
+     * until its "ok" is received (Grbl style streaming). This requires the controller to acknowledge 
+     * each and every command with exactly one "ok". 
+     * 
+     * Only effective with confirmation flow control. Set to 0 to disable character counting. 
+     * 
+     * @param characterCountingBufferSize
+     */
+    public void setCharacterCountingBufferSize(int characterCountingBufferSize) {
+        Object oldValue = this.characterCountingBufferSize;
+        this.characterCountingBufferSize = characterCountingBufferSize;
+        firePropertyChange("characterCountingBufferSize", oldValue, characterCountingBufferSize);
+    }
+
+    public boolean isCharacterCountingFlowControl() {
+        return confirmationFlowControl && characterCountingBufferSize > 0;
+    }
+
     public boolean isReportedLocationConfirmation() {
         return reportedLocationConfirmation;
     }
@@ -201,10 +256,45 @@ public class GcodeAsyncDriver extends GcodeDriver {
         this.junctionDeviation = junctionDeviation;
     }
 
+    @Override
+    public boolean isInterpolationAdaptive() {
+        return interpolationAdaptive;
+    }
+
+    public void setInterpolationAdaptive(boolean interpolationAdaptive) {
+        this.interpolationAdaptive = interpolationAdaptive;
+    }
+
+    @Override
+    public Length getInterpolationPositionTolerance() {
+        return interpolationPositionTolerance;
+    }
+
+    public void setInterpolationPositionTolerance(Length interpolationPositionTolerance) {
+        this.interpolationPositionTolerance = interpolationPositionTolerance;
+    }
+
+    @Override
+    public Length getInterpolationVelocityTolerance() {
+        return interpolationVelocityTolerance;
+    }
+
+    public void setInterpolationVelocityTolerance(Length interpolationVelocityTolerance) {
+        this.interpolationVelocityTolerance = interpolationVelocityTolerance;
+    }
+
+    @Override
+    public int getCommandQueueDepth() {
+        LinkedBlockingQueue<CommandLine> commandQueue = this.commandQueue;
+        return commandQueue != null ? commandQueue.size() : 0;
+    }
+
     @Override
     protected void connectThreads() throws Exception {
         super.connectThreads();
         commandQueue = new LinkedBlockingQueue<>(maxCommandsQueued);
+        queuedCommands = 0;
+        processedCommands = new SequenceCounter();
         writerThread = new WriterThread();
         writerThread.setDaemon(true);
         writerThread.start();
@@ -231,10 +321,19 @@ public class GcodeAsyncDriver extends GcodeDriver {
         public void run() {
             // Get the copies that are valid for this thread.
             LinkedBlockingQueue<CommandLine> commandQueue = GcodeAsyncDriver.this.commandQueue;
+            SequenceCounter processedCommands = GcodeAsyncDriver.this.processedCommands;
+            long takenCommands = 0;
             ReferenceDriverCommunications comms = getCommunications();
             String connectionName = comms.getConnectionName();
+            byte[] lineEnding = comms.getLineEndingType().getLineEnding().getBytes();
+            int lineEndingLength = lineEnding.length;
+            // Reused to batch multiple command lines into one write. 
+            ByteArrayOutputStream writeBatch = new ByteArrayOutputStream(Math.max(writerBatchMaxBytes, 256));
 
             CommandLine lastCommand = null;
+            // Commands sent but not yet confirmed, and their byte count, in character counting flow control.
+            ArrayDeque<CommandLine> pendingCommands = new ArrayDeque<>();
+            int pendingBytes = 0;
             while (!disconnectRequested) {
                 CommandLine command;
                 try {
@@ -247,8 +346,21 @@ public class GcodeAsyncDriver extends GcodeDriver {
                 if (command == null) {
                     continue;
                 }
+                takenCommands++;
                 try {
-                    if (confirmationFlowControl && lastCommand != null) {
+                    boolean characterCounting = isCharacterCountingFlowControl();
+                    if (characterCounting) {
+                        int commandBytes = (command.line != null ? command.line.length() + lineEndingLength : 0);
+                        // Await the oldest confirmations until the new command fits into the controller's receive 
+                        // buffer. The null command drains all the pending confirmations.
+                        while (!pendingCommands.isEmpty() 
+                                && (command.line == null || pendingBytes + commandBytes > characterCountingBufferSize)) {
+                            CommandLine pendingCommand = pendingCommands.poll();
+                            pendingBytes -= pendingCommand.line.length() + lineEndingLength;
+                            waitForConfirmation(pendingCommand.toString(), pendingCommand.getTimeout());
+                        }
+                    }
+                    else if (confirmationFlowControl && lastCommand != null) {
                         try {
                             // Before we can send the new command, make sure the wanted confirmation count of the last command was received.
                             waitForConfirmation(lastCommand.toString(), lastCommand.getTimeout());
@@ -259,18 +371,39 @@ public class GcodeAsyncDriver extends GcodeDriver {
                         }
                     }
                     if (command.line != null) {
-                        // Set up the wanted confirmations for next time.
-                        lastCommand = command;
-                        receivedConfirmationsQueue.clear();
-                        comms.writeLine(command.line);
-                        Logger.trace("[{}] >> {}", connectionName, command);
-                    }
-                    else {
-                        confirmationComplete = true;
-                        synchronized(GcodeAsyncDriver.this) {
-                            GcodeAsyncDriver.this.notify();
+                        writeBatch.reset();
+                        while (true) {
+                            if (characterCounting) {
+                                // Count the command as in flight, until its confirmation is received. 
+                                pendingCommands.add(command);
+                                pendingBytes += command.line.length() + lineEndingLength;
+                            }
+                            else {
+                                // Set up the wanted confirmations for next time.
+                                lastCommand = command;
+                                clearConfirmations();
+                            }
+                            writeBatch.write(command.line.getBytes());
+                            writeBatch.write(lineEnding);
+                            Logger.trace("[{}] >> {}", connectionName, command);
+                            // Batch more queued commands into the same write, as long as flow control permits 
+                            // sending them right away. With one-by-one confirmation flow control this is never
+                            // the case. 
+                            CommandLine nextCommand = commandQueue.peek();
+                            if (nextCommand == null || nextCommand.line == null
+                                    || (confirmationFlowControl && !characterCounting)) {
+                                break;
+                            }
+                            int nextBytes = nextCommand.line.length() + lineEndingLength;
+                            if (writeBatch.size() + nextBytes > writerBatchMaxBytes
+                                    || (characterCounting && pendingBytes + nextBytes > characterCountingBufferSize)) {
+                                break;
+                            }
+                            // We're the only consumer, so this is the peeked command.
+                            command = commandQueue.poll();
+                            takenCommands++;
                         }
-                        //Logger.trace("[{}] confirmation released.", getCommunications().getConnectionName());
+                        comms.writeBytes(writeBatch.toByteArray());
                     }
                 }
                 catch (IOException e) {
@@ -282,6 +415,13 @@ public class GcodeAsyncDriver extends GcodeDriver {
                     // the exception as an error response, it will be reported when the driver wants to do the next step. 
                     errorResponse = new Line(e.getMessage());
                     //Logger.error("[{}] {}", getCommunications().getConnectionName(), e);
+                    // The confirmation count is out of sync, never wait for the pending ones again.
+                    pendingCommands.clear();
+                    pendingBytes = 0;
+                }
+                finally {
+                    // Release those waiting for the commands. 
+                    processedCommands.set(takenCommands);
                 }
             }
             Logger.trace("[{}] disconnectRequested, bye-bye.", connectionName);
@@ -322,7 +462,7 @@ public class GcodeAsyncDriver extends GcodeDriver {
             waitForEmptyCommandQueue();
         }
         CommandLine commandLine = new CommandLine(command, timeout);
-        commandQueue.offer(commandLine, writerQueueTimeout, TimeUnit.MILLISECONDS);
+        offerCommand(commandLine);
         if (command.startsWith("$")) {
             waitForEmptyCommandQueue();
             Logger.trace(getName()+" $-command, waiting "+dollarWaitTimeMilliseconds+"ms");
@@ -330,6 +470,21 @@ public class GcodeAsyncDriver extends GcodeDriver {
         }
     }
 
+    /**
+     * Offer a command line to the WriterThread.
+     * 
+     * @param commandLine
+     * @return The sequence number of the command line, or -1 if it could not be queued. 
+     * @throws InterruptedException
+     */
+    protected long offerCommand(CommandLine commandLine) throws InterruptedException {
+        if (!commandQueue.offer(commandLine, writerQueueTimeout, TimeUnit.MILLISECONDS)) {
+            Logger.warn("{} timeout while queuing command {}.", getName(), commandLine);
+            return -1;
+        }
+        return ++queuedCommands;
+    }
+
     /**
      * A crude way to at least wait for all prior commands to have been sent. 
      * This still does not guarantee that the controller has received and interpreted 
@@ -340,25 +495,21 @@ public class GcodeAsyncDriver extends GcodeDriver {
      * Conversely, inside the CONNECT_COMMAND, we don't want to use the waitForCompletion() 
      * method yet, as the controller might still not be properly configured for that, so 
      * we resort to this crude method. 
-     * 
-     * @throws InterruptedException
      */
     protected void waitForEmptyCommandQueue() {
         long t0 = System.currentTimeMillis();
-        long t1 = t0 + getTimeoutAtMachineSpeed();
-        while (System.currentTimeMillis() < t1) {
-            if (commandQueue.size() == 0) {
+        try {
+            if (processedCommands.await(queuedCommands, getTimeoutAtMachineSpeed())) {
                 long dt = System.currentTimeMillis() - t0;
                 if (dt > 1) {
-                        Logger.trace("{} waited {}ms for empty command queue.", getName(), dt);
+                    Logger.trace("{} waited {}ms for empty command queue.", getName(), dt);
                 }
                 return; // --->
             }
-            try {
-                Thread.sleep(10);
-            }
-            catch (InterruptedException e) {
-            }
+        }
+        catch (InterruptedException e) {
+            Logger.warn(e, getName() +" was interrupted while waiting for empty command queue.");
+            return;
         }
         Logger.warn("{} timeout while waiting for empty command queue.", getName());
     }
@@ -393,19 +544,18 @@ public class GcodeAsyncDriver extends GcodeDriver {
     protected void drainCommandQueue(long timeout) throws InterruptedException {
         // Normal confirmation report wanted. We queue a null command to drain the queue and confirm 
         // the last real command. 
-        confirmationComplete = false;
-        CommandLine commandLine = new CommandLine(null, 1);
-        commandQueue.offer(commandLine, writerQueueTimeout, TimeUnit.MILLISECONDS);
         long t0 = System.currentTimeMillis();
-        while (!confirmationComplete) {
-            try {
-                synchronized(this) { 
-                    wait(timeout);
-                }
-            }
-            catch (InterruptedException e) {
-                Logger.warn(e, getName() +" was interrupted while waiting for completion.");
+        long sequence = offerCommand(new CommandLine(null, 1));
+        if (sequence < 0) {
+            return;
+        }
+        while (!processedCommands.await(sequence, timeout)) {
+            // The WriterThread applies the command timeouts, so as long as it is alive, it will eventually release us.
+            if (writerThread == null || !writerThread.isAlive()) {
+                Logger.warn("{} writer gone while draining command queue.", getName());
+                return;
             }
+            Logger.trace("{} still draining command queue.", getName());
         }
         long dt = System.currentTimeMillis() - t0;
         if (dt > 1) {
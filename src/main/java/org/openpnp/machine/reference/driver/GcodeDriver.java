@@ -19,16 +19,20 @@
 
 package org.openpnp.machine.reference.driver;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -76,6 +80,7 @@ import org.openpnp.spi.base.AbstractHeadMountable;
 import org.openpnp.spi.base.AbstractSingleTransformedAxis;
 import org.openpnp.spi.base.AbstractTransformedAxis;
 import org.openpnp.util.NanosecondTime;
+import org.openpnp.util.TextTemplate;
 import org.openpnp.util.TextUtils;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
@@ -170,6 +175,8 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         @ElementList(required = false, inline = true, entry = "text", data = true)
         public ArrayList<String> commands = new ArrayList<>();
 
+        private TextTemplate template;
+
         public Command(String headMountableId, CommandType type, String text) {
             this.headMountableId = headMountableId;
             this.type = type;
@@ -177,6 +184,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         }
 
         public void setCommand(String text) {
+            this.template = null;
             this.commands.clear();
             if (text != null) {
                 text = text.trim();
@@ -190,6 +198,17 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
             return Joiner.on('\n').join(commands);
         }
 
+        /**
+         * @return The command parsed into a TextTemplate, so it can be rendered repeatedly without 
+         * substituting the variables one by one. Cached until the command is changed.
+         */
+        public TextTemplate getTemplate() {
+            if (template == null) {
+                template = new TextTemplate(getCommand());
+            }
+            return template;
+        }
+
         private Command() {
 
         }
@@ -253,6 +272,21 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
     @Attribute(required = false)
     protected boolean loggingGcode;
 
+    @Attribute(required = false)
+    protected boolean loggingGcodeTimestamps = false;
+
+    @Attribute(required = false)
+    protected boolean loggingGcodeReceived = true;
+
+    @Attribute(required = false)
+    protected long loggingGcodeMaxFileBytes = 10000000;
+
+    @Attribute(required = false)
+    protected int loggingGcodeMaxFiles = 10;
+
+    @Attribute(required = false)
+    protected int loggingGcodeQueueCapacity = 10000;
+
     @Deprecated
     @Element(required = false)
     protected Location homingFiducialLocation = new Location(LengthUnit.Millimeters);
@@ -287,6 +321,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
     protected List<Axis> axes = null;
 
     private ReaderThread readerThread;
+    private ResponseListener responseListener;
     volatile boolean disconnectRequested;
     protected boolean connected;
     
@@ -319,12 +354,50 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
 
     protected LinkedBlockingQueue<Line> responseQueue = new LinkedBlockingQueue<>();
     protected LinkedBlockingQueue<AxesLocation> reportedLocationsQueue = new LinkedBlockingQueue<>();
-    protected LinkedBlockingQueue<Line> receivedConfirmationsQueue = new LinkedBlockingQueue<>();
+    /**
+     * Counts the received confirmations. Only a counter is needed, as the confirmations are awaited one for one, 
+     * using {@link #waitForConfirmation(String, long)}. The consuming thread keeps track of how many of them it 
+     * has already awaited in consumedConfirmations. 
+     */
+    protected SequenceCounter receivedConfirmations = new SequenceCounter();
+    protected long consumedConfirmations;
+    protected volatile Line lastConfirmation;
 
     protected Line errorResponse;
+
+    /**
+     * An actuator read issued by {@link GcodeDriver#actuatorReadAsync(Actuator, Object)}, waiting for its 
+     * response. 
+     */
+    protected static class PendingActuatorRead {
+        final Actuator actuator;
+        final Pattern pattern;
+        final CompletableFuture<String> future = new CompletableFuture<>();
+
+        PendingActuatorRead(Actuator actuator, Pattern pattern) {
+            this.actuator = actuator;
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * The pending actuator reads in the order they were issued. A received line completes the first pending read 
+     * whose ACTUATOR_READ_REGEX matches it. 
+     */
+    protected final ConcurrentLinkedQueue<PendingActuatorRead> pendingActuatorReads = new ConcurrentLinkedQueue<>();
     private boolean motionPending;
 
-    private PrintWriter gcodeLogger;
+    private volatile GcodeLogWriter gcodeLogger;
+
+    /**
+     * Compiled regex Patterns, keyed by the regex text. The ReaderThread matches every received line against 
+     * up to three regexes, so these must not be compiled over and over again. As the cache is keyed by the regex 
+     * text itself, a stale entry can never be matched, but the cache is cleared in setCommand() nevertheless, 
+     * so edited regexes do not accumulate.   
+     */
+    private final ConcurrentHashMap<String, Pattern> regexPatternCache = new ConcurrentHashMap<>();
+
+    private static final Pattern variablePattern = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}");
 
     // create a class to group send-on-change behavior
     // used to support sending feedRate, acceleration and jerk only when they have changed
@@ -363,24 +436,36 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
             this(null);
         }
         
-        public String substituteVariable(String command, Double value) {
-            // send/substitute string and value
+        // return the value if it is to be sent, or null if it is to be suppressed
+        public Double getValueToSend(Double value) {
             if (!sendOnChange                                                         // .. if forced
                  || value == null                                                     // .. or value not initialized
                  || lastValue == null                                                 // .. or last value not initialized
                  || value == 0.0                                                      // .. of if the new value is 0 - avoid division by zero
                  || Math.abs((lastValue - value) / value) > relativeDeviation) {      // .. or if the value has changed by more then 1e-3 relative
                 lastValue = value;
-                command = GcodeDriver.substituteVariable(command, variable, value);   // call the substitute method of the outer class as used by the rest of the code
+                return value;
             } else {
-                command = GcodeDriver.substituteVariable(command, variable, null);    // remove the variable
+                return null;                                                          // remove the variable
             }
+        }
+
+        public String substituteVariable(String command, Double value) {
+            // send/substitute string and value
+            command = GcodeDriver.substituteVariable(command, variable, getValueToSend(value)); // call the substitute method of the outer class as used by the rest of the code
             // always substitute string + "F"
             command = GcodeDriver.substituteVariable(command, variable + "F", value); // call the substitute method of the outer class as used by the rest of the code
             
             return command;
         }
 
+        // same as substituteVariable() but collecting the variables for a TextTemplate
+        public void putVariables(Map<String, Object> variables, Double value) {
+            variables.put(variable, getValueToSend(value));
+            // always substitute string + "F"
+            variables.put(variable + "F", value);
+        }
+
         // reset the send on change behavior by invalidating lastValue
         public void reset() {
             lastValue = null;
@@ -459,6 +544,11 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         command = getSendOnChangeJerk().substituteVariable(command, jerk);
         return command;
     }
+    private void sendOnChangePutAllVariables(Map<String, Object> variables, Double feedRate, Double acceleration, Double jerk) {
+        getSendOnChangeFeedRate().putVariables(variables, feedRate);
+        getSendOnChangeAcceleration().putVariables(variables, acceleration);
+        getSendOnChangeJerk().putVariables(variables, jerk);
+    }
     
     @Commit
     public void commit() {
@@ -486,6 +576,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
     }
 
     public void createDefaultCommands() {
+        regexPatternCache.clear();
         commands = new ArrayList<>();
         commands.add(new Command(null, CommandType.COMMAND_CONFIRM_REGEX, "^ok.*"));
         commands.add(new Command(null, CommandType.CONNECT_COMMAND, "G21 ; Set millimeters mode\nG90 ; Set absolute positioning mode\nM82 ; Set absolute mode for extruder"));
@@ -536,12 +627,20 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
      * @throws Exception
      */
     protected void connectThreads() throws Exception {
-        readerThread = new ReaderThread();
-        readerThread.setDaemon(true);
-        readerThread.start();
         errorResponse = null;
-        receivedConfirmationsQueue = new LinkedBlockingQueue<>();
+        receivedConfirmations = new SequenceCounter();
+        consumedConfirmations = 0;
+        lastConfirmation = null;
         reportedLocationsQueue = new LinkedBlockingQueue<>();
+        readerThread = null;
+        responseListener = new ResponseListener();
+        if (!getCommunications().startLineListening(responseListener)) {
+            // Communications must be read by our own thread.
+            responseListener = null;
+            readerThread = new ReaderThread();
+            readerThread.setDaemon(true);
+            readerThread.start();
+        }
     }
 
     @Override
@@ -828,6 +927,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
     }
 
     public void setCommand(HeadMountable hm, CommandType type, String text) {
+        regexPatternCache.clear();
         Command c = getCommand(hm, type, false);
         if (text == null || text.trim().length() == 0) {
             if (c != null) {
@@ -862,8 +962,8 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
             movedAxesLocation.getLengthCoordinate(axis).convertToUnits(getUnits()).getValue() - axis.getDriverCoordinate()).third;
 
         // Start composing the command, will decide later, whether we actually send it.
-        String command = getCommand(hm, CommandType.MOVE_TO_COMMAND);
-        if (command == null) {
+        Command moveToCommand = getCommand(hm, CommandType.MOVE_TO_COMMAND, true);
+        if (moveToCommand == null) {
             if (movedAxesLocation.isEmpty()) {
                 return;
             }
@@ -875,7 +975,11 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
                 throw new Exception(getName()+" MOVE_TO_COMMAND missing, please use Issues & Solutions to propose proper G-code commands.");
             }
         }
-        if (hasVariable(command, "BacklashFeedRate")) {
+        // The command is pre-parsed into a template. Instead of substituting the variables one by one, 
+        // they are collected in substitution order and then rendered in one go.
+        TextTemplate command = moveToCommand.getTemplate();
+        Map<String, Object> variables = new LinkedHashMap<>();
+        if (command.hasVariable("BacklashFeedRate")) {
             throw new Exception(getName()+" configuration upgrade needed: Please remove the extra backlash compensation move from your MOVE_TO_COMMAND. "
                     +"Backlash compensation is now done outside of the drivers and configured on the axes.");
         }
@@ -902,9 +1006,9 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
             jerk *= driverUnitsFactor;
         }
 
-        command = substituteVariable(command, "Id", hm.getId());
-        command = substituteVariable(command, "Name", hm.getName());
-        command = sendOnChangeSubstituteAllVariables(command, feedRate, acceleration, jerk);
+        variables.put("Id", hm.getId());
+        variables.put("Name", hm.getName());
+        sendOnChangePutAllVariables(variables, feedRate, acceleration, jerk);
 
         ReferenceMachine machine = (ReferenceMachine) hm.getHead().getMachine();
         // Get a map of the axes of ...
@@ -931,7 +1035,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
                 // position change after all. 
                 // Note, there is no need for separate backlash compensation variables, as these are always 
                 // substituted alongside. 
-                if (hasVariable(command, variable+"F")) {
+                if (command.hasVariable(variable+"F")) {
                     // Force it! Must get it from the mappedAxes. If the mappedAxes do not have it, it is 
                     // still suppressed (this never happens when using letter variables). 
                     axis = mappedAxes.getAxisByVariable(this, variable);
@@ -952,15 +1056,15 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
                 double previousCoordinate = axis.getDriverCoordinate(); 
                 int direction = ((Double)coordinate).compareTo(previousCoordinate);
                 // Substitute the axis variables.
-                command = substituteVariable(command, variable, coordinate);
-                command = substituteVariable(command, variable+"F", coordinate);
-                command = substituteVariable(command, variable+"L", axis.getLetter());
-                if (hasVariable(command, "BacklashOffset"+variable)) {
+                variables.put(variable, coordinate);
+                variables.put(variable+"F", coordinate);
+                variables.put(variable+"L", axis.getLetter());
+                if (command.hasVariable("BacklashOffset"+variable)) {
                     throw new Exception(getName()+" configuration upgrade needed: Please remove the extra backlash compensation move from your MOVE_TO_COMMAND. "
                             +"Backlash compensation is now done outside of the drivers.");
                 }
-                command = substituteVariable(command, variable+"Decreasing", direction < 0 ? true : null);
-                command = substituteVariable(command, variable+"Increasing", direction > 0 ? true : null);
+                variables.put(variable+"Decreasing", direction < 0 ? true : null);
+                variables.put(variable+"Increasing", direction > 0 ? true : null);
                 if (isSupportingPreMove() && axis instanceof ReferenceControllerAxis) {
                     // Check for a pre-move command.
                     String preMoveCommand = ((ReferenceControllerAxis) axis).getPreMoveCommand();
@@ -972,27 +1076,27 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
                 // Axis specific jerk limits are needed on TinyG.
                 double axisDistance = coordinate - previousCoordinate;
                 double axisJerk = (jerk != null ? jerk : 0)*Math.abs(axisDistance)/driverDistance;
-                command = substituteVariable(command, variable+"Jerk", axisJerk > jMin ? axisJerk : null);
-                command = substituteVariable(command, variable+"JerkMupm3", axisJerk > jMin*4.63 ? axisJerk*1e-6*Math.pow(60, 3) : null); // TinyG: Megaunits/min^3 
+                variables.put(variable+"Jerk", axisJerk > jMin ? axisJerk : null);
+                variables.put(variable+"JerkMupm3", axisJerk > jMin*4.63 ? axisJerk*1e-6*Math.pow(60, 3) : null); // TinyG: Megaunits/min^3 
                 // Store the new driver coordinate on the axis.
                 axis.setDriverCoordinate(coordinate);
             }
             else {
                 // Delete the unused axis variables.
-                command = substituteVariable(command, variable, null);
-                command = substituteVariable(command, variable+"F", null);
-                command = substituteVariable(command, variable+"L", null); 
-                command = substituteVariable(command, "BacklashOffset"+variable, null);
-                command = substituteVariable(command, variable+"Decreasing", null);
-                command = substituteVariable(command, variable+"Increasing", null);
-                command = substituteVariable(command, variable+"Jerk", null);
-                command = substituteVariable(command, variable+"JerkMupm3", null);  
+                variables.put(variable, null);
+                variables.put(variable+"F", null);
+                variables.put(variable+"L", null); 
+                variables.put("BacklashOffset"+variable, null);
+                variables.put(variable+"Decreasing", null);
+                variables.put(variable+"Increasing", null);
+                variables.put(variable+"Jerk", null);
+                variables.put(variable+"JerkMupm3", null);  
             }
         }
         if (doesMove) {
             // We do actually send the command.
             motionPending = true;
-            sendGcode(command);
+            sendGcode(command.render(variables));
         }
     }
 
@@ -1045,9 +1149,23 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         }
     }
 
+    /**
+     * Get the compiled Pattern for the given regex from the cache, compiling it if not yet present.  
+     * 
+     * @param regex
+     * @return The compiled Pattern or null if the regex is null. 
+     */
+    protected Pattern getRegexPattern(String regex) {
+        if (regex == null) {
+            return null;
+        }
+        return regexPatternCache.computeIfAbsent(regex, (r) -> Pattern.compile(r));
+    }
+
     private boolean containsMatch(List<Line> responses, String regex) {
+        Pattern pattern = getRegexPattern(regex);
         for (Line response : responses) {
-            if (response.line.matches(regex)) {
+            if (pattern.matcher(response.line).matches()) {
                 return true;
             }
         }
@@ -1107,41 +1225,17 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         String command = getCommand(actuator, CommandType.ACTUATOR_READ_COMMAND);
         String regex = getCommand(actuator, CommandType.ACTUATOR_READ_REGEX);
         if (command != null && regex != null) {
-            command = substituteVariable(command, "Id", actuator.getId());
-            command = substituteVariable(command, "Name", actuator.getName());
-            if (actuator instanceof ReferenceActuator) {
-                command = substituteVariable(command, "Index", ((ReferenceActuator)actuator).getIndex());
-            }
-            if (parameter != null) {
-                if (parameter instanceof Double) { // Backwards compatibility
-                    Double doubleParameter = (Double) parameter;
-                    command = substituteVariable(command, "DoubleValue", doubleParameter);
-                    command = substituteVariable(command, "IntegerValue", (int) doubleParameter.doubleValue());
-                }
-
-                command = substituteVariable(command, "Value", parameter);
-            }
-            sendGcode(command);
+            sendGcode(getActuatorReadCommand(actuator, command, parameter));
             List<Line> responses = receiveResponses(regex, timeoutMilliseconds, (r) -> {
                 throw new Exception(String.format("Actuator \"%s\" read error: No matching responses found.", actuator.getName()));
             });
 
-            Pattern pattern = Pattern.compile(regex);
+            Pattern pattern = getRegexPattern(regex);
             for (Line line : responses) {
                 Matcher matcher = pattern.matcher(line.getLine());
                 if (matcher.matches()) {
                     Logger.trace("actuatorRead response: {}", line);
-                    try {
-                        return matcher.group("Value");
-                    }
-                    catch (IllegalArgumentException e) {
-                        throw new Exception(String.format("Actuator \"%s\" read error: Regex is missing \"Value\" capturing group. See https://github.com/openpnp/openpnp/wiki/GcodeDriver#actuator_read_regex",
-                                actuator.getName()), e);
-                    }
-                    catch (Exception e) {
-                        throw new Exception(String.format("Actuator \"%s\" read error: Failed to parse response. See https://github.com/openpnp/openpnp/wiki/GcodeDriver#actuator_read_regex",
-                                actuator.getName()), e);
-                    }
+                    return getActuatorReadValue(actuator, matcher);
                 }
             }
             // This should not happen, as the regex is pre-matched in receiveResponses().
@@ -1152,6 +1246,104 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         }
     }
 
+    /**
+     * Issues the ACTUATOR_READ_COMMAND and returns without waiting for the response. The response is picked 
+     * up as soon as it is received, by matching it against the ACTUATOR_READ_REGEX. Multiple reads can be 
+     * pending at the same time, e.g. for the vacuum sensors of multiple nozzles, the responses are assigned 
+     * to them in the order the reads were issued. Unlike {@link #actuatorRead(Actuator, Object)}, this does not 
+     * need the command queue to be drained, i.e. queued motion can continue while the readings return. 
+     */
+    @Override
+    public CompletableFuture<String> actuatorReadAsync(Actuator actuator, Object parameter) throws Exception {
+        String command = getCommand(actuator, CommandType.ACTUATOR_READ_COMMAND);
+        String regex = getCommand(actuator, CommandType.ACTUATOR_READ_REGEX);
+        if (command == null || regex == null) {
+            throw new Exception(String.format("Actuator \"%s\" read error: Driver configuration is missing ACTUATOR_READ_COMMAND or ACTUATOR_READ_REGEX.", actuator.getName()));
+        }
+        // Register before sending, so the response can't slip through.
+        PendingActuatorRead read = new PendingActuatorRead(actuator, getRegexPattern(regex));
+        pendingActuatorReads.add(read);
+        try {
+            sendGcode(getActuatorReadCommand(actuator, command, parameter));
+        }
+        catch (Exception e) {
+            pendingActuatorReads.remove(read);
+            throw e;
+        }
+        long timeout = (timeoutMilliseconds == -1 ? infinityTimeoutMilliseconds : timeoutMilliseconds);
+        // The timeout is cancelled as soon as the read completes.
+        read.future.orTimeout(timeout, TimeUnit.MILLISECONDS)
+            .whenComplete((value, e) -> pendingActuatorReads.remove(read));
+        return read.future.exceptionally((e) -> {
+            if (e instanceof TimeoutException) {
+                throw new CompletionException(new Exception(String.format("Actuator \"%s\" read error: No matching responses found.", 
+                        actuator.getName())));
+            }
+            throw (e instanceof CompletionException ? (CompletionException) e : new CompletionException(e));
+        });
+    }
+
+    @Override
+    public boolean isActuatorReadAsyncSupported() {
+        return true;
+    }
+
+    protected String getActuatorReadCommand(Actuator actuator, String command, Object parameter) {
+        command = substituteVariable(command, "Id", actuator.getId());
+        command = substituteVariable(command, "Name", actuator.getName());
+        if (actuator instanceof ReferenceActuator) {
+            command = substituteVariable(command, "Index", ((ReferenceActuator)actuator).getIndex());
+        }
+        if (parameter != null) {
+            if (parameter instanceof Double) { // Backwards compatibility
+                Double doubleParameter = (Double) parameter;
+                command = substituteVariable(command, "DoubleValue", doubleParameter);
+                command = substituteVariable(command, "IntegerValue", (int) doubleParameter.doubleValue());
+            }
+
+            command = substituteVariable(command, "Value", parameter);
+        }
+        return command;
+    }
+
+    protected String getActuatorReadValue(Actuator actuator, Matcher matcher) throws Exception {
+        try {
+            return matcher.group("Value");
+        }
+        catch (IllegalArgumentException e) {
+            throw new Exception(String.format("Actuator \"%s\" read error: Regex is missing \"Value\" capturing group. See https://github.com/openpnp/openpnp/wiki/GcodeDriver#actuator_read_regex",
+                    actuator.getName()), e);
+        }
+        catch (Exception e) {
+            throw new Exception(String.format("Actuator \"%s\" read error: Failed to parse response. See https://github.com/openpnp/openpnp/wiki/GcodeDriver#actuator_read_regex",
+                    actuator.getName()), e);
+        }
+    }
+
+    /**
+     * Complete the first pending actuator read that matches the line.
+     * 
+     * @param line
+     * @return true if the line was consumed by a pending read.
+     */
+    protected boolean completeActuatorRead(Line line) {
+        for (PendingActuatorRead read : pendingActuatorReads) {
+            Matcher matcher = read.pattern.matcher(line.getLine());
+            if (matcher.matches()) {
+                pendingActuatorReads.remove(read);
+                Logger.trace("actuatorReadAsync response: {}", line);
+                try {
+                    read.future.complete(getActuatorReadValue(read.actuator, matcher));
+                }
+                catch (Exception e) {
+                    read.future.completeExceptionally(e);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public String actuatorRead(Actuator actuator) throws Exception {
         return actuatorRead(actuator, null);
@@ -1170,6 +1362,12 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
 
         disconnectThreads();
 
+        PendingActuatorRead read;
+        while ((read = pendingActuatorReads.poll()) != null) {
+            read.future.completeExceptionally(new Exception(String.format("Actuator \"%s\" read error: Driver disconnected.", 
+                    read.actuator.getName())));
+        }
+
         closeGcodeLogger();
     }
 
@@ -1235,7 +1433,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
 
         // After sending this, we want one more confirmation. 
         // TODO: true queued reporting. For now it is sufficient to poll one for one.
-        receivedConfirmationsQueue.clear();
+        clearConfirmations();
         try {
             // Send the command.
             getCommunications().writeLine(command);
@@ -1261,22 +1459,32 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         if (timeout == -1) {
             timeout = infinityTimeoutMilliseconds;
         }
-        Line receivedConfirmation = receivedConfirmationsQueue.poll(timeout, TimeUnit.MILLISECONDS);
-        if (receivedConfirmation != null) {
+        long confirmation = consumedConfirmations + 1;
+        if (receivedConfirmations.await(confirmation, timeout)) {
+            consumedConfirmations = confirmation;
             Logger.trace("[{}] confirmed {}", getCommunications().getConnectionName(), command);
-            return receivedConfirmation;
+            return lastConfirmation;
         }
         // Timeout expired.
         throw new Exception(getCommunications().getConnectionName()+" timeout waiting for response to "+command);
     }
 
+    /**
+     * Discard the confirmations received so far, i.e. the next {@link #waitForConfirmation(String, long)} 
+     * awaits a new one. 
+     */
+    protected void clearConfirmations() {
+        consumedConfirmations = receivedConfirmations.get();
+    }
+
     protected void bailOnError() throws Exception {
         if (errorResponse != null) {
             Line error = errorResponse; 
             errorResponse = null;
             throw new Exception(getCommunications().getConnectionName()+" error response from controller: " + error);
         }
-        if (readerThread == null || !readerThread.isAlive()) {
+        if (responseListener != null ? !responseListener.listening 
+                : (readerThread == null || !readerThread.isAlive())) {
             throw new Exception(getCommunications().getConnectionName()+" IO Error on reading from the controller.");
         }
     }
@@ -1330,7 +1538,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         if (responses == null) {
             return null;   
         }
-        Pattern pattern = Pattern.compile(regex);
+        Pattern pattern = getRegexPattern(regex);
         for (Line line : responses) {
             Matcher matcher = pattern.matcher(line.getLine());
             if (matcher.matches()) {
@@ -1441,18 +1649,10 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         if (isLoggingGcode()) {
 
             if (gcodeLogger == null) { 
-                File file;
-                try {
-                    file = Configuration.get().createResourceFile(getClass(), "log", ".g");
-                    gcodeLogger = new PrintWriter(file.getAbsolutePath());
-                }
-                catch (IOException e) {
-                    Logger.warn(e, "Cannot open Gcode log");
-                }
-            }
-            if (gcodeLogger != null) {
-                gcodeLogger.println(command);
+                gcodeLogger = new GcodeLogWriter(getClass(), getId(), loggingGcodeQueueCapacity, 
+                        loggingGcodeMaxFileBytes, loggingGcodeMaxFiles, loggingGcodeTimestamps);
             }
+            gcodeLogger.logSent(command);
         }
         else {
             closeGcodeLogger();
@@ -1490,7 +1690,6 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
                         Logger.error("[{}] Failed to read gcode response", connectionName);
                         return;
                     }
-                    receivedLine = receivedLine.trim();
                 }
                 catch (TimeoutException ex) {
                     continue;
@@ -1505,12 +1704,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
                         return;
                     }
                 }
-                Line line = new Line(receivedLine);
-                Logger.trace("[{}] << {}", connectionName, line);
-                // Process the response.
-                processResponse(line);
-                // Add to the responseQueue for further processing by the caller.
-                responseQueue.offer(line);
+                receiveLine(responseQueue, connectionName, receivedLine);
             }
             Logger.trace("[{}] disconnectRequested, bye-bye.", connectionName);
             if (connected) {
@@ -1519,38 +1713,88 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         }
     }
 
+    /**
+     * Receives the lines of communications that are read by a shared I/O thread, i.e. instead of the 
+     * ReaderThread. 
+     */
+    protected class ResponseListener implements ReferenceDriverCommunications.LineListener {
+        // Get the copies that are valid for this connection.
+        final LinkedBlockingQueue<Line> responseQueue = GcodeDriver.this.responseQueue;
+        final String connectionName = getCommunications().getConnectionName();
+        volatile boolean listening = true;
+
+        @Override
+        public void lineReceived(String receivedLine) {
+            receiveLine(responseQueue, connectionName, receivedLine);
+        }
+
+        @Override
+        public void readFailed(IOException e) {
+            listening = false;
+            if (disconnectRequested) {
+                Logger.trace("[{}] Read error while disconnecting (expected)", connectionName);
+            }
+            else {
+                Logger.error(e, "[{}] Read error", connectionName);
+            }
+        }
+    }
+
+    /**
+     * Handle a line received from the controller.
+     * 
+     * @param responseQueue
+     * @param connectionName
+     * @param receivedLine
+     */
+    protected void receiveLine(LinkedBlockingQueue<Line> responseQueue, String connectionName, String receivedLine) {
+        Line line = new Line(receivedLine.trim());
+        Logger.trace("[{}] << {}", connectionName, line);
+        GcodeLogWriter gcodeLogger = this.gcodeLogger;
+        if (gcodeLogger != null && loggingGcodeReceived) {
+            gcodeLogger.logReceived(line.getLine());
+        }
+        // Process the response.
+        processResponse(line);
+        if (!pendingActuatorReads.isEmpty() && completeActuatorRead(line)) {
+            // Consumed by an asynchronous actuator read.
+            return;
+        }
+        // Add to the responseQueue for further processing by the caller.
+        responseQueue.offer(line);
+    }
+
     /**
      * Process a received response immediately. 
      *  
      * @param line
      */
     protected void processResponse(Line line) {
-        String regex = getCommand(null, CommandType.COMMAND_CONFIRM_REGEX);
-        if (regex != null && line.getLine().matches(regex)) {
-            receivedConfirmationsQueue.add(line);
+        Pattern pattern = getRegexPattern(getCommand(null, CommandType.COMMAND_CONFIRM_REGEX));
+        if (pattern != null && pattern.matcher(line.getLine()).matches()) {
+            lastConfirmation = line;
+            receivedConfirmations.increment();
         }
-        regex = getCommand(null, CommandType.COMMAND_ERROR_REGEX);
-        if (regex != null && line.getLine().matches(regex)) {
+        pattern = getRegexPattern(getCommand(null, CommandType.COMMAND_ERROR_REGEX));
+        if (pattern != null && pattern.matcher(line.getLine()).matches()) {
             errorResponse = line;
         }
         processPositionReport(line);
     }
 
     protected boolean processPositionReport(Line line) {
-        String regex = getCommand(null, CommandType.POSITION_REPORT_REGEX); 
-        if (regex == null) {
+        Pattern pattern = getRegexPattern(getCommand(null, CommandType.POSITION_REPORT_REGEX)); 
+        if (pattern == null) {
             return false;
         }
 
-        if (!line.getLine().matches(regex)) {
+        Matcher matcher = pattern.matcher(line.getLine());
+        if (!matcher.matches()) {
             return false;
         }
 
         Logger.trace("Position report: {}", line);
         ReferenceMachine machine = ((ReferenceMachine) Configuration.get().getMachine());
-        Matcher matcher =
-                Pattern.compile(regex).matcher(line.getLine());
-        matcher.matches();
         AxesLocation position = AxesLocation.zero;
         for (ControllerAxis axis : new AxesLocation(machine).getAxes(this)) {
             try {
@@ -1611,7 +1855,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
         if (command == null) {
             return false;
         }
-        Matcher matcher = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}").matcher(command);
+        Matcher matcher = variablePattern.matcher(command);
         while (matcher.find()) {
             String n = matcher.group(1);
             if (!n.equals(name)) {
@@ -1810,9 +2054,10 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named {
     }
 
     protected void closeGcodeLogger() {
+        GcodeLogWriter gcodeLogger = this.gcodeLogger;
         if (gcodeLogger != null) {
+            this.gcodeLogger = null;
             gcodeLogger.close();
-            gcodeLogger = null;
         }
     }
 
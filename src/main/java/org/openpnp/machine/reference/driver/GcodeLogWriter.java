@@ -0,0 +1,259 @@
+package org.openpnp.machine.reference.driver;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.openpnp.model.Configuration;
+import org.openpnp.util.NanosecondTime;
+import org.pmw.tinylog.Logger;
+
+/**
+ * Writes the Gcode log of a driver on a background thread, so the thread sending the commands never waits for
+ * the file system. The lines are handed over through a preallocated ring of slots, so logging a line allocates
+ * nothing. If the writer can't keep up, lines are dropped rather than blocking the sender, and the number of 
+ * dropped lines is noted in the log.
+ *
+ * If writing fails, e.g. because the disk is full, the lines of the batch are counted as dropped, and the next 
+ * batch is written to a new file. 
+ *
+ * Sent commands are written as is, received lines and timestamps as comments, so the log remains valid Gcode.
+ * The log file is rotated when it reaches the maximum size, and only the newest files are kept. The file names
+ * carry the name of the log, e.g. the driver id, so multiple drivers can share the resource directory, and each
+ * only prunes its own files.
+ */
+public class GcodeLogWriter {
+    private static final String suffix = ".g";
+
+    private final Class<?> resourceClass;
+    private final String prefix;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final boolean timestamps;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // The ring of slots, guarded by its own monitor. Slots from head to tail are waiting to be written.
+    private final Object ring = new Object();
+    private final long [] times;
+    private final boolean [] received;
+    private final String [] lines;
+    private long head;
+    private long tail;
+    private long dropped;
+
+    // The batch taken from the ring by the writer thread.
+    private final long [] batchTimes;
+    private final boolean [] batchReceived;
+    private final String [] batchLines;
+
+    private Writer writer;
+    private long fileBytes;
+    private boolean failing;
+
+    /**
+     * @param resourceClass The class whose resource directory receives the log files.
+     * @param name The name of the log, used in the file names, e.g. the driver id.
+     * @param capacity Maximum number of lines waiting to be written.
+     * @param maxFileBytes The file is rotated when it reaches this size.
+     * @param maxFiles Number of log files kept in the resource directory.
+     * @param timestamps If true, each line is followed by a runtime timestamp in seconds.
+     */
+    public GcodeLogWriter(Class<?> resourceClass, String name, int capacity, long maxFileBytes, int maxFiles, 
+            boolean timestamps) {
+        this.resourceClass = resourceClass;
+        this.prefix = "log-"+name.replaceAll("[^A-Za-z0-9_]", "_")+"-";
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.timestamps = timestamps;
+        capacity = Math.max(1, capacity);
+        times = new long[capacity];
+        received = new boolean[capacity];
+        lines = new String[capacity];
+        batchTimes = new long[capacity];
+        batchReceived = new boolean[capacity];
+        batchLines = new String[capacity];
+        thread = new Thread(this::run, "GcodeLogWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void logSent(String command) {
+        log(false, command);
+    }
+
+    public void logReceived(String line) {
+        log(true, line);
+    }
+
+    private void log(boolean received, String line) {
+        long time = NanosecondTime.getRuntime();
+        synchronized (ring) {
+            if (closed || tail - head >= lines.length) {
+                dropped++;
+                return;
+            }
+            int slot = (int) (tail % lines.length);
+            times[slot] = time;
+            this.received[slot] = received;
+            lines[slot] = line;
+            if (tail++ == head) {
+                // Was empty, wake up the writer.
+                ring.notify();
+            }
+        }
+    }
+
+    /**
+     * Write the remaining lines and close the log file.
+     */
+    public void close() {
+        synchronized (ring) {
+            closed = true;
+            ring.notify();
+        }
+        try {
+            thread.join(1000);
+        }
+        catch (InterruptedException e) {
+        }
+    }
+
+    private void run() {
+        StringBuilder text = new StringBuilder();
+        try {
+            while (true) {
+                int count;
+                long droppedLines;
+                synchronized (ring) {
+                    while (head == tail && !closed) {
+                        ring.wait();
+                    }
+                    if (head == tail) {
+                        // Closed and everything written.
+                        break;
+                    }
+                    count = (int) (tail - head);
+                    for (int i = 0; i < count; i++) {
+                        int slot = (int) ((head + i) % lines.length);
+                        batchTimes[i] = times[slot];
+                        batchReceived[i] = received[slot];
+                        batchLines[i] = lines[slot];
+                        lines[slot] = null;
+                    }
+                    head = tail;
+                    droppedLines = dropped;
+                    dropped = 0;
+                }
+                text.setLength(0);
+                if (droppedLines > 0) {
+                    text.append("; ").append(droppedLines).append(" lines dropped\n");
+                }
+                for (int i = 0; i < count; i++) {
+                    format(text, batchTimes[i], batchReceived[i], batchLines[i]);
+                    batchLines[i] = null;
+                }
+                try {
+                    write(text);
+                    failing = false;
+                }
+                catch (IOException e) {
+                    if (!failing) {
+                        Logger.warn(e, "Cannot write Gcode log, lines are dropped until writing succeeds again");
+                        failing = true;
+                    }
+                    // Start over with a new file on the next batch.
+                    closeFile();
+                    synchronized (ring) {
+                        dropped += droppedLines + count;
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+        }
+        finally {
+            closeFile();
+        }
+    }
+
+    private void format(StringBuilder text, long time, boolean received, String line) {
+        if (received) {
+            text.append("; << ");
+        }
+        text.append(line);
+        if (timestamps) {
+            text.append(received ? " " : " ; ");
+            text.append(String.format(Locale.US, "@%.6f", time*1e-9));
+        }
+        text.append('\n');
+    }
+
+    private void write(StringBuilder text) throws IOException {
+        if (writer != null && fileBytes >= maxFileBytes) {
+            closeFile();
+        }
+        if (writer == null) {
+            File file = Configuration.get().createResourceFile(resourceClass, prefix, suffix);
+            writer = openWriter(file);
+            fileBytes = 0;
+            deleteOldFiles(file.getParentFile());
+        }
+        writer.append(text);
+        fileBytes += text.length();
+        writer.flush();
+    }
+
+    protected Writer openWriter(File file) throws IOException {
+        return new BufferedWriter(new FileWriter(file));
+    }
+
+    private void closeFile() {
+        if (writer != null) {
+            try {
+                writer.close();
+            }
+            catch (IOException e) {
+                if (!failing) {
+                    Logger.warn(e, "Cannot close Gcode log");
+                }
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * @param name
+     * @return True if the file name is one of this log, i.e. the prefix is followed by the time stamp only.
+     */
+    protected boolean isLogFile(String name) {
+        if (!(name.startsWith(prefix) && name.endsWith(suffix)) 
+                || name.length() <= prefix.length() + suffix.length()) {
+            return false;
+        }
+        for (int i = prefix.length(); i < name.length() - suffix.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void deleteOldFiles(File directory) {
+        File[] files = directory.listFiles((dir, name) -> isLogFile(name));
+        if (files == null || files.length <= maxFiles) {
+            return;
+        }
+        // The names contain the NanosecondTime, so they sort by age.
+        Arrays.sort(files);
+        for (int i = 0; i < files.length - maxFiles; i++) {
+            if (!files[i].delete()) {
+                Logger.warn("Cannot delete old Gcode log {}", files[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ *
+ * This file is part of OpenPnP.
+ *
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+package org.openpnp.machine.reference.driver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openpnp.model.Motion;
+import org.openpnp.model.Motion.MotionOption;
+import org.openpnp.model.MotionProfile;
+import org.openpnp.spi.ControllerAxis;
+import org.openpnp.spi.Driver.MotionControlType;
+
+/**
+ * Headless recorder of the executed motion, lightweight enough to be always on in production. Unlike the
+ * diagnostics of the ReferenceAdvancedMotionPlanner, it does not sample the motion into graphs, but records one
+ * row of numbers per executed move into a preallocated ring buffer. When the buffer is full, the oldest rows are
+ * overwritten.
+ *
+ * The columns are:
+ *
+ * <ul>
+ * <li>time0: Planned start time of the move in runtime seconds.</li>
+ * <li>timePlanned: Planned duration of the move.</li>
+ * <li>batchTimeRatio: Actual over planned time, averaged over the batch of moves completed together. The drivers
+ * do not confirm the single moves, the machine only reports completion when the planner waits for still-stand.
+ * Therefore all the moves since the last completion get the same ratio. NaN until completion.</li>
+ * <li>steps: Number of driver moveTo commands issued for the move, i.e. interpolation steps.</li>
+ * <li>interpolationFailed: 1 if the interpolation had to be degraded to a moderated move.</li>
+ * <li>queueDepth: The largest number of commands queued in the drivers after the move was issued.</li>
+ * <li>For each controller axis: peak velocity, acceleration and jerk of the planned move.</li>
+ * </ul>
+ *
+ * The rows can be exported as CSV for spreadsheets, or as a simple binary columnar file for offline analysis, see
+ * {@link #exportColumnar(OutputStream)}.
+ */
+public class MotionRecorder {
+    private static final String [] fixedColumns = new String [] {
+            "time0", "timePlanned", "batchTimeRatio", "steps", "interpolationFailed", "queueDepth"
+    };
+    private static final int time0 = 0;
+    private static final int timePlanned = 1;
+    private static final int batchTimeRatio = 2;
+    private static final int steps = 3;
+    private static final int interpolationFailed = 4;
+    private static final int queueDepth = 5;
+
+    /**
+     * Magic of the binary columnar format.
+     */
+    public static final String columnarMagic = "OPNPMRC1";
+
+    private final int capacity;
+    private List<ControllerAxis> axes;
+    private String [] columns;
+    private double [] data;
+    // Sequence numbers of the oldest row, the next row, and the first row not yet completed.
+    private long head;
+    private long tail;
+    private long pending;
+
+    /**
+     * @param capacity The number of rows (moves) that are retained.
+     */
+    public MotionRecorder(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Set the controller axes recorded, which clears the recording if they are different from before.
+     *
+     * @param axes
+     */
+    public synchronized void setAxes(List<ControllerAxis> axes) {
+        if (axes.equals(this.axes)) {
+            return;
+        }
+        this.axes = new ArrayList<>(axes);
+        columns = new String[fixedColumns.length + 3*axes.size()];
+        System.arraycopy(fixedColumns, 0, columns, 0, fixedColumns.length);
+        int col = fixedColumns.length;
+        for (ControllerAxis axis : axes) {
+            columns[col++] = axis.getName()+" v";
+            columns[col++] = axis.getName()+" a";
+            columns[col++] = axis.getName()+" j";
+        }
+        data = new double[capacity*columns.length];
+        head = tail = pending = 0;
+    }
+
+    public synchronized List<ControllerAxis> getAxes() {
+        return axes;
+    }
+
+    /**
+     * Record an executed move.
+     *
+     * @param motion The planned motion.
+     * @param stepCount Number of driver commands issued.
+     * @param queueDepthAfter Number of commands queued in the drivers.
+     */
+    public synchronized void recordMove(Motion motion, int stepCount, int queueDepthAfter) {
+        if (data == null) {
+            return;
+        }
+        if (tail - head == capacity) {
+            head++;
+            pending = Math.max(pending, head);
+        }
+        int stride = columns.length;
+        int o = (int) (tail % capacity)*stride;
+        data[o + time0] = motion.getPlannedTime0();
+        data[o + timePlanned] = motion.getTime();
+        data[o + batchTimeRatio] = Double.NaN;
+        data[o + steps] = stepCount;
+        data[o + interpolationFailed] = motion.hasOption(MotionOption.InterpolationFailed) ? 1 : 0;
+        data[o + queueDepth] = queueDepthAfter;
+        MotionProfile [] profiles = motion.getAxesProfiles();
+        int col = o + fixedColumns.length;
+        for (ControllerAxis axis : axes) {
+            Integer index = motion.getAxisIndex(axis);
+            if (index != null) {
+                MotionProfile profile = profiles[index];
+                data[col++] = profile.getProfileVelocity(MotionControlType.Full3rdOrderControl);
+                data[col++] = profile.getProfileAcceleration(MotionControlType.Full3rdOrderControl);
+                data[col++] = profile.getProfileJerk(MotionControlType.Full3rdOrderControl);
+            }
+            else {
+                data[col++] = 0;
+                data[col++] = 0;
+                data[col++] = 0;
+            }
+        }
+        tail++;
+    }
+
+    /**
+     * Record the completion of all the moves since the last completion, as a batch. They all get the ratio of the
+     * actual over the planned time of the batch.
+     *
+     * @param time The time of completion in runtime seconds.
+     */
+    public synchronized void recordCompletion(double time) {
+        if (data == null || pending == tail) {
+            return;
+        }
+        int stride = columns.length;
+        double planned = 0;
+        for (long i = pending; i < tail; i++) {
+            planned += data[(int) (i % capacity)*stride + timePlanned];
+        }
+        double actual = time - data[(int) (pending % capacity)*stride + time0];
+        double ratio = planned > 0 ? actual/planned : 1.0;
+        for (long i = pending; i < tail; i++) {
+            data[(int) (i % capacity)*stride + batchTimeRatio] = ratio;
+        }
+        pending = tail;
+    }
+
+    public synchronized int size() {
+        return (int) (tail - head);
+    }
+
+    public synchronized void clear() {
+        head = tail = pending = 0;
+    }
+
+    /**
+     * @return A copy of the column names.
+     */
+    public synchronized String [] getColumns() {
+        return columns == null ? new String[0] : columns.clone();
+    }
+
+    /**
+     * @param row The row index, 0 being the oldest retained row.
+     * @param column
+     * @return The recorded value.
+     */
+    public synchronized double getValue(int row, int column) {
+        if (row < 0 || row >= tail - head) {
+            throw new IndexOutOfBoundsException("Row "+row+" not in recording of size "+(tail - head));
+        }
+        return data[(int) ((head + row) % capacity)*columns.length + column];
+    }
+
+    /**
+     * @return A snapshot of the recording in columns, i.e. indexed [column][row].
+     */
+    public synchronized double [][] getColumnData() {
+        int rows = (int) (tail - head);
+        int stride = columns == null ? 0 : columns.length;
+        double [][] columnData = new double[stride][rows];
+        for (int row = 0; row < rows; row++) {
+            int o = (int) ((head + row) % capacity)*stride;
+            for (int col = 0; col < stride; col++) {
+                columnData[col][row] = data[o + col];
+            }
+        }
+        return columnData;
+    }
+
+    /**
+     * Export the recording as CSV, with a header line of the column names.
+     *
+     * @param writer
+     * @throws IOException
+     */
+    public void exportCsv(Writer writer) throws IOException {
+        String [] columns;
+        double [][] columnData;
+        synchronized (this) {
+            columns = getColumns();
+            columnData = getColumnData();
+        }
+        PrintWriter out = new PrintWriter(writer);
+        out.println(String.join(",", columns));
+        int rows = columnData.length > 0 ? columnData[0].length : 0;
+        StringBuilder line = new StringBuilder();
+        for (int row = 0; row < rows; row++) {
+            line.setLength(0);
+            for (int col = 0; col < columns.length; col++) {
+                if (col > 0) {
+                    line.append(',');
+                }
+                double value = columnData[col][row];
+                if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                    line.append((long) value);
+                }
+                else {
+                    line.append(value);
+                }
+            }
+            out.println(line);
+        }
+        out.flush();
+    }
+
+    /**
+     * Export the recording as a binary columnar file, which can be memory-mapped or read column by column by
+     * analysis tools. All numbers are big-endian:
+     *
+     * <ul>
+     * <li>The magic {@link #columnarMagic} in ASCII.</li>
+     * <li>int: Number of columns.</li>
+     * <li>int: Number of rows.</li>
+     * <li>For each column: int length of the UTF-8 name, followed by the name bytes.</li>
+     * <li>For each column: the row values as doubles.</li>
+     * </ul>
+     *
+     * @param outputStream
+     * @throws IOException
+     */
+    public void exportColumnar(OutputStream outputStream) throws IOException {
+        String [] columns;
+        double [][] columnData;
+        synchronized (this) {
+            columns = getColumns();
+            columnData = getColumnData();
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.write(columnarMagic.getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(columns.length);
+        out.writeInt(columnData.length > 0 ? columnData[0].length : 0);
+        for (String column : columns) {
+            byte [] name = column.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+        }
+        for (double [] column : columnData) {
+            for (double value : column) {
+                out.writeDouble(value);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Export the recording to a file, as CSV if the file name ends with .csv, otherwise in the binary columnar
+     * format.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void export(File file) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            if (file.getName().toLowerCase().endsWith(".csv")) {
+                try (Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)) {
+                    exportCsv(writer);
+                }
+            }
+            else {
+                exportColumnar(outputStream);
+            }
+        }
+    }
+}
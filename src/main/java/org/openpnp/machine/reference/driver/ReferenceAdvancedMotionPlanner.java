@@ -22,10 +22,14 @@
 package org.openpnp.machine.reference.driver;
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.swing.UIManager;
 
@@ -47,6 +51,7 @@ import org.openpnp.spi.Axis;
 import org.openpnp.spi.ControllerAxis;
 import org.openpnp.spi.Driver;
 import org.openpnp.spi.HeadMountable;
+import org.openpnp.spi.base.AbstractHeadMountable;
 import org.openpnp.util.MovableUtils;
 import org.openpnp.util.NanosecondTime;
 import org.openpnp.util.SimpleGraph;
@@ -67,6 +72,18 @@ public class ReferenceAdvancedMotionPlanner extends AbstractMotionPlanner {
     private boolean diagnosticsEnabled = false;
     @Attribute(required = false)
     private boolean interpolationRetiming = true;
+    @Attribute(required = false)
+    private boolean cornerSmoothing = false;
+    @Attribute(required = false)
+    private boolean safeZBlending = false;
+    @Attribute(required = false)
+    private boolean lookAheadPlanning = false;
+    @Attribute(required = false)
+    private int lookAheadHorizon = 4;
+    @Attribute(required = false)
+    private boolean parallelSolving = false;
+    @Attribute(required = false)
+    private int solverIterations = 3;
 
     @Attribute(required = false)
     protected double minimumSpeed = 0.05;
@@ -121,6 +138,25 @@ public class ReferenceAdvancedMotionPlanner extends AbstractMotionPlanner {
     private boolean recordingInterpolationFailed;
     private boolean recordingMotionLocked;
 
+    protected static class LookAheadWaypoint {
+        final HeadMountable hm;
+        final AxesLocation location;
+        final AxesLocation travelLocation;
+        final double speed;
+
+        LookAheadWaypoint(HeadMountable hm, AxesLocation location, double speed) {
+            this.hm = hm;
+            this.location = location;
+            this.travelLocation = location.byType(Axis.Type.X, Axis.Type.Y, Axis.Type.Rotation);
+            this.speed = speed;
+        }
+    }
+    private LinkedList<LookAheadWaypoint> lookAheadWaypoints = new LinkedList<>();
+    private Motion lookAheadExit;
+
+    // Shared by all planners, the worker threads are only created when needed.
+    private static ForkJoinPool solverPool;
+
     public boolean isAllowContinuousMotion() {
         return allowContinuousMotion;
     }
@@ -146,6 +182,64 @@ public class ReferenceAdvancedMotionPlanner extends AbstractMotionPlanner {
         this.interpolationRetiming = interpolationRetiming;
     }
 
+    public boolean isCornerSmoothing() {
+        return cornerSmoothing;
+    }
+
+    public void setCornerSmoothing(boolean cornerSmoothing) {
+        this.cornerSmoothing = cornerSmoothing;
+    }
+
+    public boolean isSafeZBlending() {
+        return safeZBlending;
+    }
+
+    public void setSafeZBlending(boolean safeZBlending) {
+        this.safeZBlending = safeZBlending;
+    }
+
+    public boolean isLookAheadPlanning() {
+        return lookAheadPlanning;
+    }
+
+    public void setLookAheadPlanning(boolean lookAheadPlanning) {
+        this.lookAheadPlanning = lookAheadPlanning;
+        if (!lookAheadPlanning) {
+            clearLookAheadWaypoints();
+        }
+    }
+
+    public int getLookAheadHorizon() {
+        return lookAheadHorizon;
+    }
+
+    public void setLookAheadHorizon(int lookAheadHorizon) {
+        this.lookAheadHorizon = lookAheadHorizon;
+    }
+
+    public boolean isParallelSolving() {
+        return parallelSolving;
+    }
+
+    public void setParallelSolving(boolean parallelSolving) {
+        this.parallelSolving = parallelSolving;
+    }
+
+    public int getSolverIterations() {
+        return solverIterations;
+    }
+
+    public void setSolverIterations(int solverIterations) {
+        this.solverIterations = Math.max(1, solverIterations);
+    }
+
+    protected static synchronized ForkJoinPool getSolverPool() {
+        if (solverPool == null) {
+            solverPool = new ForkJoinPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+        }
+        return solverPool;
+    }
+
     @Override
     public double getMinimumSpeed() {
         return minimumSpeed;
@@ -342,6 +436,9 @@ public class ReferenceAdvancedMotionPlanner extends AbstractMotionPlanner {
         public PlannerPath(List<Motion> executionPlan) {
             super();
             this.executionPlan = executionPlan;
+            setCornerSmoothing(cornerSmoothing);
+            setIterations(solverIterations);
+            setSolverPool(parallelSolving ? getSolverPool() : null);
         }
 
         @Override
@@ -358,6 +455,11 @@ public class ReferenceAdvancedMotionPlanner extends AbstractMotionPlanner {
     @Override
     protected Motion addMotion(HeadMountable hm, double speed, AxesLocation location0,
             AxesLocation location1, int options) {
+        return super.addMotion(hm, speed, location0, location1, 
+                getMotionOptions(location0, location1, options));
+    }
+
+    protected int getMotionOptions(AxesLocation location0, AxesLocation location1, int options) {
         if (allowUncoordinated) {
             if (location0.isInSafeZone()
                     && location1.isInSafeZone()) {
@@ -370,14 +472,200 @@ public class ReferenceAdvancedMotionPlanner extends AbstractMotionPlanner {
                         ;
             }
         }
-        return super.addMotion(hm, speed, location0, location1, options);
+        return options;
     }
 
     @Override
     protected void optimizeExecutionPlan(List<Motion> executionPlan,
             CompletionType completionType) throws Exception {
-        PlannerPath path = new PlannerPath(executionPlan);
+        if (safeZBlending) {
+            blendSafeZMotion(executionPlan);
+        }
+        List<Motion> pathPlan = executionPlan;
+        if (lookAheadPlanning) {
+            consumeLookAheadWaypoints(executionPlan);
+            pathPlan = getLookAheadPlan(executionPlan, completionType);
+        }
+        PlannerPath path = new PlannerPath(pathPlan);
+        if (lookAheadExit != null 
+                && !executionPlan.isEmpty()
+                && lookAheadExit.getLocation1().matches(executionPlan.get(0).getLocation0())
+                && motionPlan.getLastTime() > NanosecondTime.getRuntimeSeconds()) {
+            // The previous plan was left in motion and is still running, continue from there.
+            path.continueFrom(lookAheadExit.getAxesProfiles());
+        }
         path.solve();
+        // If look-ahead motion was planned, the last executed motion is left in motion.
+        lookAheadExit = (pathPlan.size() > executionPlan.size() ? 
+                executionPlan.get(executionPlan.size() - 1) : null);
+    }
+
+    /**
+     * Blend the moves of moveToLocationAtSafeZ() sequences into a "dog-bone" path. A travel move in the Safe Zone
+     * that is preceded by a Z lift into the Safe Zone, or followed by a Z descent out of it, is planned uncoordinated 
+     * and limited to the Safe Zone. Z then passes the Safe Zone boundary in motion: XY travel starts as soon as Z 
+     * has cleared the boundary, Z overshoots into the Safe Zone and starts its descent while XY is still 
+     * decelerating, reaching the boundary again when XY arrives.
+     * 
+     * Unlike {@link #isAllowUncoordinated()}, this only applies to the travel moves of such sequences. 
+     * 
+     * @param executionPlan
+     */
+    protected void blendSafeZMotion(List<Motion> executionPlan) {
+        Motion [] motions = executionPlan.toArray(new Motion[executionPlan.size()]);
+        ListIterator<Motion> iterator = executionPlan.listIterator();
+        for (int i = 0; i < motions.length; i++) {
+            iterator.next();
+            Motion motion = motions[i];
+            if (isSafeZTravel(motion)
+                    && ((i > 0 && isSafeZCrossing(motions[i - 1], motion, true))
+                            || (i + 1 < motions.length && isSafeZCrossing(motions[i + 1], motion, false)))) {
+                int options = motion.getOptions() 
+                        | MotionOption.UncoordinatedMotion.flag()
+                        | MotionOption.LimitToSafeZone.flag()
+                        | MotionOption.SynchronizeStraighten.flag();
+                if (options != motion.getOptions()) {
+                    // The options determine the profile limits, so the motion must be recreated.
+                    iterator.set(new Motion(motion.getHeadMountable(), motion.getLocation0(), motion.getLocation1(), 
+                            motion.getNominalSpeed(), options));
+                }
+            }
+        }
+    }
+
+    protected boolean isSafeZTravel(Motion motion) {
+        return motion.getHeadMountable() != null
+                && !motion.hasOption(MotionOption.Stillstand)
+                && !motion.hasOption(MotionOption.JogMotion)
+                && motion.getLocation0().isInSafeZone()
+                && motion.getLocation1().isInSafeZone();
+    }
+
+    /**
+     * @param zMotion
+     * @param travel
+     * @param lift If true, checks for a lift before the travel, otherwise for a descent after it. 
+     * @return True if zMotion only moves Z, from outside into the Safe Zone right before the travel, or from the 
+     * Safe Zone to the outside right after the travel.
+     */
+    protected boolean isSafeZCrossing(Motion zMotion, Motion travel, boolean lift) {
+        if (zMotion.getHeadMountable() != travel.getHeadMountable()
+                || zMotion.hasOption(MotionOption.Stillstand)
+                || zMotion.hasOption(MotionOption.JogMotion)) {
+            return false;
+        }
+        AxesLocation segment = zMotion.getLocation0().motionSegmentTo(zMotion.getLocation1());
+        if (segment.isEmpty() || segment.byType(Axis.Type.Z).size() != segment.size()) {
+            return false;
+        }
+        if (lift) {
+            return !zMotion.getLocation0().isInSafeZone()
+                    && zMotion.getLocation1().matches(travel.getLocation0());
+        }
+        else {
+            return !zMotion.getLocation1().isInSafeZone()
+                    && zMotion.getLocation0().matches(travel.getLocation1());
+        }
+    }
+
+    @Override
+    public void waitForCompletion(HeadMountable hm, CompletionType completionType) throws Exception {
+        super.waitForCompletion(hm, completionType);
+        if (completionType.isEnforcingStillstand()) {
+            // The machine is in still-stand, there is no motion to continue from.
+            lookAheadExit = null;
+        }
+    }
+
+    @Override
+    public synchronized void addLookAheadWaypoint(HeadMountable hm, Location location, double speed) throws Exception {
+        if (!lookAheadPlanning) {
+            return;
+        }
+        location = AbstractHeadMountable.substituteUnchangedCoordinates(location, hm.getLocation());
+        AxesLocation axesLocation = hm.toRaw(hm.toHeadLocation(location));
+        speed = Math.max(getMinimumSpeed(), speed);
+        if (hm.getHead() != null) {
+            speed *= hm.getHead().getMaxPartSpeed();
+        }
+        lookAheadWaypoints.add(new LookAheadWaypoint(hm, axesLocation, speed));
+    }
+
+    @Override
+    public synchronized void clearLookAheadWaypoints() {
+        lookAheadWaypoints.clear();
+    }
+
+    /**
+     * Remove the waypoints that are reached by the execution plan. When a waypoint is reached, all the waypoints 
+     * before it are skipped too.
+     * 
+     * @param executionPlan
+     */
+    protected void consumeLookAheadWaypoints(List<Motion> executionPlan) {
+        for (Motion motion : executionPlan) {
+            int i = 0;
+            for (LookAheadWaypoint waypoint : lookAheadWaypoints) {
+                i++;
+                if (waypoint.travelLocation.matches(motion.getLocation1())) {
+                    while (i-- > 0) {
+                        lookAheadWaypoints.removeFirst();
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Extend the execution plan with the motion to the next look-ahead waypoints, the way moveToLocationAtSafeZ() 
+     * would move there, i.e. travel at Safe Z, then descend. The look-ahead motion is only solved as part of 
+     * the path, so the execution plan need not end in still-stand. It is never executed. The look-ahead ends 
+     * with the first motion that leaves the Safe Zone, as the machine will typically have to stop there, 
+     * or when the horizon is reached.  
+     * 
+     * @param executionPlan
+     * @param completionType
+     * @return The execution plan, extended by look-ahead motion if applicable. 
+     */
+    protected List<Motion> getLookAheadPlan(List<Motion> executionPlan, CompletionType completionType) {
+        if (completionType.isEnforcingStillstand() 
+                || lookAheadWaypoints.isEmpty() 
+                || executionPlan.isEmpty()) {
+            return executionPlan;
+        }
+        Motion lastMotion = executionPlan.get(executionPlan.size() - 1);
+        if (lastMotion.hasOption(MotionOption.Stillstand)
+                || lastMotion.hasOption(MotionOption.JogMotion)
+                || !lastMotion.getLocation1().isInSafeZone()) {
+            return executionPlan;
+        }
+        List<Motion> pathPlan = new ArrayList<>(executionPlan);
+        AxesLocation location0 = lastMotion.getLocation1();
+        for (LookAheadWaypoint waypoint : lookAheadWaypoints) {
+            if (pathPlan.size() - executionPlan.size() >= lookAheadHorizon) {
+                break;
+            }
+            AxesLocation location1 = location0.put(waypoint.travelLocation);
+            if (!location1.matches(location0)) {
+                pathPlan.add(new Motion(waypoint.hm, location0, location1, waypoint.speed, 
+                        getMotionOptions(location0, location1, 0)));
+                location0 = location1;
+            }
+            location1 = location0.put(waypoint.location);
+            if (!location1.matches(location0)) {
+                pathPlan.add(new Motion(waypoint.hm, location0, location1, waypoint.speed, 
+                        getMotionOptions(location0, location1, 0)));
+                location0 = location1;
+            }
+            if (!location0.isInSafeZone()) {
+                break;
+            }
+        }
+        if (pathPlan.size() > executionPlan.size() + lookAheadHorizon) {
+            return pathPlan.subList(0, executionPlan.size() + lookAheadHorizon);
+        }
+        return pathPlan;
     }
 
     protected void startNewMotionGraph() {
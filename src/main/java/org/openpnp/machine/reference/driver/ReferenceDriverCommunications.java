@@ -59,6 +59,32 @@ public abstract class ReferenceDriverCommunications {
 
     protected String driverName;
 
+    /**
+     * Receive buffer used by readLine() to frame the lines. Whatever bytes are available are bulk-read
+     * into it, using {@link #read(byte[], int, int)}, then the lines are framed from the buffered bytes.
+     * This avoids one read call (and often one system call) per received byte.
+     */
+    private final byte[] receiveBuffer = new byte[4096];
+    private int receivePosition;
+    private int receiveLength;
+
+    /**
+     * Receives the lines of a connection that is read by a shared I/O thread, rather than by a reader thread
+     * of the driver. See {@link #startLineListening(LineListener)}.
+     */
+    public interface LineListener {
+        /**
+         * Called for each received line, with the line ending removed. Empty lines are skipped.
+         * Must not block.
+         */
+        void lineReceived(String line);
+
+        /**
+         * Called once, when reading failed or the connection was closed. No more lines will be received.
+         */
+        void readFailed(IOException e);
+    }
+
     abstract public void connect() throws Exception;
     abstract public void disconnect() throws Exception;
 
@@ -74,9 +100,44 @@ public abstract class ReferenceDriverCommunications {
 
     abstract public int read() throws TimeoutException, IOException;
 
+    /**
+     * Read the bytes that are available from the input stream, up to the given length. Blocks until at least
+     * one byte is available or for the default timeout. If the read times out a TimeoutException is thrown. 
+     * Any other failure to read results in an IOExeption.
+     * 
+     * The default implementation reads a single byte using {@link #read()}. Implementations should override 
+     * this to read all the available bytes at once. 
+     *
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return The number of bytes read, or -1 if the end of the stream is reached.
+     * @throws TimeoutException
+     * @throws IOException
+     */
+    protected int read(byte[] buffer, int offset, int length) throws TimeoutException, IOException {
+        int ch = read();
+        if (ch == -1) {
+            return -1;
+        }
+        buffer[offset] = (byte) ch;
+        return 1;
+    }
+
+    /**
+     * Discard any bytes still buffered by readLine(). Must be called when the connection is (re-)established. 
+     */
+    protected void resetReceiveBuffer() {
+        receivePosition = 0;
+        receiveLength = 0;
+    }
+
     /**
      * Read a line from the input stream. Blocks for the default timeout. If the read times out a
      * TimeoutException is thrown. Any other failure to read results in an IOExeption;
+     * 
+     * Note, the input is read ahead into a receive buffer, therefore line based reading must not be mixed 
+     * with reading single bytes using {@link #read()}.
      *
      * @return
      * @throws TimeoutException
@@ -86,6 +147,21 @@ public abstract class ReferenceDriverCommunications {
         return readUntil("\r\n");
     }
 
+    /**
+     * Start delivering the received lines to the listener, instead of having them read by 
+     * {@link #readLine()}. 
+     * 
+     * The default implementation does not support this and returns false, the caller must then read the
+     * lines itself. 
+     * 
+     * @param listener
+     * @return true if the lines are now delivered to the listener.
+     * @throws IOException
+     */
+    public boolean startLineListening(LineListener listener) throws IOException {
+        return false;
+    }
+
     public void writeLine(String data) throws IOException {
         byte [] line = Collect.concat(data.getBytes(), getLineEndingType().getLineEnding().getBytes());
         writeBytes(line);
@@ -101,26 +177,33 @@ public abstract class ReferenceDriverCommunications {
      * @throws IOException
      */
     protected String readUntil(String characters) throws TimeoutException, IOException {
-        StringBuffer line = new StringBuffer();
+        StringBuilder line = new StringBuilder();
         while (true) {
-            int ch = -1;
-            try {
-                ch = read();
-            }
-            catch (TimeoutException e) {
-                // In case an implementation has a read timeout, we must not stop reading.
+            if (receivePosition >= receiveLength) {
+                // Buffer consumed, bulk-read whatever is available.
+                int length;
+                try {
+                    length = read(receiveBuffer, 0, receiveBuffer.length);
+                }
+                catch (TimeoutException e) {
+                    // In case an implementation has a read timeout, we must not stop reading.
+                    continue;
+                }
+                if (length == -1) {
+                    return null;
+                }
+                receivePosition = 0;
+                receiveLength = length;
                 continue;
             }
-            if (ch == -1) {
-                return null;
-            }
-            else if (characters.indexOf((char)ch) >= 0) {
+            char ch = (char) (receiveBuffer[receivePosition++] & 0xff);
+            if (characters.indexOf(ch) >= 0) {
                 if (line.length() > 0) {
                     return line.toString();
                 }
             }
             else {
-                line.append((char) ch);
+                line.append(ch);
             }
         }
     }
@@ -0,0 +1,87 @@
+package org.openpnp.machine.reference.driver;
+
+/**
+ * A monotonically increasing sequence number, advanced by one single thread, that other threads can wait on
+ * until a target sequence number is reached.
+ *
+ * Advancing the sequence is lock-free as long as nobody is waiting. Waiters are parked on the monitor, and
+ * released as soon as their target is reached, i.e. there is no polling interval.
+ */
+public class SequenceCounter {
+    private volatile long sequence;
+    private volatile int waiters;
+
+    public SequenceCounter() {
+        this(0);
+    }
+
+    public SequenceCounter(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return The current sequence number.
+     */
+    public long get() {
+        return sequence;
+    }
+
+    /**
+     * Advance the sequence by one. Must only be called from the one thread that owns the sequence.
+     *
+     * @return The new sequence number.
+     */
+    public long increment() {
+        return set(sequence + 1);
+    }
+
+    /**
+     * Set the sequence to a new, higher number. Must only be called from the one thread that owns the
+     * sequence.
+     *
+     * @param sequence
+     * @return The new sequence number.
+     */
+    public long set(long sequence) {
+        this.sequence = sequence;
+        // Volatile write of the sequence, then volatile read of the waiters, the waiter does it the other
+        // way around, so either we see the waiter or the waiter sees the new sequence.
+        if (waiters > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * Wait until the sequence has reached the target number.
+     *
+     * @param target
+     * @param timeout Timeout in milliseconds.
+     * @return true if the target was reached, false if the timeout expired.
+     * @throws InterruptedException
+     */
+    public boolean await(long target, long timeout) throws InterruptedException {
+        if (sequence >= target) {
+            return true;
+        }
+        long t1 = System.currentTimeMillis() + timeout;
+        synchronized (this) {
+            waiters++;
+            try {
+                while (sequence < target) {
+                    long remaining = t1 - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    wait(remaining);
+                }
+                return true;
+            }
+            finally {
+                waiters--;
+            }
+        }
+    }
+}
@@ -110,6 +110,7 @@ public class SerialPortCommunications extends ReferenceDriverCommunications {
         }
         serialPort.setComPortTimeouts(
                 SerialPort.TIMEOUT_READ_SEMI_BLOCKING | SerialPort.TIMEOUT_WRITE_BLOCKING, 0, 0);
+        resetReceiveBuffer();
     }
 
     @Override
@@ -155,6 +156,25 @@ public class SerialPortCommunications extends ReferenceDriverCommunications {
         return b[0];
     }
 
+    @Override
+    protected int read(byte[] buffer, int offset, int length) throws TimeoutException, IOException {
+        int l;
+        try {
+            // Semi-blocking, i.e. this returns as soon as at least one byte is available.
+            l = serialPort.readBytes(buffer, length, offset);
+        }
+        catch (NullPointerException e) {
+            throw new IOException("Trying to read from a unconnected serial.");
+        }
+        if (l == -1) {
+            throw new IOException("Read error.");
+        }
+        if (l == 0) {
+            throw new TimeoutException("Read timeout.");
+        }
+        return l;
+    }
+
     @Override
     public void writeBytes(byte[] data) throws IOException {
         int l = serialPort.writeBytes(data, data.length);
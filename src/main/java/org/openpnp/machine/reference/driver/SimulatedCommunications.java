@@ -1,9 +1,9 @@
 package org.openpnp.machine.reference.driver;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.util.concurrent.TimeoutException;
@@ -18,7 +18,7 @@ import org.pmw.tinylog.Logger;
  */
 public class SimulatedCommunications extends ReferenceDriverCommunications {
     protected Socket clientSocket;
-    protected BufferedReader input;
+    protected InputStream input;
     protected DataOutputStream output;
 
     protected GcodeServer gcodeServer;
@@ -39,8 +39,9 @@ public class SimulatedCommunications extends ReferenceDriverCommunications {
             gcodeServer.setDriver(driver);
         }
         clientSocket = new Socket("localhost", getGcodeServer().getListenerPort());
-        input = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+        input = new BufferedInputStream(clientSocket.getInputStream());
         output = new DataOutputStream(clientSocket.getOutputStream());
+        resetReceiveBuffer();
     }
 
     @Override
@@ -86,6 +87,22 @@ public class SimulatedCommunications extends ReferenceDriverCommunications {
         }
     }
 
+    @Override
+    protected int read(byte[] buffer, int offset, int length) throws TimeoutException, IOException {
+        try {
+            return input.read(buffer, offset, length);
+        }
+        catch (NullPointerException ex) {
+            throw new IOException("Trying to read from a unconnected socket.");
+        }
+        catch (IOException ex) {
+            if (ex.getCause() instanceof SocketTimeoutException) {
+                throw new TimeoutException(ex.getMessage());
+            }
+            throw ex;
+        }
+    }
+
     @Override
     public void write(int d) throws IOException {
         output.write(d);
@@ -0,0 +1,234 @@
+package org.openpnp.machine.reference.driver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.openpnp.machine.reference.driver.ReferenceDriverCommunications.LineListener;
+import org.pmw.tinylog.Logger;
+
+/**
+ * Multiplexes the receiving side of all the non-blocking {@link TcpCommunications} onto one shared I/O
+ * thread. Each registered channel is read into a direct ByteBuffer as soon as data arrives, the lines are
+ * framed and handed to the channel's {@link LineListener}.
+ *
+ * With multiple TCP connected controllers, this replaces one blocking reader thread per driver.
+ *
+ * Writing stays with the caller's thread. If the socket send buffer is full, the writer waits until the
+ * selector reports the channel as writable again, see {@link #awaitWritable(SocketChannel)}.
+ */
+public class TcpChannelSelector extends Thread {
+    private static TcpChannelSelector instance;
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Connection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(8192);
+
+    private static class Connection {
+        final SocketChannel channel;
+        final LineListener listener;
+        final StringBuilder line = new StringBuilder();
+        final CountDownLatch registered = new CountDownLatch(1);
+        boolean writeWaiting;
+
+        Connection(SocketChannel channel, LineListener listener) {
+            this.channel = channel;
+            this.listener = listener;
+        }
+
+        synchronized void writable() {
+            writeWaiting = false;
+            notifyAll();
+        }
+    }
+
+    private TcpChannelSelector() throws IOException {
+        super("TcpChannelSelector");
+        selector = Selector.open();
+        setDaemon(true);
+    }
+
+    /**
+     * @return The shared selector, started on first use.
+     * @throws IOException
+     */
+    public static synchronized TcpChannelSelector get() throws IOException {
+        if (instance == null || !instance.isAlive()) {
+            instance = new TcpChannelSelector();
+            instance.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Register a connected channel, switching it to non-blocking mode. Received lines are handed to the
+     * listener on the selector thread, therefore the listener must not block. The registration ends when
+     * the channel is unregistered, or when reading fails, in which case
+     * {@link LineListener#readFailed(IOException)} is called.
+     *
+     * Returns when the channel is registered, so it can be written right away.
+     *
+     * @param channel
+     * @param listener
+     * @throws IOException
+     */
+    public void register(SocketChannel channel, LineListener listener) throws IOException {
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel, listener);
+        pendingRegistrations.add(connection);
+        selector.wakeup();
+        if (Thread.currentThread() != this) {
+            try {
+                connection.registered.await();
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * Cancel the registration of a channel. No more lines are handed to its listener and writers waiting
+     * on it are released. The channel itself is not closed, but can be closed cleanly afterwards.
+     *
+     * @param channel
+     */
+    public void unregister(SocketChannel channel) {
+        SelectionKey key = channel.keyFor(selector);
+        if (key != null) {
+            key.cancel();
+            release(key);
+        }
+        // Let the selector deregister the cancelled key, so closing the channel is completed.
+        selector.wakeup();
+    }
+
+    /**
+     * Wait until a registered channel is writable, i.e. the socket send buffer has room again.
+     *
+     * @param channel
+     * @throws IOException if the channel is not (or no longer) registered.
+     */
+    public void awaitWritable(SocketChannel channel) throws IOException {
+        SelectionKey key = channel.keyFor(selector);
+        if (key == null || !key.isValid()) {
+            throw new IOException("Channel is not registered.");
+        }
+        Connection connection = (Connection) key.attachment();
+        synchronized (connection) {
+            connection.writeWaiting = true;
+            try {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                selector.wakeup();
+                while (connection.writeWaiting) {
+                    connection.wait();
+                }
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            catch (CancelledKeyException e) {
+                throw new IOException("Channel is not registered.", e);
+            }
+            finally {
+                connection.writeWaiting = false;
+            }
+        }
+        if (!key.isValid()) {
+            throw new IOException("Channel is not registered.");
+        }
+    }
+
+    private void release(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        if (connection != null) {
+            connection.writable();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                Connection connection;
+                while ((connection = pendingRegistrations.poll()) != null) {
+                    try {
+                        connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                    }
+                    catch (IOException e) {
+                        connection.listener.readFailed(e);
+                    }
+                    finally {
+                        connection.registered.countDown();
+                    }
+                }
+                selector.select();
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    try {
+                        if (key.isValid() && key.isWritable()) {
+                            key.interestOps(SelectionKey.OP_READ);
+                            release(key);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                    }
+                    catch (CancelledKeyException e) {
+                        // Unregistered concurrently.
+                        release(key);
+                    }
+                }
+            }
+        }
+        catch (ClosedSelectorException e) {
+            Logger.trace("TcpChannelSelector closed, bye-bye.");
+        }
+        catch (Exception e) {
+            Logger.error(e, "TcpChannelSelector failed");
+        }
+    }
+
+    private void read(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            readBuffer.clear();
+            int length = connection.channel.read(readBuffer);
+            if (length == -1) {
+                throw new IOException("Connection closed by the peer.");
+            }
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                char ch = (char) (readBuffer.get() & 0xff);
+                if (ch == '\r' || ch == '\n') {
+                    if (connection.line.length() > 0) {
+                        String line = connection.line.toString();
+                        connection.line.setLength(0);
+                        connection.listener.lineReceived(line);
+                    }
+                }
+                else {
+                    connection.line.append(ch);
+                }
+            }
+        }
+        catch (IOException e) {
+            key.cancel();
+            release(key);
+            connection.listener.readFailed(e);
+        }
+        catch (RuntimeException e) {
+            // Never let one failing listener stop the other connections.
+            Logger.error(e, "TcpChannelSelector line listener failed");
+        }
+    }
+}
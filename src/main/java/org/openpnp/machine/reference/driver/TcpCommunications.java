@@ -1,11 +1,15 @@
 package org.openpnp.machine.reference.driver;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.TimeoutException;
 
 import org.openpnp.util.GcodeServer;
@@ -25,9 +29,18 @@ public class TcpCommunications extends ReferenceDriverCommunications {
     @Attribute(required = false)
     protected String name = "TcpCommunications";
 
+    /**
+     * If true, the connection is a SocketChannel and the received lines are delivered by the shared
+     * {@link TcpChannelSelector} thread, instead of being read by a reader thread per driver. The channel only
+     * becomes non-blocking once a {@link LineListener} is started, drivers that do not support it read the
+     * channel blocking, as usual.
+     */
+    @Attribute(required = false)
+    protected boolean nonBlockingIo = false;
 
     protected Socket clientSocket;
-    protected BufferedReader input;
+    protected SocketChannel channel;
+    protected InputStream input;
     protected DataOutputStream output;
     protected GcodeServer gcodeServer;
     protected AbstractReferenceDriver driver;
@@ -35,21 +48,33 @@ public class TcpCommunications extends ReferenceDriverCommunications {
     @Override
     public synchronized void connect() throws Exception {
         disconnect();
+        String host = ipAddress;
         if (ipAddress.equals("GcodeServer")) {
             gcodeServer = new GcodeServer();
             gcodeServer.setDriver(driver);
             port = gcodeServer.getListenerPort();
-            clientSocket = new Socket("localhost", port);
+            host = "localhost";
+        }
+        if (nonBlockingIo) {
+            channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            clientSocket = channel.socket();
         }
         else {
-            clientSocket = new Socket(ipAddress,port);
+            clientSocket = new Socket(host, port);
         }
-        input = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+        input = new BufferedInputStream(clientSocket.getInputStream());
         output = new DataOutputStream(clientSocket.getOutputStream());
+        resetReceiveBuffer();
     }
 
     @Override
     public synchronized void disconnect() throws Exception {
+        if (channel != null) {
+            TcpChannelSelector.get().unregister(channel);
+            channel.close();
+            channel = null;
+        }
         if (clientSocket != null && clientSocket.isBound()) {
             clientSocket.close();
             input = null;
@@ -67,8 +92,28 @@ public class TcpCommunications extends ReferenceDriverCommunications {
         return (driverName != null ? driverName +":" : "") + ipAddress + ":" + port;
     }
 
+    @Override
+    public boolean startLineListening(LineListener listener) throws IOException {
+        if (channel == null) {
+            return false;
+        }
+        TcpChannelSelector.get().register(channel, listener);
+        return true;
+    }
+
+    /**
+     * @return True if the connection is read by the {@link TcpChannelSelector}.
+     */
+    protected boolean isListening() {
+        SocketChannel channel = this.channel;
+        return channel != null && !channel.isBlocking();
+    }
+
     @Override
     public int read() throws TimeoutException, IOException {
+        if (isListening()) {
+            throw new IOException("Non-blocking connection is read by the TcpChannelSelector.");
+        }
         try {
             return input.read();
         }
@@ -83,13 +128,47 @@ public class TcpCommunications extends ReferenceDriverCommunications {
         }
     }
 
+    @Override
+    protected int read(byte[] buffer, int offset, int length) throws TimeoutException, IOException {
+        if (isListening()) {
+            throw new IOException("Non-blocking connection is read by the TcpChannelSelector.");
+        }
+        try {
+            return input.read(buffer, offset, length);
+        }
+        catch (NullPointerException ex) {
+            throw new IOException("Trying to read from a unconnected socket.");
+        }
+        catch (IOException ex) {
+            if (ex.getCause() instanceof SocketTimeoutException) {
+                throw new TimeoutException(ex.getMessage());
+            }
+            throw ex;
+        }
+    }
+
     @Override
     public void write(int d) throws IOException {
+        if (isListening()) {
+            writeBytes(new byte[] { (byte) d });
+            return;
+        }
         output.write(d);
     }
 
     @Override
     public void writeBytes(byte[] data) throws IOException {
+        SocketChannel channel = this.channel;
+        if (channel != null && !channel.isBlocking()) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffer) == 0) {
+                    // Socket send buffer is full, wait until the controller has caught up.
+                    TcpChannelSelector.get().awaitWritable(channel);
+                }
+            }
+            return;
+        }
         output.write(data);
     }
 
@@ -109,6 +188,14 @@ public class TcpCommunications extends ReferenceDriverCommunications {
         this.port = port;
     }
 
+    public boolean isNonBlockingIo() {
+        return nonBlockingIo;
+    }
+
+    public void setNonBlockingIo(boolean nonBlockingIo) {
+        this.nonBlockingIo = nonBlockingIo;
+    }
+
     public void setDriver(AbstractReferenceDriver driver) {
         this.driver = driver;
     }
@@ -24,6 +24,7 @@ import org.openpnp.gui.support.AbstractConfigurationWizard;
 import org.openpnp.gui.support.IntegerConverter;
 import org.openpnp.machine.reference.driver.AbstractReferenceDriver;
 import org.openpnp.machine.reference.driver.AbstractReferenceDriver.CommunicationsType;
+import org.openpnp.machine.reference.driver.GcodeDriver;
 import org.openpnp.machine.reference.driver.ReferenceDriverCommunications.LineEndingType;
 import org.openpnp.machine.reference.driver.SerialPortCommunications;
 import org.openpnp.model.Configuration;
@@ -46,6 +47,7 @@ public class AbstractReferenceDriverConfigurationWizard extends AbstractConfigur
     private JCheckBox setDtrCheckbox;
     private JCheckBox setRtsCheckbox;
     private JTextField portTextField;
+    private JCheckBox nonBlockingIo;
     private JTextField ipAddressTextField;
     private ButtonGroup commsMethodButtonGroup;
     private JPanel panelSerial;
@@ -312,6 +314,8 @@ public class AbstractReferenceDriverConfigurationWizard extends AbstractConfigur
                 FormSpecs.RELATED_GAP_COLSPEC,
                 FormSpecs.DEFAULT_COLSPEC,},
             new RowSpec[] {
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
@@ -334,6 +338,18 @@ public class AbstractReferenceDriverConfigurationWizard extends AbstractConfigur
         portTextField = new JTextField(17);
         panelTcp.add(portTextField, "4, 4, fill, default");
         portTextField.setColumns(10);
+
+        JLabel lblNonBlockingIo = new JLabel(Translations.getString(
+                "AbstractReferenceDriverConfigurationWizard.TCPPanel.NonBlockingIoLabel.text")); //$NON-NLS-1$
+        lblNonBlockingIo.setToolTipText(Translations.getString(
+                "AbstractReferenceDriverConfigurationWizard.TCPPanel.NonBlockingIoLabel.toolTipText")); //$NON-NLS-1$
+        panelTcp.add(lblNonBlockingIo, "2, 6, right, default");
+
+        nonBlockingIo = new JCheckBox("");
+        panelTcp.add(nonBlockingIo, "4, 6");
+        // Only the GcodeDriver listens for lines, other drivers would still read blocking.
+        lblNonBlockingIo.setVisible(driver instanceof GcodeDriver);
+        nonBlockingIo.setVisible(driver instanceof GcodeDriver);
         initDataBindings();
     }
 
@@ -385,6 +401,7 @@ public class AbstractReferenceDriverConfigurationWizard extends AbstractConfigur
         
         addWrappedBinding(driver, "ipAddress", ipAddressTextField, "text");
         addWrappedBinding(driver, "port", portTextField, "text", integerConverter);
+        addWrappedBinding(driver, "nonBlockingIo", nonBlockingIo, "selected");
 
         ComponentDecorators.decorateWithAutoSelect(driverName);
         ComponentDecorators.decorateWithAutoSelect(ipAddressTextField);
@@ -33,6 +33,10 @@ public class GcodeAsyncDriverSettings extends AbstractConfigurationWizard {
     private JTextField junctionDeviation;
     private JTextField interpolationJerkSteps;
     private JCheckBox reportedLocationConfirmation;
+    private JTextField characterCountingBufferSize;
+    private JCheckBox interpolationAdaptive;
+    private JTextField interpolationPositionTolerance;
+    private JTextField interpolationVelocityTolerance;
 
     public GcodeAsyncDriverSettings(GcodeAsyncDriver driver) {
         this.driver = driver;
@@ -50,6 +54,8 @@ public class GcodeAsyncDriverSettings extends AbstractConfigurationWizard {
                 FormSpecs.RELATED_GAP_COLSPEC,
                 FormSpecs.DEFAULT_COLSPEC,},
             new RowSpec[] {
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
@@ -128,6 +134,29 @@ public class GcodeAsyncDriverSettings extends AbstractConfigurationWizard {
         interpolationPanel.add(junctionDeviation, "4, 10, fill, default");
         junctionDeviation.setColumns(10);
 
+        JLabel lblInterpolationAdaptive = new JLabel("Adaptive?");
+        lblInterpolationAdaptive.setToolTipText("<html>\r\n<p>Place the interpolation way-points where the planned motion deviates most from the<br/>\r\ninterpolated straight segments, until it is within the given tolerances.</p>\r\n<p>This results in fewer steps than fixed time step interpolation, where the motion is near linear.</p>\r\n</html>");
+        interpolationPanel.add(lblInterpolationAdaptive, "2, 12, right, default");
+
+        interpolationAdaptive = new JCheckBox("");
+        interpolationPanel.add(interpolationAdaptive, "4, 12");
+
+        JLabel lblInterpolationPositionTolerance = new JLabel("Position Tolerance");
+        lblInterpolationPositionTolerance.setToolTipText("Maximum position deviation of adaptive interpolation from the planned motion.");
+        interpolationPanel.add(lblInterpolationPositionTolerance, "2, 14, right, default");
+
+        interpolationPositionTolerance = new JTextField();
+        interpolationPanel.add(interpolationPositionTolerance, "4, 14, fill, default");
+        interpolationPositionTolerance.setColumns(10);
+
+        JLabel lblInterpolationVelocityTolerance = new JLabel("Velocity Tolerance [/s]");
+        lblInterpolationVelocityTolerance.setToolTipText("Maximum velocity deviation of adaptive interpolation from the planned motion, per second.");
+        interpolationPanel.add(lblInterpolationVelocityTolerance, "2, 16, right, default");
+
+        interpolationVelocityTolerance = new JTextField();
+        interpolationPanel.add(interpolationVelocityTolerance, "4, 16, fill, default");
+        interpolationVelocityTolerance.setColumns(10);
+
         JLabel lblConfirmationFlowControl = new JLabel("Confimation Flow Control?");
         lblConfirmationFlowControl.setToolTipText("<html>\r\n<p>The communication with the controller is flow-controlled by awaiting the \"ok\"<br/>\r\nbefore sending the next command. </p>\r\n<p>This is slower than other types of flow control such as RTS/CTS on a serial connection, so <br/>\r\nthe latter should be preferred.</p>\r\n</html>");
         settingsPanel.add(lblConfirmationFlowControl, "2, 2, right, default");
@@ -156,6 +185,14 @@ public class GcodeAsyncDriverSettings extends AbstractConfigurationWizard {
         });
         settingsPanel.add(reportedLocationConfirmation, "4, 4");
 
+        JLabel lblCharacterCountingBufferSize = new JLabel("Character Counting Buffer [bytes]");
+        lblCharacterCountingBufferSize.setToolTipText("<html>\r\n<p>Size of the controller's receive buffer, used for character counting flow control.</p>\r\n<p>Instead of awaiting the \"ok\" before sending the next command, as many commands are sent<br/>\r\nas fit into the receive buffer, counting the bytes in flight until each \"ok\" is received<br/>\r\n(Grbl style streaming). Requires Confirmation Flow Control.</p>\r\n<p>Set to 0 to disable character counting.</p>\r\n</html>");
+        settingsPanel.add(lblCharacterCountingBufferSize, "2, 6, right, default");
+
+        characterCountingBufferSize = new JTextField();
+        settingsPanel.add(characterCountingBufferSize, "4, 6, fill, default");
+        characterCountingBufferSize.setColumns(10);
+
     }
 
     @Override
@@ -167,16 +204,23 @@ public class GcodeAsyncDriverSettings extends AbstractConfigurationWizard {
 
         addWrappedBinding(driver, "confirmationFlowControl", confirmationFlowControl, "selected");
         addWrappedBinding(driver, "reportedLocationConfirmation", reportedLocationConfirmation, "selected");
+        addWrappedBinding(driver, "characterCountingBufferSize", characterCountingBufferSize, "text", intConverter);
         addWrappedBinding(driver, "interpolationMaxSteps", interpolationMaxSteps, "text", intConverter);
         addWrappedBinding(driver, "interpolationJerkSteps", interpolationJerkSteps, "text", intConverter);
         addWrappedBinding(driver, "interpolationTimeStep", interpolationTimeStep, "text", doubleConverterFine);
         addWrappedBinding(driver, "interpolationMinStep", interpolationMinStep, "text", intConverter);
         addWrappedBinding(driver, "junctionDeviation", junctionDeviation, "text", lengthConverter);
+        addWrappedBinding(driver, "interpolationAdaptive", interpolationAdaptive, "selected");
+        addWrappedBinding(driver, "interpolationPositionTolerance", interpolationPositionTolerance, "text", lengthConverter);
+        addWrappedBinding(driver, "interpolationVelocityTolerance", interpolationVelocityTolerance, "text", lengthConverter);
 
         ComponentDecorators.decorateWithAutoSelect(interpolationMaxSteps);
         ComponentDecorators.decorateWithAutoSelect(interpolationJerkSteps);
         ComponentDecorators.decorateWithAutoSelect(interpolationTimeStep);
         ComponentDecorators.decorateWithAutoSelect(interpolationMinStep);
         ComponentDecorators.decorateWithAutoSelect(junctionDeviation);
+        ComponentDecorators.decorateWithAutoSelect(interpolationPositionTolerance);
+        ComponentDecorators.decorateWithAutoSelect(interpolationVelocityTolerance);
+        ComponentDecorators.decorateWithAutoSelect(characterCountingBufferSize);
     }
 }
@@ -38,6 +38,7 @@ import org.openpnp.gui.components.ComponentDecorators;
 import org.openpnp.gui.components.LocationButtonsPanel;
 import org.openpnp.gui.support.AbstractConfigurationWizard;
 import org.openpnp.gui.support.DoubleConverter;
+import org.openpnp.gui.support.IntegerConverter;
 import org.openpnp.gui.support.LengthConverter;
 import org.openpnp.gui.support.MutableLocationProxy;
 import org.openpnp.gui.support.PercentConverter;
@@ -115,6 +116,16 @@ public class ReferenceAdvancedMotionPlannerConfigurationWizard extends AbstractC
     private JLabel lblCaution3;
     private JLabel lblMinimumSpeed;
     private JTextField minimumSpeed;
+    private JLabel lblCornerSmoothing;
+    private JCheckBox cornerSmoothing;
+    private JLabel lblLookAheadPlanning;
+    private JCheckBox lookAheadPlanning;
+    private JLabel lblSolverIterations;
+    private JTextField solverIterations;
+    private JLabel lblParallelSolving;
+    private JCheckBox parallelSolving;
+    private JLabel lblSafeZBlending;
+    private JCheckBox safeZBlending;
 
 
     public ReferenceAdvancedMotionPlannerConfigurationWizard(ReferenceAdvancedMotionPlanner motionPlanner) {
@@ -152,6 +163,16 @@ public class ReferenceAdvancedMotionPlannerConfigurationWizard extends AbstractC
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,}));
 
         JLabel lblContinuousMotion = new JLabel("Allow continous motion?");
@@ -183,6 +204,42 @@ public class ReferenceAdvancedMotionPlannerConfigurationWizard extends AbstractC
         panelSettings.add(minimumSpeed, "4, 8, fill, default");
         minimumSpeed.setColumns(10);
 
+        lblLookAheadPlanning = new JLabel("Look-ahead planning?");
+        lblLookAheadPlanning.setToolTipText("<html>\r\n<p>\r\nWhen a motion sequence is not waited for (e.g. at the end of a job step), the planner<br/>\r\nlooks ahead to where the job is known to move next, and plans the end of the sequence<br/>\r\nto blend into that motion, rather than coming to a full stop.\r\n</p><p>\r\nRequires <strong>Allow continuous motion</strong> and <strong>Allow uncoordinated</strong> to be effective.\r\n</p>\r\n</html>\r\n");
+        panelSettings.add(lblLookAheadPlanning, "2, 10, right, default");
+
+        lookAheadPlanning = new JCheckBox("");
+        panelSettings.add(lookAheadPlanning, "4, 10");
+
+        lblCornerSmoothing = new JLabel("Smooth corners?");
+        lblCornerSmoothing.setToolTipText("<html>\r\n<p>\r\nSmooth the corners between subsequent uncoordinated moves (e.g. Safe Z travel moves).<br/>\r\nAxes that keep their direction through the corner pass it in motion, at a jerk limited<br/>\r\njunction velocity, rather than decelerating to still-stand.\r\n</p><p>\r\nRequires <strong>Allow uncoordinated</strong> to be effective.\r\n</p>\r\n</html>\r\n");
+        panelSettings.add(lblCornerSmoothing, "2, 12, right, default");
+
+        cornerSmoothing = new JCheckBox("");
+        panelSettings.add(cornerSmoothing, "4, 12");
+
+        lblSolverIterations = new JLabel("Solver Iterations");
+        lblSolverIterations.setToolTipText("<html>\r\n<p>\r\nNumber of iterations the planner uses to refine the motion path. More iterations<br/>\r\ngive better optimized paths, but take more planning time.\r\n</p>\r\n</html>\r\n");
+        panelSettings.add(lblSolverIterations, "2, 14, right, default");
+
+        solverIterations = new JTextField();
+        panelSettings.add(solverIterations, "4, 14, fill, default");
+        solverIterations.setColumns(10);
+
+        lblParallelSolving = new JLabel("Parallel solving?");
+        lblParallelSolving.setToolTipText("<html>\r\n<p>\r\nSolve the moves of long motion paths in parallel, on up to four processor cores.<br/>\r\nShort paths are always solved sequentially. The planned motion is the same, but<br/>\r\nplanning of long paths can be faster on multi-core computers.\r\n</p>\r\n</html>\r\n");
+        panelSettings.add(lblParallelSolving, "2, 16, right, default");
+
+        parallelSolving = new JCheckBox("");
+        panelSettings.add(parallelSolving, "4, 16");
+
+        lblSafeZBlending = new JLabel("Blend Safe Z moves?");
+        lblSafeZBlending.setToolTipText("<html>\r\n<p>\r\nBlend the Z lift, the travel at Safe Z and the Z descent of pick and place moves into<br/>\r\none \"dog-bone\" shaped path. The travel starts as soon as Z has cleared the Safe Zone and Z<br/>\r\nstarts its descent while the travel is still decelerating, rather than stopping in between.<br/>\r\nZ overshoots into the Safe Zone, so the Safe Zone must extend above Safe Z.\r\n</p><p>\r\nUnlike <strong>Allow uncoordinated</strong>, this only applies to these sequences.<br/>\r\nRequires <strong>Allow continuous motion</strong> to be effective.\r\n</p>\r\n</html>\r\n");
+        panelSettings.add(lblSafeZBlending, "2, 18, right, default");
+
+        safeZBlending = new JCheckBox("");
+        panelSettings.add(safeZBlending, "4, 18");
+
         panel = new JPanel();
         panel.setBorder(new TitledBorder(UIManager.getBorder("TitledBorder.border"), "Test Motion", TitledBorder.LEADING, TitledBorder.TOP, null));
         contentPanel.add(panel);
@@ -431,11 +488,17 @@ public class ReferenceAdvancedMotionPlannerConfigurationWizard extends AbstractC
         LengthConverter lengthConverter = new LengthConverter();
         DoubleConverter doubleConverter = new DoubleConverter(Configuration.get().getLengthDisplayFormat());
         PercentConverter percentConverter = new PercentConverter();
+        IntegerConverter intConverter = new IntegerConverter();
 
         addWrappedBinding(motionPlanner, "allowContinuousMotion", allowContinuousMotion, "selected");
         addWrappedBinding(motionPlanner, "allowUncoordinated", allowUncoordinated, "selected");
         addWrappedBinding(motionPlanner, "interpolationRetiming", interpolationRetiming, "selected");
         addWrappedBinding(motionPlanner, "minimumSpeed", minimumSpeed, "text", percentConverter);
+        addWrappedBinding(motionPlanner, "lookAheadPlanning", lookAheadPlanning, "selected");
+        addWrappedBinding(motionPlanner, "cornerSmoothing", cornerSmoothing, "selected");
+        addWrappedBinding(motionPlanner, "solverIterations", solverIterations, "text", intConverter);
+        addWrappedBinding(motionPlanner, "parallelSolving", parallelSolving, "selected");
+        addWrappedBinding(motionPlanner, "safeZBlending", safeZBlending, "selected");
 
         addWrappedBinding(motionPlanner, "startLocationEnabled", startLocationEnabled, "selected");
         addWrappedBinding(motionPlanner, "mid1LocationEnabled", mid1LocationEnabled, "selected");
@@ -22,8 +22,10 @@
 package org.openpnp.machine.reference.driver.wizards;
 
 
+import java.awt.FileDialog;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
+import java.io.File;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 
@@ -39,6 +41,8 @@ import org.openpnp.gui.components.SimpleGraphView;
 import org.openpnp.gui.support.AbstractConfigurationWizard;
 import org.openpnp.gui.support.DoubleConverter;
 import org.openpnp.gui.support.Icons;
+import org.openpnp.gui.support.MessageBoxes;
+import org.openpnp.machine.reference.driver.MotionRecorder;
 import org.openpnp.machine.reference.driver.ReferenceAdvancedMotionPlanner;
 import org.openpnp.model.Configuration;
 import org.openpnp.model.Location;
@@ -87,6 +91,40 @@ public class ReferenceAdvancedMotionPlannerDiagnosticsWizard extends AbstractCon
             });
         }
     };
+
+    private Action exportAction =
+            new AbstractAction("Export...", Icons.export) {
+        {
+            putValue(Action.SHORT_DESCRIPTION,
+                    "<html>Export the recording of the recently executed moves, with planned times, actual<br/>"
+                    + "over planned time ratios per batch, interpolation steps, driver queue depth and the peak<br/>"
+                    + "velocity, acceleration and jerk of each axis.<br/>"
+                    + "Use a file name ending in <strong>.csv</strong> for spreadsheets, any other name for the<br/>"
+                    + "binary columnar format.</html>");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            MotionRecorder recorder = motionPlanner.getMotionRecorder();
+            if (recorder == null || recorder.size() == 0) {
+                MessageBoxes.errorBox(MainFrame.get(), "Export Motion Recording", 
+                        "No moves recorded. Recording is switched off, if the motion recorder capacity is 0.");
+                return;
+            }
+            FileDialog fileDialog = new FileDialog(MainFrame.get(), "Export Motion Recording", FileDialog.SAVE);
+            fileDialog.setFile("motion-recording.csv");
+            fileDialog.setVisible(true);
+            String filename = fileDialog.getFile();
+            if (filename == null) {
+                return;
+            }
+            File file = new File(new File(fileDialog.getDirectory()), filename);
+            UiUtils.messageBoxOnException(() -> {
+                recorder.export(file);
+            });
+        }
+    };
+    private JButton btnExport;
     private JLabel lblPlanned;
     private JLabel lblActual;
     private JTextField moveTimePlanned;
@@ -169,6 +207,9 @@ public class ReferenceAdvancedMotionPlannerDiagnosticsWizard extends AbstractCon
         JLabel lblMotionGraph = new JLabel("<html>\r\n<body style=\"text-align:right\">\r\n<p>\r\nLocation <span style=\"color:#00BB00\">&mdash;&mdash;</span>\r\n&nbsp;&nbsp;\r\nVelocity <span style=\"color:#005BD9\">&mdash;&mdash;</span>\r\n&nbsp;&nbsp;\r\nAcceleration <span style=\"color:#FF0000\">&mdash;&mdash;</span>\r\n&nbsp;&nbsp;\r\nJerk <span style=\"color:#DDBB00\">&mdash;&mdash;</span>\r\n</p>\r\n</body>\r\n</html>");
         contentPanel.add(lblMotionGraph, "18, 2, right, default");
         
+        btnExport = new JButton(exportAction);
+        contentPanel.add(btnExport, "20, 2");
+        
         motionGraph = new SimpleGraphView();
         contentPanel.add(motionGraph, "2, 4, 19, 11");
         motionGraph.addPropertyChangeListener(new PropertyChangeListener() {
@@ -353,6 +353,7 @@ public class JEDEC_TrayFeeder extends ReferenceFeeder {
         Logger.debug("{}.setFeedCount(): feedCount {}, pickLocation {}", getName(), feedCount, location);
     }
 
+    @Override
     public int getRemainingCount() {
         return trayCountRows*trayCountCols - feedCount;
     }
@@ -59,6 +59,11 @@ public class ReferenceAutoFeeder extends ReferenceFeeder {
     @Attribute(required=false)
     protected boolean moveBeforeFeed;
 
+    /**
+     * True if the feed actuator was already actuated by feedAhead(), i.e. the part is ready to be picked.
+     */
+    protected boolean fedAhead;
+
     @Override
     public Location getPickLocation() throws Exception {
         return location;
@@ -85,10 +90,51 @@ public class ReferenceAutoFeeder extends ReferenceFeeder {
 
     @Override
     public void feed(Nozzle nozzle) throws Exception {
+        if (fedAhead) {
+            // Already actuated, the actuator's machine coordination takes care of any waiting.
+            fedAhead = false;
+            return;
+        }
         if (actuatorName == null || actuatorName.equals("")) {
             Logger.warn("No actuatorName specified for feeder {}.", getName());
             return;
         }
+        Actuator actuator = getFeedActuator(nozzle);
+        if (isMoveBeforeFeed()) {
+            MovableUtils.moveToLocationAtSafeZ(nozzle, getPickLocation().derive(null, null, Double.NaN, null));
+        }
+        // Note by using the Object generic method, the value will be properly interpreted according to actuator.valueType.
+        actuator.actuate((Object)actuatorValue);
+    }
+
+    @Override
+    public boolean isFeedAheadSupported() {
+        // Moving before the feed needs the head.
+        return !isMoveBeforeFeed() && actuatorName != null && !actuatorName.equals("");
+    }
+
+    @Override
+    public void feedAhead(Nozzle nozzle) throws Exception {
+        if (fedAhead) {
+            return;
+        }
+        Actuator actuator = getFeedActuator(nozzle);
+        actuator.actuate((Object)actuatorValue);
+        fedAhead = true;
+    }
+
+    @Override
+    public void cancelFeedAhead() {
+        fedAhead = false;
+    }
+
+    @Override
+    public void prepareForJob(boolean visit) throws Exception {
+        cancelFeedAhead();
+        super.prepareForJob(visit);
+    }
+
+    protected Actuator getFeedActuator(Nozzle nozzle) throws Exception {
         Actuator actuator = nozzle.getHead().getActuatorByName(actuatorName);
         if (actuator == null) {
             actuator = Configuration.get().getMachine().getActuatorByName(actuatorName);
@@ -96,11 +142,7 @@ public class ReferenceAutoFeeder extends ReferenceFeeder {
         if (actuator == null) {
             throw new Exception("Feed failed. Unable to find an actuator named " + actuatorName);
         }
-        if (isMoveBeforeFeed()) {
-            MovableUtils.moveToLocationAtSafeZ(nozzle, getPickLocation().derive(null, null, Double.NaN, null));
-        }
-        // Note by using the Object generic method, the value will be properly interpreted according to actuator.valueType.
-        actuator.actuate((Object)actuatorValue);
+        return actuator;
     }
     
     @Override
@@ -248,6 +248,7 @@ public class ReferenceRotatedTrayFeeder extends ReferenceFeeder {
         Logger.debug("{}.setFeedCount(): feedCount {}, pickLocation {}", getName(), feedCount, getPickLocation());
     }
 
+    @Override
     public int getRemainingCount() {
         return trayCountRows*trayCountCols - feedCount;
     }
@@ -169,6 +169,11 @@ public class ReferenceTrayFeeder extends ReferenceFeeder {
         Logger.debug("{}.setFeedCount(): feedCount {}, pickLocation {}", getName(), feedCount, getPickLocation());
     }
 
+    @Override
+    public int getRemainingCount() {
+        return trayCountX*trayCountY - feedCount;
+    }
+
     @Override
     public String toString() {
         return getName();
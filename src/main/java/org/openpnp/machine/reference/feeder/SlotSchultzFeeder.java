@@ -1,5 +1,6 @@
 package org.openpnp.machine.reference.feeder;
 
+import java.beans.PropertyChangeListener;
 import java.util.List;
 
 import org.openpnp.ConfigurationListener;
@@ -32,6 +33,15 @@ public class SlotSchultzFeeder extends SchultzFeeder {
     private String feederId;
 
     private Bank bank;
+
+    /**
+     * The bank feeder whose part changes are forwarded as part changes of this slot.
+     */
+    private Feeder partFeeder;
+
+    private final PropertyChangeListener partListener = (evt) -> {
+        firePropertyChange("part", evt.getOldValue(), evt.getNewValue());
+    };
     
     public SlotSchultzFeeder() {
         this.id = Configuration.createId("SLOT-");
@@ -133,7 +143,34 @@ public class SlotSchultzFeeder extends SchultzFeeder {
               throw new Exception("Can't set feeder from another bank.");
           }
         }
+        // The feeder is taken away from the slot it was previously loaded into, if any.
+        SlotSchultzFeeder previousSlot = feeder == null ? null : getBank().getSlot(feeder);
+        Part oldPart = getPart();
         getBank().setFeeder(this, feeder);
+        feederChanged(oldPart);
+        if (previousSlot != null && previousSlot != this) {
+            previousSlot.feederChanged(feeder.getPart());
+        }
+    }
+
+    /**
+     * Follow the part of the loaded feeder and notify listeners, as the part of the slot is the part of the 
+     * loaded feeder.
+     * 
+     * @param oldPart The part of the slot before the feeder was changed.
+     */
+    protected void feederChanged(Part oldPart) {
+        Feeder feeder = getFeeder();
+        if (partFeeder != feeder) {
+            if (partFeeder != null) {
+                partFeeder.removePropertyChangeListener("part", partListener);
+            }
+            if (feeder != null) {
+                feeder.addPropertyChangeListener("part", partListener);
+            }
+            partFeeder = feeder;
+        }
+        firePropertyChange("part", oldPart, getPart());
     }
     
     public static synchronized IdentifiableList<Bank> getBanks() {
@@ -229,6 +266,10 @@ public class SlotSchultzFeeder extends SchultzFeeder {
         public Feeder getFeeder(SlotSchultzFeeder slot) {
             return assignments.inverse().get(slot);
         }
+
+        public SlotSchultzFeeder getSlot(Feeder feeder) {
+            return assignments.get(feeder);
+        }
     }
     
     /**
@@ -44,6 +44,7 @@ import org.openpnp.model.Point;
 import org.openpnp.spi.Camera;
 import org.openpnp.spi.FiducialLocator;
 import org.openpnp.spi.PropertySheetHolder;
+import org.openpnp.util.AxisDynamicsCost;
 import org.openpnp.util.IdentifiableList;
 import org.openpnp.util.MovableUtils;
 import org.openpnp.util.OpenCvUtils;
@@ -172,6 +173,10 @@ public class ReferenceFiducialLocator extends AbstractPartSettingsHolder impleme
             currentCameraLocation = null;
         }
         
+        // Rate the path by the estimated time of the camera moves, if the axes have motion limits
+        AxisDynamicsCost costFunction = AxisDynamicsCost.create(getVisionCamera(), 
+                Configuration.get().getMachine().getSpeed());
+
         // Use a traveling salesman algorithm to optimize the path to visit the fiducials
         TravellingSalesman<Fiducial> tsm = new TravellingSalesman<>(
                 fiducials, 
@@ -184,10 +189,11 @@ public class ReferenceFiducialLocator extends AbstractPartSettingsHolder impleme
                 // start from current camera location
                 currentCameraLocation,
                 // and end at the board origin
-                endLocation);
+                endLocation,
+                costFunction);
 
-        // Solve it using the default heuristics.
-        tsm.solve();
+        // Solve it by local search, which is much faster for the many fiducials of large panels.
+        tsm.solveLocalSearch(1000);
 
         // loop over all fiducial and visit/measure them
         for (Fiducial fiducial : tsm.getTravel()) {
@@ -34,6 +34,7 @@ import org.openpnp.gui.support.IntegerConverter;
 import org.openpnp.machine.reference.ReferencePnpJobProcessor;
 import org.openpnp.machine.reference.ReferencePnpJobProcessor.JobOrderHint;
 import org.openpnp.spi.PnpJobPlanner.Strategy;
+import org.openpnp.spi.base.FeederIndex;
 
 import com.jgoodies.forms.layout.ColumnSpec;
 import com.jgoodies.forms.layout.FormLayout;
@@ -48,6 +49,8 @@ public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigu
     private JTextField maxVisionRetriesTextField;
     private JCheckBox steppingToNextMotion;
     private JCheckBox optimizeMultipleNozzles;
+    private JComboBox<FeederIndex.Selection> comboBoxFeederSelection;
+    private JCheckBox feedAhead;
     
     public ReferencePnpJobProcessorConfigurationWizard(ReferencePnpJobProcessor jobProcessor) {
         this.jobProcessor = jobProcessor;
@@ -72,6 +75,10 @@ public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigu
                         FormSpecs.RELATED_GAP_ROWSPEC,
                         FormSpecs.DEFAULT_ROWSPEC,
                         FormSpecs.RELATED_GAP_ROWSPEC,
+                        FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC,
+                        FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC,
                         FormSpecs.DEFAULT_ROWSPEC,}));
 
         JLabel lblJobOrder = new JLabel(Translations.getString("MachineSetup.JobProcessors.ReferencePnpJobProcessor.Label.JobOrder")); //$NON-NLS-1$
@@ -107,6 +114,20 @@ public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigu
 
         optimizeMultipleNozzles = new JCheckBox(); 
         panelGeneral.add(optimizeMultipleNozzles, "4, 10");
+
+        JLabel lblFeederSelection = new JLabel(Translations.getString("ReferencePnpJobProcessorConfigurationWizard.lblFeederSelection.text")); //$NON-NLS-1$
+        lblFeederSelection.setToolTipText(Translations.getString("ReferencePnpJobProcessorConfigurationWizard.lblFeederSelection.toolTipText")); //$NON-NLS-1$
+        panelGeneral.add(lblFeederSelection, "2, 12, right, default");
+
+        comboBoxFeederSelection = new JComboBox<FeederIndex.Selection>(FeederIndex.Selection.values());
+        panelGeneral.add(comboBoxFeederSelection, "4, 12");
+
+        JLabel lblFeedAhead = new JLabel(Translations.getString("ReferencePnpJobProcessorConfigurationWizard.lblFeedAhead.text")); //$NON-NLS-1$
+        lblFeedAhead.setToolTipText(Translations.getString("ReferencePnpJobProcessorConfigurationWizard.lblFeedAhead.toolTipText")); //$NON-NLS-1$
+        panelGeneral.add(lblFeedAhead, "2, 14, right, default");
+
+        feedAhead = new JCheckBox(); 
+        panelGeneral.add(feedAhead, "4, 14");
     }
 
     @Override
@@ -118,6 +139,8 @@ public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigu
         addWrappedBinding(jobProcessor, "maxVisionRetries", maxVisionRetriesTextField, "text", intConverter);
         addWrappedBinding(jobProcessor, "steppingToNextMotion", steppingToNextMotion, "selected");
         addWrappedBinding(jobProcessor, "optimizeMultipleNozzles", optimizeMultipleNozzles, "selected");
+        addWrappedBinding(jobProcessor, "feederSelection", comboBoxFeederSelection, "selectedItem");
+        addWrappedBinding(jobProcessor, "feedAhead", feedAhead, "selected");
         
         ComponentDecorators.decorateWithAutoSelect(maxVisionRetriesTextField);
     }
@@ -4,21 +4,105 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import org.openpnp.model.MotionProfile.ProfileOption;
 import org.openpnp.util.XmlSerialize;
 
 public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
     final double approximation = 0.75; // 0.75
-    final int iterations = 3;    // 3
+    private int iterations = 3;    // 3
 
     protected final static int segments = MotionProfile.segments; 
 
+    /**
+     * Minimum number of moves solved by one parallel task.
+     */
+    protected final static int parallelBatchSize = 16;
+
+    private boolean cornerSmoothing = false;
+    private ForkJoinPool solverPool;
+
     public abstract int size();
     public abstract MotionProfile [] get(int i);
 
+    public boolean isCornerSmoothing() {
+        return cornerSmoothing;
+    }
+
+    /**
+     * @param cornerSmoothing If true, axes that keep their direction through the corner between subsequent 
+     * uncoordinated moves pass it in motion, rather than stopping. 
+     */
+    public void setCornerSmoothing(boolean cornerSmoothing) {
+        this.cornerSmoothing = cornerSmoothing;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @param iterations How many refinement iterations {@link #solve()} computes. 
+     */
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    public ForkJoinPool getSolverPool() {
+        return solverPool;
+    }
+
+    /**
+     * @param solverPool If set, the initial solves of the moves of long paths are done in parallel on this pool. 
+     * The result is the same as when solved sequentially, as each task only writes to its own profiles. 
+     */
+    public void setSolverPool(ForkJoinPool solverPool) {
+        this.solverPool = solverPool;
+    }
+
+    /**
+     * Run the task for the indices 0 ... count-1, in parallel on the solver pool if set. The tasks must be 
+     * independent of each other. 
+     * 
+     * Each parallel task takes a batch of at least {@link #parallelBatchSize} indices, smaller counts are run 
+     * sequentially, as handing a single solve over to another thread costs more than it saves. 
+     * 
+     * @param count
+     * @param task
+     * @throws Exception
+     */
+    protected void forEachIndex(int count, IntConsumer task) throws Exception {
+        int batches = (solverPool == null ? 1 : Math.min(solverPool.getParallelism(), count/parallelBatchSize));
+        if (batches < 2) {
+            for (int i = 0; i < count; i++) {
+                task.accept(i);
+            }
+            return;
+        }
+        try {
+            // The parallel stream runs on the pool that executes it.
+            solverPool.submit(() -> IntStream.range(0, batches).parallel().forEach((batch) -> {
+                int end = (batch + 1)*count/batches;
+                for (int i = batch*count/batches; i < end; i++) {
+                    task.accept(i);
+                }
+            })).get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     public Iterator<MotionProfile []> iterator() {
         return new PathIterator();
     }
@@ -50,6 +134,47 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
         solve(approximation, iterations);
     }
 
+    /**
+     * Let the path continue from a previous path that was left in motion, i.e. take the exit velocity and
+     * acceleration of the given profiles as the entry conditions of the first move, instead of still-stand.
+     * Must be called before solve().
+     *
+     * A coordinated first move can only be entered in motion, if the previous exit was along its straight line,
+     * otherwise the path keeps its still-stand entry.
+     *
+     * @param exitProfiles The profiles of the last move of the previous path.
+     * @return true if the path continues in motion.
+     */
+    public boolean continueFrom(MotionProfile [] exitProfiles) {
+        if (size() == 0) {
+            return false;
+        }
+        MotionProfile [] profiles = get(0);
+        if (profiles.length == 0 || profiles.length != exitProfiles.length) {
+            return false;
+        }
+        if (MotionProfile.isCoordinated(profiles)) {
+            double [] unitVector = MotionProfile.getUnitVector(profiles);
+            double dot = 0;
+            double sumSq = 0;
+            for (int axis = 0; axis < profiles.length; axis++) {
+                double v = exitProfiles[axis].v[segments];
+                dot += v*unitVector[axis];
+                sumSq += v*v;
+            }
+            if (sumSq > 0 && dot < Math.sqrt(sumSq)*(1.0 - MotionProfile.eps)) {
+                // Corner.
+                return false;
+            }
+        }
+        for (int axis = 0; axis < profiles.length; axis++) {
+            profiles[axis].v[0] = exitProfiles[axis].v[segments];
+            profiles[axis].a[0] = exitProfiles[axis].a[segments];
+            profiles[axis].clearOption(ProfileOption.Solved);
+        }
+        return true;
+    }
+
     /**
      *  <h1>Simplified "PnP use case" heuristics for continuous smoothed motion path optimization.</h1> 
      *  <p>
@@ -64,13 +189,14 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
      *  Subsequent straight coordinated moves are combined into one. Coordinated moves will overshoot into 
      *  uncoordinated moves to smooth the path. The path is then iteratively refined to reduce overshooting where it is 
      *  wasteful. However this is done in a very crude form with very few iterations to keep computation times useful. 
-     *  Subsequent uncoordinated moves are not yet optimized, i.e. corners are not smoothed-out. These moves are rare
-     *  in OpenPnP. 
+     *  Subsequent uncoordinated moves are only optimized with corner smoothing enabled, otherwise each axis stops 
+     *  in the corner. 
      *  </p><p>
      *  The heuristics works as follows:
      *  </p>
      *  <ol>
-     *  <li>Path begin/end and corners between subsequent coordinated moves are handled as zero speed and acceleration junctions.</li>
+     *  <li>Path begin/end and corners between subsequent coordinated moves are handled as zero speed and acceleration junctions
+     *      (unless the path continues from a previous path, see {@link #continueFrom(MotionProfile[])}).</li>
      *      
      *  <li>Multiple subsequent co-linear moves are solved as one overall move with the most restrictive limits applied.
      *      Each partial move is then cut out from the overall profile. TODO: Moves which reach the most restrictive V max at one 
@@ -83,7 +209,18 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
      *      
      *  <li>Coordinated moves that are preceded by an uncoordinated move are handled as in 3. (in reverse).</li>
      *   
-     *  <li>Coordinated moves that are both preceded and followed by an uncoordinated move are left unoptimized at the moment.</li>
+     *  <li>Coordinated moves that are both preceded and followed by an uncoordinated move are handled as in 3. and 4. 
+     *      on both sides, unless corner smoothing is enabled, see 6.</li>
+     *      
+     *  <li>With corner smoothing, corners between subsequent uncoordinated moves get junction velocities per axis: 
+     *      an axis that keeps its direction through the corner passes it at the highest velocity that is reachable 
+     *      over the moves before and after the corner, with jerk limited acceleration and zero acceleration in the 
+     *      corner. Axes that stand still or reverse stop in the corner. The same applies to the corners of a 
+     *      coordinated move that is both preceded and followed by an uncoordinated move, but there the junction 
+     *      velocities are scaled down to be along the straight line of the coordinated move, which is then 
+     *      solved from its entry to its exit junction velocity. If a move still ends up slower than with 
+     *      stops, the junction velocities in its corners are reduced in further iterations. 
+     *      See {@link #computeJunctionVelocities(boolean[], boolean[], double[])}.</li>
      *  </ol>
      *    
      * @param approximation Determines by what rate it should approximate the estimated best solution, per iteration.  
@@ -132,7 +269,19 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
                                     : 0);
                 }
             }
-            // Solve all and store initial times.
+            prevProfiles0 = profiles;
+        }
+        // Coordinated moves that are both preceded and followed by an uncoordinated move.
+        boolean [] sandwiched = new boolean[size];
+        for (int i = 1; i < last; i++) {
+            sandwiched[i] = !(simplified[i-1] || simplified[i] || simplified[i+1])
+                    && MotionProfile.isCoordinated(get(i))
+                    && !MotionProfile.isCoordinated(get(i-1))
+                    && !MotionProfile.isCoordinated(get(i+1));
+        }
+        // Solve all and store initial times. The moves are independent of each other at this point.
+        forEachIndex(size, (i) -> {
+            MotionProfile [] profiles = get(i);
             if (MotionProfile.isCoordinated(profiles)) {
                 int lead = leadAxis[i];
                 if (profiles[lead].assertSolved()) {
@@ -152,11 +301,18 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
             for (int axis = 0; axis < profiles.length; axis++) {
                 profiles[axis].initialTime = profiles[axis].time; 
             }
-            prevProfiles0 = profiles;
-        }
+        });
         int dimensions = unitVector[0].length;
+        double [][] junctionVelocity = new double[size][];
+        double [] junctionFactor = new double[size];
+        Arrays.fill(junctionFactor, 1.0);
+        boolean junctionReduced = false;
 
-        for (int iteration = 0; iteration < iterations; iteration++) {
+        for (int iteration = 0; iteration < iterations || junctionReduced; iteration++) {
+            if (cornerSmoothing) {
+                // Refined with each iteration, as the move times get shorter.
+                junctionVelocity = computeJunctionVelocities(simplified, sandwiched, junctionFactor);
+            }
             int iNext;
             boolean hasUncoordinated = false;
             for (int i = 0; i <= last; i = iNext) {
@@ -191,7 +347,15 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
                         exitProfiles = seqProfiles;
                     }
                     MotionProfile [] nextProfiles = (iNext <= last ? get(iNext) : null);
-                    if (iteration > 0) {
+                    if (sandwiched[i] && junctionVelocity[i] != null && junctionVelocity[iNext] != null) {
+                        // Smoothed corners on both sides, solve between the junction velocities.
+                        solverProfile.v[0] = junctionVelocity[i][lead];
+                        solverProfile.a[0] = 0;
+                        solverProfile.v[segments] = junctionVelocity[iNext][lead];
+                        solverProfile.a[segments] = 0;
+                        solverProfile.solve();
+                    }
+                    else if (iteration > 0) {
                         // This is a further refinement.
                         controlOvershoot(prevProfiles, profiles, exitProfiles, nextProfiles, lead,
                                 solverProfile, approximation, iteration);
@@ -323,6 +487,12 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
                                     vEffEntry = profiles[axis].getEffectiveEntryVelocity(profiles[axis].jMax);
                                     solve = true; 
                                 }
+                                else if (junctionVelocity[i] != null) {
+                                    // Smoothed corner.
+                                    profiles[axis].v[0] = junctionVelocity[i][axis];
+                                    profiles[axis].a[0] = 0;
+                                    solve = true; 
+                                }
                                 else {
                                     expandEntry = true;
                                 }
@@ -336,6 +506,12 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
                                     vEffExit = profiles[axis].getEffectiveExitVelocity(profiles[axis].jMax);
                                     solve = true; 
                                 }
+                                else if (junctionVelocity[i+1] != null) {
+                                    // Smoothed corner.
+                                    profiles[axis].v[segments] = junctionVelocity[i+1][axis];
+                                    profiles[axis].a[segments] = 0;
+                                    solve = true; 
+                                }
                                 else {
                                     expandExit = true;
                                 }
@@ -432,7 +608,204 @@ public abstract class AbstractMotionPath implements Iterable<MotionProfile []> {
                     }
                 }
             }
+            junctionReduced = false;
+            if (cornerSmoothing) {
+                // A move that got slower than from still-stand to still-stand could not make use of its junction 
+                // velocities, typically because the synchronization with the other axes forces it to waste time. 
+                // Reduce the junction velocities in its corners, down to a stop.  
+                for (int i = 0; i <= last; i++) {
+                    MotionProfile [] profiles = get(i);
+                    if (profiles[0].getTime() > profiles[0].initialTime + MotionProfile.eps) {
+                        for (int j = i; j <= i+1 && j <= last; j++) {
+                            if (junctionVelocity[j] != null && junctionFactor[j] > 0) {
+                                junctionFactor[j] = (junctionFactor[j] > 0.2 ? junctionFactor[j]*0.5 : 0);
+                                junctionReduced = true;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper for the optimizer: computes the junction velocities in the corners between subsequent uncoordinated 
+     * moves. Each axis that keeps its direction through a corner can pass it in motion, the other axes stop. 
+     * The junction velocity is limited by the feed-rate limits, and by the average velocity of the axis in the 
+     * moves before and after the corner, as the axes of an uncoordinated move are synchronized to take the same 
+     * time, i.e. an axis with little displacement must not enter or leave the move fast. Finally it is limited 
+     * by the velocity that can be reached over the moves before and after the corner, which is propagated 
+     * along the path, forward and backward, like a controller's look-ahead planner does. Entry and exit velocities 
+     * that are not junctions are assumed to be zero. 
+     * 
+     * The corners of a sandwiched coordinated move are included, but the junction velocities are scaled down to 
+     * be along its straight line. An axis that does not keep its direction therefore stops all the axes.  
+     * 
+     * @param simplified Moves that do not support uncoordinated motion.
+     * @param sandwiched Coordinated moves that are both preceded and followed by an uncoordinated move. 
+     * @param junctionFactor Factor per corner, by which the junction velocities are reduced.
+     * @return The junction velocities per axis, junctionVelocity[i] for the corner between move i-1 and i, or null 
+     * if this is not a smoothed corner.
+     */
+    protected double [][] computeJunctionVelocities(boolean [] simplified, boolean [] sandwiched, 
+            double [] junctionFactor) {
+        int size = size();
+        double [][] junctionVelocity = new double[size][];
+        double [][] lineVector = new double[size][];
+        for (int i = 0; i < size; i++) {
+            if (sandwiched[i]) {
+                lineVector[i] = MotionProfile.getUnitVector(get(i));
+            }
+        }
+        for (int i = 1; i < size; i++) {
+            MotionProfile [] prevProfiles = get(i-1);
+            MotionProfile [] profiles = get(i);
+            if (simplified[i-1] || simplified[i] 
+                    || (MotionProfile.isCoordinated(prevProfiles) && !sandwiched[i-1]) 
+                    || (MotionProfile.isCoordinated(profiles) && !sandwiched[i])
+                    || prevProfiles.length != profiles.length) {
+                continue;
+            }
+            junctionVelocity[i] = new double[profiles.length];
+            for (int axis = 0; axis < profiles.length; axis++) {
+                double d0 = prevProfiles[axis].s[segments] - prevProfiles[axis].s[0];
+                double d1 = profiles[axis].s[segments] - profiles[axis].s[0];
+                double t0 = prevProfiles[axis].getTime();
+                double t1 = profiles[axis].getTime();
+                if (d0*d1 > 0 && t0 > 0 && t1 > 0) {
+                    junctionVelocity[i][axis] = junctionFactor[i]*Math.min(
+                            Math.min(prevProfiles[axis].getVelocityMax(), profiles[axis].getVelocityMax()),
+                            Math.min(Math.abs(d0)/t0, Math.abs(d1)/t1));
+                }
+            }
+        }
+        alignJunctionVelocities(junctionVelocity, lineVector);
+        // Forward pass: the junction must be reachable over the move before it. 
+        for (int i = 1; i < size; i++) {
+            if (junctionVelocity[i] != null) {
+                MotionProfile [] prevProfiles = get(i-1);
+                for (int axis = 0; axis < prevProfiles.length; axis++) {
+                    if (junctionVelocity[i][axis] != 0) {
+                        double v0 = (junctionVelocity[i-1] != null ? junctionVelocity[i-1][axis] : 0);
+                        double distance = Math.abs(prevProfiles[axis].s[segments] - prevProfiles[axis].s[0]);
+                        junctionVelocity[i][axis] = Math.min(junctionVelocity[i][axis], 
+                                getReachableVelocity(prevProfiles[axis], v0, distance));
+                    }
+                }
+            }
+        }
+        // Backward pass: the junction must be reachable over the move after it, and the sign is applied. 
+        for (int i = size - 1; i >= 1; i--) {
+            if (junctionVelocity[i] != null) {
+                MotionProfile [] profiles = get(i);
+                for (int axis = 0; axis < profiles.length; axis++) {
+                    if (junctionVelocity[i][axis] != 0) {
+                        double v1 = (i+1 < size && junctionVelocity[i+1] != null ? 
+                                Math.abs(junctionVelocity[i+1][axis]) : 0);
+                        double d1 = profiles[axis].s[segments] - profiles[axis].s[0];
+                        junctionVelocity[i][axis] = Math.signum(d1)*Math.min(junctionVelocity[i][axis], 
+                                getReachableVelocity(profiles[axis], v1, Math.abs(d1)));
+                    }
+                }
+            }
+            // Applied here already, so the reduction is propagated further back. 
+            alignJunctionVelocity(junctionVelocity, lineVector, i);
+        }
+        return junctionVelocity;
+    }
+
+    /**
+     * Scale down the junction velocities in the corners of sandwiched coordinated moves, so they are along the 
+     * straight line of the move.
+     * 
+     * @param junctionVelocity
+     * @param lineVector The unit vector of the sandwiched coordinated moves, null for the other moves. 
+     */
+    protected void alignJunctionVelocities(double [][] junctionVelocity, double [][] lineVector) {
+        for (int i = 1; i < junctionVelocity.length; i++) {
+            alignJunctionVelocity(junctionVelocity, lineVector, i);
+        }
+    }
+
+    private void alignJunctionVelocity(double [][] junctionVelocity, double [][] lineVector, int i) {
+        if (junctionVelocity[i] == null) {
+            return;
+        }
+        for (int k = i-1; k <= i && k < lineVector.length; k++) {
+            double [] unitVector = lineVector[k];
+            if (unitVector != null) {
+                // The speed along the line is limited by the axis that allows the least.
+                double speed = Double.POSITIVE_INFINITY;
+                for (int axis = 0; axis < unitVector.length; axis++) {
+                    double u = Math.abs(unitVector[axis]);
+                    if (u > MotionProfile.eps) {
+                        speed = Math.min(speed, Math.abs(junctionVelocity[i][axis])/u);
+                    }
+                }
+                if (!Double.isFinite(speed)) {
+                    speed = 0;
+                }
+                for (int axis = 0; axis < unitVector.length; axis++) {
+                    junctionVelocity[i][axis] = Math.signum(unitVector[axis])*speed*Math.abs(unitVector[axis]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param profile The profile providing the limits. 
+     * @param v0 The (absolute) velocity at one end of the distance.
+     * @param distance
+     * @return The highest (absolute) velocity that can be reached at the other end of the distance, with zero 
+     * acceleration at both ends.
+     */
+    protected static double getReachableVelocity(MotionProfile profile, double v0, double distance) {
+        double vMax = profile.getVelocityMax();
+        if (v0 >= vMax || getVelocityChangeDistance(profile, v0, vMax) <= distance) {
+            return vMax;
+        }
+        double v1Low = v0;
+        double v1High = vMax;
+        for (int i = 0; i < 32; i++) {
+            double v1 = (v1Low + v1High)*0.5;
+            if (getVelocityChangeDistance(profile, v0, v1) <= distance) {
+                v1Low = v1;
+            }
+            else {
+                v1High = v1;
+            }
+        }
+        return v1Low;
+    }
+
+    /**
+     * @param profile The profile providing the limits. 
+     * @param v0 
+     * @param v1
+     * @return The distance needed to change the velocity from v0 to v1, with zero acceleration at both ends.
+     */
+    protected static double getVelocityChangeDistance(MotionProfile profile, double v0, double v1) {
+        double dv = Math.abs(v1 - v0);
+        double aMax = Math.min(profile.getEntryAccelerationMax(), profile.getExitAccelerationMax());
+        if (aMax <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double time;
+        if (profile.isConstantAcceleration()) {
+            time = dv/aMax;
+        }
+        else {
+            double jMax = profile.getJerkMax();
+            if (dv <= aMax*aMax/jMax) {
+                // Acceleration limit not reached.
+                time = 2*Math.sqrt(dv/jMax);
+            }
+            else {
+                time = dv/aMax + aMax/jMax;
+            }
         }
+        // The profile is symmetric, so the average velocity is just in the middle.
+        return (v0 + v1)*0.5*time;
     }
 
     /**
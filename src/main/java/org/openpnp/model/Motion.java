@@ -988,6 +988,18 @@ public class Motion {
             }
         }
 
+        if (driver.isInterpolationAdaptive()) {
+            Length positionTolerance = driver.getInterpolationPositionTolerance();
+            Length velocityTolerance = driver.getInterpolationVelocityTolerance();
+            if (positionTolerance == null || velocityTolerance == null) {
+                throw new Exception("Driver does not support adaptive move interpolation. Please refer to Issues & Solutions.");
+            }
+            return adaptiveInterpolatedMoveToCommands(driver, retiming, motionIntervals, 
+                    maxSteps, timeStep, distStep, maxDeltaA, minVelocity, minAcceleration, 
+                    positionTolerance.convertToUnits(AxesLocation.getUnits()).getValue(), 
+                    velocityTolerance.convertToUnits(AxesLocation.getUnits()).getValue());
+        }
+
         List<MoveToCommand> list = new ArrayList<>(numSteps);
         // Last taken interpolation point, initialized to be the start. 
         AxesLocation location0 = getMomentaryLocation(0);
@@ -1065,55 +1077,14 @@ public class Motion {
                     break;
                 }
                 else {
-                    final AxesLocation ds = segment;
-                    double distance = ds.getRS274NGCMetric(driver, 
-                            (axis) -> ds.getCoordinate(axis));
-                    AxesLocation movedAxesLocation = new AxesLocation(segment.getAxes(driver), 
-                            (axis) -> location2.getLengthCoordinate(axis));
                     AxesLocation velocity2 = getMomentaryVelocity(t2);
-
-                    // Note, if the motion is curved, we might have an angle between the segments (corners of a polygon), 
-                    // so we need to calculate the velocity projected onto the straight segment. This will lower the 
-                    // absolute velocity slightly and introduce an instant velocity change in the corner instead 
-                    // (in controllers this is typically called "junction deviation" or "jerk"). 
                     final AxesLocation segmentVelocity0 = velocity0.along(segment);
                     final AxesLocation segmentVelocity2 = velocity2.along(segment);
-                    // Calculate scalar RS274NGC (G-code) tool-path rates.
-                    double v0, v2;
-                    // Segment scalar rates.
-                    v0 = segment.getRS274NGCMetric(driver, 
-                            (axis) -> segmentVelocity0.getCoordinate(axis));
-                    v2 = segment.getRS274NGCMetric(driver, 
-                            (axis) -> segmentVelocity2.getCoordinate(axis));
-                    // Avg. velocity with constant acceleration.
-                    double avgVelocity = (v0 + v2)*0.5;
-                    double dtNominal = distance == 0 ? 0 : distance/avgVelocity;
-                    // Tool-path acceleration is the velocity difference over nominal time.
-                    double acceleration = (v2 - v0)/dtNominal;
+                    MoveToCommand command2 = createInterpolationCommand(driver, segment, 
+                            location0, location2, velocity0, velocity2, t0, maxDeltaA, minAcceleration);
                     // Record the maximum velocity. This is done, even if this segment is later not be recorded, which is 
                     // fine because we actually want to get the true peak.
-                    double maxSegmentVelocity = Math.max(Math.abs(v0), Math.abs(v2));
-                    maxVelocity = Math.max(maxSegmentVelocity, maxVelocity);
-                    double minSegmentAcceleration = minAcceleration;
-                    Double velocity = null;
-                    if (acceleration == 0) {
-                        // Velocity governed segment.
-                        velocity = maxSegmentVelocity;
-                        minSegmentAcceleration = Double.POSITIVE_INFINITY;
-                        // Allow a higher acceleration to recover from any unplanned deceleration. 
-                        for (ControllerAxis axis : segment.getControllerAxes()) {
-                            double aMinAxis = maxDeltaA.getCoordinate(axis)/Math.abs(segment.getCoordinate(axis)/distance);
-                            minSegmentAcceleration = Math.min(minSegmentAcceleration, aMinAxis);
-                        }
-                    }
-
-                    MoveToCommand command2 = new MoveToCommand(
-                            location0, location2,
-                            movedAxesLocation, // just the axes that are actually moved  
-                            velocity, 
-                            Math.max(Math.max(Math.abs(acceleration), minSegmentAcceleration), minAcceleration),
-                            null, // No jerk, we're simulating it, remember?
-                            t0, dtNominal, v0, v2); 
+                    maxVelocity = Math.max(Math.max(Math.abs(command2.v0), Math.abs(command2.v1)), maxVelocity);
 
                     // Are we making a new segment?
                     boolean newSegment = false;
@@ -1231,8 +1202,69 @@ public class Motion {
         double compTime = NanosecondTime.getRuntimeSeconds() - compT0;
         Logger.debug("Interpolation "+numSteps+" intervals, "+probeCount+" probes, "+list.size()
         +" steps, comp time "+String.format(Locale.US, "%.3f", compTime*1000)+"ms");
-        // The interpolation will use constant acceleration to reach the way-points, i.e. it will be slightly faster. 
-        // Re-time the whole path to match the planning time exactly.
+        return retimeInterpolation(list, maxVelocity, time, retiming);
+    }
+
+    /**
+     * Create the interpolation command from location0 to location2, with constant acceleration between the given
+     * velocities projected onto the straight segment. 
+     */
+    private MoveToCommand createInterpolationCommand(Driver driver, AxesLocation segment,
+            AxesLocation location0, AxesLocation location2, AxesLocation velocity0, AxesLocation velocity2, double t0,
+            AxesLocation maxDeltaA, double minAcceleration) {
+        final AxesLocation ds = segment;
+        double distance = ds.getRS274NGCMetric(driver, 
+                (axis) -> ds.getCoordinate(axis));
+        AxesLocation movedAxesLocation = new AxesLocation(segment.getAxes(driver), 
+                (axis) -> location2.getLengthCoordinate(axis));
+
+        // Note, if the motion is curved, we might have an angle between the segments (corners of a polygon), 
+        // so we need to calculate the velocity projected onto the straight segment. This will lower the 
+        // absolute velocity slightly and introduce an instant velocity change in the corner instead 
+        // (in controllers this is typically called "junction deviation" or "jerk"). 
+        final AxesLocation segmentVelocity0 = velocity0.along(segment);
+        final AxesLocation segmentVelocity2 = velocity2.along(segment);
+        // Calculate scalar RS274NGC (G-code) tool-path rates.
+        double v0, v2;
+        // Segment scalar rates.
+        v0 = segment.getRS274NGCMetric(driver, 
+                (axis) -> segmentVelocity0.getCoordinate(axis));
+        v2 = segment.getRS274NGCMetric(driver, 
+                (axis) -> segmentVelocity2.getCoordinate(axis));
+        // Avg. velocity with constant acceleration.
+        double avgVelocity = (v0 + v2)*0.5;
+        double dtNominal = distance == 0 ? 0 : distance/avgVelocity;
+        // Tool-path acceleration is the velocity difference over nominal time.
+        double acceleration = (v2 - v0)/dtNominal;
+        double maxSegmentVelocity = Math.max(Math.abs(v0), Math.abs(v2));
+        double minSegmentAcceleration = minAcceleration;
+        Double velocity = null;
+        if (acceleration == 0) {
+            // Velocity governed segment.
+            velocity = maxSegmentVelocity;
+            minSegmentAcceleration = Double.POSITIVE_INFINITY;
+            // Allow a higher acceleration to recover from any unplanned deceleration. 
+            for (ControllerAxis axis : segment.getControllerAxes()) {
+                double aMinAxis = maxDeltaA.getCoordinate(axis)/Math.abs(segment.getCoordinate(axis)/distance);
+                minSegmentAcceleration = Math.min(minSegmentAcceleration, aMinAxis);
+            }
+        }
+
+        return new MoveToCommand(
+                location0, location2,
+                movedAxesLocation, // just the axes that are actually moved  
+                velocity, 
+                Math.max(Math.max(Math.abs(acceleration), minSegmentAcceleration), minAcceleration),
+                null, // No jerk, we're simulating it, remember?
+                t0, dtNominal, v0, v2); 
+    }
+
+    /**
+     * The interpolation will use constant acceleration to reach the way-points, i.e. it will be slightly faster. 
+     * Re-time the whole path to match the planning time exactly.
+     */
+    private List<MoveToCommand> retimeInterpolation(List<MoveToCommand> list, double maxVelocity, double time, 
+            boolean retiming) {
         double timeEffective = 0;
         for (MoveToCommand move : list) {
             timeEffective += move.time;
@@ -1262,6 +1294,226 @@ public class Motion {
         return list;
     }
 
+    /**
+     * Number of probes per interpolation segment, used to find the largest deviation of the interpolation
+     * from the planned motion.
+     */
+    private static final int adaptiveProbes = 8;
+
+    /**
+     * Adaptive interpolation, error-bounded by the given position and velocity tolerances. Instead of stepping
+     * through the move in fixed time steps, the special intervals are taken as way-points and each interval is 
+     * covered by the longest segments that are still within tolerance of the planned motion, when executed by the 
+     * controller as straight segments with constant acceleration. Way-points are therefore dense where the velocity 
+     * curve is bent (jerk phases, curves of uncoordinated moves), and sparse where it is near linear, which results 
+     * in fewer G-code commands for the same fidelity. 
+     * 
+     * @param driver
+     * @param retiming
+     * @param motionIntervals
+     * @param maxSteps
+     * @param timeStep Minimum time step.
+     * @param distStep Minimum step distance in resolution ticks.
+     * @param maxDeltaA
+     * @param minVelocity
+     * @param minAcceleration
+     * @param positionTolerance Maximum position deviation in AxesLocation units. Rotational axes are only held to 
+     * it, in degrees, on segments without linear motion, like the RS274NGC metric of the tool-path.
+     * @param velocityTolerance Maximum velocity deviation in AxesLocation units per second, applied like the 
+     * positionTolerance.
+     * @return
+     * @throws Exception
+     */
+    protected List<MoveToCommand> adaptiveInterpolatedMoveToCommands(Driver driver, boolean retiming,
+            TreeSet<Double> motionIntervals, int maxSteps, double timeStep, int distStep, 
+            AxesLocation maxDeltaA, double minVelocity, double minAcceleration, 
+            double positionTolerance, double velocityTolerance) throws Exception {
+        double compT0 = NanosecondTime.getRuntimeSeconds();
+        double time = getTime();
+        MotionProfile [] profiles = new MotionProfile[maxDeltaA.getControllerAxes().size()];
+        boolean [] rotational = new boolean[profiles.length];
+        int n = 0;
+        for (ControllerAxis axis : maxDeltaA.getControllerAxes()) {
+            rotational[n] = axis.isRotationalOnController();
+            profiles[n++] = getAxisProfile(axis);
+        }
+
+        // The special intervals are way-points, unless they are too close.
+        List<Double> intervals = new ArrayList<>();
+        intervals.add(0.);
+        AxesLocation locationEnd = getMomentaryLocation(time);
+        for (double t : motionIntervals) {
+            double tPrev = intervals.get(intervals.size() - 1);
+            if (t > tPrev + timeStep && t < time - timeStep) {
+                AxesLocation location = getMomentaryLocation(t);
+                if (!isTooSmallSegment(driver, getMomentaryLocation(tPrev), location, distStep)
+                        && !isTooSmallSegment(driver, location, locationEnd, distStep)) {
+                    intervals.add(t);
+                }
+            }
+        }
+        intervals.add(time);
+
+        // Cover each interval with the longest segments that are within tolerance. 
+        List<Double> wayPoints = new ArrayList<>();
+        wayPoints.add(0.);
+        int probeCount = 0;
+        for (int i = 1; i < intervals.size(); i++) {
+            double tEnd = intervals.get(i);
+            double t0 = wayPoints.get(wayPoints.size() - 1);
+            while (t0 < tEnd) {
+                double t1 = tEnd;
+                probeCount++;
+                if (getAdaptiveError(profiles, rotational, t0, t1, positionTolerance, velocityTolerance) > 1.0) {
+                    // Bisect for the longest segment within tolerance.
+                    double tLow = Math.min(t0 + timeStep, tEnd);
+                    double tHigh = tEnd;
+                    while (tHigh - tLow > timeStep) {
+                        double t = (tLow + tHigh)*0.5;
+                        probeCount++;
+                        if (getAdaptiveError(profiles, rotational, t0, t, positionTolerance, velocityTolerance) > 1.0) {
+                            tHigh = t;
+                        }
+                        else {
+                            tLow = t;
+                        }
+                    }
+                    t1 = tLow;
+                    // Extend segments that are too small, and merge a too small remainder. 
+                    AxesLocation location0 = getMomentaryLocation(t0);
+                    while (t1 < tEnd && isTooSmallSegment(driver, location0, getMomentaryLocation(t1), distStep)) {
+                        t1 = Math.min(t1 + timeStep, tEnd);
+                    }
+                    if (t1 < tEnd && isTooSmallSegment(driver, getMomentaryLocation(t1), getMomentaryLocation(tEnd), distStep)) {
+                        t1 = tEnd;
+                    }
+                }
+                if (wayPoints.size() > maxSteps) {
+                    // Uh-oh, not enough steps available for interpolation. Degrade move to moderated.
+                    Logger.warn("Adaptive interpolation failed! Max. steps ("+maxSteps+") reached after "
+                            +String.format(Locale.US, "%.3f", 100*t0/time)+"% of move time/ "+probeCount+" probes. Degrading to moderated move.");
+                    setOption(MotionOption.InterpolationFailed);
+                    return moderatedMoveTo(driver);
+                }
+                wayPoints.add(t1);
+                t0 = t1;
+            }
+        }
+        if (wayPoints.size() < 3) {
+            // Interpolation collapsed.
+            return moderatedMoveTo(driver);
+        }
+
+        List<MoveToCommand> list = new ArrayList<>(wayPoints.size() - 1);
+        double maxVelocity = minVelocity;
+        double t0 = 0;
+        AxesLocation location0 = getMomentaryLocation(t0);
+        AxesLocation velocity0 = getMomentaryVelocity(t0);
+        for (int i = 1; i < wayPoints.size(); i++) {
+            double t2 = wayPoints.get(i);
+            AxesLocation location2 = getMomentaryLocation(t2);
+            AxesLocation velocity2 = getMomentaryVelocity(t2);
+            AxesLocation segment = location0.motionSegmentTo(location2).drivenBy(driver);
+            MoveToCommand command = createInterpolationCommand(driver, segment, 
+                    location0, location2, velocity0, velocity2, t0, maxDeltaA, minAcceleration);
+            maxVelocity = Math.max(Math.max(Math.abs(command.v0), Math.abs(command.v1)), maxVelocity);
+            list.add(command);
+            t0 = t2;
+            location0 = location2;
+            velocity0 = velocity2;
+        }
+        double compTime = NanosecondTime.getRuntimeSeconds() - compT0;
+        Logger.debug("Adaptive interpolation "+probeCount+" probes, "+list.size()
+        +" steps, comp time "+String.format(Locale.US, "%.3f", compTime*1000)+"ms");
+        return retimeInterpolation(list, maxVelocity, time, retiming);
+    }
+
+    /**
+     * Probe the interpolation segment from t0 to t1 for its largest deviation from the planned motion. The 
+     * segment is modeled like the controller executes it: a straight line with constant acceleration from the entry 
+     * to the exit velocity, both projected onto the line, and with the tool-path rates taken in the RS274NGC metric, 
+     * like createInterpolationCommand() does. 
+     * 
+     * The tolerances are in length units, so the rotational axes are only probed on segments without linear motion, 
+     * where the RS274NGC metric takes them as the tool-path in degrees. On the other segments they are moved along 
+     * the line, proportionally to the linear axes. 
+     * 
+     * @return The largest deviation relative to the tolerances, i.e. the segment is within tolerance if <= 1.0.
+     */
+    private static double getAdaptiveError(MotionProfile [] profiles, boolean [] rotational, double t0, double t1, 
+            double positionTolerance, double velocityTolerance) {
+        double dt = t1 - t0;
+        if (dt <= 0) {
+            return 0;
+        }
+        int axes = profiles.length;
+        double [] s0 = new double[axes];
+        double [] ds = new double[axes];
+        double linearLength = 0;
+        double rotationalLength = 0;
+        double dotEntry = 0;
+        double dotExit = 0;
+        for (int i = 0; i < axes; i++) {
+            s0[i] = profiles[i].getMomentaryLocation(t0);
+            ds[i] = profiles[i].getMomentaryLocation(t1) - s0[i];
+            if (rotational[i]) {
+                rotationalLength += ds[i]*ds[i];
+            }
+            else {
+                linearLength += ds[i]*ds[i];
+            }
+            dotEntry += profiles[i].getMomentaryVelocity(t0)*ds[i];
+            dotExit += profiles[i].getMomentaryVelocity(t1)*ds[i];
+        }
+        double euclideanSq = linearLength + rotationalLength;
+        linearLength = Math.sqrt(linearLength);
+        rotationalLength = Math.sqrt(rotationalLength);
+        // RS274NGC metric: the linear distance, or the angular distance in the absence of linear motion.
+        boolean linearMotion = (linearLength != 0);
+        double length = linearMotion ? linearLength : rotationalLength;
+        // Scalar entry and exit velocities along the line, i.e. the velocities projected onto the line 
+        // in the RS274NGC metric.
+        double vEntry = 0;
+        double vExit = 0;
+        if (euclideanSq > 0) {
+            vEntry = dotEntry/euclideanSq*length;
+            vExit = dotExit/euclideanSq*length;
+        }
+        // Progress along the line, normalized to reach the end at t1. Degenerates to constant velocity, 
+        // if entry and exit velocities do not move forward on the line.
+        double progress = (vEntry + vExit)*0.5*dt;
+        boolean linear = (progress <= length*MotionProfile.eps);
+
+        double maxError = 0;
+        for (int k = 0; k <= adaptiveProbes + 1; k++) {
+            double tau = dt*k/(adaptiveProbes + 1);
+            double fraction, fractionRate;
+            if (linear) {
+                fraction = tau/dt;
+                fractionRate = 1/dt;
+            }
+            else {
+                fraction = (vEntry*tau + 0.5*(vExit - vEntry)/dt*tau*tau)/progress;
+                fractionRate = (vEntry + (vExit - vEntry)*tau/dt)/progress;
+            }
+            for (int i = 0; i < axes; i++) {
+                if (rotational[i] && linearMotion) {
+                    continue;
+                }
+                maxError = Math.max(maxError,
+                        Math.abs(profiles[i].getMomentaryVelocity(t0 + tau) - ds[i]*fractionRate)/velocityTolerance);
+                maxError = Math.max(maxError,
+                        Math.abs(profiles[i].getMomentaryLocation(t0 + tau) - s0[i] - ds[i]*fraction)/positionTolerance);
+            }
+        }
+        return maxError;
+    }
+
+    private static boolean isTooSmallSegment(Driver driver, AxesLocation location0, AxesLocation location1, int distStep) {
+        AxesLocation segment = location0.motionSegmentTo(location1).drivenBy(driver);
+        return segment.isEmpty() || segment.multiply(1.0/distStep).matches(AxesLocation.zero);
+    }
+
     private double computeMaxDeltaA(Integer maxJerkSteps, ControllerAxis axis) {
         MotionProfile profile = axesProfiles[getAxisIndex(axis)]; 
         if (profile.isConstantAcceleration() || maxJerkSteps < 2) {
@@ -30,7 +30,6 @@ import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import org.openpnp.spi.Driver.MotionControlType;
-import org.openpnp.util.NanosecondTime;
 import org.pmw.tinylog.Logger;
 
 public class MotionProfile {
@@ -94,6 +93,12 @@ public class MotionProfile {
 
     int profileOptions;
 
+    // Work arrays of the solver.
+    private double [] solverBorders;
+    private int [][] solverRegions;
+    private double [] solverBorderSResult;
+    private double [] solverBorderTResult;
+
     public enum ProfileOption {
         Coordinated, 
         SynchronizeEarlyBird, 
@@ -512,7 +517,9 @@ public class MotionProfile {
             Logger.error(label+this+" has error: "+error);
         }
         else {
-            trace(label+": "+this);
+            if (traceEnabled) {
+                trace(label+": "+this);
+            }
         }
     }
 
@@ -573,10 +580,11 @@ public class MotionProfile {
         solve(iterations, vtol*Math.sqrt(magnitude), ttol*Math.sqrt(magnitude));
     }
     public void solve(final int iterations, final double vtol, final double ttol) {
-        double tStart = NanosecondTime.getRuntimeSeconds();
+        // Plain System.nanoTime(), as this is for statistics only, no need for unique and monotonic time stamps.
+        long tStart = System.nanoTime();
         solveForVelocity(iterations, vtol, ttol);
         // Result is now stored in the profile i.e. you can get v[4], a[2], a[6] to get the (signed) solution.
-        solvingTime = NanosecondTime.getRuntimeSeconds() - tStart;
+        solvingTime = (System.nanoTime() - tStart)*1e-9;
         setOption(ProfileOption.Solved);
         if (svgEnabled) {
             MotionProfile traceProfile = new MotionProfile(this);
@@ -594,7 +602,9 @@ public class MotionProfile {
             return true;
         }
 
-        trace("\n### solving "+this);
+        if (traceEnabled) {
+            trace("\n### solving "+this);
+        }
 
         // Calculate the effective entry/exit velocity after jerk to acceleration 0.
         double vEffEntry = getEffectiveEntryVelocity(jMax);
@@ -623,14 +633,26 @@ public class MotionProfile {
 
         // Solver regions from -vMax to +vMax are split by effective entry/exit velocities and zero. 
         // Note, we do not allow solutions beyond vMax, even if the effective entry/exit velocities are beyond.
-        double [] borders = new double [] {
-                -vMax, -nearZero, 0, nearZero, vMax, Math.max(-vMax, Math.min(vMax, vEffEntry)), Math.max(-vMax, Math.min(vMax, vEffExit)) 
-        };
+        // The work arrays are reused, so repeated solving does not allocate. 
+        if (solverBorders == null) {
+            solverBorders = new double [7];
+            solverRegions = new int [solverBorders.length-1][2];
+            solverBorderSResult = new double [solverBorders.length];
+            solverBorderTResult = new double [solverBorders.length];
+        }
+        double [] borders = solverBorders;
+        borders[0] = -vMax;
+        borders[1] = -nearZero;
+        borders[2] = 0;
+        borders[3] = nearZero;
+        borders[4] = vMax;
+        borders[5] = Math.max(-vMax, Math.min(vMax, vEffEntry));
+        borders[6] = Math.max(-vMax, Math.min(vMax, vEffExit));
         Arrays.sort(borders);
-        int [][] regions = new int[borders.length-1][];
+        int [][] regions = solverRegions;
         int regionCount = 0;
-        double borderSResult[] = new double [borders.length];
-        double borderTResult[] = new double [borders.length];
+        double borderSResult[] = solverBorderSResult;
+        double borderTResult[] = solverBorderTResult;
         // Mark these results as missing.
         Arrays.fill(borderSResult, Double.NaN);
         int i0 = 0;
@@ -638,7 +660,8 @@ public class MotionProfile {
         for (int i = 1; i < borders.length; i++) {
             if (borders[i0] < borders[i]) {
                 // Region not empty, add it.
-                regions[regionCount] = new int [] {i0, i};
+                regions[regionCount][0] = i0;
+                regions[regionCount][1] = i;
                 regionCount++;
                 i0 = i;
                 if (borders[i] == v[4]) {
@@ -672,7 +695,9 @@ public class MotionProfile {
                 if (aMaxEntry == aMaxExit) {
                     double sd = signum*(s[segments]-s[0]);
                     vInitialGuess = signum*Math.sqrt(aMaxEntry*sd + 1./2*Math.pow(v[0], 2) + v[0]*v[7] - 1./2*Math.pow(v[7], 2));
-                    trace("Analytical solution with constant acceleration profile = "+vInitialGuess);
+                    if (traceEnabled) {
+                        trace("Analytical solution with constant acceleration profile = "+vInitialGuess);
+                    }
                 }
             }
             else if (!hasOption(ProfileOption.SimplifiedSCurve)){
@@ -701,7 +726,9 @@ public class MotionProfile {
                             - 2*Math.sqrt(3*Math.pow(a[1], 4) + 18*a[1]*Math.pow(j[0], 2)*s3 + 9*Math.pow(j[0], 2)*Math.pow(v[1], 2)))/j[0];
                     double v3_2 = -1./6*(3*Math.pow(a[1], 2) 
                             + 2*Math.sqrt(3*Math.pow(a[1], 4) + 18*a[1]*Math.pow(j[0], 2)*s3 + 9*Math.pow(j[0], 2)*Math.pow(v[1], 2)))/j[0];
-                    trace("Analytical solution with constant acceleration segment (1) = "+vInitialGuess+" (2) = "+v3_2);
+                    if (traceEnabled) {
+                        trace("Analytical solution with constant acceleration segment (1) = "+vInitialGuess+" (2) = "+v3_2);
+                    }
                 }
                 else if (t[5] > (-t[4]*0.25)) { 
                     // Deceleration segment is long enough.
@@ -711,13 +738,17 @@ public class MotionProfile {
                             - 2*Math.sqrt(3*Math.pow(a[6], 4) - 18*a[6]*Math.pow(j[6], 2)*s4 + 9*Math.pow(j[6], 2)*Math.pow(v[6], 2)))/j[6]);
                     double v3_2 = (-1./6*(3*Math.pow(a[6], 2) 
                             + 2*Math.sqrt(3*Math.pow(a[6], 4) - 18*a[6]*Math.pow(j[6], 2)*s4 + 9*Math.pow(j[6], 2)*Math.pow(v[6], 2)))/j[6]);
-                    trace("Analytical solution with constant deceleration segment (1) = "+vInitialGuess+" (2) = "+v3_2);
+                    if (traceEnabled) {
+                        trace("Analytical solution with constant deceleration segment (1) = "+vInitialGuess+" (2) = "+v3_2);
+                    }
                 }
             }
             if (Double.isFinite(vInitialGuess) && Math.abs(vInitialGuess) > 0 && Math.abs(vInitialGuess) <= vMax) {
                 computeProfile(vInitialGuess, vEffEntry, vEffExit, tMin);
                 if (t[4] >= -ttol && t[4] < vttol) {
-                    trace("taken "+this);
+                    if (traceEnabled) {
+                        trace("taken "+this);
+                    }
                     return true;
                 }
             }
@@ -745,7 +776,9 @@ public class MotionProfile {
                 else if (sResult >= -stol && (tMin == 0 || tResult >= tMin-ttol) && tResult < bestTime) {
                     bestVelocity = vPeak;
                     bestTime = tResult;
-                    trace("border case v="+vPeak+", s="+sResult+", t="+tResult+" "+this);
+                    if (traceEnabled) {
+                        trace("border case v="+vPeak+", s="+sResult+", t="+tResult+" "+this);
+                    }
                 }
             }
         }
@@ -777,7 +810,9 @@ public class MotionProfile {
 
             if (!(sValid0 || sValid1)) {
                 // None valid -> skip this region.
-                trace("region invalid in s "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1);
+                if (traceEnabled) {
+                    trace("region invalid in s "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1);
+                }
                 continue;
             }
 
@@ -794,12 +829,16 @@ public class MotionProfile {
             boolean tValid1 = (tMin == 0 || tResult1 >= tMin-ttol);
             if (!(tValid0 || tValid1)) {
                 // None valid -> skip this region.
-                trace("region invalid in t "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1);
+                if (traceEnabled) {
+                    trace("region invalid in t "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1);
+                }
                 continue;
             }
 
             if (Math.min(tResult0,  tResult1) >= bestTime) {
-                trace("region eclipsed by best t "+bestTime+" "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1);
+                if (traceEnabled) {
+                    trace("region eclipsed by best t "+bestTime+" "+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1);
+                }
                 continue;
             }
 
@@ -843,12 +882,16 @@ public class MotionProfile {
                     tResult = time;
                     if (sResult < 0) {
                         // Great, we found it.
-                        trace("    found invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        if (traceEnabled) {
+                            trace("    found invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        }
                         break;
                     }
                     if (sResult > sSecant) {
                         // Raising result -> overshoot, this means there is no invalid section. 
-                        trace("    overshot, no invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        if (traceEnabled) {
+                            trace("    overshot, no invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        }
                         break;
                     }
                     // Apply secant method. 
@@ -856,7 +899,9 @@ public class MotionProfile {
                     if (Math.abs(gradient) < vttol) {
                         // Stuck in a local minimum. This must be a "tangent" situation, otherwise we should see overshoot.
                         // We simply don't support tangent cases.
-                        trace("    stuck local minimum, no invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        if (traceEnabled) {
+                            trace("    stuck local minimum, no invalid mid area "+vSearch+" s "+sResult+" t "+tResult);
+                        }
                         break;
                     }
                     double delta = -sResult/gradient;
@@ -865,7 +910,9 @@ public class MotionProfile {
                     sSecant = sResult;
                     // Assign new value.
                     vSearch = Math.max(vSearch0, Math.min(vSearch1,  vSearch+delta));
-                    trace("    search for invalid mid area "+vSearch+" gradient "+gradient+" delta "+delta+" s "+sResult+" t "+tResult);
+                    if (traceEnabled) {
+                        trace("    search for invalid mid area "+vSearch+" gradient "+gradient+" delta "+delta+" s "+sResult+" t "+tResult);
+                    }
                 }
                 while (true);
                 if (sResult < 0) {
@@ -910,7 +957,9 @@ public class MotionProfile {
                 }
             }
         }
-        trace("best velocity "+bestVelocity+" best time "+bestTime+" time-tMin "+(bestTime-tMin));
+        if (traceEnabled) {
+            trace("best velocity "+bestVelocity+" best time "+bestTime+" time-tMin "+(bestTime-tMin));
+        }
         if (bestVelocity != v[4]) {
             // re-establish best solution
             trace("  re-establish");
@@ -920,10 +969,14 @@ public class MotionProfile {
             if (Math.abs(time/tMin - 1) < 0.001) {
                 // The solver may have slightly approximated. Stretch the profile into the exact minimum time. 
                 if (retimeProfile()) {
-                    trace("    retimed tMin "+tMin+" time "+time);
+                    if (traceEnabled) {
+                        trace("    retimed tMin "+tMin+" time "+time);
+                    }
                 }
                 else {
-                    trace("    not retimed tMin "+tMin+" time "+time);
+                    if (traceEnabled) {
+                        trace("    not retimed tMin "+tMin+" time "+time);
+                    }
                 }
             }
             else {
@@ -991,13 +1044,19 @@ public class MotionProfile {
             double tMin, double bestTime,
             final int iterations, final double stol, final double vtol, final double ttol) {
 
-        trace("=== solveRegion("+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1+")");
+        if (traceEnabled) {
+            trace("=== solveRegion("+vPeak0+" .. "+vPeak1+", s="+sResult0+" .. "+sResult1+", t="+tResult0+" .. "+tResult1+")");
+        }
         if (Math.min(tResult0,  tResult1) >= bestTime) {
-            trace("region eclipsed by best t "+bestTime);
+            if (traceEnabled) {
+                trace("region eclipsed by best t "+bestTime);
+            }
             return false;
         }
         if (bestTime == tMin) {
-            trace("region eclipsed by best t == min t "+bestTime);
+            if (traceEnabled) {
+                trace("region eclipsed by best t == min t "+bestTime);
+            }
             return false;
         }
 
@@ -1037,7 +1096,9 @@ public class MotionProfile {
 
             double sResult = sign*(s[4] - s[3]);
             double tResult = time;
-            trace("vPeak = "+vPeak+" s="+sResult+" t-tMin="+(time-tMin)+" "+this);
+            if (traceEnabled) {
+                trace("vPeak = "+vPeak+" s="+sResult+" t-tMin="+(time-tMin)+" "+this);
+            }
             double magnitude = Math.max(eps, Math.min(maxMagnitude, 0.0001*(Math.abs(s[3]-s[0])+Math.abs(s[segments]-s[4]))));
             if (Math.abs(vPeak - vSecant) < magnitude*vtol) {
                 converging++;
@@ -1064,7 +1125,9 @@ public class MotionProfile {
                     // Restore the previously valid solution after converging (turns out there was not a better one).
                     computeProfile(vValid, vEffEntry, vEffExit, tMin);
                     // That's a solution
-                    trace("taken previous valid solution after converging "+vValid);
+                    if (traceEnabled) {
+                        trace("taken previous valid solution after converging "+vValid);
+                    }
                     return true;
                 }
                 else {
@@ -1215,7 +1278,9 @@ public class MotionProfile {
             if (profile.time > maxTime) {
                 maxTime = profile.time;
                 leadProfile = profile;
-                trace("    max time "+maxTime+" from "+profile);
+                if (traceEnabled) {
+                    trace("    max time "+maxTime+" from "+profile);
+                }
             }
         }
         // Re-time the others.
@@ -1340,7 +1405,9 @@ public class MotionProfile {
                         // Sometimes the solution was at/near entry/exit speeds and in these cases, it is possible
                         // that the new tMin is impossible, i.e. more time is needed. 
                         // --> restart the process.
-                        trace("    need to restart synchronize, maxTime "+maxTime+" breached with "+profile.time+" on "+profile);
+                        if (traceEnabled) {
+                            trace("    need to restart synchronize, maxTime "+maxTime+" breached with "+profile.time+" on "+profile);
+                        }
                         maxTime = profile.time;
                         restart = true;
                         break;
@@ -1882,11 +1949,8 @@ solve(eq, t)            # Solve for t
  t == -(dt*j - sqrt(dt^2*j^2 + 2*dt*j^2*t2 + j^2*t2^2 + 4*a2*dt*j))/j]
                      */
                     double sqrtTerm = Math.sqrt(Math.pow(dt, 2)*Math.pow(js, 2) + 2*dt*Math.pow(js, 2)*t2 + Math.pow(js, 2)*Math.pow(t2, 2) + 4*as*dt*js);
-                    double[] tS = new double[] { 
-                            -(dt*js + sqrtTerm)/js,
-                            -(dt*js - sqrtTerm)/js 
-                    };
-                    for (double ts : tS) {
+                    for (int root = 0; root < 2; root++) {
+                        double ts = (root == 0 ? -(dt*js + sqrtTerm)/js : -(dt*js - sqrtTerm)/js);
                         double dth = (ts-t2)/2;
                         if (dth > 0 && dth < t[1]+eps && dth < t[3]+eps) {
                             // Phase 1
@@ -1945,11 +2009,8 @@ solve(eq, t)            # Solve for t
                         double js = j[6];
                         double as = -a[6];
                         double sqrtTerm = Math.sqrt(Math.pow(dt, 2)*Math.pow(js, 2) + 2*dt*Math.pow(js, 2)*t6 + Math.pow(js, 2)*Math.pow(t6, 2) + 4*as*dt*js);
-                        double[] tS = new double[] { 
-                                -(dt*js + sqrtTerm)/js,
-                                -(dt*js - sqrtTerm)/js
-                        };
-                        for (double ts : tS) {
+                        for (int root = 0; root < 2; root++) {
+                            double ts = (root == 0 ? -(dt*js + sqrtTerm)/js : -(dt*js - sqrtTerm)/js);
                             double dth = (ts-t6)/2;
                             if (dth > 0 && dth < t[7]+eps && dth < t[5]+eps) {
                                 // Phase 7 backward
@@ -2011,7 +2072,7 @@ solve(eq, t)            # Solve for t
                     t[4] = 0;
                     tOverlap = Math.min(t[3], t[5]);
                     if (tMin > 0) {
-                        time = Arrays.stream(t).sum();
+                        time = sumOfTimes();
                         // Restrict to minimum time violation.
                         tOverlap = Math.min(tOverlap, time - tMin);
                     }
@@ -2050,6 +2111,27 @@ solve(eq, t)            # Solve for t
         eval++;
     }
 
+    /**
+     * @return The sum of the segment times, using compensated summation like DoubleStream.sum(), but without 
+     * allocating a stream. 
+     */
+    protected double sumOfTimes() {
+        double sum = 0;
+        double compensation = 0;
+        double simpleSum = 0;
+        for (double ti : t) {
+            simpleSum += ti;
+            double y = ti - compensation;
+            double sumNew = sum + y;
+            compensation = (sumNew - sum) - y;
+            sum = sumNew;
+        }
+        if (Double.isNaN(sum) && Double.isInfinite(simpleSum)) {
+            return simpleSum;
+        }
+        return sum;
+    }
+
     protected void computeTime(double tMin) {
         boolean adjustMinTime = false;
         if (a[3] == 0) { 
@@ -2062,7 +2144,7 @@ solve(eq, t)            # Solve for t
                 t[4] = (s[4] - s[3])/v[4];
             }
         }
-        time = Arrays.stream(t).sum();
+        time = sumOfTimes();
         if (adjustMinTime && (tMin > time)) {
             // Zero velocity profile -> can adapt minimum time directly 
             t[4] = tMin - time;
@@ -2312,7 +2394,8 @@ solve(eq, t)            # Solve for t
             if (j[i-1] != 0) {
                 // 3rd order segment.
                 double dt = Math.sqrt(Math.pow(a[i-1], 2) - 2*v[i-1]*j[i-1]);
-                for (double tCross : new double[] { -(a[i-1] + dt)/j[i-1], -(a[i-1] - dt)/j[i-1] }) { 
+                for (int root = 0; root < 2; root++) { 
+                    double tCross = (root == 0 ? -(a[i-1] + dt)/j[i-1] : -(a[i-1] - dt)/j[i-1]);
                     if (tCross >= 0 && tCross <= t[i]) {
                         // Zero-crossing inside the period, maybe an extreme.
                         double sExtreme = s[i-1] + v[i-1]*tCross + 1./2*a[i-1]*Math.pow(tCross, 2) + 1./6*j[i-1]*Math.pow(tCross, 3);
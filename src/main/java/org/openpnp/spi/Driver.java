@@ -20,6 +20,7 @@
 package org.openpnp.spi;
 
 import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
 
 import org.openpnp.model.AxesLocation;
 import org.openpnp.model.Identifiable;
@@ -171,6 +172,28 @@ import org.openpnp.spi.MotionPlanner.CompletionType;
         return null;
     }
 
+    /**
+     * Read a given String value from the given Actuator, without waiting for the value to be returned. 
+     * Drivers that can have multiple reads in flight override this, the default implementation
+     * reads synchronously.
+     * 
+     * @param actuator
+     * @param parameter
+     * @return A future completed with the value, or exceptionally if the read fails. 
+     * @throws Exception
+     */
+    public default CompletableFuture<String> actuatorReadAsync(Actuator actuator, Object parameter) throws Exception {
+        return CompletableFuture.completedFuture(actuatorRead(actuator, parameter));
+    }
+
+    /**
+     * @return True if {@link #actuatorReadAsync(Actuator, Object)} returns without waiting for the value, i.e. 
+     * if it pays to have multiple reads in flight.
+     */
+    public default boolean isActuatorReadAsyncSupported() {
+        return false;
+    }
+
     /**
      * Attempts to enable the Driver, turning on all outputs.
      * 
@@ -303,6 +326,37 @@ import org.openpnp.spi.MotionPlanner.CompletionType;
         return null;
     }
 
+    /**
+     * @return True if moves should be interpolated adaptively, i.e. with way-points placed where the motion deviates 
+     * most from the interpolation, until it is within getInterpolationPositionTolerance() and 
+     * getInterpolationVelocityTolerance(). Otherwise the move is stepped through in fixed time steps.
+     */
+    public default boolean isInterpolationAdaptive() {
+        return false;
+    }
+
+    /**
+     * @return The maximum position deviation of adaptive interpolation from the planned motion.
+     */
+    public default Length getInterpolationPositionTolerance() {
+        return null;
+    }
+
+    /**
+     * @return The maximum velocity deviation of adaptive interpolation from the planned motion, given per second.
+     */
+    public default Length getInterpolationVelocityTolerance() {
+        return null;
+    }
+
+    /**
+     * @return The number of commands queued in the driver that are not yet sent to the controller. Drivers that
+     * send synchronously always return 0.
+     */
+    public default int getCommandQueueDepth() {
+        return 0;
+    }
+
     /**
      * @return The minimum velocity, acceleration, jerk the driver supports. 
      * Used to prevent "rounded to zero" errors in decimal formatting and interpolation.
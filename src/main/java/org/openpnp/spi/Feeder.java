@@ -107,6 +107,33 @@ public interface Feeder extends Identifiable, Named, WizardConfigurable, Propert
      */
     public void feed(Nozzle nozzle) throws Exception;
 
+    /**
+     * @return True if the Feeder can safely be fed ahead of the pick, see {@link #feedAhead(Nozzle)}.
+     */
+    default boolean isFeedAheadSupported() {
+        return false;
+    }
+
+    /**
+     * Start feeding the next part ahead of the pick, e.g. while the head is still travelling to pick 
+     * from other feeders. The feed must not move the head, and should not wait for the feed to complete.
+     * The next call to {@link #feed(Nozzle)} must then only wait for this feed to be ready, instead of 
+     * feeding another part. Only called if {@link #isFeedAheadSupported()}.
+     * 
+     * @param nozzle The Nozzle that is planned to pick the part.
+     * @throws Exception
+     */
+    default void feedAhead(Nozzle nozzle) throws Exception {
+    }
+
+    /**
+     * Forget a feed ahead that will not be picked, e.g. because the job was aborted. The next call to 
+     * {@link #feed(Nozzle)} then feeds again, rather than relying on a part that may have been removed 
+     * in the meantime. Also done by {@link #prepareForJob(boolean)}.
+     */
+    default void cancelFeedAhead() {
+    }
+
     public void postPick(Nozzle nozzle) throws Exception;
 
     /*
@@ -133,4 +160,11 @@ public interface Feeder extends Identifiable, Named, WizardConfigurable, Propert
      * @return
      */
     public int getPickRetryCount();
+
+    /**
+     * @return The number of parts remaining in the feeder, or -1 if the feeder does not know.
+     */
+    default int getRemainingCount() {
+        return -1;
+    }
 }
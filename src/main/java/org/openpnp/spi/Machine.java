@@ -27,6 +27,7 @@ import java.util.concurrent.Future;
 import org.openpnp.model.Length;
 import org.openpnp.model.Location;
 import org.openpnp.model.Solutions;
+import org.openpnp.spi.base.FeederIndex;
 
 import com.google.common.util.concurrent.FutureCallback;
 
@@ -78,6 +79,11 @@ public interface Machine extends WizardConfigurable, PropertySheetHolder, Closea
 
     public Feeder getFeederByName(String name);
 
+    /**
+     * @return The index of the Feeders by the Part they serve.
+     */
+    public FeederIndex getFeederIndex();
+
     /**
      * Gets a List of Cameras attached to the Machine that are not attached to Heads.
      * 
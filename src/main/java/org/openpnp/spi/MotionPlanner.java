@@ -22,6 +22,7 @@
 package org.openpnp.spi;
 
 import org.openpnp.model.AxesLocation;
+import org.openpnp.model.Location;
 import org.openpnp.model.Motion;
 import org.openpnp.model.Motion.MotionOption;
 import org.openpnp.model.Solutions;
@@ -188,6 +189,61 @@ public interface MotionPlanner extends PropertySheetHolder, Solutions.Subject {
      */
     void waitForCompletion(HeadMountable hm, CompletionType completionType) throws Exception;
 
+    /**
+     * Tell the motion planner where a HeadMountable is expected to go next, after the motion that is already 
+     * commanded. A planner with look-ahead can use these waypoints to plan the end of a motion sequence that is 
+     * not waited for (e.g. at the end of a machine task), so the machine need not come to a full stop between 
+     * sequences. The waypoints are only a hint, the planner never moves there on its own. Waypoints are consumed
+     * as soon as they are reached by commanded motion. 
+     * 
+     * Planners without look-ahead ignore the waypoints.
+     * 
+     * @param hm
+     * @param location The HeadMountable location, as it would be given to moveToLocationAtSafeZ(). 
+     * @param speed The nominal speed factor, as it would be given to moveTo().
+     * @throws Exception
+     */
+    default void addLookAheadWaypoint(HeadMountable hm, Location location, double speed) throws Exception {
+    }
+
+    /**
+     * Clear all the look-ahead waypoints, e.g. when the expected sequence of moves is no longer valid.  
+     */
+    default void clearLookAheadWaypoints() {
+    }
+
+    /**
+     * Estimate the time it takes to move a HeadMountable from location0 to location1 in one straight move, as
+     * moveTo() would. The estimate is computed from the same motion profiles as the planned motion, but without 
+     * any side effects, i.e. nothing is planned or moved and the current machine location does not matter. 
+     * It can be used to score candidate sequences by time rather than distance. 
+     * 
+     * Estimates may be cached, keyed on quantized locations. 
+     * 
+     * @param hm
+     * @param location0 The HeadMountable start location. 
+     * @param location1 The HeadMountable end location, unspecified (NaN) coordinates are taken from location0.
+     * @param speed The nominal speed factor, as it would be given to moveTo().
+     * @return The estimated motion time in seconds.
+     * @throws Exception
+     */
+    double getMotionTime(HeadMountable hm, Location location0, Location location1, double speed) throws Exception;
+
+    /**
+     * Estimate the time it takes to move a HeadMountable from location0 to location1 at Safe Z, as 
+     * MovableUtils.moveToLocationAtSafeZ() would, i.e. up to Safe Z, over to the end location and down. 
+     * 
+     * The moves are estimated separately, so for planners that blend the moves, this is an upper bound. 
+     * 
+     * @param hm
+     * @param location0
+     * @param location1
+     * @param speed
+     * @return The estimated motion time in seconds.
+     * @throws Exception
+     */
+    double getMotionTimeAtSafeZ(HeadMountable hm, Location location0, Location location1, double speed) throws Exception;
+
     /**
      * Get the planned motion at a certain time. Works into the future as far as planned and into the past
      * as far as retained. This is used to simulate Camera Views, to analyze excitation by acceleration to 
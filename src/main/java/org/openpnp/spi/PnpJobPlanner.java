@@ -3,6 +3,7 @@ package org.openpnp.spi;
 import java.util.List;
 
 import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.util.JobPlacementIndex;
 
 public interface PnpJobPlanner {
     public static class PlannedPlacement {
@@ -43,4 +44,17 @@ public interface PnpJobPlanner {
     public Strategy getStrategy();
     public void setStrategy(Strategy strategy);
     public List<PlannedPlacement> plan(Head head, List<JobPlacement> placements);
+
+    /**
+     * Plan from the index of pending placements, that is maintained across cycles. Planners that can look up
+     * placements in the index override this, the default implementation plans from the list of pending 
+     * placements.
+     * 
+     * @param head
+     * @param index
+     * @return
+     */
+    public default List<PlannedPlacement> plan(Head head, JobPlacementIndex index) {
+        return plan(head, index.getPendingJobPlacements());
+    }
 }
@@ -70,6 +70,8 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
     @ElementList(required = false)
     protected IdentifiableList<Feeder> feeders = new IdentifiableList<>();
 
+    protected FeederIndex feederIndex;
+
     @ElementList(required = false)
     protected IdentifiableList<Camera> cameras = new IdentifiableList<>();
 
@@ -212,6 +214,21 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
         return Collections.unmodifiableList(feeders);
     }
 
+    @Override
+    public synchronized FeederIndex getFeederIndex() {
+        if (feederIndex == null) {
+            feederIndex = new FeederIndex(feeders);
+        }
+        return feederIndex;
+    }
+
+    protected synchronized void invalidateFeederIndex() {
+        if (feederIndex != null) {
+            feederIndex.dispose();
+            feederIndex = null;
+        }
+    }
+
     @Override
     public Feeder getFeeder(String id) {
         return feeders.get(id);
@@ -354,6 +371,7 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
     @Override
     public void addFeeder(Feeder feeder) throws Exception {
         feeders.add(feeder);
+        invalidateFeederIndex();
         fireIndexedPropertyChange("feeders", feeders.size() - 1, null, feeder);
     }
 
@@ -361,6 +379,7 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
     public void removeFeeder(Feeder feeder) {
         int index = feeders.indexOf(feeder);
         if (feeders.remove(feeder)) {
+            invalidateFeederIndex();
             fireIndexedPropertyChange("feeders", index, feeder, null);
         }
     }
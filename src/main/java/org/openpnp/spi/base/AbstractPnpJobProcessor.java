@@ -1,5 +1,6 @@
 package org.openpnp.spi.base;
 
+import org.openpnp.model.Location;
 import org.openpnp.model.Part;
 import org.openpnp.spi.Feeder;
 import org.openpnp.spi.Head;
@@ -41,12 +42,27 @@ public abstract class AbstractPnpJobProcessor extends AbstractJobProcessor
      * @throws Exception If no Feeder is found that is both enabled and is serving the Part.
      */
     public static Feeder findFeeder(Machine machine, Part part) throws JobProcessorException {
-        for (Feeder feeder : machine.getFeeders()) {
-            if (feeder.getPart() == part && feeder.isEnabled()) {
-                return feeder;
-            }
+        return findFeeder(machine, part, FeederIndex.Selection.First, null);
+    }
+
+    /**
+     * Find an enabled Feeder that is able to feed the given Part, choosing among multiple Feeders
+     * according to the given selection policy.
+     * 
+     * @param machine
+     * @param part
+     * @param selection
+     * @param location The location of the head, used to find the nearest Feeder.
+     * @return
+     * @throws JobProcessorException If no Feeder is found that is both enabled and is serving the Part.
+     */
+    public static Feeder findFeeder(Machine machine, Part part, FeederIndex.Selection selection, Location location) 
+            throws JobProcessorException {
+        Feeder feeder = machine.getFeederIndex().select(part, selection, location);
+        if (feeder == null) {
+            throw new JobProcessorException(part, "No compatible, enabled feeder found for part " + part.getId());
         }
-        throw new JobProcessorException(part, "No compatible, enabled feeder found for part " + part.getId());
+        return feeder;
     }
 
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ *
+ * This file is part of OpenPnP.
+ *
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+package org.openpnp.spi.base;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openpnp.model.AbstractModelObject;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Feeder;
+
+/**
+ * Index of the machine's feeders by the part they serve, kept up to date by listening to the part of the feeders.
+ * The feeders of a part are kept in machine order. Whether a feeder is enabled is checked on selection, so
+ * enabling or disabling feeders needs no update.
+ *
+ * As a safeguard against feeders that change their part without notification, the indexed feeders are checked
+ * to still serve the part, and the index is rebuilt if not. The same is done if no feeder is indexed for a part.
+ *
+ * If multiple enabled feeders serve the same part, one is chosen according to a {@link Selection} policy.
+ */
+public class FeederIndex implements PropertyChangeListener {
+    public enum Selection {
+        /**
+         * The first enabled feeder in machine order.
+         */
+        First,
+        /**
+         * The enabled feeder with the pick location nearest to the given location.
+         */
+        Nearest,
+        /**
+         * The enabled feeder with the most parts remaining, see {@link Feeder#getRemainingCount()}. Feeders that
+         * do not know are ranked last. Ties are broken by machine order.
+         */
+        MostRemaining,
+        /**
+         * The enabled feeders take turns, to balance the use of tapes.
+         */
+        RoundRobin
+    }
+
+    private final List<Feeder> feeders;
+    private final Map<Feeder, Integer> ordinals = new HashMap<>();
+    private final Map<Part, List<Feeder>> feedersByPart = new HashMap<>();
+    private final Map<Part, Feeder> lastSelected = new HashMap<>();
+
+    /**
+     * @param feeders The feeders of the machine, in machine order.
+     */
+    public FeederIndex(List<Feeder> feeders) {
+        this.feeders = new ArrayList<>(feeders);
+        int ordinal = 0;
+        for (Feeder feeder : this.feeders) {
+            ordinals.put(feeder, ordinal++);
+            if (feeder instanceof AbstractModelObject) {
+                ((AbstractModelObject) feeder).addPropertyChangeListener("part", this);
+            }
+        }
+        rebuild();
+    }
+
+    private void rebuild() {
+        feedersByPart.clear();
+        for (Feeder feeder : feeders) {
+            if (feeder.getPart() != null) {
+                feedersByPart.computeIfAbsent(feeder.getPart(), (p) -> new ArrayList<>()).add(feeder);
+            }
+        }
+    }
+
+    /**
+     * @param part
+     * @return The indexed feeders of the part, after checking that they all still serve the part, or null if 
+     * there are none. 
+     */
+    private List<Feeder> getChecked(Part part) {
+        List<Feeder> list = feedersByPart.get(part);
+        boolean valid = (list != null);
+        if (valid) {
+            for (Feeder feeder : list) {
+                if (feeder.getPart() != part) {
+                    valid = false;
+                    break;
+                }
+            }
+        }
+        if (!valid) {
+            rebuild();
+            list = feedersByPart.get(part);
+        }
+        return list;
+    }
+
+    /**
+     * Stop listening to the feeders.
+     */
+    public void dispose() {
+        for (Feeder feeder : feeders) {
+            if (feeder instanceof AbstractModelObject) {
+                ((AbstractModelObject) feeder).removePropertyChangeListener("part", this);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void propertyChange(PropertyChangeEvent evt) {
+        Feeder feeder = (Feeder) evt.getSource();
+        Integer ordinal = ordinals.get(feeder);
+        if (ordinal == null) {
+            return;
+        }
+        Part oldPart = (Part) evt.getOldValue();
+        if (oldPart != null) {
+            List<Feeder> list = feedersByPart.get(oldPart);
+            if (list != null) {
+                list.remove(feeder);
+                if (list.isEmpty()) {
+                    feedersByPart.remove(oldPart);
+                }
+            }
+        }
+        Part newPart = (Part) evt.getNewValue();
+        if (newPart != null) {
+            List<Feeder> list = feedersByPart.computeIfAbsent(newPart, (p) -> new ArrayList<>());
+            if (!list.contains(feeder)) {
+                // Keep machine order.
+                int i = 0;
+                while (i < list.size() && ordinals.get(list.get(i)) < ordinal) {
+                    i++;
+                }
+                list.add(i, feeder);
+            }
+        }
+    }
+
+    /**
+     * @param part
+     * @return The feeders serving the part, enabled or not, in machine order.
+     */
+    public synchronized List<Feeder> getFeeders(Part part) {
+        List<Feeder> list = getChecked(part);
+        return list == null ? Collections.emptyList() : new ArrayList<>(list);
+    }
+
+    /**
+     * Select an enabled feeder serving the part.
+     *
+     * @param part
+     * @param selection The policy used to choose among multiple feeders.
+     * @param location The location of the head, used by {@link Selection#Nearest}. If null, the first feeder is
+     * selected.
+     * @return The feeder or null if there is no enabled feeder for the part.
+     */
+    public synchronized Feeder select(Part part, Selection selection, Location location) {
+        List<Feeder> list = getChecked(part);
+        if (list == null) {
+            return null;
+        }
+        Feeder selected = null;
+        switch (selection) {
+            case Nearest: {
+                double best = Double.POSITIVE_INFINITY;
+                for (Feeder feeder : list) {
+                    if (feeder.isEnabled()) {
+                        double distance = getDistance(feeder, location);
+                        if (selected == null || distance < best) {
+                            selected = feeder;
+                            best = distance;
+                        }
+                    }
+                }
+                break;
+            }
+            case MostRemaining: {
+                int best = Integer.MIN_VALUE;
+                for (Feeder feeder : list) {
+                    if (feeder.isEnabled()) {
+                        int remaining = feeder.getRemainingCount();
+                        if (selected == null || remaining > best) {
+                            selected = feeder;
+                            best = remaining;
+                        }
+                    }
+                }
+                break;
+            }
+            case RoundRobin: {
+                // Take the next enabled feeder after the last one selected, wrapping around.
+                Feeder last = lastSelected.get(part);
+                int start = last == null ? 0 : list.indexOf(last) + 1;
+                for (int i = 0; i < list.size(); i++) {
+                    Feeder feeder = list.get((start + i) % list.size());
+                    if (feeder.isEnabled()) {
+                        selected = feeder;
+                        break;
+                    }
+                }
+                if (selected != null) {
+                    lastSelected.put(part, selected);
+                }
+                break;
+            }
+            default: {
+                for (Feeder feeder : list) {
+                    if (feeder.isEnabled()) {
+                        selected = feeder;
+                        break;
+                    }
+                }
+            }
+        }
+        return selected;
+    }
+
+    private static double getDistance(Feeder feeder, Location location) {
+        if (location == null) {
+            return 0;
+        }
+        try {
+            return feeder.getPickLocation().getLinearDistanceTo(location);
+        }
+        catch (Exception e) {
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+}
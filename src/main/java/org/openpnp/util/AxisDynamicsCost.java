@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ *
+ * This file is part of OpenPnP.
+ *
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+package org.openpnp.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openpnp.model.AxesLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Location;
+import org.openpnp.spi.Axis;
+import org.openpnp.spi.ControllerAxis;
+import org.openpnp.spi.HeadMountable;
+import org.openpnp.spi.Locatable.LocationOption;
+import org.openpnp.spi.Machine;
+
+/**
+ * A {@link TravellingSalesman.CostFunction} that estimates the time it takes to move between two locations, from
+ * the feedrate, acceleration and jerk limits of the controller axes. On a real machine one axis is often much
+ * stronger and faster than the other, so the fastest route is not necessarily the shortest.
+ *
+ * Each linear axis is assumed to move from still-stand to still-stand, and the estimate is the time of the
+ * slowest axis. Rotation is ignored, like in the distance metric.
+ *
+ * The locations are taken as locations of the HeadMountable. As only the differences matter, head locations can
+ * be used as well.
+ */
+public class AxisDynamicsCost implements TravellingSalesman.CostFunction {
+    private final HeadMountable hm;
+    private final List<ControllerAxis> axes;
+    private final double [] vMax;
+    private final double [] aMax;
+    private final double [] jMax;
+    private final double speed;
+    private final Map<Location, AxesLocation> rawLocations = new HashMap<>();
+
+    protected AxisDynamicsCost(HeadMountable hm, List<ControllerAxis> axes, double speed) {
+        this.hm = hm;
+        this.axes = axes;
+        vMax = new double[axes.size()];
+        aMax = new double[axes.size()];
+        jMax = new double[axes.size()];
+        this.speed = speed;
+        for (int i = 0; i < axes.size(); i++) {
+            ControllerAxis axis = axes.get(i);
+            // The speed factor must be to the power of the order of the derivative.
+            vMax[i] = speed*axis.getMotionLimit(1);
+            aMax[i] = Math.pow(speed, 2)*axis.getMotionLimit(2);
+            jMax[i] = Math.pow(speed, 3)*axis.getMotionLimit(3);
+        }
+    }
+
+    /**
+     * Create the cost function for a HeadMountable.
+     *
+     * @param hm
+     * @param speed The nominal speed factor, as it would be given to moveTo().
+     * @return The cost function, or null if the linear axes of the HeadMountable do not all have feedrate and
+     * acceleration limits configured, in which case the distance metric should be used.
+     */
+    public static AxisDynamicsCost create(HeadMountable hm, double speed) {
+        if (hm == null) {
+            return null;
+        }
+        Machine machine = Configuration.get().getMachine();
+        List<ControllerAxis> axes = new ArrayList<>();
+        for (ControllerAxis axis : hm.getMappedAxes(machine).getControllerAxes()) {
+            if (axis.getType() != Axis.Type.Rotation) {
+                if (axis.getMotionLimit(1) <= 0 || axis.getMotionLimit(2) <= 0) {
+                    return null;
+                }
+                axes.add(axis);
+            }
+        }
+        if (axes.isEmpty()) {
+            return null;
+        }
+        if (hm.getHead() != null) {
+            speed *= hm.getHead().getMaxPartSpeed();
+        }
+        return new AxisDynamicsCost(hm, axes, speed);
+    }
+
+    /**
+     * @return The linear controller axes that are estimated.
+     */
+    public List<ControllerAxis> getAxes() {
+        return axes;
+    }
+
+    /**
+     * @return The effective speed factor, including the maximum part speed of the head.
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    @Override
+    public double getCost(Location location0, Location location1) {
+        AxesLocation raw0 = getRawLocation(location0);
+        AxesLocation raw1 = getRawLocation(location1);
+        double time = 0;
+        for (int i = 0; i < axes.size(); i++) {
+            ControllerAxis axis = axes.get(i);
+            double distance = Math.abs(raw1.getCoordinate(axis) - raw0.getCoordinate(axis));
+            time = Math.max(time, getMoveTime(distance, vMax[i], aMax[i], jMax[i]));
+        }
+        return time;
+    }
+
+    protected AxesLocation getRawLocation(Location location) {
+        AxesLocation raw = rawLocations.get(location);
+        if (raw == null) {
+            try {
+                raw = hm.toRaw(hm.toHeadLocation(location, LocationOption.Quiet), LocationOption.Quiet);
+            }
+            catch (Exception e) {
+                // Cannot be converted, estimate from the axes' zero coordinates.
+                raw = new AxesLocation();
+            }
+            rawLocations.put(location, raw);
+        }
+        return raw;
+    }
+
+    /**
+     * Compute the time of a single axis move from still-stand to still-stand.
+     *
+     * @param distance
+     * @param vMax Maximum velocity.
+     * @param aMax Maximum acceleration.
+     * @param jMax Maximum jerk, or 0 for constant acceleration.
+     * @return The time of the move.
+     */
+    public static double getMoveTime(double distance, double vMax, double aMax, double jMax) {
+        if (distance <= 0) {
+            return 0;
+        }
+        if (jMax <= 0) {
+            // Trapezoidal profile.
+            if (distance >= vMax*vMax/aMax) {
+                return distance/vMax + vMax/aMax;
+            }
+            return 2*Math.sqrt(distance/aMax);
+        }
+        // S-curve profile. If the velocity is reached before the acceleration, the acceleration is limited.
+        double a = Math.min(aMax, Math.sqrt(vMax*jMax));
+        // Time and distance to accelerate to vMax and decelerate again.
+        double tAccel = vMax/a + a/jMax;
+        if (distance >= vMax*tAccel) {
+            return distance/vMax + tAccel;
+        }
+        // The velocity is not reached. Solve distance = v*(v/a + a/j) for the peak velocity v.
+        double b = a/jMax;
+        double v = a/2*(Math.sqrt(b*b + 4*distance/a) - b);
+        if (v >= a*a/jMax) {
+            return 2*(v/a + a/jMax);
+        }
+        // Not even the acceleration is reached, the move is made of four jerk phases.
+        return 4*Math.cbrt(distance/(2*jMax));
+    }
+}
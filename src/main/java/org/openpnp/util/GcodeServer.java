@@ -10,6 +10,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.openpnp.Main;
 import org.openpnp.machine.reference.ReferenceMachine;
@@ -41,6 +44,24 @@ public class GcodeServer extends Thread {
 
     private long maxDwellTimeMilliseconds = 20000;
 
+    /**
+     * Simulated link latency, i.e. the responses are delivered this much later. Only the delivery is delayed,
+     * commands are still received and interpreted right away, like a controller with a pipelined link does. 
+     */
+    private volatile double linkLatencyMilliseconds = 0;
+
+    /**
+     * Simulated baud rate, the bytes sent and received are throttled to it (with 10 bits per byte, like 8N1 
+     * serial). 0 means unthrottled. 
+     */
+    private volatile int baud = 0;
+
+    /**
+     * Response given to commands that have neither a canned response, nor can be interpreted, because no 
+     * driver is set. If null, an error is responded.
+     */
+    private volatile String defaultResponse = null;
+
     static final String firmware = "FIRMWARE_NAME:GcodeServer, FIRMWARE_URL:http%3A//openpnp.org, X-SOURCE_CODE_URL:https%3A//github.com/openpnp/openpnp, FIRMWARE_VERSION:"+Main.getVersion()+", "
             +"X-FIRMWARE_BUILD_DATE:Oct 23 2020 00:00:00";
 
@@ -97,6 +118,30 @@ public class GcodeServer extends Thread {
         commandResponses.put(command, response);
     }
 
+    public double getLinkLatencyMilliseconds() {
+        return linkLatencyMilliseconds;
+    }
+
+    public void setLinkLatencyMilliseconds(double linkLatencyMilliseconds) {
+        this.linkLatencyMilliseconds = linkLatencyMilliseconds;
+    }
+
+    public int getBaud() {
+        return baud;
+    }
+
+    public void setBaud(int baud) {
+        this.baud = baud;
+    }
+
+    public String getDefaultResponse() {
+        return defaultResponse;
+    }
+
+    public void setDefaultResponse(String defaultResponse) {
+        this.defaultResponse = defaultResponse;
+    }
+
     public void shutdown() {
         try {
             serverSocket.close();
@@ -164,6 +209,11 @@ public class GcodeServer extends Thread {
         private LengthUnit lengthUnit = LengthUnit.Millimeters; 
         private boolean absolute = true;
         private String response;
+        // Delays the delivery of the responses, if a link latency is simulated. 
+        private ScheduledExecutorService responder;
+        // Time in nanoseconds, when the simulated link is free again, per direction.
+        private long receiveLinkFree;
+        private long sendLinkFree;
 
         public Worker(Socket socket) throws Exception {
             this.socket = socket;
@@ -171,6 +221,28 @@ public class GcodeServer extends Thread {
             output = socket.getOutputStream();
         }
 
+        /**
+         * Throttle the transfer of the given number of bytes to the simulated baud rate.
+         * 
+         * @param linkFree Time when the link direction becomes free.
+         * @param bytes
+         * @return The new time when the link direction becomes free.
+         * @throws InterruptedException
+         */
+        long throttle(long linkFree, int bytes) throws InterruptedException {
+            int baud = GcodeServer.this.baud;
+            if (baud <= 0) {
+                return linkFree;
+            }
+            long now = System.nanoTime();
+            linkFree = Math.max(now, linkFree) + bytes*10L*1000000000L/baud;
+            long wait = linkFree - now;
+            if (wait > 0) {
+                Thread.sleep(wait/1000000, (int)(wait % 1000000));
+            }
+            return linkFree;
+        }
+
         String read() throws Exception {
             StringBuffer line = new StringBuffer();
             while (true) {
@@ -180,6 +252,7 @@ public class GcodeServer extends Thread {
                 }
                 else if (ch == '\n' || ch == '\r') {
                     if (line.length() > 0) {
+                        receiveLinkFree = throttle(receiveLinkFree, line.length() + 1);
                         return line.toString();
                     }
                 }
@@ -190,7 +263,34 @@ public class GcodeServer extends Thread {
         }
 
         void write(String s) throws Exception {
-            output.write((s + "\n").getBytes("UTF8"));
+            byte[] bytes = (s + "\n").getBytes("UTF8");
+            double linkLatencyMilliseconds = GcodeServer.this.linkLatencyMilliseconds;
+            if (linkLatencyMilliseconds > 0) {
+                if (responder == null) {
+                    responder = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                        Thread thread = new Thread(runnable, "GcodeServer responder");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                // Same delay for all, so the responses stay in order.
+                responder.schedule(() -> {
+                    try {
+                        writeThrottled(bytes);
+                    }
+                    catch (Exception e) {
+                        Logger.debug(e);
+                    }
+                }, Math.round(linkLatencyMilliseconds*1000000), TimeUnit.NANOSECONDS);
+            }
+            else {
+                writeThrottled(bytes);
+            }
+        }
+
+        void writeThrottled(byte[] bytes) throws Exception {
+            sendLinkFree = throttle(sendLinkFree, bytes.length);
+            output.write(bytes);
         }
 
         public void run() {
@@ -214,6 +314,9 @@ public class GcodeServer extends Thread {
                                 write("*** Unknown syntax: "+e.getMessage());
                             }
                         }
+                        else if (defaultResponse != null) {
+                            write(defaultResponse);
+                        }
                         else {    
                             write("error:unknown command");
                         }
@@ -224,6 +327,9 @@ public class GcodeServer extends Thread {
                     break;
                 }
             }
+            if (responder != null) {
+                responder.shutdownNow();
+            }
             try {
                 input.close();
             }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ *
+ * This file is part of OpenPnP.
+ *
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+package org.openpnp.util;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openpnp.model.Part;
+import org.openpnp.spi.NozzleTip;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement.Status;
+
+/**
+ * Index of the pending placements of a job, maintained across the planning cycles.
+ *
+ * The placements are bucketed by part, in the order given by a comparator, and the buckets are indexed by the
+ * compatible nozzle tips of the part's package. The index listens to the status of the placements, so completing
+ * a placement or making it pending again is O(1). Finding the next pending placement for a nozzle tip only
+ * visits the parts compatible with the nozzle tip, instead of all the placements.
+ *
+ * The buckets are built when the index is created, i.e. changes of part heights or package nozzle tips during
+ * the job are not reflected. Call {@link #dispose()} to detach the index from the placements.
+ */
+public class JobPlacementIndex implements PropertyChangeListener {
+    protected static class PartBucket {
+        final Part part;
+        final Set<NozzleTip> nozzleTips;
+        final List<JobPlacement> jobPlacements = new ArrayList<>();
+        int pending;
+        // All placements before this position are known not to be pending.
+        int first;
+
+        PartBucket(Part part) {
+            this.part = part;
+            this.nozzleTips = (part != null && part.getPackage() != null) ?
+                    new HashSet<>(part.getPackage().getCompatibleNozzleTips())
+                    : Collections.emptySet();
+        }
+    }
+
+    private final List<JobPlacement> jobPlacements;
+    private final List<PartBucket> buckets = new ArrayList<>();
+    private final Map<JobPlacement, PartBucket> bucketOf = new HashMap<>();
+    private final Map<JobPlacement, Integer> positionOf = new HashMap<>();
+    private final Map<NozzleTip, List<PartBucket>> bucketsByNozzleTip = new HashMap<>();
+    private int pending;
+
+    /**
+     * @param jobPlacements The placements of the job.
+     * @param order The order in which pending placements are served. Placements that compare equal are served in
+     * the order given.
+     */
+    public JobPlacementIndex(List<JobPlacement> jobPlacements, Comparator<JobPlacement> order) {
+        this.jobPlacements = new ArrayList<>(jobPlacements);
+        List<JobPlacement> sorted = new ArrayList<>(jobPlacements);
+        sorted.sort(order);
+        Map<String, PartBucket> bucketsByPart = new LinkedHashMap<>();
+        for (JobPlacement jobPlacement : sorted) {
+            PartBucket bucket = bucketsByPart.computeIfAbsent(jobPlacement.getPartId(),
+                    (id) -> new PartBucket(jobPlacement.getPlacement().getPart()));
+            positionOf.put(jobPlacement, bucket.jobPlacements.size());
+            bucketOf.put(jobPlacement, bucket);
+            bucket.jobPlacements.add(jobPlacement);
+            if (jobPlacement.getStatus() == Status.Pending) {
+                bucket.pending++;
+                pending++;
+            }
+            jobPlacement.addPropertyChangeListener("status", this);
+        }
+        buckets.addAll(bucketsByPart.values());
+        for (PartBucket bucket : buckets) {
+            for (NozzleTip nozzleTip : bucket.nozzleTips) {
+                bucketsByNozzleTip.computeIfAbsent(nozzleTip, (nt) -> new ArrayList<>()).add(bucket);
+            }
+        }
+    }
+
+    /**
+     * Stop listening to the placements.
+     */
+    public void dispose() {
+        for (JobPlacement jobPlacement : jobPlacements) {
+            jobPlacement.removePropertyChangeListener("status", this);
+        }
+    }
+
+    @Override
+    public synchronized void propertyChange(PropertyChangeEvent evt) {
+        JobPlacement jobPlacement = (JobPlacement) evt.getSource();
+        PartBucket bucket = bucketOf.get(jobPlacement);
+        if (bucket == null) {
+            return;
+        }
+        boolean wasPending = evt.getOldValue() == Status.Pending;
+        boolean isPending = evt.getNewValue() == Status.Pending;
+        if (wasPending && !isPending) {
+            bucket.pending--;
+            pending--;
+        }
+        else if (isPending && !wasPending) {
+            bucket.pending++;
+            pending++;
+            bucket.first = Math.min(bucket.first, positionOf.get(jobPlacement));
+        }
+    }
+
+    /**
+     * @return The number of pending placements.
+     */
+    public synchronized int getPendingCount() {
+        return pending;
+    }
+
+    /**
+     * @return The pending placements, in order.
+     */
+    public synchronized List<JobPlacement> getPendingJobPlacements() {
+        List<JobPlacement> list = new ArrayList<>(pending);
+        for (PartBucket bucket : buckets) {
+            if (bucket.pending > 0) {
+                for (int i = bucket.first; i < bucket.jobPlacements.size(); i++) {
+                    JobPlacement jobPlacement = bucket.jobPlacements.get(i);
+                    if (jobPlacement.getStatus() == Status.Pending) {
+                        list.add(jobPlacement);
+                    }
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get the first pending placement, in order, that can be handled by any of the given nozzle tips.
+     *
+     * @param nozzleTips
+     * @param excluded Placements to skip, e.g. those already planned in the current cycle.
+     * @return The placement or null if there is none.
+     */
+    public synchronized JobPlacement getFirstPending(Collection<NozzleTip> nozzleTips, Set<JobPlacement> excluded) {
+        if (nozzleTips.size() == 1) {
+            List<PartBucket> candidates = bucketsByNozzleTip.get(nozzleTips.iterator().next());
+            if (candidates != null) {
+                for (PartBucket bucket : candidates) {
+                    JobPlacement jobPlacement = getFirstPending(bucket, excluded);
+                    if (jobPlacement != null) {
+                        return jobPlacement;
+                    }
+                }
+            }
+            return null;
+        }
+        for (PartBucket bucket : buckets) {
+            if (bucket.pending > 0 && !Collections.disjoint(bucket.nozzleTips, nozzleTips)) {
+                JobPlacement jobPlacement = getFirstPending(bucket, excluded);
+                if (jobPlacement != null) {
+                    return jobPlacement;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static JobPlacement getFirstPending(PartBucket bucket, Set<JobPlacement> excluded) {
+        if (bucket.pending == 0) {
+            return null;
+        }
+        List<JobPlacement> jobPlacements = bucket.jobPlacements;
+        // Skip over the ones no longer pending, for good.
+        while (bucket.first < jobPlacements.size()
+                && jobPlacements.get(bucket.first).getStatus() != Status.Pending) {
+            bucket.first++;
+        }
+        for (int i = bucket.first; i < jobPlacements.size(); i++) {
+            JobPlacement jobPlacement = jobPlacements.get(i);
+            if (jobPlacement.getStatus() == Status.Pending && !excluded.contains(jobPlacement)) {
+                return jobPlacement;
+            }
+        }
+        return null;
+    }
+}
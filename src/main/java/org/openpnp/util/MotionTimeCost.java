@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ *
+ * This file is part of OpenPnP.
+ *
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+package org.openpnp.util;
+
+import java.util.List;
+
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Location;
+import org.openpnp.spi.ControllerAxis;
+import org.openpnp.spi.HeadMountable;
+import org.openpnp.spi.MotionPlanner;
+
+/**
+ * A {@link TravellingSalesman.CostFunction} that takes the time estimate of the motion planner, for a move at
+ * Safe Z, as MovableUtils.moveToLocationAtSafeZ() would do it. Unlike the {@link AxisDynamicsCost}, this includes
+ * the Z moves and the motion profiles of the actual motion planner.
+ *
+ * Where the motion planner cannot estimate a move, the axis dynamics estimate is taken instead.
+ */
+public class MotionTimeCost extends AxisDynamicsCost {
+    private final HeadMountable hm;
+    private final MotionPlanner motionPlanner;
+    private final double speed;
+
+    protected MotionTimeCost(HeadMountable hm, List<ControllerAxis> axes, double speed, double effectiveSpeed,
+            MotionPlanner motionPlanner) {
+        super(hm, axes, effectiveSpeed);
+        this.hm = hm;
+        this.motionPlanner = motionPlanner;
+        this.speed = speed;
+    }
+
+    /**
+     * Create the cost function for a HeadMountable.
+     *
+     * @param hm
+     * @param speed The nominal speed factor, as it would be given to moveTo().
+     * @return The cost function, or null if there is no motion planner, or the linear axes of the HeadMountable
+     * do not all have feedrate and acceleration limits configured, in which case the distance metric should be used.
+     */
+    public static MotionTimeCost create(HeadMountable hm, double speed) {
+        AxisDynamicsCost axisDynamicsCost = AxisDynamicsCost.create(hm, speed);
+        if (axisDynamicsCost == null) {
+            return null;
+        }
+        MotionPlanner motionPlanner = Configuration.get().getMachine().getMotionPlanner();
+        if (motionPlanner == null) {
+            return null;
+        }
+        return new MotionTimeCost(hm, axisDynamicsCost.getAxes(), speed, axisDynamicsCost.getSpeed(),
+                motionPlanner);
+    }
+
+    @Override
+    public double getCost(Location location0, Location location1) {
+        try {
+            double time = motionPlanner.getMotionTimeAtSafeZ(hm, location0, location1, speed);
+            if (Double.isFinite(time)) {
+                return time;
+            }
+        }
+        catch (Exception e) {
+            // Fall through.
+        }
+        return super.getCost(location0, location1);
+    }
+}
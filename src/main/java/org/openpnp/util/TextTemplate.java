@@ -0,0 +1,135 @@
+package org.openpnp.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A text template with variables in the format {Name:Format}, as substituted by
+ * {@link TextUtils#substituteVar(String, String, Object)}. The template is parsed once into literal and
+ * variable segments, so it can then be rendered repeatedly, without scanning and rebuilding the text for
+ * each variable.
+ *
+ * Rendering gives the same result as calling TextUtils.substituteVar() for each of the variables in order.
+ * Variables that are not given are left in the text as is. Fixed point formats like %.4f are formatted
+ * directly, without going through String.format().
+ *
+ * Templates with nested variables, i.e. with escaped curly brackets "<((" and "))>" in the formats, are
+ * rendered by sequential substitution, as the substituted values then add new variables to the text.
+ */
+public class TextTemplate {
+    private static final Pattern variablePattern = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}");
+    private static final Pattern fixedPointPattern = Pattern.compile("%\\.(\\d+)f");
+
+    private static class Segment {
+        final String text;
+        final String name;
+        final String format;
+        final int fixedPointDecimals;
+
+        Segment(String text, String name, String format) {
+            this.text = text;
+            this.name = name;
+            this.format = (format == null ? "%s" : format);
+            Matcher matcher = fixedPointPattern.matcher(this.format);
+            this.fixedPointDecimals = (matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1);
+        }
+    }
+
+    private final String template;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Set<String> variableNames = new HashSet<>();
+    private final boolean nested;
+
+    public TextTemplate(String template) {
+        this.template = template;
+        this.nested = template.contains("<((");
+        Matcher matcher = variablePattern.matcher(template);
+        int pos = 0;
+        while (matcher.find()) {
+            if (matcher.start() > pos) {
+                segments.add(new Segment(template.substring(pos, matcher.start()), null, null));
+            }
+            segments.add(new Segment(matcher.group(), matcher.group(1), matcher.group(2)));
+            variableNames.add(matcher.group(1));
+            pos = matcher.end();
+        }
+        if (pos < template.length()) {
+            segments.add(new Segment(template.substring(pos), null, null));
+        }
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @param name
+     * @return true if the template contains the variable with the given name.
+     */
+    public boolean hasVariable(String name) {
+        return variableNames.contains(name);
+    }
+
+    /**
+     * Render the template with the given variables. Variables that are contained in the map with a null
+     * value are replaced with "". Variables that are not contained in the map are left as is.
+     *
+     * @param variables The variable values by name. Must iterate in substitution order, e.g. a LinkedHashMap,
+     * for the sequential substitution of nested templates.
+     * @return The rendered text.
+     */
+    public String render(Map<String, Object> variables) {
+        if (nested) {
+            String text = template;
+            for (Map.Entry<String, Object> entry : variables.entrySet()) {
+                text = TextUtils.substituteVar(text, entry.getKey(), entry.getValue());
+            }
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(template.length() + 64);
+        for (Segment segment : segments) {
+            if (segment.name == null || !variables.containsKey(segment.name)) {
+                sb.append(segment.text);
+            }
+            else {
+                appendFormatted(sb, segment, variables.get(segment.name));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendFormatted(StringBuilder sb, Segment segment, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (segment.fixedPointDecimals >= 0 && value instanceof Double
+                && Double.isFinite((Double) value)) {
+            double v = (Double) value;
+            if (Double.doubleToRawLongBits(v) < 0) {
+                // Includes negative zero, like String.format() does.
+                sb.append('-');
+                v = -v;
+            }
+            // Rounds the shortest decimal representation half-up, exactly like String.format() does.
+            sb.append(new BigDecimal(Double.toString(v))
+                    .setScale(segment.fixedPointDecimals, RoundingMode.HALF_UP)
+                    .toPlainString());
+        }
+        else if (segment.format.equals("%s") && value instanceof String) {
+            sb.append(((String) value)
+                    .replace("<((", "{").replace("))>", "}"));
+        }
+        else {
+            sb.append(String.format((Locale) null, segment.format, value)
+                    .replace("<((", "{").replace("))>", "}")); // Unescape nested curly brackets.
+        }
+    }
+}
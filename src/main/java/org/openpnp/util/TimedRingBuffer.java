@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ *
+ * This file is part of OpenPnP.
+ *
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+package org.openpnp.util;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+/**
+ * A bounded ring buffer of elements indexed by increasing time, like the motions of a motion plan,
+ * indexed by their end time.
+ *
+ * Elements are appended by writers, while any number of readers can query them lock-free, using the optimistic
+ * reads of a {@link StampedLock} as a sequence lock: readers read without locking and validate afterwards that no
+ * write happened in between, otherwise they retry, and eventually fall back to a read lock. Writers therefore
+ * never wait for readers that poll at high rates, like camera simulation or the GUI.
+ *
+ * When the buffer is full, the oldest element is dropped.
+ *
+ * @param <T>
+ */
+public class TimedRingBuffer<T> {
+    private static final int optimisticRetries = 3;
+
+    private final StampedLock lock = new StampedLock();
+    private final double [] times;
+    private final Object [] elements;
+    private final int mask;
+    // Sequence numbers of the oldest and the next element, only written under the write lock.
+    private long head;
+    private long tail;
+
+    /**
+     * @param capacity The maximum number of elements, rounded up to the next power of two.
+     */
+    public TimedRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        times = new double[size];
+        elements = new Object[size];
+        mask = size - 1;
+    }
+
+    public int getCapacity() {
+        return times.length;
+    }
+
+    /**
+     * Append an element. If the time is not larger than the time of the last element, the elements at or after the
+     * given time are replaced by the new element, like a map keyed by time would replace an element with the same
+     * time.
+     *
+     * @param time The time of the element.
+     * @param element
+     */
+    public void add(double time, T element) {
+        long stamp = lock.writeLock();
+        try {
+            while (tail > head && !(time > times[(int) ((tail - 1) & mask)])) {
+                tail--;
+                elements[(int) (tail & mask)] = null;
+            }
+            if (tail - head == times.length) {
+                // Full, drop the oldest.
+                elements[(int) (head & mask)] = null;
+                head++;
+            }
+            int i = (int) (tail & mask);
+            times[i] = time;
+            elements[i] = element;
+            tail++;
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove the elements with a time older than the given time.
+     *
+     * @param time
+     */
+    public void clearOlderThan(double time) {
+        long stamp = lock.writeLock();
+        try {
+            while (tail > head && times[(int) (head & mask)] < time) {
+                elements[(int) (head & mask)] = null;
+                head++;
+            }
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove all the elements.
+     */
+    public void clear() {
+        clearOlderThan(Double.POSITIVE_INFINITY);
+    }
+
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        long size = tail - head;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                size = tail - head;
+            }
+            finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return (int) size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return The time of the last element, or negative infinity if empty.
+     */
+    public double getLastTime() {
+        for (int retry = 0; retry < optimisticRetries; retry++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                double time = lastTime();
+                if (lock.validate(stamp)) {
+                    return time;
+                }
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            return lastTime();
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private double lastTime() {
+        long tail = this.tail;
+        return tail > head ? times[(int) ((tail - 1) & mask)] : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @param time
+     * @return The first element with a time strictly larger than the given time, or null if there is none.
+     */
+    public T getHigher(double time) {
+        for (int retry = 0; retry < optimisticRetries; retry++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                T element = higher(time);
+                if (lock.validate(stamp)) {
+                    return element;
+                }
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            return higher(time);
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T higher(double time) {
+        long head = this.head;
+        long tail = this.tail;
+        // Binary search for the first time larger than the given time. Under an optimistic read the indices
+        // might be inconsistent, but they are always masked into the arrays and the result is discarded.
+        long low = head;
+        long high = tail;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (times[(int) (mid & mask)] > time) {
+                high = mid;
+            }
+            else {
+                low = mid + 1;
+            }
+        }
+        return low < tail ? (T) elements[(int) (low & mask)] : null;
+    }
+
+    /**
+     * @param predicate
+     * @return The most recent element that matches the predicate, or null if there is none. The predicate must not
+     * have side effects, as it may be evaluated on elements that are concurrently replaced, in which case the search
+     * is repeated.
+     */
+    public T getLast(Predicate<T> predicate) {
+        for (int retry = 0; retry < optimisticRetries; retry++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                T element = last(predicate);
+                if (lock.validate(stamp)) {
+                    return element;
+                }
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            return last(predicate);
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T last(Predicate<T> predicate) {
+        long head = this.head;
+        for (long i = this.tail - 1; i >= head; i--) {
+            T element = (T) elements[(int) (i & mask)];
+            if (element != null && predicate.test(element)) {
+                return element;
+            }
+        }
+        return null;
+    }
+}
@@ -36,7 +36,13 @@ import org.openpnp.model.Location;
  * and/or a Location for the next task after that, as the end Location. These Locations can also be the same, to form 
  * a loop. If left open (null) the solver will choose the best start and/or end Location for the route freely.
  * 
- * The solver uses Simulated Annealing.
+ * The solver uses Simulated Annealing. Alternatively {@link #solveLocalSearch(long)} seeds the route with the nearest 
+ * neighbor heuristic and improves it by 2-opt and Or-opt moves, within a time budget. This is deterministic and much 
+ * faster for hundreds of Locations. 
+ * 
+ * By default the route is rated by the Euclidean distance travelled. Optionally a {@link CostFunction} can be given to 
+ * rate the moves by another metric, e.g. the {@link AxisDynamicsCost} estimates the time of the moves from the 
+ * dynamics of the machine axes. The costs are precomputed into a matrix, unless there are very many Locations.
  * 
  * The implementation is a bit extended from the typical school book examples to not only use "swaps" of two Locations 
  * but also "twists", that reverse the travel direction between the swapped out Locations. The latter really improves the 
@@ -56,6 +62,20 @@ public class TravellingSalesman<T> {
      * the end of the route freely. 
      */
     public TravellingSalesman(List<T> travelInput, Locator<? super T> locator, Location startLocation, Location endLocation) {
+        this(travelInput, locator, startLocation, endLocation, null);
+    }
+
+    /**
+     * @param travelInput Contains the travelling problem to be solved. 
+     * @param locator Lets the solver query the given list object for the relevant Location.
+     * @param startLocation Optional start Location, e.g. the current machine Location. If left open, the solver will choose 
+     * the start of the route freely. 
+     * @param endLocation Optional end Location, e.g. the Location for the next task after this. If left open, the solver will choose 
+     * the end of the route freely. 
+     * @param costFunction Optional function to rate the moves between Locations. If null, the Euclidean distance is used. 
+     */
+    public TravellingSalesman(List<T> travelInput, Locator<? super T> locator, Location startLocation, Location endLocation, 
+            CostFunction costFunction) {
         super();
         // register the problem
         this.travelInput = travelInput;
@@ -66,15 +86,48 @@ public class TravellingSalesman<T> {
         for (int i = 0; i < this.travelSize; i++) {
             this.travel.add(new TravelLocation(i, this.locator.getLocation(travelInput.get(i))));
         }
+        this.travelByIndex = this.travel.toArray(new TravelLocation[this.travelSize]);
         // register start/end Locations
         this.startLocation = startLocation != null ? new TravelLocation(-1, startLocation) : null;
         this.endLocation = endLocation != null ? new TravelLocation(this.travelSize, endLocation) : null;
+        this.costFunction = costFunction;
+        // precompute the costs
+        if (this.travelSize <= maxMatrixSize) {
+            this.matrixStride = this.travelSize + 2;
+            this.costMatrix = new double[this.matrixStride*this.matrixStride];
+            // the costs are symmetric, so only compute one half
+            for (int a = -1; a <= this.travelSize; a++) {
+                for (int b = a + 1; b <= this.travelSize; b++) {
+                    double cost = this.computeCost(this.getLocation(a), this.getLocation(b));
+                    this.costMatrix[(a + 1)*this.matrixStride + b + 1] = cost;
+                    this.costMatrix[(b + 1)*this.matrixStride + a + 1] = cost;
+                }
+            }
+        }
+        else {
+            this.matrixStride = 0;
+            this.costMatrix = null;
+        }
+        if (costFunction != null) {
+            // the costs can be in any unit, so the annealing stops at a temperature relative to the average move
+            this.minimumTemperature = this.getTravellingDistance()/Math.max(1, this.travelSize)*1e-3;
+        }
+        else {
+            this.minimumTemperature = 0.1;
+        }
     }
     
     public interface Locator<T> {
         public Location getLocation(T locatable);
     }
 
+    /**
+     * Rates the move between two Locations. The solver assumes the cost is the same in both directions. 
+     */
+    public interface CostFunction {
+        public double getCost(Location location0, Location location1);
+    }
+
     /**
      * Sets the debugLevel > 0 
      * level 0: no debugging 
@@ -88,6 +141,11 @@ public class TravellingSalesman<T> {
      * best distance to avoid excessive copies due to rounding effects.
      */
     private static final double globalBestDistanceScalingFactor = 1.0 - 1e-5;
+
+    /**
+     * Maximum number of Locations for which the costs are precomputed into a matrix. 
+     */
+    private static final int maxMatrixSize = 1000;
     
     /**
      * Plain old data TravelLocation for faster processing. Improved solving by a factor of 6 from using
@@ -96,10 +154,12 @@ public class TravellingSalesman<T> {
     private static class TravelLocation {
         private  double x, y, z;
         private  int index;
+        private  Location location;
 
         private  TravelLocation(int index, Location l) {
             super();
             this.index = index;
+            this.location = l;
             l = l.convertToUnits(LengthUnit.Millimeters);
             this.x = l.getX();
             this.y = l.getY();
@@ -116,6 +176,11 @@ public class TravellingSalesman<T> {
     private final TravelLocation startLocation;
     private final TravelLocation endLocation;
     private final List<TravelLocation> travel;
+    private final TravelLocation [] travelByIndex;
+    private final CostFunction costFunction;
+    private final double [] costMatrix;
+    private final int matrixStride;
+    private final double minimumTemperature;
     
     private long solverDuration = 0; 
 
@@ -129,16 +194,44 @@ public class TravellingSalesman<T> {
         return this.travel.get(i);
     }
 
-    private double getDistance(int a, int b) {
-        TravelLocation la = this.getLocation(a);
-        TravelLocation lb = this.getLocation(b);
+    private double computeCost(TravelLocation la, TravelLocation lb) {
         if (la == null || lb == null) {
             // no start and/or end location, so the distance is just 0.0
             return 0.0;
         }
+        if (this.costFunction != null) {
+            return this.costFunction.getCost(la.location, lb.location);
+        }
         return la.getLinearDistanceTo(lb);
     }
 
+    private double getDistance(int a, int b) {
+        TravelLocation la = this.getLocation(a);
+        TravelLocation lb = this.getLocation(b);
+        if (this.costMatrix != null) {
+            // the matrix is indexed by the input index, -1 being the start and travelSize the end location
+            int ia = la != null ? la.index : a;
+            int ib = lb != null ? lb.index : b;
+            return this.costMatrix[(ia + 1)*this.matrixStride + ib + 1];
+        }
+        return this.computeCost(la, lb);
+    }
+
+    /**
+     * Get the distance between two Locations by their input index, -1 being the start and travelSize the end Location.
+     */
+    private double getDistanceByIndex(int ia, int ib) {
+        if (this.costMatrix != null) {
+            return this.costMatrix[(ia + 1)*this.matrixStride + ib + 1];
+        }
+        TravelLocation la = (ia < 0) ? this.startLocation : (ia >= this.travelSize) ? this.endLocation : this.travelByIndex[ia];
+        TravelLocation lb = (ib < 0) ? this.startLocation : (ib >= this.travelSize) ? this.endLocation : this.travelByIndex[ib];
+        return this.computeCost(la, lb);
+    }
+
+    /**
+     * @return The distance of the route or its cost, if a {@link CostFunction} was given.
+     */
     public double getTravellingDistance() {
         double distance = 0.0;
         for (int i = 0; i <= this.travelSize; i++) {
@@ -231,7 +324,7 @@ public class TravellingSalesman<T> {
             // make this repeatable by seeding the random generator
             Random rnd = new java.util.Random(0);
             for (; i > 0; i--) {
-                if (t > 0.1) {
+                if (t > this.minimumTemperature) {
                     int a = rnd.nextInt(this.travelSize);
                     int b;
                     do {
@@ -317,6 +410,182 @@ public class TravellingSalesman<T> {
         return simulateAnnealing(getTravellingDistance()/size*2.0, 1.0-0.001/size, size*1000+10000000);
     }
 
+    /**
+     * Solve by local search. The route is seeded by always travelling to the nearest Location not yet visited, 
+     * then improved by 2-opt moves, i.e. reversing a part of the route, and Or-opt moves, i.e. moving a segment of 
+     * up to three Locations elsewhere, optionally reversed. The improvement stops when no move gives a better 
+     * route, or when the time budget is used up. 
+     * 
+     * @param timeBudgetMillis Time budget in milliseconds.
+     * @return The distance of the route or its cost, if a {@link CostFunction} was given.
+     */
+    public double solveLocalSearch(long timeBudgetMillis) {
+        long startTime = System.currentTimeMillis();
+        long deadline = System.nanoTime() + timeBudgetMillis*1000000L;
+        int n = this.travelSize;
+        if (n > 1) {
+            int [] route = getNearestNeighborRoute();
+            // ignore improvements that are only rounding effects
+            double epsilon = 1e-9*Math.max(getRouteDistance(route), 1e-9);
+            boolean improved = true;
+            while (improved && System.nanoTime() < deadline) {
+                improved = improveBy2Opt(route, epsilon, deadline);
+                improved = improveByOrOpt(route, epsilon, deadline) || improved;
+            }
+            this.travel.clear();
+            for (int index : route) {
+                this.travel.add(this.travelByIndex[index]);
+            }
+        }
+        double bestDistance = getTravellingDistance();
+        if (debugLevel > 0) {
+            System.out.println("Local search, size: "+n+", distance of travel: " + bestDistance);
+        }
+        this.solverDuration = System.currentTimeMillis() - startTime;
+        return bestDistance;
+    }
+
+    private int [] getNearestNeighborRoute() {
+        int n = this.travelSize;
+        int [] route = new int[n];
+        boolean [] visited = new boolean[n];
+        int last = -1;
+        for (int i = 0; i < n; i++) {
+            int nearest = -1;
+            double nearestDistance = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < n; j++) {
+                if (!visited[j]) {
+                    double distance = getDistanceByIndex(last, j);
+                    if (distance < nearestDistance) {
+                        nearest = j;
+                        nearestDistance = distance;
+                    }
+                }
+            }
+            route[i] = nearest;
+            visited[nearest] = true;
+            last = nearest;
+        }
+        return route;
+    }
+
+    private double getRouteDistance(int [] route) {
+        double distance = 0.0;
+        for (int i = 0; i <= route.length; i++) {
+            distance += getDistanceByIndex(routeIndex(route, i-1), routeIndex(route, i));
+        }
+        return distance;
+    }
+
+    /**
+     * @return The input index at position i of the route, with the start and end Location before and after it.
+     */
+    private static int routeIndex(int [] route, int i) {
+        if (i < 0) {
+            return -1;
+        }
+        else if (i >= route.length) {
+            return route.length;
+        }
+        return route[i];
+    }
+
+    private boolean improveBy2Opt(int [] route, double epsilon, long deadline) {
+        int n = route.length;
+        boolean improved = false;
+        for (int i = 0; i < n - 1; i++) {
+            if (System.nanoTime() > deadline) {
+                break;
+            }
+            int before = routeIndex(route, i-1);
+            for (int j = i + 1; j < n; j++) {
+                int after = routeIndex(route, j+1);
+                double delta = getDistanceByIndex(before, route[j]) + getDistanceByIndex(route[i], after)
+                        - getDistanceByIndex(before, route[i]) - getDistanceByIndex(route[j], after);
+                if (delta < -epsilon) {
+                    // reverse route[i..j]
+                    for (int a = i, b = j; a < b; a++, b--) {
+                        int s = route[a];
+                        route[a] = route[b];
+                        route[b] = s;
+                    }
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    private boolean improveByOrOpt(int [] route, double epsilon, long deadline) {
+        int n = route.length;
+        boolean improved = false;
+        for (int length = 1; length <= 3; length++) {
+            for (int i = 0; i + length <= n; i++) {
+                if (System.nanoTime() > deadline) {
+                    return improved;
+                }
+                // the segment route[i..i+length-1] with its neighbors
+                int before = routeIndex(route, i-1);
+                int first = route[i];
+                int last = route[i+length-1];
+                int after = routeIndex(route, i+length);
+                double removeGain = getDistanceByIndex(before, first) + getDistanceByIndex(last, after) 
+                        - getDistanceByIndex(before, after);
+                // find the best place to insert it between route[p] and route[p+1]
+                double bestDelta = -epsilon;
+                int bestP = 0;
+                boolean bestReversed = false;
+                for (int p = -1; p < n; p++) {
+                    if (p >= i-1 && p < i+length) {
+                        continue;
+                    }
+                    int x = routeIndex(route, p);
+                    int y = routeIndex(route, p+1);
+                    double edge = getDistanceByIndex(x, y);
+                    double delta = getDistanceByIndex(x, first) + getDistanceByIndex(last, y) - edge - removeGain;
+                    if (delta < bestDelta) {
+                        bestDelta = delta;
+                        bestP = p;
+                        bestReversed = false;
+                    }
+                    delta = getDistanceByIndex(x, last) + getDistanceByIndex(first, y) - edge - removeGain;
+                    if (delta < bestDelta) {
+                        bestDelta = delta;
+                        bestP = p;
+                        bestReversed = true;
+                    }
+                }
+                if (bestDelta < -epsilon) {
+                    moveSegment(route, i, length, bestP, bestReversed);
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * Move the segment route[i..i+length-1] to between the current route[p] and route[p+1].
+     */
+    private static void moveSegment(int [] route, int i, int length, int p, boolean reversed) {
+        int [] segment = new int[length];
+        for (int k = 0; k < length; k++) {
+            segment[k] = route[reversed ? i+length-1-k : i+k];
+        }
+        int target;
+        if (p < i) {
+            // shift route[p+1..i-1] towards the end
+            System.arraycopy(route, p+1, route, p+1+length, i-p-1);
+            target = p+1;
+        }
+        else {
+            // shift route[i+length..p] towards the start
+            System.arraycopy(route, i+length, route, i, p-i-length+1);
+            target = p-length+1;
+        }
+        System.arraycopy(segment, 0, route, target, length);
+    }
+
     public List<T> getTravel() {
         // convert the working list back to a list of the input objects using the now rearranged t.index order. 
         List<T> travelOutput = new ArrayList<>();
@@ -19,17 +19,35 @@
  * For more information about OpenPnP visit http://openpnp.org
  */
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.axis.ReferenceControllerAxis;
+import org.openpnp.machine.reference.driver.GcodeAsyncDriver;
 import org.openpnp.model.AbstractMotionPath;
+import org.openpnp.model.AxesLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Motion;
+import org.openpnp.model.Motion.MoveToCommand;
 import org.openpnp.model.MotionProfile;
 import org.openpnp.model.MotionProfile.ErrorState;
 import org.openpnp.model.MotionProfile.ProfileOption;
+import org.openpnp.spi.Axis;
+import org.openpnp.spi.ControllerAxis;
 import org.openpnp.spi.Driver.MotionControlType;
 import org.openpnp.util.NanosecondTime;
 
+import com.google.common.io.Files;
+
 public class AdvancedMotionTest {
 
     @Test 
@@ -460,4 +478,317 @@ public class AdvancedMotionTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test 
+    public void testPathContinuation() throws Exception {
+        for (PlannerPath lookAheadPath : new PlannerPath[] { 
+                new PlannerPath(30000, false), new PlannerPath(0, false) 
+        }) {
+            // Nozzle up after the pick, planned with look-ahead to the next place location. 
+            lookAheadPath.moveTo(0, 0, za, 1);
+            lookAheadPath.moveTo(0, 0, safeZ, 1);
+            lookAheadPath.moveTo(100, 50, safeZ, 1);
+            lookAheadPath.moveTo(100, 50, za, 1);
+            lookAheadPath.solve();
+            lookAheadPath.validate("Look-ahead path");
+            MotionProfile [] exitProfiles = lookAheadPath.get(0);
+            assertTrue(exitProfiles[2].getVelocity(MotionProfile.segments) > 0, 
+                    "Nozzle up is not left in motion");
+
+            // The next machine task continues from there.
+            PlannerPath path = new PlannerPath(lookAheadPath.jerk, lookAheadPath.sCurves);
+            path.moveTo(0, 0, safeZ, 1);
+            path.moveTo(100, 50, safeZ, 1);
+            path.moveTo(100, 50, za, 1);
+            assertTrue(path.continueFrom(exitProfiles), "Travel cannot continue");
+            path.solve();
+            for (int axis = 0; axis < exitProfiles.length; axis++) {
+                assertEquals(exitProfiles[axis].getVelocity(MotionProfile.segments), 
+                        path.get(0)[axis].getVelocity(0), 1e-6, "Entry velocity of axis "+axis);
+            }
+            double lookAheadTime = exitProfiles[0].getTime() + path.getOverallTime();
+
+            // Compare to the same sequence planned without look-ahead.
+            PlannerPath stopPath = new PlannerPath(lookAheadPath.jerk, lookAheadPath.sCurves);
+            stopPath.moveTo(0, 0, za, 1);
+            stopPath.moveTo(0, 0, safeZ, 1);
+            stopPath.solve();
+            PlannerPath nextPath = new PlannerPath(lookAheadPath.jerk, lookAheadPath.sCurves);
+            nextPath.moveTo(0, 0, safeZ, 1);
+            nextPath.moveTo(100, 50, safeZ, 1);
+            nextPath.moveTo(100, 50, za, 1);
+            nextPath.solve();
+            double stopTime = stopPath.getOverallTime() + nextPath.getOverallTime();
+            System.out.println(String.format("Path continuation, jerk %.0f: %.3f s, with stop: %.3f s", 
+                    lookAheadPath.jerk, lookAheadTime, stopTime));
+            assertTrue(lookAheadTime < stopTime, "Look-ahead is not faster");
+
+            // A coordinated move can't continue around a corner.
+            PlannerPath cornerPath = new PlannerPath(lookAheadPath.jerk, lookAheadPath.sCurves);
+            cornerPath.moveTo(0, 0, safeZ, 1);
+            cornerPath.moveTo(0, 50, za, 1);
+            assertFalse(cornerPath.continueFrom(exitProfiles), "Coordinated corner must not continue");
+        }
+    }
+
+    @Test 
+    public void testCornerSmoothing() throws Exception {
+        for (PlannerPath path : new PlannerPath[] { 
+                new PlannerPath(90000, false), new PlannerPath(30000, false), new PlannerPath(0, false) 
+        }) {
+            PlannerPath smoothedPath = new PlannerPath(path.jerk, path.sCurves);
+            smoothedPath.setCornerSmoothing(true);
+            for (PlannerPath p : new PlannerPath[] { path, smoothedPath }) {
+                // Travel at Safe Z around obstacles.
+                p.moveTo(0, 0, za, 1);
+                p.moveTo(0, 0, safeZ, 1);
+                p.moveTo(80, 20, safeZ, 1);
+                p.moveTo(160, 60, safeZ, 1);
+                p.moveTo(200, 20, safeZ, 1);
+                p.moveTo(205, 18, safeZ, 1);
+                p.moveTo(205, 18, za, 1);
+                p.solve();
+                p.validate("Corner smoothing "+p.isCornerSmoothing());
+            }
+            System.out.println(String.format("Corner smoothing, jerk %.0f: %.3f s, without: %.3f s", 
+                    path.jerk, smoothedPath.getOverallTime(), path.getOverallTime()));
+            assertTrue(smoothedPath.getOverallTime() < path.getOverallTime(), "Corner smoothing is not faster");
+            // X keeps its direction through the first corner, Y reverses in the second.
+            assertTrue(smoothedPath.get(1)[0].getVelocity(MotionProfile.segments) > 0, "X stops in the corner");
+            assertEquals(0, smoothedPath.get(2)[1].getVelocity(MotionProfile.segments), 1e-6, "Y does not stop in the corner");
+        }
+    }
+
+    @Test 
+    public void testCornerSmoothingCoordinatedBetweenUncoordinated() throws Exception {
+        for (PlannerPath path : new PlannerPath[] { 
+                new PlannerPath(90000, false), new PlannerPath(30000, false), new PlannerPath(0, false) 
+        }) {
+            PlannerPath smoothedPath = new PlannerPath(path.jerk, path.sCurves);
+            smoothedPath.setCornerSmoothing(true);
+            for (PlannerPath p : new PlannerPath[] { path, smoothedPath }) {
+                // Travel at Safe Z with a coordinated move in between.
+                p.moveTo(0, 0, 0, 1);
+                p.moveTo(100, 20, 0, 1);
+                p.moveTo(120, 40, 0, 0);
+                p.moveTo(200, 60, 0, 1);
+                p.moveTo(200, 80, 0, 1);
+                p.solve();
+                p.validate("Coordinated between uncoordinated, corner smoothing "+p.isCornerSmoothing());
+            }
+            System.out.println(String.format("Coordinated between uncoordinated, corner smoothing, jerk %.0f: %.3f s, without: %.3f s", 
+                    path.jerk, smoothedPath.getOverallTime(), path.getOverallTime()));
+            assertTrue(smoothedPath.getOverallTime() < path.getOverallTime(), "Corner smoothing is not faster");
+            // The coordinated move is entered and left in motion, along its straight line.
+            MotionProfile [] coordinated = smoothedPath.get(1);
+            for (int seg : new int [] { 0, MotionProfile.segments }) {
+                assertTrue(coordinated[0].getVelocity(seg) > 0, "X stops in the corner");
+                assertEquals(coordinated[0].getVelocity(seg), coordinated[1].getVelocity(seg), 1e-6, "Not along the line");
+                assertEquals(0, coordinated[2].getVelocity(seg), 1e-6, "Z moves");
+            }
+        }
+    }
+
+    @Test 
+    public void testParallelSolving() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (PlannerPath path : new PlannerPath[] { 
+                    new PlannerPath(90000, false), new PlannerPath(30000, false), new PlannerPath(0, false) 
+            }) {
+                PlannerPath parallelPath = new PlannerPath(path.jerk, path.sCurves);
+                parallelPath.setSolverPool(pool);
+                for (PlannerPath p : new PlannerPath[] { path, parallelPath }) {
+                    p.setCornerSmoothing(true);
+                    p.setIterations(6);
+                    addParallelSolvingPath(p);
+                    p.solve();
+                }
+                parallelPath.validate("Parallel solving");
+                // The result must be the same as when solved sequentially.
+                for (int i = 0; i < path.size(); i++) {
+                    for (int axis = 0; axis < path.get(i).length; axis++) {
+                        for (int segment = 0; segment <= MotionProfile.segments; segment++) {
+                            assertEquals(path.get(i)[axis].getLocation(segment), parallelPath.get(i)[axis].getLocation(segment), 0.0);
+                            assertEquals(path.get(i)[axis].getVelocity(segment), parallelPath.get(i)[axis].getVelocity(segment), 0.0);
+                            assertEquals(path.get(i)[axis].getAcceleration(segment), parallelPath.get(i)[axis].getAcceleration(segment), 0.0);
+                            assertEquals(path.get(i)[axis].getSegmentBeginTime(segment), parallelPath.get(i)[axis].getSegmentBeginTime(segment), 0.0);
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A path long enough to be solved in parallel batches.
+     */
+    private void addParallelSolvingPath(PlannerPath p) {
+        for (int cycle = 0; cycle < 8; cycle++) {
+            p.moveTo(0, cycle, za, 1);
+            p.moveTo(0, cycle, safeZ, 1);
+            p.moveTo(80, 20, safeZ, 1);
+            p.moveTo(160, 60, safeZ, 1);
+            p.moveTo(200, 20, safeZ, 1);
+            p.moveTo(205, 18, za, 1);
+            p.moveTo(205, 18, safeZ, 1);
+            p.moveTo(20, 100, safeZ, 1);
+            p.moveTo(20, 100, za, 1);
+        }
+    }
+
+    @Test 
+    public void testParallelSolvingBenchmark() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int warmup = 2; warmup >= 0; warmup--) {
+                double [] time = new double[2];
+                int size = 0;
+                for (int repeat = 0; repeat < 20; repeat++) {
+                    for (int parallel = 0; parallel < 2; parallel++) {
+                        PlannerPath path = new PlannerPath(90000, false);
+                        path.setSolverPool(parallel == 1 ? pool : null);
+                        addParallelSolvingPath(path);
+                        size = path.size();
+                        double t0 = NanosecondTime.getRuntimeSeconds(); 
+                        path.solve();
+                        time[parallel] += NanosecondTime.getRuntimeSeconds() - t0;
+                    }
+                }
+                if (warmup == 0) {
+                    System.out.println(String.format("Parallel solving benchmark, %d moves, %d workers, %d cores: "
+                            + "sequential %.3f ms, parallel %.3f ms per path", 
+                            size, pool.getParallelism(), Runtime.getRuntime().availableProcessors(),
+                            time[0]*1000/20, time[1]*1000/20));
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test 
+    public void testAdaptiveInterpolation() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+        GcodeAsyncDriver driver = new GcodeAsyncDriver();
+        driver.setMotionControlType(MotionControlType.Simulated3rdOrderControl);
+        ReferenceControllerAxis x = createAxis(driver, Axis.Type.X, 1000, 5000, 50000);
+        ReferenceControllerAxis y = createAxis(driver, Axis.Type.Y, 800, 4000, 40000);
+        ReferenceControllerAxis c = createAxis(driver, Axis.Type.Rotation, 3000, 20000, 200000);
+        double positionTolerance = 0.05;
+        double velocityTolerance = 20;
+        driver.setInterpolationPositionTolerance(new Length(positionTolerance, LengthUnit.Millimeters));
+        driver.setInterpolationVelocityTolerance(new Length(velocityTolerance, LengthUnit.Millimeters));
+
+        // Linear move with rotation, and rotation only move.
+        double [][] moves = new double [][] {
+            { 0, 0, 0, 300, 120, 90 },
+            { 0, 0, 0, 0, 0, 180 },
+        };
+        for (double [] move : moves) {
+            AxesLocation location0 = new AxesLocation(x, move[0])
+                    .put(new AxesLocation(y, move[1]))
+                    .put(new AxesLocation(c, move[2]));
+            AxesLocation location1 = new AxesLocation(x, move[3])
+                    .put(new AxesLocation(y, move[4]))
+                    .put(new AxesLocation(c, move[5]));
+
+            driver.setInterpolationAdaptive(false);
+            List<MoveToCommand> fixedCommands = new Motion(null, location0, location1, 1.0)
+                    .interpolatedMoveToCommands(driver, false);
+            driver.setInterpolationAdaptive(true);
+            Motion motion = new Motion(null, location0, location1, 1.0);
+            List<MoveToCommand> adaptiveCommands = motion.interpolatedMoveToCommands(driver, false);
+            assertFalse(motion.hasOption(Motion.MotionOption.InterpolationFailed), "Adaptive interpolation succeeds");
+            assertTrue(adaptiveCommands.size() > 1, "Move is interpolated");
+            boolean linearMove = (move[0] != move[3] || move[1] != move[4]);
+            if (linearMove) {
+                // Note, on the rotation only move the fixed steps deviate more than the tolerances (taken in degrees), 
+                // so the adaptive interpolation needs more steps there. 
+                assertTrue(adaptiveCommands.size() < fixedCommands.size(), 
+                        "Adaptive steps "+adaptiveCommands.size()+" less than fixed steps "+fixedCommands.size());
+            }
+
+            // Execute the commands like the controller does, i.e. along the straight segments with constant 
+            // acceleration, and compare against the planned motion over the way-point times. Rotation is only 
+            // held to the tolerances, in degrees, when it is the tool-path. 
+            List<ControllerAxis> axes = linearMove ? List.of(x, y) : List.of(c);
+            ControllerAxis leadAxis = linearMove ? x : c;
+            // The segments are probed at a limited number of points, allow for some deviation in between.
+            double slack = 1.5;
+            double maxPositionError = 0;
+            double maxVelocityError = 0;
+            double t0 = 0;
+            for (MoveToCommand command : adaptiveCommands) {
+                AxesLocation segment = command.getLocation0().motionSegmentTo(command.getLocation1());
+                double t1 = getPlannedTime(motion, leadAxis, command.getLocation1().getCoordinate(leadAxis));
+                double dt = t1 - t0;
+                double v0 = command.getV0();
+                double v1 = command.getV1();
+                double progress = (v0 + v1)*0.5*dt;
+                for (int k = 0; k <= 20; k++) {
+                    double tau = dt*k/20;
+                    double fraction = (v0*tau + 0.5*(v1 - v0)/dt*tau*tau)/progress;
+                    double fractionRate = (v0 + (v1 - v0)*tau/dt)/progress;
+                    AxesLocation location = motion.getMomentaryLocation(t0 + tau);
+                    AxesLocation velocity = motion.getMomentaryVelocity(t0 + tau);
+                    for (ControllerAxis axis : axes) {
+                        double s = command.getLocation0().getCoordinate(axis) + segment.getCoordinate(axis)*fraction;
+                        double v = segment.getCoordinate(axis)*fractionRate;
+                        maxPositionError = Math.max(maxPositionError, Math.abs(s - location.getCoordinate(axis)));
+                        maxVelocityError = Math.max(maxVelocityError, Math.abs(v - velocity.getCoordinate(axis)));
+                    }
+                }
+                t0 = t1;
+            }
+            assertTrue(maxPositionError <= positionTolerance*slack, 
+                    "Position deviation "+maxPositionError+" within tolerance "+positionTolerance);
+            assertTrue(maxVelocityError <= velocityTolerance*slack, 
+                    "Velocity deviation "+maxVelocityError+" within tolerance "+velocityTolerance);
+            System.out.println(String.format("Adaptive interpolation %s move: %d steps vs. %d fixed steps, "
+                    + "max. deviation %.4f %s, %.2f %s/s", 
+                    linearMove ? "linear" : "rotation", adaptiveCommands.size(), fixedCommands.size(), 
+                    maxPositionError, linearMove ? "mm" : "deg", maxVelocityError, linearMove ? "mm" : "deg"));
+        }
+    }
+
+    /**
+     * @return The time when the motion reaches the coordinate on the axis, which must move monotonically. 
+     */
+    private double getPlannedTime(Motion motion, ControllerAxis axis, double coordinate) {
+        double direction = Math.signum(motion.getMomentaryLocation(motion.getTime()).getCoordinate(axis) 
+                - motion.getMomentaryLocation(0).getCoordinate(axis));
+        double tLow = 0;
+        double tHigh = motion.getTime();
+        while (tHigh - tLow > 1e-9) {
+            double t = (tLow + tHigh)*0.5;
+            if ((motion.getMomentaryLocation(t).getCoordinate(axis) - coordinate)*direction < 0) {
+                tLow = t;
+            }
+            else {
+                tHigh = t;
+            }
+        }
+        return tHigh;
+    }
+
+    private ReferenceControllerAxis createAxis(GcodeAsyncDriver driver, Axis.Type type, 
+            double feedrate, double acceleration, double jerk) {
+        ReferenceControllerAxis axis = new ReferenceControllerAxis();
+        axis.setName(type.toString());
+        axis.setType(type);
+        axis.setLetter(type == Axis.Type.Rotation ? "C" : type.toString());
+        axis.setDriver(driver);
+        axis.setFeedratePerSecond(new Length(feedrate, LengthUnit.Millimeters));
+        axis.setAccelerationPerSecond2(new Length(acceleration, LengthUnit.Millimeters));
+        axis.setJerkPerSecond3(new Length(jerk, LengthUnit.Millimeters));
+        return axis;
+    }
+}
@@ -0,0 +1,185 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.feeder.ReferenceSlotAutoFeeder;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.base.AbstractPnpJobProcessor;
+import org.openpnp.spi.base.FeederIndex;
+import org.openpnp.spi.base.FeederIndex.Selection;
+
+/**
+ * Tests the machine's FeederIndex, being kept up to date with the feeders' parts, and the feeder selection
+ * policies.
+ */
+public class FeederIndexTest {
+    public static class IndexTestFeeder extends ReferenceJobProcessorRetryTests.TestFeeder {
+        int remainingCount = -1;
+
+        @Override
+        public Location getPickLocation() throws Exception {
+            return getLocation();
+        }
+
+        @Override
+        public int getRemainingCount() {
+            return remainingCount;
+        }
+
+        /**
+         * Change the part without notifying the listeners.
+         */
+        void setPartSilently(Part part) {
+            this.part = part;
+        }
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        Configuration.initialize();
+        Machine machine = new ReferenceJobProcessorRetryTests.MachineBuilder()
+                .head("H1")
+                .build();
+        Part r1 = new Part("R1");
+        Part r2 = new Part("R2");
+        IndexTestFeeder f1 = addFeeder(machine, "F1", r1, 100, 5);
+        IndexTestFeeder f2 = addFeeder(machine, "F2", r2, 110, -1);
+        IndexTestFeeder f3 = addFeeder(machine, "F3", r1, 120, 50);
+        IndexTestFeeder f4 = addFeeder(machine, "F4", r1, 130, 10);
+
+        FeederIndex index = machine.getFeederIndex();
+        assertEquals(Arrays.asList(f1, f3, f4), index.getFeeders(r1));
+        assertEquals(Arrays.asList(f2), index.getFeeders(r2));
+
+        // Selection policies.
+        assertEquals(f1, index.select(r1, Selection.First, null));
+        assertEquals(f4, index.select(r1, Selection.Nearest, new Location(LengthUnit.Millimeters, 140, 0, 0, 0)));
+        assertEquals(f3, index.select(r1, Selection.MostRemaining, null));
+        assertEquals(f1, index.select(r1, Selection.RoundRobin, null));
+        assertEquals(f3, index.select(r1, Selection.RoundRobin, null));
+        assertEquals(f4, index.select(r1, Selection.RoundRobin, null));
+        assertEquals(f1, index.select(r1, Selection.RoundRobin, null));
+
+        // Disabled feeders are skipped.
+        f1.setEnabled(false);
+        assertEquals(f3, index.select(r1, Selection.First, null));
+        assertEquals(f3, index.select(r1, Selection.RoundRobin, null));
+
+        // Changing parts keeps the machine order.
+        f2.setPart(r1);
+        f3.setPart(r2);
+        assertEquals(Arrays.asList(f1, f2, f4), index.getFeeders(r1));
+        assertEquals(Arrays.asList(f3), index.getFeeders(r2));
+        assertEquals(f2, AbstractPnpJobProcessor.findFeeder(machine, r1));
+
+        // Adding and removing feeders rebuilds the index.
+        IndexTestFeeder f5 = addFeeder(machine, "F5", r2, 140, -1);
+        assertEquals(Arrays.asList(f3, f5), machine.getFeederIndex().getFeeders(r2));
+        machine.removeFeeder(f3);
+        f5.setEnabled(false);
+        assertNull(machine.getFeederIndex().select(r2, Selection.First, null));
+        assertThrows(Exception.class, () -> AbstractPnpJobProcessor.findFeeder(machine, r2));
+    }
+
+    @Test
+    public void testSilentPartChange() throws Exception {
+        Configuration.initialize();
+        Machine machine = new ReferenceJobProcessorRetryTests.MachineBuilder()
+                .head("H1")
+                .build();
+        Part r1 = new Part("R1");
+        Part r2 = new Part("R2");
+        IndexTestFeeder f1 = addFeeder(machine, "F1", r1, 100, -1);
+        IndexTestFeeder f2 = addFeeder(machine, "F2", r1, 110, -1);
+        FeederIndex index = machine.getFeederIndex();
+        assertEquals(f1, index.select(r1, Selection.First, null));
+
+        // The mismatch is detected on selection and the index rebuilt.
+        f1.setPartSilently(r2);
+        assertEquals(f2, index.select(r1, Selection.First, null));
+        assertEquals(Arrays.asList(f2), index.getFeeders(r1));
+        // A part that has no indexed feeders is looked up again.
+        assertEquals(f1, index.select(r2, Selection.First, null));
+    }
+
+    @Test
+    public void testSlotFeeders() throws Exception {
+        Configuration.initialize();
+        Machine machine = new ReferenceJobProcessorRetryTests.MachineBuilder()
+                .head("H1")
+                .build();
+        Part r1 = new Part("R1");
+        Part r2 = new Part("R2");
+        ReferenceSlotAutoFeeder.Bank bank = ReferenceSlotAutoFeeder.getBanks().get(0);
+        ReferenceSlotAutoFeeder.Feeder bankFeeder1 = new ReferenceSlotAutoFeeder.Feeder();
+        ReferenceSlotAutoFeeder.Feeder bankFeeder2 = new ReferenceSlotAutoFeeder.Feeder();
+        bankFeeder1.setPart(r1);
+        bankFeeder2.setPart(r2);
+        bank.getFeeders().add(bankFeeder1);
+        bank.getFeeders().add(bankFeeder2);
+        ReferenceSlotAutoFeeder slot1 = new ReferenceSlotAutoFeeder();
+        ReferenceSlotAutoFeeder slot2 = new ReferenceSlotAutoFeeder();
+        slot1.setEnabled(true);
+        slot2.setEnabled(true);
+        machine.addFeeder(slot1);
+        machine.addFeeder(slot2);
+        FeederIndex index = machine.getFeederIndex();
+        List<String> events = new ArrayList<>();
+        PropertyChangeListener listener = (evt) -> events.add(((ReferenceSlotAutoFeeder) evt.getSource()).getId()
+                +":"+partId(evt.getOldValue())+"->"+partId(evt.getNewValue()));
+        slot1.addPropertyChangeListener("part", listener);
+        slot2.addPropertyChangeListener("part", listener);
+
+        // Loading a feeder into a slot is a part change of the slot.
+        slot1.setFeeder(bankFeeder1);
+        assertEquals(Arrays.asList(slot1.getId()+":null->R1"), events);
+        assertEquals(Arrays.asList(slot1), index.getFeeders(r1));
+        // So is changing the part of the loaded feeder.
+        events.clear();
+        bankFeeder1.setPart(r2);
+        assertEquals(Arrays.asList(slot1.getId()+":R1->R2"), events);
+        assertEquals(Arrays.asList(slot1), index.getFeeders(r2));
+        assertEquals(Arrays.asList(), index.getFeeders(r1));
+        // Moving the feeder to another slot, changes both slots.
+        events.clear();
+        slot2.setFeeder(bankFeeder1);
+        assertEquals(Arrays.asList(slot2.getId()+":null->R2", slot1.getId()+":R2->null"), events);
+        assertNull(slot1.getPart());
+        assertEquals(Arrays.asList(slot2), index.getFeeders(r2));
+        // The feeder no longer in the slot is no longer followed.
+        slot1.setFeeder(bankFeeder2);
+        slot2.setFeeder(null);
+        events.clear();
+        bankFeeder1.setPart(r1);
+        assertEquals(Arrays.asList(), events);
+        assertEquals(Arrays.asList(slot1), index.getFeeders(r2));
+        assertEquals(Arrays.asList(), index.getFeeders(r1));
+        assertEquals(slot1, index.select(r2, Selection.First, null));
+    }
+
+    private static String partId(Object part) {
+        return part == null ? null : ((Part) part).getId();
+    }
+
+    private IndexTestFeeder addFeeder(Machine machine, String name, Part part, double x, int remainingCount)
+            throws Exception {
+        IndexTestFeeder feeder = new IndexTestFeeder();
+        feeder.setName(name);
+        feeder.setPart(part);
+        feeder.setLocation(new Location(LengthUnit.Millimeters, x, 20, -5, 0));
+        feeder.setEnabled(true);
+        feeder.remainingCount = remainingCount;
+        machine.addFeeder(feeder);
+        return feeder;
+    }
+}
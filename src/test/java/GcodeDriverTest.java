@@ -1,6 +1,11 @@
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -101,6 +106,52 @@ public class GcodeDriverTest {
         assertEquals(machine.execute(() -> actuator.read()), "497");
     }
     
+    @Test
+    public void testActuatorReadAsync() throws Exception {
+        Machine machine = Configuration.get().getMachine();
+        Actuator actuator1 = new ReferenceActuator();
+        actuator1.setName("A1");
+        machine.addActuator(actuator1);
+        Actuator actuator2 = new ReferenceActuator();
+        actuator2.setName("A2");
+        machine.addActuator(actuator2);
+        GcodeDriver driver = (GcodeDriver) ((ReferenceMachine) machine).getDefaultDriver();
+        driver.setCommand(actuator1, CommandType.ACTUATOR_READ_COMMAND, "READ A1");
+        driver.setCommand(actuator1, CommandType.ACTUATOR_READ_REGEX, "read:a1:(?<Value>-?\\d+)");
+        driver.setCommand(actuator2, CommandType.ACTUATOR_READ_COMMAND, "READ A2");
+        driver.setCommand(actuator2, CommandType.ACTUATOR_READ_REGEX, "read:a2:(?<Value>-?\\d+)");
+
+        server.addCommandResponse("READ A1", "read:a1:497\nok");
+        server.addCommandResponse("READ A2", "read:a2:-12\nok");
+
+        /**
+         * Issue both reads before waiting for any of them, the responses must be assigned to the right
+         * actuators.
+         */
+        CompletableFuture<String> value2 = machine.execute(() -> driver.actuatorReadAsync(actuator2, null));
+        CompletableFuture<String> value1 = machine.execute(() -> driver.actuatorReadAsync(actuator1, null));
+        assertEquals("497", value1.get(5, TimeUnit.SECONDS));
+        assertEquals("-12", value2.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testActuatorReadAsyncTimeout() throws Exception {
+        Machine machine = Configuration.get().getMachine();
+        Actuator actuator = new ReferenceActuator();
+        actuator.setName("A1");
+        machine.addActuator(actuator);
+        GcodeDriver driver = (GcodeDriver) ((ReferenceMachine) machine).getDefaultDriver();
+        assertTrue(driver.isActuatorReadAsyncSupported());
+        driver.setCommand(actuator, CommandType.ACTUATOR_READ_COMMAND, "READ A1");
+        driver.setCommand(actuator, CommandType.ACTUATOR_READ_REGEX, "read:a1:(?<Value>-?\\d+)");
+
+        // No matching response, the read times out with the driver's timeout.
+        server.addCommandResponse("READ A1", "ok");
+        CompletableFuture<String> value = machine.execute(() -> driver.actuatorReadAsync(actuator, null));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> value.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getMessage().contains("No matching responses found"), e.getCause().toString());
+    }
+
     @Test
     public void testActuatorReadNoRegex() throws Exception {
         Machine machine = Configuration.get().getMachine();
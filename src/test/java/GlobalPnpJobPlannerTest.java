@@ -0,0 +1,217 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.ReferenceFeeder;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.GlobalPnpJobPlanner;
+import org.openpnp.spi.PnpJobPlanner.PlannedPlacement;
+import org.openpnp.spi.PnpJobPlanner;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.SimplePnpJobPlanner;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.model.Location;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.util.Utils2D;
+
+/**
+ * Compares the GlobalPnpJobPlanner with the SimplePnpJobPlanner on a job that alternates between parts needing
+ * different nozzle tips.
+ */
+public class GlobalPnpJobPlannerTest {
+
+    @Test
+    public void testNozzleTipChanges() throws Exception {
+        int simpleChanges = planJob(new SimplePnpJobPlanner(), false);
+        double simpleDistance = distance;
+        int simpleCycles = cycles;
+        int globalChanges = planJob(new GlobalPnpJobPlanner(), false);
+        System.out.println(String.format(Locale.US, "GlobalPnpJobPlannerTest.testNozzleTipChanges() "
+                + "simple %d nozzle tip changes, %d cycles, %.0fmm travel, "
+                + "global %d nozzle tip changes, %d cycles, %.0fmm travel",
+                simpleChanges, simpleCycles, simpleDistance, globalChanges, cycles, distance));
+        assertTrue(globalChanges <= simpleChanges, "Global planner must not change nozzle tips more often");
+        assertTrue(cycles <= simpleCycles, "Global planner must not need more cycles");
+        assertTrue(distance < simpleDistance, "Global planner must travel less");
+        // Each nozzle tip is loaded once, one of the nozzles then changes to the third tip.
+        assertEquals(3, globalChanges);
+    }
+
+    @Test
+    public void testReplan() throws Exception {
+        // A placement failing in each cycle must not get lost.
+        planJob(new GlobalPnpJobPlanner(), true);
+    }
+
+    @Test
+    public void testUnschedulable() throws Exception {
+        Configuration.initialize();
+        Machine machine = new ReferenceJobProcessorRetryTests.MachineBuilder()
+                .head("H1")
+                .nozzleTip("NT1")
+                .nozzleTip("NT2")
+                .nozzle("N1", "NT1")
+                .nozzle("N2", "NT1")
+                .topCamera("TOP")
+                .bottomCamera("BOTTOM")
+                .build();
+        // P2 needs a nozzle tip that no nozzle can load.
+        ReferenceJobProcessorRetryTests.JobBuilder jobBuilder = new ReferenceJobProcessorRetryTests.JobBuilder()
+                .board("B1", 10, 10, 10, 0)
+                .packag("P1", "NT1")
+                .packag("P2", "NT2")
+                .part("R1", "P1")
+                .part("R2", "P2")
+                .feeder("F1", "R1", 100, 20, -5, 0)
+                .feeder("F2", "R2", 110, 20, -5, 0);
+        for (int i = 0; i < 12; i++) {
+            jobBuilder.placement("C"+i, i % 4 == 0 ? "R2" : "R1", i*5, i*3, 0);
+        }
+        Job job = jobBuilder.build();
+        Head head = machine.getDefaultHead();
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        for (BoardLocation boardLocation : job.getBoardLocations()) {
+            for (Placement placement : boardLocation.getBoard().getPlacements()) {
+                jobPlacements.add(new JobPlacement(boardLocation, placement));
+            }
+        }
+        int [] schedules = new int[1];
+        GlobalPnpJobPlanner planner = new GlobalPnpJobPlanner() {
+            @Override
+            protected void schedule(Head head, List<JobPlacement> jobPlacements) {
+                schedules[0]++;
+                super.schedule(head, jobPlacements);
+            }
+        };
+        planner.restart();
+        int planned = 0;
+        while (true) {
+            List<PlannedPlacement> plannedPlacements = planner.plan(head, jobPlacements);
+            if (plannedPlacements.isEmpty()) {
+                break;
+            }
+            planned += plannedPlacements.size();
+        }
+        assertEquals(9, planned);
+        // The unschedulable placements remain pending, but do not make the planner re-schedule in every cycle.
+        assertEquals(3, jobPlacements.size());
+        assertEquals(1, schedules[0]);
+        assertTrue(planner.plan(head, jobPlacements).isEmpty());
+        assertEquals(1, schedules[0]);
+        // A new pending placement is scheduled.
+        jobPlacements.add(new JobPlacement(job.getBoardLocations().get(0), 
+                job.getBoardLocations().get(0).getBoard().getPlacements().get(1)));
+        assertEquals(1, planner.plan(head, jobPlacements).size());
+        assertEquals(2, schedules[0]);
+    }
+
+    private int cycles;
+    private double distance;
+
+    /**
+     * Plans the job, simulating nozzle tip changes, and measures the number of cycles and the travel distance
+     * between feeders and placements.
+     * 
+     * @return The number of nozzle tip changes.
+     */
+    private int planJob(PnpJobPlanner planner, boolean failFirst) throws Exception {
+        Configuration.initialize();
+        Machine machine = new ReferenceJobProcessorRetryTests.MachineBuilder()
+                .head("H1")
+                .nozzleTip("NT1")
+                .nozzleTip("NT2")
+                .nozzleTip("NT3")
+                .nozzle("N1", "NT1", "NT2", "NT3")
+                .nozzle("N2", "NT1", "NT2", "NT3")
+                .topCamera("TOP")
+                .bottomCamera("BOTTOM")
+                .build();
+        ReferenceJobProcessorRetryTests.JobBuilder jobBuilder = new ReferenceJobProcessorRetryTests.JobBuilder()
+                .board("B1", 10, 10, 10, 0)
+                .packag("P1", "NT1")
+                .packag("P2", "NT2")
+                .packag("P3", "NT3")
+                .part("R1", "P1")
+                .part("R2", "P2")
+                .part("R3", "P3")
+                .feeder("F1", "R1", 100, 20, -5, 0)
+                .feeder("F2", "R2", 110, 20, -5, 0)
+                .feeder("F3", "R3", 120, 20, -5, 0);
+        // Scatter the placements over the board, in the order they were added, as from a CAD export.
+        Random random = new Random(1);
+        for (int i = 0; i < 24; i++) {
+            jobBuilder.placement("C"+i, "R"+(i % 3 + 1), random.nextInt(100), random.nextInt(80), 0);
+        }
+        Job job = jobBuilder.build();
+        Head head = machine.getDefaultHead();
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        for (BoardLocation boardLocation : job.getBoardLocations()) {
+            for (Placement placement : boardLocation.getBoard().getPlacements()) {
+                jobPlacements.add(new JobPlacement(boardLocation, placement));
+            }
+        }
+        int total = jobPlacements.size();
+        Set<JobPlacement> done = new HashSet<>();
+        machine.setEnabled(true);
+        machine.home();
+        planner.restart();
+        int changes = 0;
+        cycles = 0;
+        distance = 0;
+        Location location = null;
+        while (!jobPlacements.isEmpty()) {
+            assertTrue(++cycles <= 2*total, "Planner does not converge");
+            List<PlannedPlacement> plannedPlacements = planner.plan(head, jobPlacements);
+            assertTrue(!plannedPlacements.isEmpty(), "Planner must plan a placement");
+            Set<Nozzle> nozzles = new HashSet<>();
+            for (PlannedPlacement plannedPlacement : plannedPlacements) {
+                assertTrue(nozzles.add(plannedPlacement.nozzle), "Nozzle planned twice in one cycle");
+                assertTrue(plannedPlacement.jobPlacement.getPlacement().getPart().getPackage()
+                        .getCompatibleNozzleTips().contains(plannedPlacement.nozzleTip));
+                if (plannedPlacement.nozzle.getNozzleTip() != plannedPlacement.nozzleTip) {
+                    plannedPlacement.nozzle.loadNozzleTip(plannedPlacement.nozzleTip, false);
+                    changes++;
+                }
+            }
+            for (PlannedPlacement plannedPlacement : plannedPlacements) {
+                Location pickLocation = ((ReferenceFeeder) machine.getFeederByName(
+                        "F"+plannedPlacement.jobPlacement.getPartId().substring(1))).getLocation();
+                location = travel(location, pickLocation);
+            }
+            for (PlannedPlacement plannedPlacement : plannedPlacements) {
+                location = travel(location, Utils2D.calculateBoardPlacementLocation(
+                        plannedPlacement.jobPlacement.getBoardLocation(), 
+                        plannedPlacement.jobPlacement.getPlacement().getLocation()));
+            }
+            for (int i = 0; i < plannedPlacements.size(); i++) {
+                JobPlacement jobPlacement = plannedPlacements.get(i).jobPlacement;
+                if (failFirst && i == 0 && !done.contains(jobPlacement) && cycles % 2 == 1) {
+                    // Failed, pending again.
+                    jobPlacements.add(jobPlacement);
+                    continue;
+                }
+                done.add(jobPlacement);
+            }
+        }
+        assertEquals(total, done.size());
+        return changes;
+    }
+
+    private Location travel(Location location, Location nextLocation) {
+        if (location != null) {
+            distance += location.getLinearDistanceTo(nextLocation);
+        }
+        return nextLocation;
+    }
+}
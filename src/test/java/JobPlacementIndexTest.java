@@ -0,0 +1,140 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.SimplePnpJobPlanner;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.NozzleTip;
+import org.openpnp.spi.PnpJobPlanner.PlannedPlacement;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement.Status;
+import org.openpnp.util.JobPlacementIndex;
+
+/**
+ * Tests that the SimplePnpJobPlanner plans the same from the JobPlacementIndex as from the sorted list of pending
+ * placements, and prints the planning times on a large job.
+ */
+public class JobPlacementIndexTest {
+
+    @Test
+    public void testIndex() throws Exception {
+        List<JobPlacement> jobPlacements = createJob(3, 12);
+        Machine machine = Configuration.get().getMachine();
+        NozzleTip nt2 = machine.getNozzleTipByName("NT2");
+        JobPlacementIndex index = new JobPlacementIndex(jobPlacements, Comparator.comparing(JobPlacement::getPartId));
+        assertEquals(12, index.getPendingCount());
+        JobPlacement first = index.getFirstPending(Collections.singletonList(nt2), Collections.emptySet());
+        assertEquals("R1", first.getPartId());
+        first.setStatus(Status.Processing);
+        assertEquals(11, index.getPendingCount());
+        JobPlacement second = index.getFirstPending(Collections.singletonList(nt2), Collections.emptySet());
+        assertEquals("R1", second.getPartId());
+        // Pending again after a failure, is served first again.
+        first.setStatus(Status.Pending);
+        assertEquals(first, index.getFirstPending(Collections.singletonList(nt2), Collections.emptySet()));
+        assertEquals(second, index.getFirstPending(Collections.singletonList(nt2), Collections.singleton(first)));
+        for (JobPlacement jobPlacement : jobPlacements) {
+            jobPlacement.setStatus(Status.Complete);
+        }
+        assertEquals(0, index.getPendingCount());
+        assertNull(index.getFirstPending(Collections.singletonList(nt2), Collections.emptySet()));
+        index.dispose();
+    }
+
+    @Test
+    public void testPlanning() throws Exception {
+        List<JobPlacement> jobPlacements = createJob(50, 5000);
+        Head head = Configuration.get().getMachine().getDefaultHead();
+        Comparator<JobPlacement> order = Comparator
+                .comparing(JobPlacement::getPartHeight)
+                .thenComparing(JobPlacement::getPartId);
+        JobPlacementIndex index = new JobPlacementIndex(jobPlacements, order);
+        SimplePnpJobPlanner listPlanner = new SimplePnpJobPlanner();
+        SimplePnpJobPlanner indexPlanner = new SimplePnpJobPlanner();
+        listPlanner.restart();
+        indexPlanner.restart();
+        long listTime = 0;
+        long indexTime = 0;
+        int cycles = 0;
+        while (index.getPendingCount() > 0) {
+            long t0 = System.nanoTime();
+            // As the Plan step did before the index.
+            List<JobPlacement> pending = jobPlacements.stream()
+                    .filter((jobPlacement) -> jobPlacement.getStatus() == Status.Pending)
+                    .sorted(order)
+                    .collect(Collectors.toList());
+            List<PlannedPlacement> listPlanned = listPlanner.plan(head, pending);
+            long t1 = System.nanoTime();
+            List<PlannedPlacement> indexPlanned = indexPlanner.plan(head, index);
+            long t2 = System.nanoTime();
+            listTime += t1 - t0;
+            indexTime += t2 - t1;
+            assertEquals(listPlanned.toString(), indexPlanned.toString());
+            for (PlannedPlacement plannedPlacement : indexPlanned) {
+                plannedPlacement.jobPlacement.setStatus(Status.Processing);
+            }
+            // Fail every 7th cycle's first placement.
+            if (++cycles % 7 == 0) {
+                indexPlanned.get(0).jobPlacement.setStatus(Status.Pending);
+            }
+        }
+        index.dispose();
+        System.out.println(String.format(Locale.US,
+                "JobPlacementIndexTest.testPlanning() %d placements, %d cycles, list %.3fms/cycle, index %.3fms/cycle",
+                jobPlacements.size(), cycles, listTime*1e-6/cycles, indexTime*1e-6/cycles));
+    }
+
+    /**
+     * Create a machine with three nozzles sharing three nozzle tips, and a job with the given number of parts
+     * and placements.
+     */
+    private List<JobPlacement> createJob(int parts, int placements) throws Exception {
+        Configuration.initialize();
+        new ReferenceJobProcessorRetryTests.MachineBuilder()
+                .head("H1")
+                .nozzleTip("NT1")
+                .nozzleTip("NT2")
+                .nozzleTip("NT3")
+                .nozzle("N1", "NT1", "NT2")
+                .nozzle("N2", "NT1", "NT2", "NT3")
+                .nozzle("N3", "NT2", "NT3")
+                .topCamera("TOP")
+                .bottomCamera("BOTTOM")
+                .build();
+        ReferenceJobProcessorRetryTests.JobBuilder jobBuilder = new ReferenceJobProcessorRetryTests.JobBuilder()
+                .board("B1", 10, 10, 10, 0)
+                .packag("P1", "NT1")
+                .packag("P2", "NT2")
+                .packag("P3", "NT3")
+                .packag("P23", "NT2", "NT3");
+        String [] packages = new String [] { "P1", "P2", "P3", "P23" };
+        for (int i = 1; i <= parts; i++) {
+            jobBuilder.part("R"+i, packages[i % packages.length]);
+        }
+        for (int i = 0; i < placements; i++) {
+            jobBuilder.placement("C"+i, "R"+(i % parts + 1), i % 100, i / 100, 0);
+        }
+        Job job = jobBuilder.build();
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        for (BoardLocation boardLocation : job.getBoardLocations()) {
+            for (Placement placement : boardLocation.getBoard().getPlacements()) {
+                jobPlacements.add(new JobPlacement(boardLocation, placement));
+            }
+        }
+        assertEquals(placements, new HashSet<>(jobPlacements).size());
+        return jobPlacements;
+    }
+}
@@ -0,0 +1,136 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.openpnp.model.MotionProfile;
+
+/**
+ * Tests and benchmarks the MotionProfile solver with the profiles of representative pick and place paths. Prints 
+ * solves per second and allocated bytes per solve.
+ *
+ * The number of pick and place cycles can be configured with a system property, e.g.
+ * -DMotionProfileSolveTest.cycles=10000
+ */
+public class MotionProfileSolveTest {
+    private static final int cycles =
+            Integer.getInteger("MotionProfileSolveTest.cycles", 500);
+
+    // Axes X, Y, Z, C with vMax, aMax, jMax.
+    private static final double [][] limits = new double [][] {
+        { 1000, 10000, 200000 },
+        { 1000, 8000, 150000 },
+        { 500, 5000, 100000 },
+        { 3600, 20000, 400000 },
+    };
+    private static final double safeZ = -5;
+    private static final double pickZ = -20;
+    private static final double placeZ = -15;
+
+    /**
+     * Creates the axis profiles of pick and place cycles: nozzle up, travel to the place location, nozzle down,
+     * nozzle up, travel to the next feeder, nozzle down. Some of the travel moves are given entry and exit velocities,
+     * like the path optimization in the motion planner does.
+     */
+    private static MotionProfile [] createProfiles(int cycles, long seed) {
+        Random random = new Random(seed);
+        double [] location = new double [] { 0, 0, pickZ, 0 };
+        MotionProfile [] profiles = new MotionProfile [cycles*6*limits.length];
+        int n = 0;
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            for (int move = 0; move < 6; move++) {
+                double [] target = location.clone();
+                switch (move) {
+                    case 0:
+                    case 3:
+                        target[2] = safeZ;
+                        break;
+                    case 1:
+                        target[0] = 100 + random.nextDouble()*200;
+                        target[1] = 50 + random.nextDouble()*150;
+                        target[3] = random.nextInt(4)*90;
+                        break;
+                    case 4:
+                        target[0] = random.nextDouble()*400;
+                        target[1] = random.nextDouble()*20;
+                        target[3] = random.nextDouble()*10 - 5;
+                        break;
+                    case 2:
+                        target[2] = placeZ;
+                        break;
+                    case 5:
+                        target[2] = pickZ;
+                        break;
+                }
+                boolean smoothed = (move == 1 || move == 4) && random.nextInt(4) == 0;
+                for (int axis = 0; axis < limits.length; axis++) {
+                    double d = target[axis] - location[axis];
+                    double v0 = smoothed ? Math.signum(d)*limits[axis][0]*0.1 : 0;
+                    double v1 = smoothed ? Math.signum(d)*limits[axis][0]*0.05 : 0;
+                    profiles[n++] = new MotionProfile(location[axis], target[axis], v0, v1, 0, 0,
+                            Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                            limits[axis][0], limits[axis][1], limits[axis][1], limits[axis][2],
+                            0, Double.POSITIVE_INFINITY, 0);
+                }
+                location = target;
+            }
+        }
+        return profiles;
+    }
+
+    @Test
+    public void testSolution() throws Exception {
+        MotionProfile [] profiles = createProfiles(20, 1);
+        for (int p = 0; p < profiles.length; p++) {
+            MotionProfile profile = new MotionProfile(profiles[p]);
+            profile.solve();
+            assertNull(profile.checkValidity(), "Profile "+p);
+            // Solving again from the same boundary conditions gives the same result.
+            MotionProfile again = new MotionProfile(profiles[p]);
+            again.solve();
+            assertEquals(profile.getTime(), again.getTime(), 0.0, "Time of profile "+p);
+        }
+    }
+
+    @Test
+    public void testSolvePerformance() throws Exception {
+        MotionProfile [] profiles = createProfiles(cycles, 2);
+        for (int warmup = 0; warmup < 3; warmup++) {
+            solve(profiles);
+        }
+        long bytes0 = allocatedBytes();
+        long t0 = System.nanoTime();
+        solve(profiles);
+        long t1 = System.nanoTime();
+        long bytes1 = allocatedBytes();
+
+        System.out.println(String.format(Locale.US,
+                "MotionProfileSolveTest.testSolvePerformance() %d profiles: %.0f solves/s, %.0f bytes/solve",
+                        profiles.length,
+                        profiles.length/((t1 - t0)*1e-9), (double)(bytes1 - bytes0)/profiles.length));
+        if (bytes0 >= 0) {
+            // The profile itself is allocated, but no trace messages or temporary arrays per solver iteration.
+            assertTrue(bytes1 - bytes0 < 4096L*profiles.length, "Solving allocates too much memory");
+        }
+    }
+
+    private static void solve(MotionProfile [] profiles) {
+        for (MotionProfile template : profiles) {
+            // Like the Motion creates its profiles.
+            MotionProfile profile = new MotionProfile(template);
+            profile.solve();
+        }
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -23,9 +23,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import org.junit.jupiter.api.Test;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
+import org.openpnp.util.AxisDynamicsCost;
 import org.openpnp.util.TravellingSalesman;
 
 public class TavellingSalesmanTest {
@@ -91,4 +95,104 @@ public class TavellingSalesmanTest {
             }
         }
     }
+
+    /**
+     * Test the single axis move time estimate of the AxisDynamicsCost. 
+     */
+    @Test
+    public void testMoveTime() {
+        // trapezoidal, velocity reached and not reached
+        assertEquals(10.1, AxisDynamicsCost.getMoveTime(1000, 100, 1000, 0), 1e-9);
+        assertEquals(2*Math.sqrt(0.001), AxisDynamicsCost.getMoveTime(1, 100, 1000, 0), 1e-9);
+        // S-curve, velocity reached: 10s at v, plus 0.1s to accelerate and 0.1s jerk
+        assertEquals(10.2, AxisDynamicsCost.getMoveTime(1000, 100, 1000, 10000), 1e-9);
+        // must be continuous and increasing over all the profile cases
+        double time = 0;
+        for (double d = 0.001; d < 2000; d *= 1.01) {
+            double t = AxisDynamicsCost.getMoveTime(d, 100, 1000, 10000);
+            assertTrue(t > time, "move time increasing at distance "+d);
+            assertTrue(t - time < 0.02 + d*0.01/100*2, "move time continuous at distance "+d);
+            time = t;
+        }
+    }
+
+    /**
+     * Test org.openpnp.util.TravellingSalesman<T> with a cost function, where the X axis is much slower than the Y axis. 
+     * The route solved for the cost must be cheaper than the route solved for the shortest distance. 
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCostFunction() throws Exception {
+        Random rnd = new java.util.Random(42);
+        List<Location> list = new ArrayList<Location>();
+        for (int i = 0; i < 60; i++) {
+            list.add(new Location(LengthUnit.Millimeters, rnd.nextDouble()*500.0, rnd.nextDouble()*500.0, 0.0, 0.0));
+        }
+        TravellingSalesman.CostFunction costFunction = (location0, location1) -> 
+            Math.max(AxisDynamicsCost.getMoveTime(Math.abs(location1.getX() - location0.getX()), 100, 500, 0),
+                    AxisDynamicsCost.getMoveTime(Math.abs(location1.getY() - location0.getY()), 1000, 10000, 0));
+        Location start = new Location(LengthUnit.Millimeters);
+        // solve by distance
+        TravellingSalesman<Location> tsmDistance = new TravellingSalesman<>(
+                list, 
+                (locatable) -> locatable, 
+                start, 
+                null);
+        tsmDistance.solve();
+        double costOfShortest = 0;
+        Location last = start;
+        for (Location location : tsmDistance.getTravel()) {
+            costOfShortest += costFunction.getCost(last, location);
+            last = location;
+        }
+        // solve by cost
+        TravellingSalesman<Location> tsmCost = new TravellingSalesman<>(
+                list, 
+                (locatable) -> locatable, 
+                start, 
+                null,
+                costFunction);
+        double bestCost = tsmCost.solve();
+        System.out.println("TavellingSalesmanTest.testCostFunction() solved "+list.size()+" locations, cost of shortest route: "
+                +costOfShortest+"s, cost of cheapest route: "+bestCost+"s, time: "+tsmCost.getSolverDuration()+"ms");
+        assertTrue(bestCost < costOfShortest*0.95, "solving for the cost must give a cheaper route than solving for the distance");
+    }
+
+    /**
+     * Benchmark the local search against the simulated annealing, for solution quality and solve time. 
+     * 
+     * As the actual Unit Test it checks that the local search is not much worse than the simulated annealing. 
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLocalSearch() throws Exception {
+        for (int size : new int [] { 10, 100, 500 }) {
+            Random rnd = new java.util.Random(42);
+            List<Location> list = new ArrayList<Location>();
+            for (int i = 0; i < size; i++) {
+                list.add(new Location(LengthUnit.Millimeters, rnd.nextDouble()*1000.0, rnd.nextDouble()*500.0, rnd.nextDouble()*10.0, 0.0));
+            }
+            Location start = new Location(LengthUnit.Millimeters);
+            TravellingSalesman<Location> tsmAnnealing = new TravellingSalesman<>(
+                    list, 
+                    (locatable) -> locatable, 
+                    start, 
+                    null);
+            double annealingDistance = tsmAnnealing.solve();
+            TravellingSalesman<Location> tsmLocalSearch = new TravellingSalesman<>(
+                    list, 
+                    (locatable) -> locatable, 
+                    start, 
+                    null);
+            double localSearchDistance = tsmLocalSearch.solveLocalSearch(1000);
+            System.out.println("TavellingSalesmanTest.testLocalSearch() solved "+size+" locations, "
+                    +"annealing distance: "+Math.round(annealingDistance)+"mm, time: "+tsmAnnealing.getSolverDuration()+"ms, "
+                    +"local search distance: "+Math.round(localSearchDistance)+"mm, time: "+tsmLocalSearch.getSolverDuration()+"ms");
+            assertEquals(size, tsmLocalSearch.getTravel().stream().distinct().count());
+            assertTrue(localSearchDistance < annealingDistance*1.05, 
+                    "local search distance "+localSearchDistance+" is much greater than annealing distance "+annealingDistance);
+        }
+    }
 }
@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.openpnp.util.TextTemplate;
+import org.openpnp.util.TextUtils;
+
+/**
+ * Tests that rendering a TextTemplate gives the same result as the sequential substitution of the variables
+ * with TextUtils.substituteVar().
+ */
+public class TextTemplateTest {
+
+    private static String substitute(String template, Map<String, Object> variables) {
+        String text = template;
+        for (Map.Entry<String, Object> entry : variables.entrySet()) {
+            text = TextUtils.substituteVar(text, entry.getKey(), entry.getValue());
+        }
+        return text;
+    }
+
+    private static void assertRendered(String expected, String template, Map<String, Object> variables) {
+        assertEquals(expected, new TextTemplate(template).render(variables), template);
+        assertEquals(expected, substitute(template, variables), template);
+    }
+
+    @Test
+    public void testFixedPointFormat() {
+        Map<String, Object> variables = new LinkedHashMap<>();
+        // Rounds half-up on the shortest decimal representation, like String.format().
+        variables.put("X", 0.125);
+        variables.put("Y", 1.0005);
+        variables.put("Z", -2.5);
+        variables.put("A", -0.0);
+        variables.put("B", 123456.789);
+        assertRendered("G1 X0.13 Y1.001 Z-3 A-0.0000 B123456.8",
+                "G1 {X:X%.2f} {Y:Y%.3f} {Z:Z%.0f} {A:A%.4f} {B:B%.1f}", variables);
+    }
+
+    @Test
+    public void testMissingAndNullVariables() {
+        Map<String, Object> variables = new LinkedHashMap<>();
+        variables.put("X", 1.5);
+        variables.put("Y", null);
+        variables.put("Id", "N1");
+        // Missing variables are left as is, null ones are removed.
+        assertRendered("G1 X1.500  {Z:Z%.3f} ; N1", "G1 {X:X%.3f} {Y:Y%.3f} {Z:Z%.3f} ; {Id}", variables);
+    }
+
+    @Test
+    public void testNestedTemplate() {
+        Map<String, Object> variables = new LinkedHashMap<>();
+        variables.put("Backlash", true);
+        variables.put("X", 1.23456);
+        assertRendered("G1 X1.2346 ; G1 X1.2346", "{Backlash:G1 <((X:X%%.4f))>} ; G1 {X:X%.4f}", variables);
+        variables.put("Backlash", null);
+        assertRendered(" ; G1 X1.2346", "{Backlash:G1 <((X:X%%.4f))>} ; G1 {X:X%.4f}", variables);
+    }
+
+    @Test
+    public void testRandomized() {
+        Random rnd = new Random(42);
+        String [] names = new String [] { "X", "Y", "Z", "Rotation", "FeedRate", "Id", "XL", "XDecreasing" };
+        String [] formats = new String [] { null, "%.0f", "%.1f", "%.2f", "%.3f", "%.4f", "%.6f", "%s", "%e" };
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder template = new StringBuilder();
+            int count = 1 + rnd.nextInt(8);
+            for (int j = 0; j < count; j++) {
+                template.append(rnd.nextBoolean() ? " " : " G1 ");
+                String name = names[rnd.nextInt(names.length)];
+                String format = formats[rnd.nextInt(formats.length)];
+                template.append('{').append(name);
+                if (format != null) {
+                    template.append(':').append(name.charAt(0)).append(format);
+                }
+                template.append('}');
+            }
+            Map<String, Object> variables = new LinkedHashMap<>();
+            for (String name : names) {
+                int kind = rnd.nextInt(6);
+                if (kind == 0) {
+                    // missing
+                    continue;
+                }
+                else if (kind == 1) {
+                    variables.put(name, null);
+                }
+                else if (kind == 2) {
+                    // values at rounding boundaries
+                    variables.put(name, (rnd.nextInt(200000) - 100000)/1e4 + (rnd.nextBoolean() ? 5e-5 : 0.0));
+                }
+                else if (kind == 3) {
+                    variables.put(name, (rnd.nextDouble() - 0.5)*Math.pow(10, rnd.nextInt(8) - 3));
+                }
+                else if (kind == 4) {
+                    variables.put(name, rnd.nextBoolean() ? -0.0 : 0.0);
+                }
+                else {
+                    variables.put(name, "N"+rnd.nextInt(10));
+                }
+            }
+            String expected;
+            try {
+                expected = substitute(template.toString(), variables);
+            }
+            catch (Exception e) {
+                // Not a valid combination of format and value.
+                continue;
+            }
+            assertEquals(expected, new TextTemplate(template.toString()).render(variables), template.toString());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.openpnp.util.TimedRingBuffer;
+
+/**
+ * Tests the TimedRingBuffer used for the motion plan, including lock-free reads concurrent with a writer.
+ * Prints the read rate achieved while the writer is appending.
+ */
+public class TimedRingBufferTest {
+
+    @Test
+    public void testBuffer() throws Exception {
+        TimedRingBuffer<Double> buffer = new TimedRingBuffer<>(5);
+        assertEquals(8, buffer.getCapacity());
+        assertTrue(buffer.isEmpty());
+        assertEquals(Double.NEGATIVE_INFINITY, buffer.getLastTime());
+        assertNull(buffer.getHigher(0));
+
+        for (int i = 1; i <= 5; i++) {
+            buffer.add(i, (double)i);
+        }
+        assertEquals(5, buffer.size());
+        assertEquals(5.0, buffer.getLastTime());
+        // Strictly higher.
+        assertEquals(1.0, buffer.getHigher(0));
+        assertEquals(1.0, buffer.getHigher(0.5));
+        assertEquals(2.0, buffer.getHigher(1));
+        assertEquals(5.0, buffer.getHigher(4.999));
+        assertNull(buffer.getHigher(5));
+        assertEquals(4.0, buffer.getLast((e) -> e < 4.5));
+        assertNull(buffer.getLast((e) -> e > 5));
+        // Same time replaces the last element.
+        buffer.add(5, 5.5);
+        assertEquals(5, buffer.size());
+        assertEquals(5.5, buffer.getHigher(4.999));
+        // Earlier time replaces the newer elements.
+        buffer.add(4, 4.5);
+        assertEquals(4, buffer.size());
+        assertEquals(4.0, buffer.getLastTime());
+        assertEquals(4.5, buffer.getHigher(3.5));
+        buffer.add(5, 5.0);
+
+        buffer.clearOlderThan(3);
+        assertEquals(3, buffer.size());
+        assertEquals(3.0, buffer.getHigher(0));
+        assertNull(buffer.getLast((e) -> e < 3));
+
+        // Overflow drops the oldest.
+        for (int i = 6; i <= 20; i++) {
+            buffer.add(i, (double)i);
+        }
+        assertEquals(8, buffer.size());
+        assertEquals(13.0, buffer.getHigher(0));
+        assertEquals(20.0, buffer.getHigher(19.5));
+
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        // Times must still increase after clearing.
+        buffer.add(21, 21.0);
+        assertEquals(21.0, buffer.getHigher(0));
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        TimedRingBuffer<Double> buffer = new TimedRingBuffer<>(64);
+        int writes = 200000;
+        AtomicReference<String> error = new AtomicReference<>();
+        AtomicLong reads = new AtomicLong();
+        Thread [] readers = new Thread[2];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                long n = 0;
+                while (buffer.getLastTime() < writes) {
+                    double last = buffer.getLastTime();
+                    double time = last - 10.5;
+                    Double element = buffer.getHigher(time);
+                    // Each element is its own time.
+                    if (element != null && !(element > time)) {
+                        error.set("Element "+element+" is not higher than "+time);
+                    }
+                    Double lastElement = buffer.getLast((e) -> true);
+                    if (lastElement != null && lastElement < last) {
+                        error.set("Last element "+lastElement+" is older than last time "+last);
+                    }
+                    n++;
+                }
+                reads.addAndGet(n);
+            });
+        }
+        long t0 = System.nanoTime();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (int i = 1; i <= writes; i++) {
+            buffer.add(i, (double)i);
+            if (i % 100 == 0) {
+                buffer.clearOlderThan(i - 50);
+            }
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        double seconds = (System.nanoTime() - t0)*1e-9;
+        assertNull(error.get(), error.get());
+        System.out.println(String.format(Locale.US,
+                "TimedRingBufferTest.testConcurrentReads() %.0f writes/s, %.0f reads/s",
+                writes/seconds, reads.get()*2/seconds));
+    }
+}
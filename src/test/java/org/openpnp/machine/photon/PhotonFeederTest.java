@@ -610,6 +610,62 @@ public class PhotonFeederTest {
         bus.verifyInMockedOrder();
     }
 
+    @Test
+    public void feedAfterFeedAheadOnlyWaitsForStatus() throws Exception {
+        feeder.setHardwareId(hardwareId);
+        feeder.setPartPitch(2);
+        feeder.setOffset(feederOffset);
+        feeder.setSlotAddress(feederAddress);
+        setSlotLocation(feederAddress, baseLocation);
+
+        bus.when(new InitializeFeeder(feederAddress, hardwareId))
+                .reply(responses.initializeFeeder.ok(feederAddress, hardwareId));
+
+        bus.when(new MoveFeedForward(feederAddress, 20))
+                .reply(responses.moveFeedForward.ok(feederAddress, 0));
+
+        assertTrue(feeder.isFeedAheadSupported());
+        feeder.feedAhead(mockedNozzle);
+        // A second feed ahead before the pick does not feed again.
+        feeder.feedAhead(mockedNozzle);
+
+        bus.when(new MoveFeedStatus(feederAddress))
+                .reply(responses.moveFeedStatus.ok(feederAddress));
+
+        feeder.feed(mockedNozzle);
+
+        bus.verifyInMockedOrder();
+    }
+
+    @Test
+    public void feedAfterCancelledFeedAheadFeedsAgain() throws Exception {
+        feeder.setHardwareId(hardwareId);
+        feeder.setPartPitch(2);
+        feeder.setOffset(feederOffset);
+        feeder.setSlotAddress(feederAddress);
+        setSlotLocation(feederAddress, baseLocation);
+
+        bus.when(new InitializeFeeder(feederAddress, hardwareId))
+                .reply(responses.initializeFeeder.ok(feederAddress, hardwareId));
+
+        bus.when(new MoveFeedForward(feederAddress, 20))
+                .reply(responses.moveFeedForward.ok(feederAddress, 0));
+
+        feeder.feedAhead(mockedNozzle);
+        // E.g. the job was aborted, the part fed ahead may be gone.
+        feeder.cancelFeedAhead();
+
+        bus.when(new MoveFeedForward(feederAddress, 20))
+                .reply(responses.moveFeedForward.ok(feederAddress, 0));
+
+        bus.when(new MoveFeedStatus(feederAddress))
+                .reply(responses.moveFeedStatus.ok(feederAddress));
+
+        feeder.feed(mockedNozzle);
+
+        bus.verifyInMockedOrder();
+    }
+
     @Test
     public void feedInitializesIfUninitializedErrorIsReturned() throws Exception {
         feeder.setHardwareId(hardwareId);
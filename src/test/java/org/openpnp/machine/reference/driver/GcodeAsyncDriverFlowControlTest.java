@@ -0,0 +1,186 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.driver.AbstractReferenceDriver.CommunicationsType;
+import org.openpnp.model.Configuration;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the flow control of the GcodeAsyncDriver against a simulated controller that confirms each command
+ * with one delayed "ok", and measures the bytes and commands in flight, i.e. received but not yet confirmed.
+ */
+public class GcodeAsyncDriverFlowControlTest {
+    /**
+     * Controller that confirms each line after a delay, and tracks what is in flight.
+     */
+    static class Controller extends Thread {
+        final ServerSocket serverSocket = new ServerSocket(0);
+        final ScheduledExecutorService responder = Executors.newSingleThreadScheduledExecutor();
+        volatile Socket socket;
+        int bytesInFlight;
+        int linesInFlight;
+        int maxBytesInFlight;
+        int maxLinesInFlight;
+        int lines;
+
+        Controller() throws Exception {
+            setDaemon(true);
+            start();
+        }
+
+        synchronized void reset() {
+            maxBytesInFlight = 0;
+            maxLinesInFlight = 0;
+            lines = 0;
+        }
+
+        @Override
+        public void run() {
+            try {
+                socket = serverSocket.accept();
+                InputStream input = socket.getInputStream();
+                OutputStream output = socket.getOutputStream();
+                byte [] buffer = new byte[4096];
+                int lineBytes = 0;
+                while (true) {
+                    int n = input.read(buffer);
+                    if (n < 0) {
+                        break;
+                    }
+                    synchronized (this) {
+                        // Everything received in one read is in flight at the same time.
+                        bytesInFlight += n;
+                        for (int i = 0; i < n; i++) {
+                            lineBytes++;
+                            if (buffer[i] == '\n') {
+                                linesInFlight++;
+                                lines++;
+                                int confirmedBytes = lineBytes;
+                                lineBytes = 0;
+                                responder.schedule(() -> confirm(output, confirmedBytes), 1, TimeUnit.MILLISECONDS);
+                            }
+                        }
+                        maxBytesInFlight = Math.max(maxBytesInFlight, bytesInFlight);
+                        maxLinesInFlight = Math.max(maxLinesInFlight, linesInFlight);
+                    }
+                }
+            }
+            catch (Exception e) {
+            }
+        }
+
+        void confirm(OutputStream output, int bytes) {
+            synchronized (this) {
+                bytesInFlight -= bytes;
+                linesInFlight--;
+            }
+            try {
+                output.write("ok\n".getBytes());
+                output.flush();
+            }
+            catch (Exception e) {
+            }
+        }
+
+        void shutdown() throws Exception {
+            responder.shutdownNow();
+            serverSocket.close();
+            if (socket != null) {
+                socket.close();
+            }
+        }
+    }
+
+    Controller controller;
+    GcodeAsyncDriver driver;
+
+    @BeforeEach
+    public void before() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+        controller = new Controller();
+        driver = new GcodeAsyncDriver();
+        driver.setName("GcodeAsyncDriver");
+        driver.createDefaults();
+        driver.setReportedLocationConfirmation(false);
+        driver.setConnectionKeepAlive(false);
+        driver.setCommunicationsType(CommunicationsType.tcp);
+        TcpCommunications tcp = (TcpCommunications) driver.getCommunications();
+        tcp.setIpAddress("localhost");
+        tcp.setPort(controller.serverSocket.getLocalPort());
+        driver.setConnectWaitTimeMilliseconds(0);
+        driver.setTimeoutMilliseconds(5000);
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        driver.disconnect();
+        controller.shutdown();
+    }
+
+    /**
+     * Sends commands of varying length and waits until all of them are confirmed.
+     */
+    private void stream(int count) throws Exception {
+        long confirmations = driver.receivedConfirmations.get() + count;
+        for (int i = 0; i < count; i++) {
+            StringBuilder command = new StringBuilder(String.format(Locale.US, "G1 X%.3f", i*0.1));
+            for (int j = 0; j < i % 7; j++) {
+                command.append(String.format(Locale.US, " Y%.4f", j*1.5));
+            }
+            driver.sendCommand(command.toString());
+        }
+        driver.drainCommandQueue(driver.getTimeoutAtMachineSpeed());
+        assertTrue(driver.receivedConfirmations.await(confirmations, driver.getTimeoutAtMachineSpeed()));
+        assertEquals(null, driver.errorResponse);
+    }
+
+    @Test
+    public void testCharacterCountingBudget() throws Exception {
+        int bufferSize = 64;
+        driver.setCharacterCountingBufferSize(bufferSize);
+        driver.connect();
+        controller.reset();
+        stream(300);
+        synchronized (controller) {
+            // Including the connect commands, that may still be in flight.
+            assertTrue(controller.lines >= 300);
+            assertTrue(controller.maxBytesInFlight <= bufferSize,
+                    "bytes in flight "+controller.maxBytesInFlight+" exceed the buffer size "+bufferSize);
+            // Not degraded to one-by-one sending either.
+            assertTrue(controller.maxLinesInFlight > 1);
+        }
+    }
+
+    @Test
+    public void testConfirmationFlowControlSendsOneByOne() throws Exception {
+        driver.setCharacterCountingBufferSize(0);
+        driver.setConfirmationFlowControl(true);
+        driver.connect();
+        controller.reset();
+        stream(200);
+        synchronized (controller) {
+            assertTrue(controller.lines >= 200);
+            // Batching must never coalesce writes, when each command has to await its confirmation.
+            assertEquals(1, controller.maxLinesInFlight);
+        }
+    }
+}
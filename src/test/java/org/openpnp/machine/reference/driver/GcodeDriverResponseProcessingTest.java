@@ -0,0 +1,89 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+import org.openpnp.machine.reference.driver.GcodeDriver.Line;
+import org.openpnp.model.Configuration;
+
+import com.google.common.io.Files;
+
+public class GcodeDriverResponseProcessingTest {
+    private static final String[] responses = new String[] {
+            "ok",
+            "ok",
+            "ok X:12.3400 Y:56.7800 Z:-1.2000 E:90.0000 Count X: 1234 Y:5678 Z:-120",
+            "ok",
+            "echo:busy: processing",
+            "ok",
+    };
+
+    @BeforeEach
+    public void before() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+    }
+
+    /**
+     * Microbenchmark of the ReaderThread response processing, i.e. how many received lines per second
+     * can be matched against the COMMAND_CONFIRM_REGEX, COMMAND_ERROR_REGEX and POSITION_REPORT_REGEX.
+     * The legacy way of matching, with the regexes recompiled for each line, is measured first for
+     * comparison.
+     *
+     * As the actual Unit Test it checks that the confirmations are correctly counted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testProcessResponseThroughput() throws Exception {
+        GcodeDriver driver = new GcodeDriver();
+        driver.createDefaultCommands();
+        driver.setCommand(null, CommandType.COMMAND_ERROR_REGEX, "^error.*");
+        driver.setCommand(null, CommandType.POSITION_REPORT_REGEX,
+                "^.*X:(?<X>-?\\d+\\.\\d+) Y:(?<Y>-?\\d+\\.\\d+) Z:(?<Z>-?\\d+\\.\\d+) E:(?<E>-?\\d+\\.\\d+).*");
+        String confirmRegex = driver.getCommand(null, CommandType.COMMAND_CONFIRM_REGEX);
+        String errorRegex = driver.getCommand(null, CommandType.COMMAND_ERROR_REGEX);
+        String positionRegex = driver.getCommand(null, CommandType.POSITION_REPORT_REGEX);
+
+        final int lines = 200000;
+        Line [] received = new Line[responses.length];
+        for (int i = 0; i < responses.length; i++) {
+            received[i] = new Line(responses[i]);
+        }
+
+        // Legacy, recompiling the regexes per line.
+        long confirmations = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < lines; i++) {
+            String line = received[i % received.length].getLine();
+            if (line.matches(confirmRegex)) {
+                confirmations++;
+            }
+            if (line.matches(errorRegex)) {
+                throw new Exception("Unexpected error response "+line);
+            }
+            line.matches(positionRegex);
+        }
+        double legacyRate = lines/((System.nanoTime() - t0)*1e-9);
+
+        // Through processResponse() with the cached Patterns.
+        long confirmations0 = driver.receivedConfirmations.get();
+        t0 = System.nanoTime();
+        for (int i = 0; i < lines; i++) {
+            driver.processResponse(received[i % received.length]);
+        }
+        long processedConfirmations = driver.receivedConfirmations.get() - confirmations0;
+        double processRate = lines/((System.nanoTime() - t0)*1e-9);
+
+        System.out.println("GcodeDriverResponseProcessingTest.testProcessResponseThroughput() legacy matching: "
+                +Math.round(legacyRate)+" lines/s, processResponse(): "+Math.round(processRate)+" lines/s");
+        assertEquals(confirmations, processedConfirmations);
+        assertEquals(null, driver.errorResponse);
+    }
+}
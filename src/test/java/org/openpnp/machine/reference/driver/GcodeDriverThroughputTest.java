@@ -0,0 +1,202 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.driver.AbstractReferenceDriver.CommunicationsType;
+import org.openpnp.model.Configuration;
+import org.openpnp.util.GcodeServer;
+
+import com.google.common.io.Files;
+
+/**
+ * Benchmarks the driver stack against the GcodeServer, which simulates the controller and the link. Measures
+ * moves per second and confirmation latency for the GcodeDriver and the GcodeAsyncDriver with different flow
+ * control modes, and the throughput of short, interpolation-like segments.
+ *
+ * The simulated link can be configured with system properties, e.g. for a slow serial controller:
+ *
+ * -DGcodeDriverThroughputTest.linkLatencyMilliseconds=2 -DGcodeDriverThroughputTest.baud=115200
+ * -DGcodeDriverThroughputTest.moves=1000
+ *
+ */
+public class GcodeDriverThroughputTest {
+    private static final double linkLatencyMilliseconds =
+            Double.parseDouble(System.getProperty("GcodeDriverThroughputTest.linkLatencyMilliseconds", "1"));
+    private static final int baud =
+            Integer.getInteger("GcodeDriverThroughputTest.baud", 250000);
+    private static final int moves =
+            Integer.getInteger("GcodeDriverThroughputTest.moves", 300);
+
+    GcodeServer server;
+    GcodeDriver driver;
+
+    @BeforeEach
+    public void before() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        // A controller that simply confirms everything.
+        server = new GcodeServer();
+        server.setDefaultResponse("ok");
+        server.setLinkLatencyMilliseconds(linkLatencyMilliseconds);
+        server.setBaud(baud);
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        if (driver != null) {
+            driver.disconnect();
+        }
+        server.shutdown();
+    }
+
+    private void connect(GcodeDriver driver) throws Exception {
+        this.driver = driver;
+        driver.setName(driver.getClass().getSimpleName());
+        driver.createDefaults();
+        driver.setConnectionKeepAlive(false);
+        driver.setCommunicationsType(CommunicationsType.tcp);
+        TcpCommunications tcp = (TcpCommunications) driver.getCommunications();
+        tcp.setIpAddress("localhost");
+        tcp.setPort(server.getListenerPort());
+        driver.setConnectWaitTimeMilliseconds(0);
+        driver.setTimeoutMilliseconds(5000);
+        driver.connect();
+    }
+
+    private static String moveCommand(int i) {
+        return String.format(Locale.US, "G1 X%.4f Y%.4f Z%.4f F%.1f",
+                100.0 + (i % 100)*0.5, 50.0 + (i % 37)*0.25, -(i % 5)*0.2, 30000.0);
+    }
+
+    private static String segmentCommand(int i) {
+        return String.format(Locale.US, "G1 X%.3f Y%.3f",
+                i*0.01, i*0.005);
+    }
+
+    /**
+     * Sends the commands and waits until all of them are confirmed.
+     *
+     * @return Commands per second.
+     */
+    private double stream(String [] commands) throws Exception {
+        long confirmations = driver.receivedConfirmations.get() + commands.length;
+        long t0 = System.nanoTime();
+        for (String command : commands) {
+            driver.sendCommand(command);
+        }
+        driver.drainCommandQueue(driver.getTimeoutAtMachineSpeed());
+        // Without flow control, the commands are not yet confirmed.
+        assertTrue(driver.receivedConfirmations.await(confirmations, driver.getTimeoutAtMachineSpeed()));
+        double rate = commands.length/((System.nanoTime() - t0)*1e-9);
+        assertEquals(null, driver.errorResponse);
+        return rate;
+    }
+
+    private String [] moveCommands(int n) {
+        String [] commands = new String[n];
+        for (int i = 0; i < n; i++) {
+            commands[i] = moveCommand(i);
+        }
+        return commands;
+    }
+
+    private String linkDescription() {
+        return "(latency "+linkLatencyMilliseconds+"ms, "+(baud > 0 ? baud+" baud" : "unthrottled")+")";
+    }
+
+    /**
+     * Measures the plain GcodeDriver, which awaits the confirmation of each command before it returns.
+     * The time for each sendCommand() is therefore the confirmation latency.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGcodeDriver() throws Exception {
+        connect(new GcodeDriver());
+        String [] commands = moveCommands(moves);
+        double [] latencies = new double[moves];
+        long t0 = System.nanoTime();
+        for (int i = 0; i < moves; i++) {
+            long t1 = System.nanoTime();
+            driver.sendCommand(commands[i]);
+            latencies[i] = (System.nanoTime() - t1)*1e-6;
+        }
+        double rate = moves/((System.nanoTime() - t0)*1e-9);
+        Arrays.sort(latencies);
+        System.out.println(String.format(Locale.US,
+                "GcodeDriverThroughputTest.testGcodeDriver() %s: %.0f moves/s, confirmation latency p50 %.2fms, p90 %.2fms, p99 %.2fms",
+                linkDescription(), rate, percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99)));
+        assertEquals(null, driver.errorResponse);
+        assertTrue(percentile(latencies, 50) >= linkLatencyMilliseconds);
+    }
+
+    /**
+     * Measures the GcodeAsyncDriver with confirmation flow control, i.e. one command in flight at a time,
+     * with character counting flow control and without flow control.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGcodeAsyncDriver() throws Exception {
+        GcodeAsyncDriver asyncDriver = new GcodeAsyncDriver();
+        asyncDriver.setReportedLocationConfirmation(false);
+        connect(asyncDriver);
+        String [] commands = moveCommands(moves);
+
+        asyncDriver.setConfirmationFlowControl(true);
+        asyncDriver.setCharacterCountingBufferSize(0);
+        double confirmationRate = stream(commands);
+
+        asyncDriver.setCharacterCountingBufferSize(128);
+        double characterCountingRate = stream(commands);
+
+        asyncDriver.setConfirmationFlowControl(false);
+        double noFlowControlRate = stream(commands);
+
+        System.out.println(String.format(Locale.US,
+                "GcodeDriverThroughputTest.testGcodeAsyncDriver() %s: confirmation flow control %.0f moves/s, "
+                + "character counting %.0f moves/s, no flow control %.0f moves/s",
+                linkDescription(), confirmationRate, characterCountingRate, noFlowControlRate));
+    }
+
+    /**
+     * Measures the throughput of short segments, like the GcodeAsyncDriver sends them when interpolating
+     * motion, using character counting flow control.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInterpolatedSegments() throws Exception {
+        GcodeAsyncDriver asyncDriver = new GcodeAsyncDriver();
+        asyncDriver.setReportedLocationConfirmation(false);
+        asyncDriver.setCharacterCountingBufferSize(128);
+        connect(asyncDriver);
+        int segments = moves*4;
+        String [] commands = new String[segments];
+        int bytes = 0;
+        for (int i = 0; i < segments; i++) {
+            commands[i] = segmentCommand(i);
+            bytes += commands[i].length() + 1;
+        }
+        double rate = stream(commands);
+        System.out.println(String.format(Locale.US,
+                "GcodeDriverThroughputTest.testInterpolatedSegments() %s: %.0f segments/s, %.0f bytes/s",
+                linkDescription(), rate, rate*bytes/segments));
+    }
+
+    private static double percentile(double [] sorted, double percent) {
+        int index = (int) Math.ceil(percent/100*sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
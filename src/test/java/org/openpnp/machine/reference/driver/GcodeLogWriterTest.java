@@ -0,0 +1,123 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.model.Configuration;
+
+public class GcodeLogWriterTest {
+    File directory;
+
+    @BeforeEach
+    public void before() throws Exception {
+        File workingDirectory = com.google.common.io.Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        directory = Configuration.get().getResourceDirectory(GcodeLogWriterTest.class);
+    }
+
+    private File[] logFiles(String name) {
+        File[] files = directory.listFiles((dir, fileName) -> fileName.startsWith("log-"+name+"-"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Logs lines larger than the maximum file size, with pauses, so that each line ends up in a file of its own.
+     */
+    private void log(GcodeLogWriter writer, String name, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            StringBuilder line = new StringBuilder("G1 ; "+name+" "+i+" ");
+            while (line.length() < 200) {
+                line.append('x');
+            }
+            writer.logSent(line.toString());
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void testRotationAndPruning() throws Exception {
+        // Logs of earlier versions and of another driver with a similar id.
+        File legacy = new File(directory, "log1700000000000000000.g");
+        File similar = new File(directory, "log-GDVR1-B-1700000000000000000.g");
+        assertTrue(legacy.createNewFile());
+        assertTrue(similar.createNewFile());
+
+        GcodeLogWriter writerA = new GcodeLogWriter(GcodeLogWriterTest.class, "GDVR1", 100, 100, 3, false);
+        GcodeLogWriter writerB = new GcodeLogWriter(GcodeLogWriterTest.class, "GDVR2", 100, 100, 3, false);
+        log(writerB, "B", 2);
+        log(writerA, "A", 10);
+        writerA.close();
+        writerB.close();
+
+        // Only the newest files of A are kept.
+        File[] filesA = logFiles("GDVR1");
+        assertEquals(3 + 1, filesA.length);
+        assertTrue(Arrays.asList(filesA).contains(similar));
+        String last = new String(Files.readAllBytes(logFiles("GDVR1")[filesA.length - 2].toPath()));
+        assertTrue(last.startsWith("G1 ; A 9 "), last);
+        // B and the legacy log are left alone.
+        assertEquals(2, logFiles("GDVR2").length);
+        assertTrue(legacy.exists());
+
+        // A new session of A prunes the files of the previous session.
+        writerA = new GcodeLogWriter(GcodeLogWriterTest.class, "GDVR1", 100, 100, 3, false);
+        log(writerA, "A", 1);
+        writerA.close();
+        assertEquals(3 + 1, logFiles("GDVR1").length);
+        assertTrue(similar.exists());
+        assertFalse(Arrays.asList(logFiles("GDVR1")).contains(filesA[0]));
+    }
+
+    @Test
+    public void testRecoveryFromWriteErrors() throws Exception {
+        AtomicBoolean diskFull = new AtomicBoolean(true);
+        AtomicInteger opened = new AtomicInteger();
+        GcodeLogWriter writer = new GcodeLogWriter(GcodeLogWriterTest.class, "GDVR3", 100, 1000000, 10, false) {
+            @Override
+            protected Writer openWriter(File file) throws IOException {
+                opened.incrementAndGet();
+                return new FilterWriter(super.openWriter(file)) {
+                    @Override
+                    public void write(String str, int off, int len) throws IOException {
+                        if (diskFull.get()) {
+                            throw new IOException("No space left on device");
+                        }
+                        super.write(str, off, len);
+                    }
+                };
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            writer.logSent("G1 X"+i);
+            Thread.sleep(20);
+        }
+        Thread.sleep(200);
+        diskFull.set(false);
+        for (int i = 3; i < 5; i++) {
+            writer.logSent("G1 X"+i);
+            Thread.sleep(20);
+        }
+        writer.close();
+        StringBuilder text = new StringBuilder();
+        for (File file : logFiles("GDVR3")) {
+            text.append(new String(Files.readAllBytes(file.toPath())));
+        }
+        // The writer went on after the failures, in a new file, and noted the lost lines.
+        assertTrue(opened.get() >= 2);
+        assertEquals("; 3 lines dropped\nG1 X3\nG1 X4\n", text.toString());
+    }
+}
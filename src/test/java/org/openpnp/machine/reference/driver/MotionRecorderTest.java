@@ -0,0 +1,96 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.MotionPlanner.CompletionType;
+import org.openpnp.spi.Nozzle;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the motion recorder with moves of the default machine, and its exports.
+ */
+public class MotionRecorderTest {
+
+    @Test
+    public void testRecorder() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+        Machine machine = Configuration.get().getMachine();
+        AbstractMotionPlanner planner = (AbstractMotionPlanner) machine.getMotionPlanner();
+        Nozzle nozzle = machine.getDefaultHead().getDefaultNozzle();
+        machine.setEnabled(true);
+        machine.home();
+
+        MotionRecorder recorder = planner.getMotionRecorder();
+        assertNotNull(recorder);
+        recorder.clear();
+        nozzle.moveTo(new Location(LengthUnit.Millimeters, 100, 50, 0, 0));
+        nozzle.moveTo(new Location(LengthUnit.Millimeters, 0, 0, 0, 90));
+        assertEquals(2, recorder.size());
+        String [] columns = recorder.getColumns();
+        int timePlanned = Arrays.asList(columns).indexOf("timePlanned");
+        int batchTimeRatio = Arrays.asList(columns).indexOf("batchTimeRatio");
+        int steps = Arrays.asList(columns).indexOf("steps");
+        int xVelocity = Arrays.asList(columns).indexOf("x v");
+        assertTrue(xVelocity > 0, "Per axis columns present");
+        assertTrue(recorder.getValue(0, timePlanned) > 0, "Planned time recorded");
+        assertTrue(recorder.getValue(0, steps) >= 1, "Steps recorded");
+        assertTrue(recorder.getValue(0, xVelocity) > 0, "Peak velocity recorded");
+        // The moves were completed with still-stand.
+        planner.waitForCompletion(nozzle, CompletionType.WaitForStillstand);
+        assertTrue(recorder.getValue(0, batchTimeRatio) > 0, "Actual time ratio recorded");
+        assertTrue(recorder.getValue(1, batchTimeRatio) > 0, "Actual time ratio recorded");
+
+        StringWriter writer = new StringWriter();
+        recorder.exportCsv(writer);
+        BufferedReader reader = new BufferedReader(new StringReader(writer.toString()));
+        assertEquals(String.join(",", columns), reader.readLine());
+        assertEquals(columns.length, reader.readLine().split(",").length);
+        assertNotNull(reader.readLine());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        recorder.exportColumnar(outputStream);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        byte [] magic = new byte[MotionRecorder.columnarMagic.length()];
+        in.readFully(magic);
+        assertEquals(MotionRecorder.columnarMagic, new String(magic, StandardCharsets.US_ASCII));
+        assertEquals(columns.length, in.readInt());
+        assertEquals(2, in.readInt());
+        for (String column : columns) {
+            byte [] name = new byte[in.readInt()];
+            in.readFully(name);
+            assertEquals(column, new String(name, StandardCharsets.UTF_8));
+        }
+        assertEquals(recorder.getValue(0, 0), in.readDouble());
+        assertEquals(recorder.getValue(1, 0), in.readDouble());
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        MotionRecorder recorder = new MotionRecorder(3);
+        assertEquals(0, recorder.size());
+        assertEquals(0, recorder.getColumns().length);
+        recorder.recordCompletion(1);
+        assertEquals(0, recorder.getColumnData().length);
+    }
+}
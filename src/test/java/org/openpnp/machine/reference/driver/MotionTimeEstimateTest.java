@@ -0,0 +1,122 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.axis.ReferenceControllerAxis;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Location;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Camera;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.base.AbstractHeadMountable;
+import org.openpnp.util.MotionTimeCost;
+import org.openpnp.util.TravellingSalesman;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the side-effect free motion time estimates of the motion planner on the default machine.
+ */
+public class MotionTimeEstimateTest {
+    Machine machine;
+    AbstractMotionPlanner planner;
+    Nozzle nozzle;
+
+    @BeforeEach
+    public void before() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+        machine = Configuration.get().getMachine();
+        planner = (AbstractMotionPlanner) machine.getMotionPlanner();
+        nozzle = machine.getDefaultHead().getDefaultNozzle();
+    }
+
+    private static Location location(double x, double y, double z, double rotation) {
+        return new Location(LengthUnit.Millimeters, x, y, z, rotation);
+    }
+
+    @Test
+    public void testMotionTime() throws Exception {
+        Location nozzleLocation = nozzle.getLocation();
+        Location origin = location(0, 0, 0, 0);
+        double time100 = planner.getMotionTime(nozzle, origin, location(100, 0, 0, 0), 1.0);
+        double time200 = planner.getMotionTime(nozzle, origin, location(200, 0, 0, 0), 1.0);
+        assertTrue(time100 > 0, "Move takes time");
+        assertTrue(time200 > time100, "Longer move takes longer");
+        assertTrue(time200 < 2*time100, "Longer move has more time at full speed");
+        // Reverse move takes the same time.
+        assertEquals(time100, planner.getMotionTime(nozzle, location(100, 0, 0, 0), origin, 1.0), 1e-6);
+        // Unspecified coordinates are taken from the start location.
+        assertEquals(time100, planner.getMotionTime(nozzle, origin, location(100, Double.NaN, Double.NaN, Double.NaN), 1.0), 1e-6);
+        // Slower speed takes longer.
+        assertTrue(planner.getMotionTime(nozzle, origin, location(100, 0, 0, 0), 0.5) > time100, "Slower move takes longer");
+        // Within the resolution, the cached estimate is returned.
+        assertEquals(time100, planner.getMotionTime(nozzle, origin, location(100.001, 0, 0, 0), 1.0), 0.0);
+        planner.clearMotionTimeCache();
+        assertEquals(time100, planner.getMotionTime(nozzle, origin, location(100, 0, 0, 0), 1.0), 1e-6);
+
+        // At safe Z, the Z moves add to the time.
+        Location pick = location(0, 0, -10, 0);
+        Location place = location(100, 0, -10, 0);
+        double timeSafeZ = planner.getMotionTimeAtSafeZ(nozzle, pick, place, 1.0);
+        assertTrue(timeSafeZ > time100, "Safe Z moves take time");
+        assertEquals(planner.getMotionTime(nozzle, pick, location(0, 0, 0, 0), 1.0)*2 + time100, timeSafeZ, 1e-6);
+        // Z only move does not go to safe Z.
+        assertEquals(planner.getMotionTime(nozzle, pick, origin, 1.0), 
+                planner.getMotionTimeAtSafeZ(nozzle, pick, origin, 1.0), 1e-6);
+
+        // No side effects.
+        assertEquals(nozzleLocation, nozzle.getLocation());
+    }
+
+    /**
+     * Tests the MotionTimeCost, as used to rate the job planner cycles, against the estimates of the motion planner.
+     */
+    @Test
+    public void testMotionTimeCost() throws Exception {
+        Camera camera = machine.getDefaultHead().getDefaultCamera();
+        MotionTimeCost cost = MotionTimeCost.create(camera, 1.0);
+        assertTrue(cost != null, "Default machine axes have motion limits");
+        Location location0 = location(10, 20, 0, 0);
+        Location location1 = location(110, 70, 0, 0);
+        assertEquals(planner.getMotionTimeAtSafeZ(camera, location0, location1, 1.0), 
+                cost.getCost(location0, location1), 1e-9);
+
+        // Make the Y axis much slower than the X axis, so the fastest route is not the shortest. 
+        ReferenceControllerAxis axisY = (ReferenceControllerAxis) ((AbstractHeadMountable) camera).getAxisY();
+        axisY.setFeedratePerSecond(axisY.getFeedratePerSecond().multiply(0.1));
+        axisY.setAccelerationPerSecond2(axisY.getAccelerationPerSecond2().multiply(0.1));
+        planner.clearMotionTimeCache();
+        cost = MotionTimeCost.create(camera, 1.0);
+        // Solving for the cost gives a faster route than solving for the distance.
+        Random rnd = new Random(42);
+        List<Location> list = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            list.add(location(rnd.nextDouble()*400, rnd.nextDouble()*300, 0, 0));
+        }
+        Location start = location(0, 0, 0, 0);
+        TravellingSalesman<Location> tsmDistance = new TravellingSalesman<>(list, (l) -> l, start, null);
+        tsmDistance.solveLocalSearch(1000);
+        double costOfShortest = 0;
+        Location last = start;
+        for (Location location : tsmDistance.getTravel()) {
+            costOfShortest += cost.getCost(last, location);
+            last = location;
+        }
+        TravellingSalesman<Location> tsmCost = new TravellingSalesman<>(list, (l) -> l, start, null, cost);
+        double bestCost = tsmCost.solveLocalSearch(1000);
+        assertTrue(bestCost < costOfShortest, 
+                "Route solved for the motion time "+bestCost+"s must be faster than the shortest "+costOfShortest+"s");
+    }
+}
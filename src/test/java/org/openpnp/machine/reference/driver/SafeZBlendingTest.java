@@ -0,0 +1,140 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.axis.ReferenceControllerAxis;
+import org.openpnp.model.AxesLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Motion;
+import org.openpnp.model.Motion.MotionOption;
+import org.openpnp.model.MotionProfile;
+import org.openpnp.spi.Axis;
+import org.openpnp.spi.Driver;
+import org.openpnp.spi.Driver.MotionControlType;
+import org.openpnp.spi.HeadMountable;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.MotionPlanner.CompletionType;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the "dog-bone" blending of moveToLocationAtSafeZ() sequences by the advanced motion planner, on the 
+ * machine of the SampleJobTest with a Safe Zone on its Z axis.
+ */
+public class SafeZBlendingTest {
+    private ReferenceAdvancedMotionPlanner planner;
+    private HeadMountable hm;
+    private ReferenceControllerAxis x;
+    private ReferenceControllerAxis y;
+    private ReferenceControllerAxis z;
+
+    private List<Motion> plan(double [][] waypoints) {
+        List<Motion> plan = new LinkedList<>();
+        for (int i = 1; i < waypoints.length; i++) {
+            AxesLocation location0 = location(waypoints[i - 1]);
+            AxesLocation location1 = location(waypoints[i]);
+            plan.add(new Motion(hm, location0, location1, 1.0, planner.getMotionOptions(location0, location1, 0)));
+        }
+        return plan;
+    }
+
+    private AxesLocation location(double [] waypoint) {
+        return new AxesLocation(x, waypoint[0])
+                .put(new AxesLocation(y, waypoint[1]))
+                .put(new AxesLocation(z, waypoint[2]));
+    }
+
+    private static double time(List<Motion> plan) {
+        double time = 0;
+        for (Motion motion : plan) {
+            time += motion.getTime();
+        }
+        return time;
+    }
+
+    private MotionProfile profile(Motion motion, ReferenceControllerAxis axis) {
+        return motion.getAxesProfiles()[motion.getAxisIndex(axis)];
+    }
+
+    @Test
+    public void testSafeZBlending() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/SampleJobTest/machine.xml"),
+                new File(workingDirectory, "machine.xml"));
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+        Machine machine = Configuration.get().getMachine();
+        for (Driver driver : machine.getDrivers()) {
+            if (driver instanceof GcodeDriver) {
+                ((GcodeDriver) driver).setMotionControlType(MotionControlType.Simulated3rdOrderControl);
+            }
+        }
+        planner = (ReferenceAdvancedMotionPlanner) machine.getMotionPlanner();
+        hm = machine.getDefaultHead().getDefaultNozzle();
+        for (Axis axis : machine.getAxes()) {
+            if (axis.getName().equals("X-non-square")) {
+                x = (ReferenceControllerAxis) axis;
+            }
+            else if (axis.getName().equals("Y")) {
+                y = (ReferenceControllerAxis) axis;
+            }
+            else if (axis.getName().equals("ZN1")) {
+                z = (ReferenceControllerAxis) axis;
+            }
+        }
+        // Safe Z at the lower boundary of the Safe Zone.
+        z.setSafeZoneLow(new Length(-5, LengthUnit.Millimeters));
+        z.setSafeZoneHigh(new Length(10, LengthUnit.Millimeters));
+        double [][] pickAndPlace = new double [][] {
+            { 10, 10, -20 }, { 10, 10, -5 }, { 100, 60, -5 }, { 100, 60, -20 }
+        };
+
+        assertFalse(planner.isAllowUncoordinated());
+        planner.setSafeZBlending(false);
+        List<Motion> stopAndGo = plan(pickAndPlace);
+        planner.optimizeExecutionPlan(stopAndGo, CompletionType.WaitForStillstand);
+        assertEquals(0, profile(stopAndGo.get(0), z).getVelocity(MotionProfile.segments), 1e-6, "Z stops at Safe Z");
+
+        planner.setSafeZBlending(true);
+        List<Motion> blended = plan(pickAndPlace);
+        planner.optimizeExecutionPlan(blended, CompletionType.WaitForStillstand);
+        assertEquals(3, blended.size());
+        assertFalse(blended.get(0).hasOption(MotionOption.UncoordinatedMotion), "Lift stays coordinated");
+        assertTrue(blended.get(1).hasOption(MotionOption.UncoordinatedMotion), "Travel is uncoordinated");
+        assertFalse(blended.get(2).hasOption(MotionOption.UncoordinatedMotion), "Descent stays coordinated");
+        // Z passes Safe Z in motion, with continuous velocity.
+        double vLift = profile(blended.get(0), z).getVelocity(MotionProfile.segments);
+        double vDescent = profile(blended.get(2), z).getVelocity(0);
+        assertTrue(vLift > 0, "Z passes Safe Z going up");
+        assertTrue(vDescent < 0, "Z passes Safe Z going down");
+        assertEquals(vLift, profile(blended.get(1), z).getVelocity(0), 1e-6);
+        assertEquals(vDescent, profile(blended.get(1), z).getVelocity(MotionProfile.segments), 1e-6);
+        // XY only travels, while Z is in the Safe Zone.
+        assertEquals(0, profile(blended.get(1), x).getVelocity(0), 1e-6);
+        assertEquals(0, profile(blended.get(1), x).getVelocity(MotionProfile.segments), 1e-6);
+        MotionProfile zTravel = profile(blended.get(1), z);
+        for (double t = 0; t <= zTravel.getTime(); t += zTravel.getTime()/100) {
+            assertTrue(zTravel.getMomentaryLocation(t) >= -5 - 1e-6, "Z stays in the Safe Zone");
+            assertTrue(zTravel.getMomentaryLocation(t) <= 10 + 1e-6, "Z stays in the Safe Zone");
+        }
+        System.out.println(String.format("SafeZBlendingTest.testSafeZBlending() blended %.3f s, stop-and-go %.3f s", 
+                time(blended), time(stopAndGo)));
+        assertTrue(time(blended) < time(stopAndGo), "Blending is not faster");
+
+        // A travel that is not part of a Safe Z sequence is left alone.
+        List<Motion> travel = plan(new double [][] { { 10, 10, -5 }, { 100, 60, -5 } });
+        planner.optimizeExecutionPlan(travel, CompletionType.WaitForStillstand);
+        assertFalse(travel.get(0).hasOption(MotionOption.UncoordinatedMotion));
+    }
+}
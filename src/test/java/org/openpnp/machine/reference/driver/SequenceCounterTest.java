@@ -0,0 +1,76 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class SequenceCounterTest {
+
+    @Test
+    public void testAwaitReached() throws Exception {
+        SequenceCounter counter = new SequenceCounter(5);
+        assertTrue(counter.await(5, 0));
+        assertTrue(counter.await(3, 0));
+        assertEquals(6, counter.increment());
+        assertEquals(10, counter.set(10));
+        assertEquals(10, counter.get());
+    }
+
+    @Test
+    public void testAwaitOrdering() throws Exception {
+        SequenceCounter counter = new SequenceCounter();
+        CompletableFuture<Long> waiter3 = CompletableFuture.supplyAsync(() -> awaitAndGet(counter, 3));
+        CompletableFuture<Long> waiter5 = CompletableFuture.supplyAsync(() -> awaitAndGet(counter, 5));
+        Thread.sleep(50);
+        for (int i = 1; i <= 4; i++) {
+            counter.increment();
+            Thread.sleep(20);
+            // Waiters are released once their target is reached, but not before.
+            assertEquals(i >= 3, waiter3.isDone(), "waiter for 3 at sequence "+i);
+            assertFalse(waiter5.isDone(), "waiter for 5 at sequence "+i);
+        }
+        counter.increment();
+        assertTrue(waiter3.get(1, TimeUnit.SECONDS) >= 3);
+        assertEquals(5, waiter5.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAwaitTimeout() throws Exception {
+        SequenceCounter counter = new SequenceCounter();
+        long t0 = System.currentTimeMillis();
+        assertFalse(counter.await(1, 100));
+        assertTrue(System.currentTimeMillis() - t0 >= 100);
+        // A late advance is still seen.
+        counter.increment();
+        assertTrue(counter.await(1, 0));
+    }
+
+    @Test
+    public void testAwaitInterrupted() throws Exception {
+        SequenceCounter counter = new SequenceCounter();
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> counter.await(1, 10000));
+        assertFalse(Thread.interrupted());
+        // The interrupted waiter is gone, advancing and waiting still work.
+        counter.increment();
+        assertTrue(counter.await(1, 0));
+    }
+
+    private static long awaitAndGet(SequenceCounter counter, long target) {
+        try {
+            if (!counter.await(target, 5000)) {
+                return -1;
+            }
+            return counter.get();
+        }
+        catch (InterruptedException e) {
+            return -2;
+        }
+    }
+}
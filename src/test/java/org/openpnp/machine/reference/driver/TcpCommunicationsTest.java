@@ -0,0 +1,212 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openpnp.machine.reference.driver.AbstractReferenceDriver.CommunicationsType;
+import org.openpnp.machine.reference.driver.ReferenceDriverCommunications.LineListener;
+import org.openpnp.model.Configuration;
+import org.openpnp.util.GcodeServer;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the non-blocking TcpCommunications over loopback, both with the GcodeDriver against the GcodeServer, and
+ * with a raw socket that controls how the lines are split across reads.
+ */
+public class TcpCommunicationsTest {
+    /**
+     * Collects the lines handed over by the TcpChannelSelector.
+     */
+    static class Lines implements LineListener {
+        final LinkedBlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        final CompletableFuture<IOException> failed = new CompletableFuture<>();
+
+        @Override
+        public void lineReceived(String line) {
+            lines.add(line);
+        }
+
+        @Override
+        public void readFailed(IOException e) {
+            failed.complete(e);
+        }
+
+        String next() throws InterruptedException {
+            return lines.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    ServerSocket serverSocket;
+    TcpCommunications tcp;
+
+    @BeforeEach
+    public void before() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+        serverSocket = new ServerSocket(0);
+        tcp = new TcpCommunications();
+        tcp.setIpAddress("localhost");
+        tcp.setPort(serverSocket.getLocalPort());
+        tcp.setNonBlockingIo(true);
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        tcp.disconnect();
+        serverSocket.close();
+    }
+
+    @Test
+    public void testGcodeDriverConnectAndReconnect() throws Exception {
+        GcodeServer server = new GcodeServer();
+        server.setDefaultResponse("ok");
+        GcodeDriver driver = new GcodeDriver();
+        try {
+            driver.setName("GcodeDriver");
+            driver.createDefaults();
+            driver.setConnectionKeepAlive(false);
+            driver.setCommunicationsType(CommunicationsType.tcp);
+            driver.setNonBlockingIo(true);
+            TcpCommunications driverTcp = (TcpCommunications) driver.getCommunications();
+            driverTcp.setIpAddress("localhost");
+            driverTcp.setPort(server.getListenerPort());
+            driver.setConnectWaitTimeMilliseconds(0);
+            driver.setTimeoutMilliseconds(5000);
+            for (int connection = 0; connection < 3; connection++) {
+                driver.connect();
+                assertTrue(driverTcp.isListening(), "lines are delivered by the selector");
+                for (int i = 0; i < 20; i++) {
+                    driver.sendCommand("G1 X"+i, 5000);
+                }
+                driver.disconnect();
+                assertTrue(driverTcp.channel == null);
+            }
+        }
+        finally {
+            driver.disconnect();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testLineSplitting() throws Exception {
+        tcp.connect();
+        Lines listener = new Lines();
+        assertTrue(tcp.startLineListening(listener));
+        try (Socket socket = serverSocket.accept()) {
+            OutputStream output = socket.getOutputStream();
+            for (String part : new String [] { "ok\r\nT:2", "5.0", "\n\n\r\nX:1", "\r", "\nok", "\n" }) {
+                output.write(part.getBytes());
+                output.flush();
+                // Make sure the parts arrive in separate reads.
+                Thread.sleep(20);
+            }
+            assertEquals("ok", listener.next());
+            assertEquals("T:25.0", listener.next());
+            assertEquals("X:1", listener.next());
+            assertEquals("ok", listener.next());
+            assertFalse(listener.failed.isDone());
+        }
+        // Closed by the peer.
+        assertNotNull(listener.failed.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBlockingReadWithoutListener() throws Exception {
+        tcp.connect();
+        try (Socket socket = serverSocket.accept()) {
+            socket.getOutputStream().write("ok\nX:1\r\n".getBytes());
+            // Not listening, the channel is read like a blocking socket.
+            assertFalse(tcp.isListening());
+            assertEquals("ok", tcp.readLine());
+            assertEquals("X:1", tcp.readLine());
+            tcp.writeLine("G1 X1");
+            byte [] buffer = new byte[6];
+            new DataInputStream(socket.getInputStream()).readFully(buffer);
+            assertEquals("G1 X1\n", new String(buffer));
+        }
+    }
+
+    @Test
+    public void testWriteAwaitsFullSendBuffer() throws Exception {
+        tcp.connect();
+        Lines listener = new Lines();
+        tcp.startLineListening(listener);
+        try (Socket socket = serverSocket.accept()) {
+            // Much more than the socket buffers hold, while the peer does not read yet.
+            byte [] data = new byte[16*1024*1024];
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+                try {
+                    tcp.writeBytes(data);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(200);
+            assertFalse(writer.isDone(), "writer waits for the send buffer");
+            InputStream input = socket.getInputStream();
+            byte [] buffer = new byte[65536];
+            long total = 0;
+            while (total < data.length) {
+                int n = input.read(buffer);
+                assertTrue(n > 0);
+                total += n;
+            }
+            writer.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testDisconnectReleasesWriter() throws Exception {
+        tcp.connect();
+        Lines listener = new Lines();
+        tcp.startLineListening(listener);
+        try (Socket socket = serverSocket.accept()) {
+            byte [] data = new byte[16*1024*1024];
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+                try {
+                    tcp.writeBytes(data);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(200);
+            assertFalse(writer.isDone());
+            tcp.disconnect();
+            // The waiting writer fails instead of hanging.
+            ExecutionException e = assertThrows(ExecutionException.class, () -> writer.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause().getCause() instanceof IOException);
+            // An unregistered listener is not called anymore.
+            assertFalse(listener.failed.isDone());
+            // The connection is closed, once the peer has read what was sent before.
+            socket.setSoTimeout(5000);
+            InputStream input = socket.getInputStream();
+            byte [] buffer = new byte[65536];
+            while (input.read(buffer) >= 0) {
+            }
+        }
+    }
+}